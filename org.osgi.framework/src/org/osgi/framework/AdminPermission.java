@@ -23,11 +23,9 @@ import java.io.NotSerializableException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.ObjectStreamField;
-import java.security.AccessController;
 import java.security.BasicPermission;
 import java.security.Permission;
 import java.security.PermissionCollection;
-import java.security.PrivilegedAction;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -818,7 +816,8 @@ public final class AdminPermission extends BasicPermission {
 	 * Called by {@code implies0} on an AdminPermission which was constructed
 	 * with a Bundle. This method loads a map with the filter-matchable
 	 * properties of this bundle. The map is cached so this lookup only happens
-	 * once.
+	 * once. The {@code signer} property is resolved each time it is looked up
+	 * since the trusted signers of the bundle can change.
 	 * 
 	 * This method should only be called on an AdminPermission which was
 	 * constructed with a bundle
@@ -841,24 +840,7 @@ public final class AdminPermission extends BasicPermission {
 		}
 		recurse.set(bundle);
 		try {
-			final Map<String, Object> map = new HashMap<String, Object>(4);
-			AccessController.doPrivileged(new PrivilegedAction<Void>() {
-				@Override
-				public Void run() {
-					map.put("id", Long.valueOf(bundle.getBundleId()));
-					map.put("location", bundle.getLocation());
-					String name = bundle.getSymbolicName();
-					if (name != null) {
-						map.put("name", name);
-					}
-					SignerProperty signer = new SignerProperty(bundle);
-					if (signer.isBundleSigned()) {
-						map.put("signer", signer);
-					}
-					return null;
-				}
-			});
-			return properties = map;
+			return properties = BundleProperties.of(bundle);
 		} finally {
 			recurse.set(null);
 		}
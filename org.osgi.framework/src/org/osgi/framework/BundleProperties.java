@@ -0,0 +1,177 @@
+/*******************************************************************************
+ * Copyright (c) Contributors to the Eclipse Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+
+package org.osgi.framework;
+
+import java.lang.ref.WeakReference;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Package private class used by permissions to obtain the filter-matchable
+ * properties of a bundle: {@code id}, {@code location}, {@code name} and
+ * {@code signer}.
+ * <p>
+ * The {@code id}, {@code location} and {@code name} properties of a bundle are
+ * cached by bundle id. A cached snapshot is used only if it was taken from the
+ * same bundle object and the bundle has not since been updated, as indicated
+ * by its last modified time. A snapshot only weakly references its bundle so
+ * the cache does not keep uninstalled bundles reachable. The capacity of the
+ * cache can be configured with the
+ * org.osgi.framework.bundleproperties.cache.capacity system property and a
+ * capacity of 0 disables the cache.
+ * <p>
+ * The trusted signers of a bundle can change without the bundle being
+ * updated, so the {@code signer} property is not cached. It is resolved each
+ * time it is looked up in the returned map, which can therefore be retained
+ * across permission checks.
+ *
+ * @Immutable
+ * @author $Id$
+ */
+final class BundleProperties {
+	private static final ClockCache<Long,BundleProperties>	cache	= ClockCache
+			.fromProperty("org.osgi.framework.bundleproperties.cache.capacity", 256);
+
+	private final WeakReference<Bundle>						bundle;
+	private final long										lastModified;
+	private final Map<String,Object>						properties;
+
+	private BundleProperties(Bundle bundle, long lastModified) {
+		this.bundle = new WeakReference<Bundle>(bundle);
+		this.lastModified = lastModified;
+		Map<String,Object> map = new HashMap<String,Object>(4);
+		map.put("id", Long.valueOf(bundle.getBundleId()));
+		map.put("location", bundle.getLocation());
+		String name = bundle.getSymbolicName();
+		if (name != null) {
+			map.put("name", name);
+		}
+		this.properties = Collections.unmodifiableMap(map);
+	}
+
+	/**
+	 * Returns the filter-matchable properties of the specified bundle.
+	 * <p>
+	 * The properties are obtained with privileges so the caller must guard
+	 * against recursion if it is called from a permission check for the
+	 * bundle location.
+	 *
+	 * @param bundle The bundle.
+	 * @return An unmodifiable map of the properties of the bundle.
+	 */
+	static Map<String,Object> of(Bundle bundle) {
+		return of(bundle, Collections.<String,Object> emptyMap());
+	}
+
+	/**
+	 * Returns the specified properties together with the filter-matchable
+	 * properties of the specified bundle.
+	 * <p>
+	 * The properties are obtained with privileges so the caller must guard
+	 * against recursion if it is called from a permission check for the
+	 * bundle location.
+	 *
+	 * @param bundle The bundle.
+	 * @param properties Additional properties. The properties of the bundle
+	 *            take precedence.
+	 * @return An unmodifiable map of the properties.
+	 */
+	static Map<String,Object> of(final Bundle bundle,
+			Map<String,Object> properties) {
+		Map<String,Object> map = AccessController.doPrivileged(
+				(PrivilegedAction<Map<String,Object>>) () -> snapshot(
+						bundle).properties);
+		if (!properties.isEmpty()) {
+			Map<String,Object> merged = new HashMap<String,Object>(properties);
+			merged.putAll(map);
+			map = Collections.unmodifiableMap(merged);
+		}
+		return new Lookup(bundle, map);
+	}
+
+	private static BundleProperties snapshot(Bundle bundle) {
+		long lastModified = bundle.getLastModified();
+		ClockCache<Long,BundleProperties> c = cache;
+		if (c == null) {
+			return new BundleProperties(bundle, lastModified);
+		}
+		Long key = Long.valueOf(bundle.getBundleId());
+		BundleProperties snapshot = c.get(key);
+		if (snapshot != null) {
+			if ((snapshot.bundle.get() == bundle)
+					&& (snapshot.lastModified == lastModified)) {
+				return snapshot;
+			}
+			c.remove(key);
+		}
+		snapshot = new BundleProperties(bundle, lastModified);
+		c.put(key, snapshot);
+		return snapshot;
+	}
+
+	/**
+	 * The properties of a bundle with the {@code signer} property resolved
+	 * each time it is looked up.
+	 */
+	private static final class Lookup extends AbstractMap<String,Object> {
+		private final Bundle				bundle;
+		private final Map<String,Object>	properties;
+
+		Lookup(Bundle bundle, Map<String,Object> properties) {
+			this.bundle = bundle;
+			this.properties = properties;
+		}
+
+		@Override
+		public Object get(Object key) {
+			if ("signer".equals(key)) {
+				return signer();
+			}
+			return properties.get(key);
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			return get(key) != null;
+		}
+
+		@Override
+		public Set<Map.Entry<String,Object>> entrySet() {
+			SignerProperty signer = signer();
+			if (signer == null) {
+				return properties.entrySet();
+			}
+			Map<String,Object> map = new HashMap<String,Object>(properties);
+			map.put("signer", signer);
+			return Collections.unmodifiableMap(map).entrySet();
+		}
+
+		private SignerProperty signer() {
+			SignerProperty signer = AccessController.doPrivileged(
+					(PrivilegedAction<SignerProperty>) () -> new SignerProperty(
+							bundle));
+			return signer.isBundleSigned() ? signer : null;
+		}
+	}
+}
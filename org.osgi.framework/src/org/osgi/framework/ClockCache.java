@@ -0,0 +1,277 @@
+/*******************************************************************************
+ * Copyright (c) Contributors to the Eclipse Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+
+package org.osgi.framework;
+
+import static java.util.Objects.requireNonNull;
+
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.osgi.framework.dto.CacheStatisticsDTO;
+
+/**
+ * Bounded concurrent cache with approximate least recently used eviction.
+ * <p>
+ * Lookups are lock free. Entries are evicted using the CLOCK algorithm: each
+ * entry has a referenced bit which is set on a lookup hit and a clock hand
+ * sweeps the entries, when a new entry is added to a full cache, clearing the
+ * referenced bits until it finds an unreferenced entry to evict.
+ *
+ * @param <K> The type of the keys.
+ * @param <V> The type of the values.
+ * @ThreadSafe
+ * @author $Id$
+ */
+final class ClockCache<K, V> {
+	/**
+	 * The maximum capacity of a cache. The entries of a cache are held in an
+	 * array allocated when the cache is created, so larger configured
+	 * capacities are reduced to this capacity.
+	 */
+	static final int						MAX_CAPACITY	= 1 << 16;
+
+	private final int						capacity;
+	private final ConcurrentMap<K,Node<K,V>>	map;
+	/* guarded by this */
+	private final Node<K,V>[]				ring;
+	/* guarded by this */
+	private int								hand;
+	private final Counters					counters;
+
+	/**
+	 * Create a cache.
+	 *
+	 * @param capacity The maximum number of entries held by the cache. Must be
+	 *            greater than zero. Capacities larger than
+	 *            {@link #MAX_CAPACITY} are reduced to {@link #MAX_CAPACITY}.
+	 */
+	ClockCache(int capacity) {
+		this(capacity, new Counters());
+	}
+
+	/**
+	 * Create a cache which records its statistics in the specified counters.
+	 * The counters may be shared by multiple caches of the same capacity to
+	 * report their aggregate statistics.
+	 *
+	 * @param capacity The maximum number of entries held by the cache. Must be
+	 *            greater than zero. Capacities larger than
+	 *            {@link #MAX_CAPACITY} are reduced to {@link #MAX_CAPACITY}.
+	 * @param counters The counters for the statistics of the cache.
+	 */
+	ClockCache(int capacity, Counters counters) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException(
+					"capacity must be greater than zero: " + capacity);
+		}
+		this.capacity = Math.min(capacity, MAX_CAPACITY);
+		this.map = new ConcurrentHashMap<>(Math.min(capacity, 1 << 12));
+		@SuppressWarnings("unchecked")
+		Node<K,V>[] nodes = (Node<K,V>[]) new Node< ? , ? >[this.capacity];
+		this.ring = nodes;
+		this.counters = requireNonNull(counters);
+	}
+
+	/**
+	 * Create a cache whose capacity is configured by a system property.
+	 *
+	 * @param property The name of the system property.
+	 * @return A cache or {@code null} if the system property is not set to a
+	 *         capacity greater than zero.
+	 */
+	static <K, V> ClockCache<K,V> fromProperty(String property) {
+		return fromProperty(property, 0);
+	}
+
+	/**
+	 * Create a cache whose capacity is configured by a system property.
+	 *
+	 * @param property The name of the system property.
+	 * @param defaultCapacity The capacity to use if the system property is not
+	 *            set or is not an integer.
+	 * @return A cache or {@code null} if the configured capacity is not
+	 *         greater than zero.
+	 */
+	static <K, V> ClockCache<K,V> fromProperty(String property,
+			int defaultCapacity) {
+		int capacity = capacity(property, defaultCapacity);
+		return (capacity > 0) ? new ClockCache<>(capacity) : null;
+	}
+
+	/**
+	 * Returns the cache capacity configured by a system property.
+	 *
+	 * @param property The name of the system property.
+	 * @param defaultCapacity The capacity to use if the system property is not
+	 *            set or is not an integer.
+	 * @return The configured capacity.
+	 */
+	static int capacity(String property, int defaultCapacity) {
+		String value = AccessController.doPrivileged(
+				(PrivilegedAction<String>) () -> System.getProperty(property));
+		if (value != null) {
+			try {
+				return Integer.parseInt(value.trim());
+			} catch (NumberFormatException e) {
+				// use default capacity
+			}
+		}
+		return defaultCapacity;
+	}
+
+	/**
+	 * Returns the cached value for the specified key.
+	 *
+	 * @param key The key.
+	 * @return The cached value or {@code null} if the key is not in the cache.
+	 */
+	V get(K key) {
+		Node<K,V> node = map.get(requireNonNull(key));
+		if (node == null) {
+			counters.misses.increment();
+			return null;
+		}
+		if (!node.referenced) {
+			node.referenced = true;
+		}
+		counters.hits.increment();
+		return node.value;
+	}
+
+	/**
+	 * Add the specified key and value to the cache, evicting an entry if the
+	 * cache is full. If the key is already in the cache, the cache is not
+	 * changed.
+	 *
+	 * @param key The key.
+	 * @param value The value.
+	 */
+	void put(K key, V value) {
+		Node<K,V> node = new Node<>(requireNonNull(key), requireNonNull(value));
+		synchronized (this) {
+			if (map.putIfAbsent(key, node) != null) {
+				return;
+			}
+			counters.size.increment();
+			for (;;) {
+				Node<K,V> current = ring[hand];
+				if ((current == null) || !current.referenced) {
+					if ((current != null) && map.remove(current.key, current)) {
+						counters.size.decrement();
+					}
+					node.index = hand;
+					ring[hand] = node;
+					hand = (hand + 1) % capacity;
+					return;
+				}
+				current.referenced = false;
+				hand = (hand + 1) % capacity;
+			}
+		}
+	}
+
+	/**
+	 * Remove the specified key from the cache.
+	 *
+	 * @param key The key.
+	 */
+	void remove(K key) {
+		requireNonNull(key);
+		synchronized (this) {
+			Node<K,V> node = map.remove(key);
+			if (node != null) {
+				counters.size.decrement();
+				// release the entry now rather than when the hand reaches it
+				if (ring[node.index] == node) {
+					ring[node.index] = null;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Remove all entries from the cache.
+	 */
+	synchronized void clear() {
+		for (K key : map.keySet()) {
+			remove(key);
+		}
+		Arrays.fill(ring, null);
+		hand = 0;
+	}
+
+	/**
+	 * Returns the statistics of this cache.
+	 *
+	 * @return The statistics of this cache.
+	 */
+	CacheStatisticsDTO statistics() {
+		return counters.statistics(capacity);
+	}
+
+	/**
+	 * Returns statistics for a disabled cache.
+	 *
+	 * @return Statistics for a disabled cache.
+	 */
+	static CacheStatisticsDTO disabled() {
+		return new CacheStatisticsDTO();
+	}
+
+	/**
+	 * Counters for the statistics of one or more caches.
+	 */
+	static final class Counters {
+		final LongAdder	hits	= new LongAdder();
+		final LongAdder	misses	= new LongAdder();
+		final LongAdder	size	= new LongAdder();
+
+		/**
+		 * Returns the statistics recorded by these counters.
+		 *
+		 * @param capacity The capacity of the caches.
+		 * @return The statistics recorded by these counters.
+		 */
+		CacheStatisticsDTO statistics(int capacity) {
+			CacheStatisticsDTO dto = new CacheStatisticsDTO();
+			dto.capacity = capacity;
+			dto.size = size.intValue();
+			dto.hits = hits.sum();
+			dto.misses = misses.sum();
+			return dto;
+		}
+	}
+
+	private static final class Node<K, V> {
+		final K				key;
+		final V				value;
+		volatile boolean	referenced;
+		/* index in the ring, guarded by the cache */
+		int					index;
+
+		Node(K key, V value) {
+			this.key = key;
+			this.value = value;
+		}
+	}
+}
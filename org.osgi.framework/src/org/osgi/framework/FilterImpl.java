@@ -28,10 +28,13 @@ import java.security.AccessController;
 import java.security.PrivilegedAction;
 import java.util.AbstractMap;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Dictionary;
 import java.util.Enumeration;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -153,7 +156,9 @@ import java.util.function.Function;
  */
 abstract class FilterImpl implements Filter {
 	/* normalized filter string for Filter object */
-	private transient String filterString;
+	private transient String	filterString;
+	/* canonical filter string for Filter object */
+	private transient String	canonicalString;
 
 	/**
 	 * Creates a {@link FilterImpl} object. This filter object may be used to
@@ -189,8 +194,12 @@ abstract class FilterImpl implements Filter {
 	 */
 	@Override
 	public boolean match(ServiceReference< ? > reference) {
-		return matches0((reference != null) ? new ServiceReferenceMap(reference)
-				: Collections.emptyMap());
+		LookupMap map = asMap(reference);
+		try {
+			return matches0(map);
+		} finally {
+			map.release();
+		}
 	}
 
 	/**
@@ -207,9 +216,12 @@ abstract class FilterImpl implements Filter {
 	 */
 	@Override
 	public boolean match(Dictionary<String, ? > dictionary) {
-		return matches0(
-				(dictionary != null) ? new CaseInsensitiveMap(dictionary)
-						: Collections.emptyMap());
+		LookupMap map = asCaseInsensitiveMap(dictionary);
+		try {
+			return matches0(map);
+		} finally {
+			map.release();
+		}
 	}
 
 	/**
@@ -248,6 +260,52 @@ abstract class FilterImpl implements Filter {
 
 	abstract boolean matches0(Map<String, ? > map);
 
+	/**
+	 * Returns a Map for key lookup in the properties of the specified service.
+	 * The returned Map must be released after use.
+	 * 
+	 * @param reference The service reference or {@code null}.
+	 * @return A Map for case insensitive key lookup in the service properties.
+	 */
+	static LookupMap asMap(ServiceReference< ? > reference) {
+		return (reference != null) ? ServiceReferenceMap.acquire(reference)
+				: LookupMap.EMPTY;
+	}
+
+	/**
+	 * Returns a Map for case insensitive key lookup in the specified
+	 * dictionary. The returned Map must be released after use.
+	 * 
+	 * @param dictionary The dictionary or {@code null}.
+	 * @return A Map for case insensitive key lookup in the dictionary.
+	 * @throws IllegalArgumentException If {@code dictionary} contains case
+	 *             variants of the same key name.
+	 */
+	static LookupMap asCaseInsensitiveMap(Dictionary<String, ? > dictionary) {
+		return (dictionary != null) ? CaseInsensitiveMap.acquire(dictionary)
+				: LookupMap.EMPTY;
+	}
+
+	/**
+	 * Returns the FilterImpl for the specified filter. If the specified filter
+	 * is not a FilterImpl, its filter string is parsed.
+	 * 
+	 * @param filter The filter.
+	 * @return The FilterImpl for the specified filter.
+	 * @throws IllegalArgumentException If the filter string of the specified
+	 *             filter cannot be parsed.
+	 */
+	static FilterImpl asFilterImpl(Filter filter) {
+		if (filter instanceof FilterImpl) {
+			return (FilterImpl) filter;
+		}
+		try {
+			return createFilter(filter.toString());
+		} catch (InvalidSyntaxException e) {
+			throw new IllegalArgumentException(e.getMessage(), e);
+		}
+	}
+
 	/**
 	 * Returns this {@code Filter}'s filter string.
 	 * <p>
@@ -275,6 +333,185 @@ abstract class FilterImpl implements Filter {
 	 */
 	abstract StringBuilder normalize(StringBuilder sb);
 
+	/**
+	 * Returns this {@code Filter}'s canonical filter string.
+	 * <p>
+	 * The canonical filter string is the filter string of the optimized form
+	 * of this {@code Filter} with the operands of each conjunction and
+	 * disjunction sorted and duplicate operands removed. Filters with the same
+	 * canonical filter string match the same properties even if their filter
+	 * strings differ. Unlike the filter string, the canonical filter string is
+	 * not used by {@link #equals(Object)} and {@link #hashCode()}.
+	 * 
+	 * @return This {@code Filter}'s canonical filter string.
+	 */
+	String canonical() {
+		String result = canonicalString;
+		if (result == null) {
+			canonicalString = result = canonicalize(new StringBuilder())
+					.toString();
+		}
+		return result;
+	}
+
+	/**
+	 * Appends this {@code Filter}'s canonical filter string.
+	 * 
+	 * @return The specified StringBuilder.
+	 */
+	StringBuilder canonicalize(StringBuilder sb) {
+		return normalize(sb);
+	}
+
+	/**
+	 * Adds the names of the attributes referenced by this {@code Filter} to the
+	 * specified collection.
+	 * 
+	 * @param attrs The collection to which the attribute names are added.
+	 */
+	abstract void attributes(Collection<String> attrs);
+
+	/**
+	 * Returns the estimated relative cost of evaluating this {@code Filter}.
+	 * The cost is used to order the operands of conjunctions and disjunctions
+	 * so that cheaper and more selective operands are evaluated first.
+	 * 
+	 * @return The estimated relative cost of evaluating this {@code Filter}.
+	 */
+	abstract int cost();
+
+	/**
+	 * Optimize the operands of a conjunction or disjunction for evaluation.
+	 * <p>
+	 * Nested operands of the same kind are flattened, duplicate operands are
+	 * removed and the operands are ordered by estimated cost. For a
+	 * conjunction, pairs of {@code >=} and {@code <=} operands on the same
+	 * attribute are merged into a single {@link Range} operand.
+	 * <p>
+	 * This is called when the conjunction or disjunction is first evaluated,
+	 * not when it is parsed, so that filters which are never matched do not
+	 * pay for the optimization.
+	 * 
+	 * @param operands The operands in textual order.
+	 * @param conjunction {@code true} if the operands are those of a
+	 *            conjunction; {@code false} for a disjunction.
+	 * @return The operands in evaluation order.
+	 */
+	static FilterImpl[] optimize(FilterImpl[] operands, boolean conjunction) {
+		List<FilterImpl> flattened = new ArrayList<>(operands.length);
+		for (FilterImpl operand : operands) {
+			FilterImpl[] nested = null;
+			if (conjunction && (operand instanceof And)) {
+				nested = ((And) operand).evaluation();
+			} else if (!conjunction && (operand instanceof Or)) {
+				nested = ((Or) operand).evaluation();
+			}
+			if (nested != null) {
+				Collections.addAll(flattened, nested);
+			} else {
+				flattened.add(operand);
+			}
+		}
+		Map<Operand,FilterImpl> unique = new LinkedHashMap<>();
+		for (FilterImpl operand : flattened) {
+			unique.putIfAbsent(new Operand(operand), operand);
+		}
+		List<FilterImpl> result = new ArrayList<>(unique.values());
+		if (conjunction) {
+			mergeRanges(result);
+		}
+		result.sort(Comparator.comparingInt(FilterImpl::cost));
+		return result.toArray(new FilterImpl[0]);
+	}
+
+	/**
+	 * Key under which duplicate operands are removed. Simple comparisons and
+	 * presence tests are compared by their attribute and value so that the
+	 * canonical filter string is only built for the other operands.
+	 */
+	private static final class Operand {
+		private final FilterImpl	filter;
+		private final int			hash;
+
+		Operand(FilterImpl filter) {
+			this.filter = filter;
+			if (filter instanceof Equal) {
+				Equal equal = (Equal) filter;
+				hash = (filter.getClass().hashCode() * 31
+						+ equal.attr.hashCode()) * 31 + equal.value.hashCode();
+			} else if (filter instanceof Present) {
+				hash = filter.getClass().hashCode() * 31
+						+ ((Present) filter).attr.hashCode();
+			} else {
+				hash = filter.canonical().hashCode();
+			}
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Operand)) {
+				return false;
+			}
+			FilterImpl other = ((Operand) obj).filter;
+			if (other.getClass() != filter.getClass()) {
+				return false;
+			}
+			if (filter instanceof Equal) {
+				return ((Equal) filter).attr.equals(((Equal) other).attr)
+						&& ((Equal) filter).value.equals(((Equal) other).value);
+			}
+			if (filter instanceof Present) {
+				return ((Present) filter).attr.equals(((Present) other).attr);
+			}
+			return filter.canonical().equals(other.canonical());
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
+
+	private static void mergeRanges(List<FilterImpl> operands) {
+		for (int i = 0; i < operands.size(); i++) {
+			FilterImpl lower = operands.get(i);
+			if (!(lower instanceof GreaterEqual)) {
+				continue;
+			}
+			String attr = ((GreaterEqual) lower).attr;
+			for (int j = 0; j < operands.size(); j++) {
+				FilterImpl upper = operands.get(j);
+				if ((upper instanceof LessEqual)
+						&& ((LessEqual) upper).attr.equals(attr)) {
+					operands.set(i, new Range((GreaterEqual) lower,
+							(LessEqual) upper));
+					operands.remove(j);
+					if (j < i) {
+						i--;
+					}
+					break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Appends the canonical filter string of a conjunction or disjunction.
+	 */
+	static StringBuilder canonicalize(StringBuilder sb, char op,
+			FilterImpl[] operands) {
+		String[] canonical = new String[operands.length];
+		for (int i = 0; i < operands.length; i++) {
+			canonical[i] = operands[i].canonical();
+		}
+		Arrays.sort(canonical);
+		sb.append('(').append(op);
+		for (String operand : canonical) {
+			sb.append(operand);
+		}
+		return sb.append(')');
+	}
+
 	/**
 	 * Compares this {@code Filter} to another {@code Filter}.
 	 * <p>
@@ -313,15 +550,26 @@ abstract class FilterImpl implements Filter {
 	}
 
 	static final class And extends FilterImpl {
-		private final FilterImpl[] operands;
+		/* operands in textual order */
+		final FilterImpl[]				operands;
+		/* operands in evaluation order, optimized on first use */
+		private volatile FilterImpl[]	evaluation;
 
 		And(FilterImpl[] operands) {
 			this.operands = operands;
 		}
 
+		FilterImpl[] evaluation() {
+			FilterImpl[] result = evaluation;
+			if (result == null) {
+				evaluation = result = optimize(operands, true);
+			}
+			return result;
+		}
+
 		@Override
 		boolean matches0(Map<String, ? > map) {
-			for (FilterImpl operand : operands) {
+			for (FilterImpl operand : evaluation()) {
 				if (!operand.matches0(map)) {
 					return false;
 				}
@@ -337,18 +585,50 @@ abstract class FilterImpl implements Filter {
 			}
 			return sb.append(')');
 		}
+
+		@Override
+		StringBuilder canonicalize(StringBuilder sb) {
+			return canonicalize(sb, '&', evaluation());
+		}
+
+		@Override
+		void attributes(Collection<String> attrs) {
+			for (FilterImpl operand : operands) {
+				operand.attributes(attrs);
+			}
+		}
+
+		@Override
+		int cost() {
+			int cost = 1;
+			for (FilterImpl operand : evaluation()) {
+				cost += operand.cost();
+			}
+			return cost;
+		}
 	}
 
 	static final class Or extends FilterImpl {
-		private final FilterImpl[] operands;
+		/* operands in textual order */
+		final FilterImpl[]				operands;
+		/* operands in evaluation order, optimized on first use */
+		private volatile FilterImpl[]	evaluation;
 
 		Or(FilterImpl[] operands) {
 			this.operands = operands;
 		}
 
+		FilterImpl[] evaluation() {
+			FilterImpl[] result = evaluation;
+			if (result == null) {
+				evaluation = result = optimize(operands, false);
+			}
+			return result;
+		}
+
 		@Override
 		boolean matches0(Map<String, ? > map) {
-			for (FilterImpl operand : operands) {
+			for (FilterImpl operand : evaluation()) {
 				if (operand.matches0(map)) {
 					return true;
 				}
@@ -364,6 +644,27 @@ abstract class FilterImpl implements Filter {
 			}
 			return sb.append(')');
 		}
+
+		@Override
+		StringBuilder canonicalize(StringBuilder sb) {
+			return canonicalize(sb, '|', evaluation());
+		}
+
+		@Override
+		void attributes(Collection<String> attrs) {
+			for (FilterImpl operand : operands) {
+				operand.attributes(attrs);
+			}
+		}
+
+		@Override
+		int cost() {
+			int cost = 1;
+			for (FilterImpl operand : evaluation()) {
+				cost += operand.cost();
+			}
+			return cost;
+		}
 	}
 
 	static final class Not extends FilterImpl {
@@ -384,6 +685,23 @@ abstract class FilterImpl implements Filter {
 			operand.normalize(sb);
 			return sb.append(')');
 		}
+
+		@Override
+		StringBuilder canonicalize(StringBuilder sb) {
+			sb.append('(').append('!');
+			operand.canonicalize(sb);
+			return sb.append(')');
+		}
+
+		@Override
+		void attributes(Collection<String> attrs) {
+			operand.attributes(attrs);
+		}
+
+		@Override
+		int cost() {
+			return operand.cost() + 1;
+		}
 	}
 
 	static abstract class Item extends FilterImpl {
@@ -393,12 +711,22 @@ abstract class FilterImpl implements Filter {
 			this.attr = attr;
 		}
 
+		@Override
+		void attributes(Collection<String> attrs) {
+			attrs.add(attr);
+		}
+
 		@Override
 		boolean matches0(Map<String, ? > map) {
 			return compare(map.get(attr));
 		}
 
-		private boolean compare(Object value1) {
+		@Override
+		int cost() {
+			return 2;
+		}
+
+		boolean compare(Object value1) {
 			if (value1 == null) {
 				return false;
 			}
@@ -609,6 +937,11 @@ abstract class FilterImpl implements Filter {
 			return map.get(attr) != null;
 		}
 
+		@Override
+		int cost() {
+			return Constants.OBJECTCLASS.equalsIgnoreCase(attr) ? 0 : 1;
+		}
+
 		@Override
 		StringBuilder normalize(StringBuilder sb) {
 			return sb.append('(')
@@ -627,6 +960,11 @@ abstract class FilterImpl implements Filter {
 			this.substrings = substrings;
 		}
 
+		@Override
+		int cost() {
+			return 5;
+		}
+
 		@Override
 		boolean compare_String(String string) {
 			int pos = 0;
@@ -684,22 +1022,67 @@ abstract class FilterImpl implements Filter {
 	}
 
 	static class Equal extends Item {
-		final String value;
-		private Object	cached;
+		/*
+		 * Sentinel cached for a target type whose operand conversion failed, so
+		 * the conversion is not attempted again.
+		 */
+		private static final Object		FAILED				= new Object();
+		/* maximum number of target types cached per leaf */
+		private static final int		MAX_CACHED_TYPES	= 8;
+		private static final Object[]	EMPTY				= new Object[0];
+
+		final String					value;
+		/*
+		 * Per leaf type cache of the operand converted to a target type. The
+		 * array holds alternating target type and converted value entries and
+		 * is replaced, never mutated, when a new target type is added.
+		 */
+		private volatile Object[]		converted			= EMPTY;
 
 		Equal(String attr, String value) {
 			super(attr);
 			this.value = value;
 		}
-		
-		private <T> T convert(Class<T> type, Function<String, ? extends T> converter) {
-			@SuppressWarnings("unchecked")
-			T converted = (T) cached;
-			if ((converted != null) && type.isInstance(converted)) {
-				return converted;
+
+		@Override
+		int cost() {
+			return Constants.OBJECTCLASS.equalsIgnoreCase(attr) ? 0 : 2;
+		}
+
+		private Object cached(Class< ? > type) {
+			Object[] entries = converted;
+			for (int i = 0, len = entries.length; i < len; i += 2) {
+				if (entries[i] == type) {
+					return entries[i + 1];
+				}
+			}
+			return null;
+		}
+
+		private void cache(Class< ? > type, Object result) {
+			Object[] entries = converted;
+			int len = entries.length;
+			if (len >= (MAX_CACHED_TYPES * 2)) {
+				return;
+			}
+			Object[] updated = Arrays.copyOf(entries, len + 2);
+			updated[len] = type;
+			updated[len + 1] = result;
+			converted = updated;
+		}
+
+		private <T> T convert(Class<T> type,
+				Function<String, ? extends T> converter) {
+			Object result = cached(type);
+			if (result == null) {
+				try {
+					result = converter.apply(value.trim());
+				} catch (IllegalArgumentException e) {
+					result = FAILED;
+				}
+				cache(type, result);
 			}
-			cached = converted = converter.apply(value.trim());
-			return converted;
+			return (result == FAILED) ? null : type.cast(result);
 		}
 
 		boolean comparison(int compare) {
@@ -713,11 +1096,14 @@ abstract class FilterImpl implements Filter {
 
 		@Override
 		boolean compare_Version(Version value1) {
+			Version version2 = convert(Version.class, Version::valueOf);
+			if (version2 == null) {
+				return false;
+			}
 			try {
-				Version version2 = convert(Version.class, Version::valueOf);
 				return comparison(value1.compareTo(version2));
 			} catch (Exception e) {
-				// if the valueOf or compareTo method throws an exception
+				// if the compareTo method throws an exception
 				return false;
 			}
 		}
@@ -741,35 +1127,30 @@ abstract class FilterImpl implements Filter {
 
 		@Override
 		boolean compare_Double(double doubleval) {
-			double doubleval2;
-			try {
-				doubleval2 = convert(Double.class, Double::valueOf).doubleValue();
-			} catch (IllegalArgumentException e) {
+			Double doubleval2 = convert(Double.class, Double::valueOf);
+			if (doubleval2 == null) {
 				return false;
 			}
-			return comparison(Double.compare(doubleval, doubleval2));
+			return comparison(
+					Double.compare(doubleval, doubleval2.doubleValue()));
 		}
 
 		@Override
 		boolean compare_Float(float floatval) {
-			float floatval2;
-			try {
-				floatval2 = convert(Float.class, Float::valueOf).floatValue();
-			} catch (IllegalArgumentException e) {
+			Float floatval2 = convert(Float.class, Float::valueOf);
+			if (floatval2 == null) {
 				return false;
 			}
-			return comparison(Float.compare(floatval, floatval2));
+			return comparison(Float.compare(floatval, floatval2.floatValue()));
 		}
 
 		@Override
 		boolean compare_Long(long longval) {
-			long longval2;
-			try {
-				longval2 = convert(Long.class, Long::valueOf).longValue();
-			} catch (IllegalArgumentException e) {
+			Long longval2 = convert(Long.class, Long::valueOf);
+			if (longval2 == null) {
 				return false;
 			}
-			return comparison(Long.compare(longval, longval2));
+			return comparison(Long.compare(longval, longval2.longValue()));
 		}
 
 		@Override
@@ -807,6 +1188,56 @@ abstract class FilterImpl implements Filter {
 		}
 
 		Object valueOf(Class< ? > target) {
+			/*
+			 * Only the conversions to java.* types and Version are cached by
+			 * the leaf as other types may be loaded by a bundle class loader
+			 * which must not be pinned by a long lived filter.
+			 */
+			boolean cacheable = (target == Version.class)
+					|| target.getName().startsWith("java.");
+			Object result = cacheable ? cached(target) : null;
+			if (result == null) {
+				try {
+					result = FACTORIES.get(target).create(value.trim());
+				} catch (Error e) {
+					throw e;
+				} catch (Throwable e) {
+					result = null;
+				}
+				if (!cacheable) {
+					return result;
+				}
+				if (result == null) {
+					result = FAILED;
+				}
+				cache(target, result);
+			}
+			return (result == FAILED) ? null : result;
+		}
+
+		/**
+		 * Converts a filter operand to a target type.
+		 */
+		@FunctionalInterface
+		interface Factory {
+			Object create(String operand) throws Exception;
+		}
+
+		/**
+		 * Cache of the factory used to convert a filter operand to a target
+		 * type. The factory invokes the public static {@code valueOf(String)}
+		 * method of the type, if present, otherwise the public {@code String}
+		 * constructor of the type.
+		 */
+		private static final ClassValue<Factory>	FACTORIES	= new ClassValue<Factory>() {
+			@Override
+			protected Factory computeValue(Class< ? > type) {
+				return factory(type);
+			}
+		};
+		private static final Factory				NO_FACTORY	= operand -> null;
+
+		static Factory factory(Class< ? > target) {
 			do {
 				Method method;
 				try {
@@ -817,13 +1248,7 @@ abstract class FilterImpl implements Filter {
 				if (Modifier.isStatic(method.getModifiers())
 						&& target.isAssignableFrom(method.getReturnType())) {
 					setAccessible(method);
-					try {
-						return method.invoke(null, value.trim());
-					} catch (Error e) {
-						throw e;
-					} catch (Throwable e) {
-						return null;
-					}
+					return operand -> method.invoke(null, operand);
 				}
 			} while (false);
 
@@ -835,16 +1260,10 @@ abstract class FilterImpl implements Filter {
 					break;
 				}
 				setAccessible(constructor);
-				try {
-					return constructor.newInstance(value.trim());
-				} catch (Error e) {
-					throw e;
-				} catch (Throwable e) {
-					return null;
-				}
+				return constructor::newInstance;
 			} while (false);
 
-			return null;
+			return NO_FACTORY;
 		}
 
 		private static void setAccessible(AccessibleObject accessible) {
@@ -862,6 +1281,11 @@ abstract class FilterImpl implements Filter {
 			super(attr, value);
 		}
 
+		@Override
+		int cost() {
+			return 3;
+		}
+
 		@Override
 		boolean comparison(int compare) {
 			return compare <= 0;
@@ -879,6 +1303,11 @@ abstract class FilterImpl implements Filter {
 			super(attr, value);
 		}
 
+		@Override
+		int cost() {
+			return 3;
+		}
+
 		@Override
 		boolean comparison(int compare) {
 			return compare >= 0;
@@ -899,6 +1328,11 @@ abstract class FilterImpl implements Filter {
 			this.approx = approxString(value);
 		}
 
+		@Override
+		int cost() {
+			return 6;
+		}
+
 		@Override
 		boolean compare_String(String string) {
 			string = approxString(string);
@@ -952,6 +1386,42 @@ abstract class FilterImpl implements Filter {
 		}
 	}
 
+	/**
+	 * A {@code >=} and {@code <=} pair on the same attribute of a conjunction
+	 * merged by {@link FilterImpl#optimize(FilterImpl[], boolean)} so that the
+	 * attribute value is looked up once. This is only used for evaluation and
+	 * never appears in the textual form of a filter.
+	 */
+	static final class Range extends Item {
+		final GreaterEqual	lower;
+		final LessEqual		upper;
+
+		Range(GreaterEqual lower, LessEqual upper) {
+			super(lower.attr);
+			this.lower = lower;
+			this.upper = upper;
+		}
+
+		@Override
+		boolean matches0(Map<String, ? > map) {
+			Object value1 = map.get(attr);
+			return lower.compare(value1) && upper.compare(value1);
+		}
+
+		@Override
+		int cost() {
+			return 4;
+		}
+
+		@Override
+		StringBuilder normalize(StringBuilder sb) {
+			sb.append('(').append('&');
+			lower.normalize(sb);
+			upper.normalize(sb);
+			return sb.append(')');
+		}
+	}
+
 	/**
 	 * Parser class for OSGi filter strings. This class parses the complete
 	 * filter string and builds a tree of FilterImpl objects rooted at the
@@ -1313,65 +1783,181 @@ abstract class FilterImpl implements Filter {
 		}
 	}
 
+	/**
+	 * Base class for the Maps used for key lookup during filter evaluation
+	 * which are reused by a thread to avoid allocation for each match. A
+	 * LookupMap must be released after use so it can be reused. This Map
+	 * implementation only supports the get operation using a String key as no
+	 * other operations are used by the Filter implementation.
+	 */
+	static abstract class LookupMap extends AbstractMap<String,Object>
+			implements Map<String,Object> {
+		static final LookupMap EMPTY = new LookupMap() {
+			@Override
+			public Object get(Object key) {
+				return null;
+			}
+
+			@Override
+			void release() {
+				// empty
+			}
+		};
+
+		LookupMap() {
+			// empty constructor for subclasses
+		}
+
+		/**
+		 * Release this map after use.
+		 */
+		abstract void release();
+
+		@Override
+		public Set<Entry<String,Object>> entrySet() {
+			throw new UnsupportedOperationException();
+		}
+	}
+
 	/**
 	 * This Map is used for case-insensitive key lookup during filter
-	 * evaluation. This Map implementation only supports the get operation using
-	 * a String key as no other operations are used by the Filter
-	 * implementation.
+	 * evaluation. The keys of the dictionary are held in an open addressing
+	 * hash table using a case-insensitive hash code so that each key lookup is
+	 * constant time. Each thread reuses its map, and its table, unless the
+	 * thread is already using its map in an outer match.
 	 */
-	private static final class CaseInsensitiveMap
-			extends DictionaryMap implements Map<String,Object> {
-		private final String[]					keys;
+	private static final class CaseInsensitiveMap extends LookupMap {
+		/* tables larger than this are not retained after release */
+		private static final int								MAX_RETAINED	= 1024;
+		private static final ThreadLocal<CaseInsensitiveMap>	reusable		= ThreadLocal
+				.withInitial(CaseInsensitiveMap::new);
+
+		private Dictionary<String, ? >							dictionary;
+		private String[]										table			= new String[16];
+		private int												count;
 
 		/**
-		 * Create a case insensitive map from the specified dictionary.
+		 * Return a case insensitive map for the specified dictionary.
 		 * 
 		 * @param dictionary
 		 * @throws IllegalArgumentException If {@code dictionary} contains case
 		 *             variants of the same key name.
 		 */
-		CaseInsensitiveMap(Dictionary<String, ? > dictionary) {
-			super(dictionary);
-			List<String> keyList = new ArrayList<>(dictionary.size());
-			for (Enumeration< ? > e = dictionary.keys(); e.hasMoreElements();) {
+		static CaseInsensitiveMap acquire(Dictionary<String, ? > dictionary) {
+			CaseInsensitiveMap map = reusable.get();
+			if (map.dictionary != null) {
+				map = new CaseInsensitiveMap();
+			}
+			map.dictionary = dictionary;
+			try {
+				map.index(dictionary);
+			} catch (RuntimeException e) {
+				map.release();
+				throw e;
+			}
+			return map;
+		}
+
+		private void index(Dictionary<String, ? > dict) {
+			int capacity = table.length;
+			int required = dict.size() * 2;
+			if (capacity < required) {
+				while (capacity < required) {
+					capacity <<= 1;
+				}
+				table = new String[capacity];
+			}
+			for (Enumeration< ? > e = dict.keys(); e.hasMoreElements();) {
 				Object k = e.nextElement();
 				if (k instanceof String) {
-					String key = (String) k;
-					for (String i : keyList) {
-						if (key.equalsIgnoreCase(i)) {
-							throw new IllegalArgumentException();
-						}
+					if (!insert((String) k)) {
+						throw new IllegalArgumentException();
 					}
-					keyList.add(key);
 				}
 			}
-			this.keys = keyList.toArray(new String[0]);
+		}
+
+		private boolean insert(String key) {
+			if ((count + 1) * 2 > table.length) {
+				String[] old = table;
+				table = new String[old.length * 2];
+				for (String k : old) {
+					if (k != null) {
+						table[slot(k)] = k;
+					}
+				}
+			}
+			int i = slot(key);
+			if (table[i] != null) {
+				return false;
+			}
+			table[i] = key;
+			count++;
+			return true;
+		}
+
+		/*
+		 * Returns the index of the slot holding a case variant of the key, or
+		 * the index of the empty slot where the key belongs.
+		 */
+		private int slot(String key) {
+			int mask = table.length - 1;
+			int i = hash(key) & mask;
+			for (String k; ((k = table[i]) != null)
+					&& !k.equalsIgnoreCase(key);) {
+				i = (i + 1) & mask;
+			}
+			return i;
+		}
+
+		/*
+		 * Hash code consistent with String.equalsIgnoreCase.
+		 */
+		private static int hash(String key) {
+			int h = 0;
+			for (int i = 0, len = key.length(); i < len; i++) {
+				h = 31 * h + Character
+						.toLowerCase(Character.toUpperCase(key.charAt(i)));
+			}
+			return h ^ (h >>> 16);
 		}
 
 		@Override
 		public Object get(Object o) {
-			String k = (String) o;
-			for (String key : keys) {
-				if (key.equalsIgnoreCase(k)) {
-					return super.get(key);
-				}
+			String key = table[slot((String) o)];
+			return (key != null) ? dictionary.get(key) : null;
+		}
+
+		@Override
+		void release() {
+			dictionary = null;
+			if (table.length > MAX_RETAINED) {
+				table = new String[16];
+			} else if (count > 0) {
+				Arrays.fill(table, null);
 			}
-			return null;
+			count = 0;
 		}
 	}
 
 	/**
 	 * This Map is used for key lookup from a ServiceReference during filter
-	 * evaluation. This Map implementation only supports the get operation using
-	 * a String key as no other operations are used by the Filter
-	 * implementation.
+	 * evaluation. Each thread reuses its map unless the thread is already
+	 * using its map in an outer match.
 	 */
-	private static final class ServiceReferenceMap
-			extends AbstractMap<String,Object> implements Map<String,Object> {
-		private final ServiceReference< ? > reference;
+	private static final class ServiceReferenceMap extends LookupMap {
+		private static final ThreadLocal<ServiceReferenceMap>	reusable	= ThreadLocal
+				.withInitial(ServiceReferenceMap::new);
 
-		ServiceReferenceMap(ServiceReference< ? > reference) {
-			this.reference = requireNonNull(reference);
+		private ServiceReference< ? >							reference;
+
+		static ServiceReferenceMap acquire(ServiceReference< ? > reference) {
+			ServiceReferenceMap map = reusable.get();
+			if (map.reference != null) {
+				map = new ServiceReferenceMap();
+			}
+			map.reference = reference;
+			return map;
 		}
 
 		@Override
@@ -1380,8 +1966,8 @@ abstract class FilterImpl implements Filter {
 		}
 
 		@Override
-		public Set<Entry<String,Object>> entrySet() {
-			throw new UnsupportedOperationException();
+		void release() {
+			reference = null;
 		}
 	}
 }
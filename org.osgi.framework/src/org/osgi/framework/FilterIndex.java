@@ -0,0 +1,511 @@
+/*******************************************************************************
+ * Copyright (c) Contributors to the Eclipse Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+
+package org.osgi.framework;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Dictionary;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * An index of {@link Filter} objects.
+ * <p>
+ * A {@code FilterIndex} holds many {@code Filter} objects, each associated
+ * with a payload, and returns the payloads of all the filters which match a
+ * {@code ServiceReference}, {@code Dictionary} or {@code Map}. This is useful
+ * for dispatchers, such as service event or event admin dispatchers, which must
+ * match a single set of properties against the filters of many listeners.
+ * <p>
+ * Filters whose top level conjunction contains an equality or presence
+ * assertion, such as {@code (objectClass=com.acme.Foo)} or
+ * {@code (service.pid=*)}, are indexed on that assertion. When matching, only
+ * the filters indexed on an attribute value or attribute presence found in the
+ * properties, and the filters which could not be indexed, are evaluated. The
+ * result of matching is always identical to calling the matching method of
+ * each {@code Filter} in the index.
+ * <p>
+ * Filters created by {@link FrameworkUtil#createFilter(String)} are indexed
+ * using their existing parse tree. Other {@code Filter} objects are indexed by
+ * parsing their {@link Filter#toString() filter string}. Filters which differ
+ * only in the order or duplication of the operands of their conjunctions and
+ * disjunctions are evaluated once per match regardless of the number of such
+ * filters in the index.
+ *
+ * @param <T> The type of the payload associated with each filter.
+ * @ThreadSafe
+ * @since 1.11
+ * @author $Id$
+ */
+public final class FilterIndex<T> {
+	/* canonical filter string -> entry */
+	private final ConcurrentMap<String,Entry<T>>			entries;
+	/* indexed attribute name -> attribute index */
+	private final ConcurrentMap<String,AttributeIndex<T>>	attributes;
+	/* entries which could not be indexed */
+	private final List<Entry<T>>							residual;
+	/* number of filter and payload pairs in this index; guarded by this */
+	private int												size;
+
+	/**
+	 * Create an empty {@code FilterIndex}.
+	 */
+	public FilterIndex() {
+		entries = new ConcurrentHashMap<>();
+		attributes = new ConcurrentHashMap<>();
+		residual = new CopyOnWriteArrayList<>();
+	}
+
+	/**
+	 * Add a filter and its associated payload to this index.
+	 * <p>
+	 * The same filter may be added multiple times with different payloads and
+	 * the same payload may be associated with multiple filters.
+	 *
+	 * @param filter The filter to add.
+	 * @param payload The payload associated with the filter.
+	 * @throws IllegalArgumentException If {@code filter} is not a
+	 *             {@code Filter} created by
+	 *             {@link FrameworkUtil#createFilter(String)} and its filter
+	 *             string cannot be parsed.
+	 * @throws NullPointerException If {@code filter} or {@code payload} is
+	 *             {@code null}.
+	 */
+	public void add(Filter filter, T payload) {
+		FilterImpl filterImpl = FilterImpl.asFilterImpl(requireNonNull(filter));
+		Member<T> member = new Member<>(filterImpl, requireNonNull(payload));
+		String canonical = filterImpl.canonical();
+		synchronized (this) {
+			Entry<T> entry = entries.get(canonical);
+			if (entry == null) {
+				entry = new Entry<>(filterImpl, keys(filterImpl));
+				entries.put(canonical, entry);
+				if (entry.keys == null) {
+					residual.add(entry);
+				} else {
+					for (Key key : entry.keys) {
+						attributes
+								.computeIfAbsent(key.attr,
+										a -> new AttributeIndex<>())
+								.bucket(key.value, true)
+								.add(entry);
+					}
+				}
+			}
+			entry.members.add(member);
+			size++;
+		}
+	}
+
+	/**
+	 * Remove a filter and its associated payload from this index.
+	 * <p>
+	 * If the filter was added multiple times with the specified payload, only
+	 * one occurrence is removed.
+	 *
+	 * @param filter The filter to remove. Filters are compared using
+	 *            {@link Filter#equals(Object)}.
+	 * @param payload The payload associated with the filter.
+	 * @return {@code true} if the filter and payload were removed from this
+	 *         index; {@code false} if the filter and payload were not present
+	 *         in this index.
+	 * @throws IllegalArgumentException If {@code filter} is not a
+	 *             {@code Filter} created by
+	 *             {@link FrameworkUtil#createFilter(String)} and its filter
+	 *             string cannot be parsed.
+	 * @throws NullPointerException If {@code filter} is {@code null}.
+	 */
+	public boolean remove(Filter filter, T payload) {
+		FilterImpl filterImpl = FilterImpl.asFilterImpl(requireNonNull(filter));
+		String canonical = filterImpl.canonical();
+		synchronized (this) {
+			Entry<T> entry = entries.get(canonical);
+			if (entry == null) {
+				return false;
+			}
+			Member<T> member = entry.find(filterImpl, payload);
+			if (member == null) {
+				return false;
+			}
+			entry.members.remove(member);
+			if (entry.members.isEmpty()) {
+				entries.remove(canonical);
+				if (entry.keys == null) {
+					residual.remove(entry);
+				} else {
+					for (Key key : entry.keys) {
+						AttributeIndex<T> index = attributes.get(key.attr);
+						index.bucket(key.value, false).remove(entry);
+						if (index.prune(key.value)) {
+							attributes.remove(key.attr);
+						}
+					}
+				}
+			}
+			size--;
+			return true;
+		}
+	}
+
+	/**
+	 * Returns the number of filter and payload pairs in this index.
+	 *
+	 * @return The number of filter and payload pairs in this index.
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the payloads of the filters in this index which match the
+	 * properties of the specified service.
+	 * <p>
+	 * The result is the same as calling {@link Filter#match(ServiceReference)}
+	 * on each filter in this index.
+	 *
+	 * @param reference The reference to the service whose properties are used
+	 *            in the match.
+	 * @return A list of the payloads of the matching filters. The list is empty
+	 *         if no filter matches. The order of the payloads is unspecified.
+	 */
+	public List<T> match(ServiceReference< ? > reference) {
+		FilterImpl.LookupMap map = FilterImpl.asMap(reference);
+		try {
+			return matches0(map);
+		} finally {
+			map.release();
+		}
+	}
+
+	/**
+	 * Returns the payloads of the filters in this index which match the
+	 * specified {@code Dictionary} using case insensitive key lookup.
+	 * <p>
+	 * The result is the same as calling {@link Filter#match(Dictionary)} on
+	 * each filter in this index.
+	 *
+	 * @param dictionary The {@code Dictionary} whose key/value pairs are used
+	 *            in the match.
+	 * @return A list of the payloads of the matching filters. The list is empty
+	 *         if no filter matches. The order of the payloads is unspecified.
+	 * @throws IllegalArgumentException If {@code dictionary} contains case
+	 *             variants of the same key name.
+	 */
+	public List<T> match(Dictionary<String, ? > dictionary) {
+		FilterImpl.LookupMap map = FilterImpl.asCaseInsensitiveMap(dictionary);
+		try {
+			return matches0(map);
+		} finally {
+			map.release();
+		}
+	}
+
+	/**
+	 * Returns the payloads of the filters in this index which match the
+	 * specified {@code Map}. The keys are looked up in a normal manner
+	 * respecting case.
+	 * <p>
+	 * The result is the same as calling {@link Filter#matches(Map)} on each
+	 * filter in this index.
+	 *
+	 * @param map The {@code Map} whose key/value pairs are used in the match.
+	 *            Maps with {@code null} key or values are not supported. A
+	 *            {@code null} value is considered not present to the filter.
+	 * @return A list of the payloads of the matching filters. The list is empty
+	 *         if no filter matches. The order of the payloads is unspecified.
+	 */
+	public List<T> matches(Map<String, ? > map) {
+		return matches0((map != null) ? map : Collections.emptyMap());
+	}
+
+	private List<T> matches0(Map<String, ? > map) {
+		Matcher<T> matcher = new Matcher<>(map);
+		for (Map.Entry<String,AttributeIndex<T>> e : attributes.entrySet()) {
+			Object value = map.get(e.getKey());
+			if (value == null) {
+				continue;
+			}
+			AttributeIndex<T> index = e.getValue();
+			matcher.evaluate(index.present);
+			if (index.values.isEmpty()) {
+				continue;
+			}
+			if (value instanceof String) {
+				matcher.evaluate(index.values.get(value));
+				continue;
+			}
+			if (value instanceof String[]) {
+				String[] array = (String[]) value;
+				if (array.length > 1) {
+					matcher.deduplicate();
+				}
+				for (String element : array) {
+					if (element != null) {
+						matcher.evaluate(index.values.get(element));
+					}
+				}
+				continue;
+			}
+			if (value instanceof Collection< ? >
+					&& allStrings((Collection< ? >) value)) {
+				matcher.deduplicate();
+				for (Object element : (Collection< ? >) value) {
+					matcher.evaluate(index.values.get(element));
+				}
+				continue;
+			}
+			/*
+			 * The equality of other value types depends upon conversion of the
+			 * filter value so all equality entries for the attribute must be
+			 * evaluated.
+			 */
+			matcher.deduplicate();
+			for (List<Entry<T>> bucket : index.values.values()) {
+				matcher.evaluate(bucket);
+			}
+		}
+		matcher.evaluate(residual);
+		return matcher.result;
+	}
+
+	private static boolean allStrings(Collection< ? > collection) {
+		for (Object element : collection) {
+			if (!(element instanceof String)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the index keys for the specified filter. A filter matches only
+	 * if at least one of its keys is satisfied.
+	 *
+	 * @param filter The filter.
+	 * @return The index keys for the filter or {@code null} if the filter
+	 *         cannot be indexed.
+	 */
+	static List<Key> keys(FilterImpl filter) {
+		if (filter.getClass() == FilterImpl.Equal.class) {
+			FilterImpl.Equal equal = (FilterImpl.Equal) filter;
+			return Collections.singletonList(new Key(equal.attr, equal.value));
+		}
+		if (filter instanceof FilterImpl.Present) {
+			FilterImpl.Present present = (FilterImpl.Present) filter;
+			return Collections.singletonList(new Key(present.attr, null));
+		}
+		if (filter instanceof FilterImpl.And) {
+			/* any one operand must be satisfied; use the most selective */
+			List<Key> best = null;
+			for (FilterImpl operand : ((FilterImpl.And) filter).operands) {
+				List<Key> keys = keys(operand);
+				if ((keys != null)
+						&& ((best == null) || (rank(keys) > rank(best)))) {
+					best = keys;
+				}
+			}
+			return best;
+		}
+		if (filter instanceof FilterImpl.Or) {
+			/* each operand must be satisfiable */
+			List<Key> all = new ArrayList<>();
+			for (FilterImpl operand : ((FilterImpl.Or) filter).operands) {
+				List<Key> keys = keys(operand);
+				if (keys == null) {
+					return null;
+				}
+				for (Key key : keys) {
+					if (!all.contains(key)) {
+						all.add(key);
+					}
+				}
+			}
+			return all.isEmpty() ? null : all;
+		}
+		return null;
+	}
+
+	/*
+	 * Rank the selectivity of a set of keys. A single key is more selective
+	 * than multiple keys, an equality key is more selective than a presence
+	 * key and a key on objectClass is preferred over other equality keys.
+	 */
+	private static int rank(List<Key> keys) {
+		int rank = Integer.MAX_VALUE;
+		for (Key key : keys) {
+			int r;
+			if (key.value == null) {
+				r = 1;
+			} else if (Constants.OBJECTCLASS.equalsIgnoreCase(key.attr)) {
+				r = 3;
+			} else {
+				r = 2;
+			}
+			rank = Math.min(rank, r);
+		}
+		return (keys.size() == 1) ? rank + 3 : rank;
+	}
+
+	static final class Key {
+		final String	attr;
+		/* null for a presence key */
+		final String	value;
+
+		Key(String attr, String value) {
+			this.attr = attr;
+			this.value = value;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (obj == this) {
+				return true;
+			}
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return attr.equals(other.attr) && Objects.equals(value, other.value);
+		}
+
+		@Override
+		public int hashCode() {
+			return attr.hashCode() * 31 + Objects.hashCode(value);
+		}
+	}
+
+	/*
+	 * The filters with the same canonical filter string and their payloads.
+	 */
+	private static final class Entry<T> {
+		final FilterImpl		filter;
+		final List<Key>			keys;
+		final List<Member<T>>	members;
+
+		Entry(FilterImpl filter, List<Key> keys) {
+			this.filter = filter;
+			this.keys = keys;
+			this.members = new CopyOnWriteArrayList<>();
+		}
+
+		Member<T> find(FilterImpl filter, T payload) {
+			for (Member<T> member : members) {
+				if (member.filter.equals(filter)
+						&& Objects.equals(member.payload, payload)) {
+					return member;
+				}
+			}
+			return null;
+		}
+	}
+
+	private static final class Member<T> {
+		final FilterImpl	filter;
+		final T				payload;
+
+		Member(FilterImpl filter, T payload) {
+			this.filter = filter;
+			this.payload = payload;
+		}
+	}
+
+	private static final class AttributeIndex<T> {
+		/* attribute value -> entries with an equality key on the value */
+		final ConcurrentMap<String,List<Entry<T>>>	values;
+		/* entries with a presence key on the attribute */
+		final List<Entry<T>>						present;
+
+		AttributeIndex() {
+			values = new ConcurrentHashMap<>();
+			present = new CopyOnWriteArrayList<>();
+		}
+
+		List<Entry<T>> bucket(String value, boolean create) {
+			if (value == null) {
+				return present;
+			}
+			return create
+					? values.computeIfAbsent(value,
+							v -> new CopyOnWriteArrayList<>())
+					: values.get(value);
+		}
+
+		/*
+		 * Remove the bucket for the value if empty and return true if this
+		 * attribute index is then empty.
+		 */
+		boolean prune(String value) {
+			if (value != null) {
+				values.computeIfPresent(value,
+						(v, bucket) -> bucket.isEmpty() ? null : bucket);
+			}
+			return values.isEmpty() && present.isEmpty();
+		}
+	}
+
+	private static final class Matcher<T> {
+		final Map<String, ? >	map;
+		final List<T>			result;
+		private Set<Entry<T>>	seen;
+
+		Matcher(Map<String, ? > map) {
+			this.map = map;
+			this.result = new ArrayList<>();
+		}
+
+		/*
+		 * Entries may be evaluated multiple times when there are multiple
+		 * property values or an entry has multiple keys. Once called, each
+		 * entry is evaluated only once.
+		 */
+		void deduplicate() {
+			if (seen == null) {
+				seen = Collections.newSetFromMap(new IdentityHashMap<>());
+			}
+		}
+
+		void evaluate(List<Entry<T>> bucket) {
+			if (bucket == null) {
+				return;
+			}
+			for (Entry<T> entry : bucket) {
+				if ((entry.keys != null) && (entry.keys.size() > 1)) {
+					deduplicate();
+				}
+				if ((seen != null) && !seen.add(entry)) {
+					continue;
+				}
+				if (entry.filter.matches0(map)) {
+					for (Member<T> member : entry.members) {
+						result.add(member.payload);
+					}
+				}
+			}
+		}
+	}
+}
@@ -39,6 +39,7 @@ import java.util.Set;
 import javax.security.auth.x500.X500Principal;
 
 import org.osgi.framework.connect.FrameworkUtilHelper;
+import org.osgi.framework.dto.CacheStatisticsDTO;
 
 /**
  * Framework Utility class.
@@ -72,6 +73,14 @@ public class FrameworkUtil {
 	 * This method returns a Filter implementation which may not perform as well
 	 * as the framework implementation-specific Filter implementation returned
 	 * by {@link BundleContext#createFilter(String)}.
+	 * <p>
+	 * If the {@value #FILTER_CACHE_CAPACITY} system property is set to a
+	 * positive integer when this class is initialized, the {@code Filter}
+	 * objects created by this method are cached by filter string and an equal
+	 * filter string returns the same {@code Filter} object. Since
+	 * {@code Filter} objects are immutable, the cached objects are shared
+	 * between callers. The cache holds at most the specified number of
+	 * {@code Filter} objects, evicting the least recently used objects.
 	 * 
 	 * @param filter The filter string.
 	 * @return A {@code Filter} object encapsulating the filter string.
@@ -82,7 +91,46 @@ public class FrameworkUtil {
 	 * @see Filter
 	 */
 	public static Filter createFilter(String filter) throws InvalidSyntaxException {
-		return FilterImpl.createFilter(filter);
+		ClockCache<String,FilterImpl> cache = filterCache;
+		if (cache == null) {
+			return FilterImpl.createFilter(filter);
+		}
+		FilterImpl result = cache.get(filter);
+		if (result == null) {
+			result = FilterImpl.createFilter(filter);
+			cache.put(filter, result);
+		}
+		return result;
+	}
+
+	/**
+	 * The name of the system property which configures the capacity of the
+	 * cache of {@code Filter} objects created by
+	 * {@link #createFilter(String)}.
+	 * <p>
+	 * The value of this system property must be a positive integer to enable
+	 * the cache. Values larger than {@code 65536} are reduced to
+	 * {@code 65536}. The cache is disabled by default.
+	 * 
+	 * @since 1.11
+	 */
+	public static final String						FILTER_CACHE_CAPACITY	= "org.osgi.framework.filter.cache.capacity";
+
+	private static final ClockCache<String,FilterImpl>	filterCache				= ClockCache
+			.fromProperty(FILTER_CACHE_CAPACITY);
+
+	/**
+	 * Returns the statistics of the cache of {@code Filter} objects created
+	 * by {@link #createFilter(String)}.
+	 * 
+	 * @return The statistics of the filter cache. If the cache is disabled,
+	 *         the returned capacity is {@code 0}.
+	 * @see #FILTER_CACHE_CAPACITY
+	 * @since 1.11
+	 */
+	public static CacheStatisticsDTO getFilterCacheStatistics() {
+		ClockCache<String,FilterImpl> cache = filterCache;
+		return (cache != null) ? cache.statistics() : ClockCache.disabled();
 	}
 
 	/**
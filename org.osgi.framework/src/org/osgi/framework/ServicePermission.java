@@ -23,11 +23,9 @@ import java.io.NotSerializableException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.ObjectStreamField;
-import java.security.AccessController;
 import java.security.BasicPermission;
 import java.security.Permission;
 import java.security.PermissionCollection;
-import java.security.PrivilegedAction;
 import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -38,8 +36,11 @@ import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 
+import org.osgi.framework.dto.CacheStatisticsDTO;
+
 /**
  * A bundle's authority to register or get a service.
  * <ul>
@@ -120,6 +121,44 @@ public final class ServicePermission extends BasicPermission {
 	 */
 	private transient String						prefix;
 
+	/**
+	 * The name of the system property which configures the capacity of the
+	 * cache of permission decisions for filter based {@code ServicePermission}
+	 * objects held by each permission collection.
+	 * <p>
+	 * The value of this system property must be a non-negative integer. A
+	 * value of {@code 0} disables the cache. Values larger than {@code 65536}
+	 * are reduced to {@code 65536}. The default capacity is {@code 256}.
+	 * 
+	 * @see #getDecisionCacheStatistics()
+	 * @since 1.11
+	 */
+	public final static String						DECISION_CACHE_CAPACITY	= "org.osgi.framework.servicepermission.cache.capacity";
+
+	/**
+	 * Returns the aggregate statistics of the caches of permission decisions
+	 * for filter based {@code ServicePermission} objects held by the
+	 * permission collections.
+	 * <p>
+	 * When a permission collection holding filter based
+	 * {@code ServicePermission} objects is asked whether it implies a
+	 * {@code ServicePermission} created with a {@code ServiceReference}, the
+	 * decision is cached by service id and action. A cached decision is used
+	 * only if no permission has since been added to the collection and the
+	 * service properties referenced by the filters, and the bundle which
+	 * registered the service, have not since been modified.
+	 * 
+	 * @return The aggregate statistics of the permission decision caches. The
+	 *         returned capacity is the capacity of each cache and is {@code 0}
+	 *         if the caches are disabled.
+	 * @see #DECISION_CACHE_CAPACITY
+	 * @since 1.11
+	 */
+	public static CacheStatisticsDTO getDecisionCacheStatistics() {
+		return ServicePermissionCollection.decisionCounters
+				.statistics(ServicePermissionCollection.decisionCacheCapacity);
+	}
+
 	/**
 	 * Create a new ServicePermission.
 	 * 
@@ -558,26 +597,10 @@ public final class ServicePermission extends BasicPermission {
 			result.put(Constants.OBJECTCLASS, new String[] {getName()});
 			return properties = result;
 		}
-		final Map<String, Object> props = new HashMap<String, Object>(4);
 		final Bundle bundle = service.getBundle();
-		if (bundle != null) {
-			AccessController.doPrivileged(new PrivilegedAction<Void>() {
-				@Override
-				public Void run() {
-					props.put("id", Long.valueOf(bundle.getBundleId()));
-					props.put("location", bundle.getLocation());
-					String name = bundle.getSymbolicName();
-					if (name != null) {
-						props.put("name", name);
-					}
-					SignerProperty signer = new SignerProperty(bundle);
-					if (signer.isBundleSigned()) {
-						props.put("signer", signer);
-					}
-					return null;
-				}
-			});
-		}
+		final Map<String, Object> props = (bundle != null)
+				? BundleProperties.of(bundle)
+				: Collections.<String, Object> emptyMap();
 		return properties = new Properties(props, service);
 	}
 
@@ -713,6 +736,40 @@ final class ServicePermissionCollection extends PermissionCollection {
 	 */
 	private Map<String, ServicePermission>				filterPermissions;
 
+	/**
+	 * Capacity of the permission decision cache of each collection.
+	 */
+	static final int									decisionCacheCapacity	= Math.max(0,
+			ClockCache.capacity(ServicePermission.DECISION_CACHE_CAPACITY, 256));
+
+	/**
+	 * Statistics of the permission decision caches of all collections.
+	 */
+	static final ClockCache.Counters					decisionCounters		= new ClockCache.Counters();
+
+	/**
+	 * Cache of the decisions of the filter permissions for requested
+	 * permissions created with a ServiceReference. Created when first needed.
+	 * 
+	 * @GuardedBy this
+	 */
+	private transient ClockCache<Long, Decision>		decisions;
+
+	/**
+	 * Names of the service properties referenced by the filter permissions or
+	 * {@code null} if decisions must not be cached.
+	 * 
+	 * @GuardedBy this
+	 */
+	private transient String[]							filterAttributes;
+
+	/**
+	 * Incremented when a permission is added to invalidate cached decisions.
+	 * 
+	 * @GuardedBy this
+	 */
+	private transient long								generation;
+
 	/**
 	 * Creates an empty ServicePermissions object.
 	 */
@@ -774,7 +831,47 @@ final class ServicePermissionCollection extends PermissionCollection {
 					all_allowed = true;
 				}
 			}
+
+			generation++;
+			if (f != null) {
+				filterAttributes = filterAttributes(filterPermissions.values());
+			}
+			if (decisions != null) {
+				decisions.clear();
+			}
+		}
+	}
+
+	/**
+	 * Returns the names of the service properties referenced by the specified
+	 * filter permissions.
+	 * 
+	 * <p>
+	 * The trusted signers of a bundle can change without the bundle being
+	 * updated, so decisions of filter permissions which reference the
+	 * {@code signer} property cannot be validated and must not be cached.
+	 * 
+	 * @param perms The filter permissions.
+	 * @return The names of the referenced service properties or {@code null}
+	 *         if the referenced service properties cannot be determined or
+	 *         include the {@code signer} property.
+	 */
+	private static String[] filterAttributes(Collection<ServicePermission> perms) {
+		Set<String> attrs = new HashSet<String>();
+		for (ServicePermission perm : perms) {
+			if (!(perm.filter instanceof FilterImpl)) {
+				return null;
+			}
+			((FilterImpl) perm.filter).attributes(attrs);
+		}
+		Set<String> names = new HashSet<String>();
+		for (String attr : attrs) {
+			if (attr.equalsIgnoreCase("signer")) {
+				return null;
+			}
+			names.add((attr.charAt(0) == '@') ? attr.substring(1) : attr);
 		}
+		return names.toArray(new String[0]);
 	}
 
 	/**
@@ -798,6 +895,9 @@ final class ServicePermissionCollection extends PermissionCollection {
 
 		int effective = ServicePermission.ACTION_NONE;
 		Collection<ServicePermission> perms;
+		ClockCache<Long, Decision> cache = null;
+		String[] attrs = null;
+		long gen;
 		synchronized (this) {
 			final int desired = requested.action_mask;
 			/* short circuit if the "*" Permission was added */
@@ -832,15 +932,97 @@ final class ServicePermissionCollection extends PermissionCollection {
 				return false;
 			}
 			perms = pc.values();
+			gen = generation;
+			if ((requested.service != null) && (decisionCacheCapacity > 0)) {
+				attrs = filterAttributes;
+				if (attrs != null) {
+					cache = decisions;
+					if (cache == null) {
+						decisions = cache = new ClockCache<Long, Decision>(decisionCacheCapacity, decisionCounters);
+					}
+				}
+			}
+		}
+
+		Long key = null;
+		if (cache != null) {
+			Object id = requested.service.getProperty(Constants.SERVICE_ID);
+			if (id instanceof Long) {
+				key = Long.valueOf((((Long) id).longValue() << 2) | requested.action_mask);
+				Decision decision = cache.get(key);
+				if (decision != null) {
+					if (decision.isValid(gen, requested.service, attrs)) {
+						return decision.implied;
+					}
+					cache.remove(key);
+				}
+			}
 		}
 
 		/* iterate one by one over filteredPermissions */
+		boolean implied = false;
 		for (ServicePermission perm : perms) {
 			if (perm.implies0(requested, effective)) {
-				return true;
+				implied = true;
+				break;
 			}
 		}
-		return false;
+		if (key != null) {
+			cache.put(key, new Decision(gen, requested.service, attrs, implied));
+		}
+		return implied;
+	}
+
+	/**
+	 * A cached decision of the filter permissions for a requested permission
+	 * created with a ServiceReference. The decision is cached by service id
+	 * and records the state it depends upon so it can be validated when used.
+	 * It does not hold the ServiceReference or its bundle so that the cache
+	 * does not keep unregistered services or uninstalled bundles reachable.
+	 */
+	private static final class Decision {
+		private final long		generation;
+		private final long		bundleId;
+		private final long		lastModified;
+		private final Object[]	values;
+		final boolean			implied;
+
+		Decision(long generation, ServiceReference<?> service, String[] attrs, boolean implied) {
+			this.generation = generation;
+			Bundle bundle = service.getBundle();
+			this.bundleId = (bundle != null) ? bundle.getBundleId() : -1L;
+			this.lastModified = (bundle != null) ? bundle.getLastModified() : 0L;
+			this.values = values(service, attrs);
+			this.implied = implied;
+		}
+
+		boolean isValid(long currentGeneration, ServiceReference<?> reference, String[] attrs) {
+			if (generation != currentGeneration) {
+				return false;
+			}
+			Bundle b = reference.getBundle();
+			if (b == null) {
+				if (bundleId != -1L) {
+					return false;
+				}
+			} else if ((b.getBundleId() != bundleId) || (b.getLastModified() != lastModified)) {
+				return false;
+			}
+			for (int i = 0; i < attrs.length; i++) {
+				if (!Objects.deepEquals(values[i], reference.getProperty(attrs[i]))) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private static Object[] values(ServiceReference<?> service, String[] attrs) {
+			Object[] result = new Object[attrs.length];
+			for (int i = 0; i < attrs.length; i++) {
+				result[i] = service.getProperty(attrs[i]);
+			}
+			return result;
+		}
 	}
 
 	/**
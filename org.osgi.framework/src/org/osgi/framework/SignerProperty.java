@@ -20,6 +20,7 @@ package org.osgi.framework;
 
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -31,8 +32,17 @@ import java.util.Map;
  * @author $Id$
  */
 final class SignerProperty {
-	private final Bundle	bundle;
-	private final String	pattern;
+	/**
+	 * Memoized results of matching DN chain patterns against DN chains. The
+	 * capacity of the cache can be configured with the
+	 * org.osgi.framework.dnchain.cache.capacity system property and a capacity
+	 * of 0 disables the cache.
+	 */
+	private static final ClockCache<DNChainMatch,Boolean>	matches	= ClockCache
+			.fromProperty("org.osgi.framework.dnchain.cache.capacity", 1024);
+
+	private final List<List<String>>	dnChains;
+	private final String				pattern;
 
 	/**
 	 * String constructor used by the filter matching algorithm to construct a
@@ -42,17 +52,27 @@ final class SignerProperty {
 	 */
 	public SignerProperty(String pattern) {
 		this.pattern = pattern;
-		this.bundle = null;
+		this.dnChains = null;
 	}
 
 	/**
 	 * Used by the permission implies method to build the properties for a
-	 * filter match.
+	 * filter match. The trusted signers of the bundle are resolved when this
+	 * object is created, so it must not be retained across permission checks.
 	 * 
 	 * @param bundle The bundle whose signers are to be matched.
 	 */
 	SignerProperty(Bundle bundle) {
-		this.bundle = bundle;
+		Map<X509Certificate, List<X509Certificate>> signers = bundle.getSignerCertificates(Bundle.SIGNERS_TRUSTED);
+		List<List<String>> chains = new ArrayList<List<String>>(signers.size());
+		for (List<X509Certificate> signerCerts : signers.values()) {
+			List<String> dnChain = new ArrayList<String>(signerCerts.size());
+			for (X509Certificate signerCert : signerCerts) {
+				dnChain.add(signerCert.getSubjectDN().getName());
+			}
+			chains.add(Collections.unmodifiableList(dnChain));
+		}
+		this.dnChains = chains;
 		this.pattern = null;
 	}
 
@@ -71,25 +91,50 @@ final class SignerProperty {
 		if (!(o instanceof SignerProperty))
 			return false;
 		SignerProperty other = (SignerProperty) o;
-		Bundle matchBundle = bundle != null ? bundle : other.bundle;
-		String matchPattern = bundle != null ? other.pattern : pattern;
-		Map<X509Certificate, List<X509Certificate>> signers = matchBundle.getSignerCertificates(Bundle.SIGNERS_TRUSTED);
-		for (List<X509Certificate> signerCerts : signers.values()) {
-			List<String> dnChain = new ArrayList<String>(signerCerts.size());
-			for (X509Certificate signerCert : signerCerts) {
-				dnChain.add(signerCert.getSubjectDN().getName());
-			}
-			try {
-				if (FrameworkUtil.matchDistinguishedNameChain(matchPattern, dnChain)) {
-					return true;
-				}
-			} catch (IllegalArgumentException e) {
-				continue; // bad pattern
+		List<List<String>> matchChains = dnChains != null ? dnChains : other.dnChains;
+		String matchPattern = dnChains != null ? other.pattern : pattern;
+		if ((matchChains == null) || (matchPattern == null)) {
+			return false;
+		}
+		for (List<String> dnChain : matchChains) {
+			if (match(matchPattern, dnChain)) {
+				return true;
 			}
 		}
 		return false;
 	}
 
+	/**
+	 * Match a DN chain against a DN chain pattern, using the memoized result
+	 * if available.
+	 * 
+	 * @param matchPattern The DN chain pattern.
+	 * @param dnChain The unmodifiable DN chain.
+	 * @return true if the DN chain matches the pattern; false if the DN chain
+	 *         does not match or the pattern is invalid.
+	 */
+	private static boolean match(String matchPattern, List<String> dnChain) {
+		ClockCache<DNChainMatch,Boolean> c = matches;
+		DNChainMatch key = null;
+		if (c != null) {
+			key = new DNChainMatch(matchPattern, dnChain);
+			Boolean result = c.get(key);
+			if (result != null) {
+				return result.booleanValue();
+			}
+		}
+		boolean result;
+		try {
+			result = FrameworkUtil.matchDistinguishedNameChain(matchPattern, dnChain);
+		} catch (IllegalArgumentException e) {
+			result = false; // bad pattern
+		}
+		if (c != null) {
+			c.put(key, Boolean.valueOf(result));
+		}
+		return result;
+	}
+
 	/**
 	 * Since the equals method does not obey the general equals contract, this
 	 * method cannot generate hash codes which obey the equals contract.
@@ -105,10 +150,40 @@ final class SignerProperty {
 	 * @return true if constructed with a bundle that is signed.
 	 */
 	boolean isBundleSigned() {
-		if (bundle == null) {
-			return false;
+		return (dnChains != null) && !dnChains.isEmpty();
+	}
+
+	/**
+	 * Key for the memoized result of matching a DN chain pattern against a DN
+	 * chain.
+	 */
+	private static final class DNChainMatch {
+		private final String		pattern;
+		private final List<String>	dnChain;
+		private final int			hash;
+
+		DNChainMatch(String pattern, List<String> dnChain) {
+			this.pattern = pattern;
+			this.dnChain = dnChain;
+			this.hash = 31 * pattern.hashCode() + dnChain.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (o == this) {
+				return true;
+			}
+			if (!(o instanceof DNChainMatch)) {
+				return false;
+			}
+			DNChainMatch other = (DNChainMatch) o;
+			return (hash == other.hash) && pattern.equals(other.pattern)
+					&& dnChain.equals(other.dnChain);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
 		}
-		Map<X509Certificate, List<X509Certificate>> signers = bundle.getSignerCertificates(Bundle.SIGNERS_TRUSTED);
-		return !signers.isEmpty();
 	}
 }
@@ -56,6 +56,14 @@ public class Version implements Comparable<Version> {
 	 */
 	public static final Version	emptyVersion	= new Version(0, 0, 0);
 
+	/*
+	 * Interning cache of the Version objects returned by valueOf. The capacity
+	 * can be configured with the org.osgi.framework.version.cache.capacity
+	 * system property and a capacity of 0 disables the cache.
+	 */
+	private static final ClockCache<String,Version>	cache	= ClockCache
+			.fromProperty("org.osgi.framework.version.cache.capacity", 1024);
+
 	/**
 	 * Creates a version identifier from the specified numerical components.
 	 * 
@@ -239,6 +247,10 @@ public class Version implements Comparable<Version> {
 	 * This method performs a similar function as {@link #parseVersion(String)}
 	 * but has the static factory {@code valueOf(String)} method signature.
 	 * 
+	 * <p>
+	 * Since {@code Version} objects are immutable, this method may return a
+	 * previously created {@code Version} object for an equal version string.
+	 * 
 	 * @param version String representation of the version identifier. Leading
 	 *        and trailing whitespace will be ignored. Must not be {@code null}.
 	 * @return A {@code Version} object representing the version identifier. If
@@ -254,7 +266,16 @@ public class Version implements Comparable<Version> {
 			return emptyVersion;
 		}
 
-		return new Version(version);
+		ClockCache<String,Version> c = cache;
+		if (c == null) {
+			return new Version(version);
+		}
+		Version result = c.get(version);
+		if (result == null) {
+			result = new Version(version);
+			c.put(version, result);
+		}
+		return result;
 	}
 
 	/**
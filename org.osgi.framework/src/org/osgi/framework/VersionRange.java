@@ -80,6 +80,16 @@ public class VersionRange {
 	private static final String	RIGHT_DELIMITERS		= RIGHT_OPEN_DELIMITER + RIGHT_CLOSED_DELIMITER;
 	private static final String	ENDPOINT_DELIMITER		= ",";
 
+	/*
+	 * Interning cache of the VersionRange objects returned by valueOf. The
+	 * capacity can be configured with the
+	 * org.osgi.framework.versionrange.cache.capacity system property and a
+	 * capacity of 0 disables the cache.
+	 */
+	private static final ClockCache<String,VersionRange>	cache	= ClockCache
+			.fromProperty("org.osgi.framework.versionrange.cache.capacity",
+					512);
+
 	/**
 	 * Creates a version range from the specified versions.
 	 * 
@@ -534,11 +544,23 @@ public class VersionRange {
 	 *        the range must contain no whitespace. Other whitespace in the
 	 *        range string is ignored. Must not be {@code null}.
 	 * @return A {@code VersionRange} object representing the version range.
+	 *         Since {@code VersionRange} objects are immutable, a previously
+	 *         created {@code VersionRange} object may be returned for an equal
+	 *         version range string.
 	 * @throws IllegalArgumentException If {@code range} is improperly
 	 *         formatted.
 	 * @since 1.8
 	 */
 	public static VersionRange valueOf(String range) {
-		return new VersionRange(range);
+		ClockCache<String,VersionRange> c = cache;
+		if (c == null) {
+			return new VersionRange(range);
+		}
+		VersionRange result = c.get(range);
+		if (result == null) {
+			result = new VersionRange(range);
+			c.put(range, result);
+		}
+		return result;
 	}
 }
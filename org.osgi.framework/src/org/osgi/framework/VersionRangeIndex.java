@@ -0,0 +1,262 @@
+/*******************************************************************************
+ * Copyright (c) Contributors to the Eclipse Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+
+package org.osgi.framework;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * An index of {@link VersionRange} objects.
+ * <p>
+ * A {@code VersionRangeIndex} holds many {@code VersionRange} objects, each
+ * associated with a payload, and returns the payloads of all the version ranges
+ * which {@link VersionRange#includes(Version) include} a version in
+ * {@code O(log n + k)} time, where {@code n} is the number of version ranges in
+ * the index and {@code k} is the number of matching version ranges. This is
+ * useful for resolvers and repositories which must match a version against the
+ * version ranges of many requirements.
+ * <p>
+ * The index is rebuilt on the first match after the index is modified, so the
+ * index is best suited to workloads where matches are more frequent than
+ * modifications.
+ *
+ * @param <T> The type of the payload associated with each version range.
+ * @ThreadSafe
+ * @since 1.11
+ * @author $Id$
+ */
+public final class VersionRangeIndex<T> {
+	/* guarded by this */
+	private final List<Entry<T>>	entries;
+	/* entries of non-empty ranges ordered by left endpoint; null if stale */
+	private volatile Tree<T>		tree;
+
+	/**
+	 * Create an empty {@code VersionRangeIndex}.
+	 */
+	public VersionRangeIndex() {
+		entries = new ArrayList<>();
+		tree = new Tree<>(Collections.emptyList());
+	}
+
+	/**
+	 * Add a version range and its associated payload to this index.
+	 *
+	 * @param range The version range to add.
+	 * @param payload The payload associated with the version range.
+	 * @throws NullPointerException If {@code range} or {@code payload} is
+	 *             {@code null}.
+	 */
+	public synchronized void add(VersionRange range, T payload) {
+		entries.add(new Entry<>(requireNonNull(range), requireNonNull(payload)));
+		tree = null;
+	}
+
+	/**
+	 * Remove a version range and its associated payload from this index.
+	 * <p>
+	 * If the version range was added multiple times with the specified
+	 * payload, only one occurrence is removed.
+	 *
+	 * @param range The version range to remove.
+	 * @param payload The payload associated with the version range.
+	 * @return {@code true} if the version range and payload were removed from
+	 *         this index; {@code false} if the version range and payload were
+	 *         not present in this index.
+	 */
+	public synchronized boolean remove(VersionRange range, T payload) {
+		for (Iterator<Entry<T>> iter = entries.iterator(); iter.hasNext();) {
+			Entry<T> entry = iter.next();
+			if (entry.range.equals(range)
+					&& Objects.equals(entry.payload, payload)) {
+				iter.remove();
+				tree = null;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the number of version range and payload pairs in this index.
+	 *
+	 * @return The number of version range and payload pairs in this index.
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Returns the payloads of the version ranges in this index which include
+	 * the specified version.
+	 * <p>
+	 * The result is the same as calling {@link VersionRange#includes(Version)}
+	 * with the specified version on each version range in this index.
+	 *
+	 * @param version The version.
+	 * @return A list of the payloads of the version ranges which include the
+	 *         specified version. The list is empty if no version range
+	 *         includes the version. The order of the payloads is unspecified.
+	 * @throws NullPointerException If {@code version} is {@code null}.
+	 */
+	public List<T> match(Version version) {
+		requireNonNull(version);
+		Tree<T> t = tree;
+		if (t == null) {
+			synchronized (this) {
+				t = tree;
+				if (t == null) {
+					tree = t = new Tree<>(entries);
+				}
+			}
+		}
+		List<T> result = new ArrayList<>();
+		t.match(version, 0, t.entries.length, result);
+		return result;
+	}
+
+	private static final class Entry<T> {
+		final VersionRange	range;
+		final T				payload;
+
+		Entry(VersionRange range, T payload) {
+			this.range = range;
+			this.payload = payload;
+		}
+	}
+
+	/**
+	 * Implicit balanced binary search tree over the entries sorted by left
+	 * endpoint. Each node, the middle of a subarray, holds the greatest right
+	 * endpoint of its subarray so subtrees which cannot include a version are
+	 * skipped.
+	 */
+	private static final class Tree<T> {
+		/* orders by left endpoint; closed before open for equal versions */
+		private static final Comparator<VersionRange>	LEFT	= (r1,
+				r2) -> {
+			int c = r1.getLeft().compareTo(r2.getLeft());
+			if (c != 0) {
+				return c;
+			}
+			return Boolean.compare(r1.getLeftType() == VersionRange.LEFT_OPEN,
+					r2.getLeftType() == VersionRange.LEFT_OPEN);
+		};
+
+		final Entry<T>[]								entries;
+		/* greatest right endpoint of the subarray centered on each index */
+		private final VersionRange[]					maxRight;
+
+		Tree(List<Entry<T>> list) {
+			List<Entry<T>> sorted = new ArrayList<>(list.size());
+			for (Entry<T> entry : list) {
+				if (!entry.range.isEmpty()) {
+					sorted.add(entry);
+				}
+			}
+			sorted.sort((e1, e2) -> LEFT.compare(e1.range, e2.range));
+			@SuppressWarnings("unchecked")
+			Entry<T>[] array = (Entry<T>[]) sorted.toArray(new Entry< ? >[0]);
+			entries = array;
+			maxRight = new VersionRange[array.length];
+			build(0, array.length);
+		}
+
+		private VersionRange build(int from, int to) {
+			if (from >= to) {
+				return null;
+			}
+			int mid = (from + to) >>> 1;
+			VersionRange max = entries[mid].range;
+			max = maxRight(max, build(from, mid));
+			max = maxRight(max, build(mid + 1, to));
+			maxRight[mid] = max;
+			return max;
+		}
+
+		/*
+		 * Returns the range with the greater right endpoint. A null right
+		 * endpoint is infinity and a closed endpoint is greater than an open
+		 * endpoint for equal versions.
+		 */
+		private static VersionRange maxRight(VersionRange r1,
+				VersionRange r2) {
+			if (r2 == null) {
+				return r1;
+			}
+			Version right1 = r1.getRight();
+			Version right2 = r2.getRight();
+			if (right1 == null) {
+				return r1;
+			}
+			if (right2 == null) {
+				return r2;
+			}
+			int c = right1.compareTo(right2);
+			if (c == 0) {
+				return (r1.getRightType() == VersionRange.RIGHT_CLOSED) ? r1
+						: r2;
+			}
+			return (c > 0) ? r1 : r2;
+		}
+
+		void match(Version version, int from, int to, List<T> result) {
+			while (from < to) {
+				int mid = (from + to) >>> 1;
+				if (!includesRight(maxRight[mid], version)) {
+					return;
+				}
+				match(version, from, mid, result);
+				VersionRange range = entries[mid].range;
+				if (!includesLeft(range, version)) {
+					/* all following ranges have a greater left endpoint */
+					return;
+				}
+				if (includesRight(range, version)) {
+					result.add(entries[mid].payload);
+				}
+				from = mid + 1;
+			}
+		}
+
+		private static boolean includesLeft(VersionRange range,
+				Version version) {
+			int c = range.getLeft().compareTo(version);
+			return (range.getLeftType() == VersionRange.LEFT_CLOSED) ? c <= 0
+					: c < 0;
+		}
+
+		private static boolean includesRight(VersionRange range,
+				Version version) {
+			Version right = range.getRight();
+			if (right == null) {
+				return true;
+			}
+			int c = right.compareTo(version);
+			return (range.getRightType() == VersionRange.RIGHT_CLOSED) ? c >= 0
+					: c > 0;
+		}
+	}
+}
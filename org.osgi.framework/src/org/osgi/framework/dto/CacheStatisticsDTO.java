@@ -0,0 +1,55 @@
+/*******************************************************************************
+ * Copyright (c) Contributors to the Eclipse Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0 
+ *******************************************************************************/
+
+package org.osgi.framework.dto;
+
+import org.osgi.dto.DTO;
+
+/**
+ * Data Transfer Object for the statistics of a bounded cache.
+ * <p>
+ * The statistics can be used to size caches which are configured with a
+ * capacity.
+ * 
+ * @author $Id$
+ * @NotThreadSafe
+ * @since 1.9
+ */
+public class CacheStatisticsDTO extends DTO {
+	/**
+	 * The maximum number of entries held by the cache.
+	 * <p>
+	 * A capacity of {@code 0} indicates the cache is disabled.
+	 */
+	public int	capacity;
+
+	/**
+	 * The number of entries held by the cache.
+	 */
+	public int	size;
+
+	/**
+	 * The number of lookups which found an entry in the cache.
+	 */
+	public long	hits;
+
+	/**
+	 * The number of lookups which did not find an entry in the cache.
+	 */
+	public long	misses;
+}
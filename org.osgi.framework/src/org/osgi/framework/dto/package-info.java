@@ -17,7 +17,7 @@
  *******************************************************************************/
 
 /**
- * OSGi Data Transfer Object Framework Package Version 1.8.
+ * OSGi Data Transfer Object Framework Package Version 1.9.
  * 
  * <p>
  * Bundles wishing to use this package must list the package in the
@@ -28,16 +28,16 @@
  * <p>
  * Example import for consumers using the API in this package:
  * <p>
- * {@code  Import-Package: org.osgi.framework.dto; version="[1.8,2.0)"}
+ * {@code  Import-Package: org.osgi.framework.dto; version="[1.9,2.0)"}
  * <p>
  * Example import for providers implementing the API in this package:
  * <p>
- * {@code  Import-Package: org.osgi.framework.dto; version="[1.8,1.9)"}
+ * {@code  Import-Package: org.osgi.framework.dto; version="[1.9,1.10)"}
  * 
  * @author $Id$
  */
 
-@Version("1.8")
+@Version("1.9")
 package org.osgi.framework.dto;
 
 import org.osgi.annotation.versioning.Version;
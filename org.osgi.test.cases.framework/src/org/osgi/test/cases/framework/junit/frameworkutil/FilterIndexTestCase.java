@@ -0,0 +1,120 @@
+/*******************************************************************************
+ * Copyright (c) Contributors to the Eclipse Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+
+package org.osgi.test.cases.framework.junit.frameworkutil;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+import java.util.Arrays;
+import java.util.Dictionary;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.osgi.framework.Filter;
+import org.osgi.framework.FilterIndex;
+import org.osgi.framework.FrameworkUtil;
+
+public class FilterIndexTestCase {
+
+	FilterIndex<String> index;
+
+	@Before
+	public void setUp() throws Exception {
+		index = new FilterIndex<>();
+		add("(objectClass=com.acme.Foo)", "foo");
+		add("(&(objectClass=com.acme.Bar)(service.ranking>=10))", "bar");
+		add("(|(objectClass=com.acme.Foo)(objectClass=com.acme.Bar))",
+				"foobar");
+		add("(service.pid=*)", "pid");
+		add("(!(objectClass=com.acme.Foo))", "notfoo");
+		add("(name=a*)", "name");
+	}
+
+	private void add(String filter, String payload) throws Exception {
+		index.add(FrameworkUtil.createFilter(filter), payload);
+	}
+
+	@Test
+	public void size() throws Exception {
+		assertThat(index.size()).isEqualTo(6);
+		assertThat(index.remove(FrameworkUtil.createFilter("(service.pid=*)"),
+				"pid")).isTrue();
+		assertThat(index.remove(FrameworkUtil.createFilter("(service.pid=*)"),
+				"pid")).isFalse();
+		assertThat(index.size()).isEqualTo(5);
+	}
+
+	@Test
+	public void match_dictionary() {
+		Dictionary<String,Object> props = new Hashtable<>();
+		props.put("OBJECTCLASS", new String[] {
+				"com.acme.Foo", "com.acme.Baz"
+		});
+		props.put("Service.Pid", "pid.1");
+		assertThat(index.match(props)).containsExactlyInAnyOrder("foo",
+				"foobar", "pid");
+
+		props.put("objectClass", "com.acme.Bar");
+		props.remove("OBJECTCLASS");
+		props.put("service.ranking", Integer.valueOf(10));
+		props.put("name", "abc");
+		assertThat(index.match(props)).containsExactlyInAnyOrder("bar",
+				"foobar", "pid", "notfoo", "name");
+	}
+
+	@Test
+	public void match_dictionary_case_variants() {
+		Dictionary<String,Object> props = new Hashtable<>();
+		props.put("name", "abc");
+		props.put("NAME", "abc");
+		assertThatIllegalArgumentException().isThrownBy(() -> index.match(props));
+	}
+
+	@Test
+	public void matches_map() {
+		Map<String,Object> props = new HashMap<>();
+		props.put("objectclass", "com.acme.Foo");
+		assertThat(index.matches(props)).containsExactly("notfoo");
+
+		props.put("objectClass", Arrays.asList("com.acme.Foo"));
+		assertThat(index.matches(props)).containsExactlyInAnyOrder("foo",
+				"foobar");
+		assertThat(index.matches(null)).containsExactly("notfoo");
+	}
+
+	@Test
+	public void same_as_filter() throws Exception {
+		Filter filter = FrameworkUtil.createFilter("(objectClass=com.acme.Bar)");
+		FilterIndex<Filter> single = new FilterIndex<>();
+		single.add(filter, filter);
+		Map<String,Object> props = new HashMap<>();
+		for (Object value : new Object[] {
+				"com.acme.Bar", " com.acme.Bar", new String[] {
+						"com.acme.Bar"
+				}, Long.valueOf(1)
+		}) {
+			props.put("objectClass", value);
+			assertThat(single.matches(props).contains(filter))
+					.isEqualTo(filter.matches(props));
+		}
+	}
+}
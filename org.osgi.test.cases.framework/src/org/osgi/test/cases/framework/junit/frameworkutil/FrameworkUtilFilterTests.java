@@ -13,14 +13,33 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  *
- * SPDX-License-Identifier: Apache-2.0 
+ * SPDX-License-Identifier: Apache-2.0
  *******************************************************************************/
 
 package org.osgi.test.cases.framework.junit.frameworkutil;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Dictionary;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
 import org.osgi.framework.Filter;
 import org.osgi.framework.FrameworkUtil;
 import org.osgi.framework.InvalidSyntaxException;
+import org.osgi.framework.ServiceReference;
+import org.osgi.framework.Version;
+import org.osgi.framework.dto.CacheStatisticsDTO;
 import org.osgi.test.cases.framework.junit.filter.AbstractFilterTests;
 
 public class FrameworkUtilFilterTests extends AbstractFilterTests {
@@ -28,4 +47,256 @@ public class FrameworkUtilFilterTests extends AbstractFilterTests {
 			throws InvalidSyntaxException {
 		return FrameworkUtil.createFilter(filterString);
 	}
+
+	@Test
+	public void testOperandConvertedPerType() throws InvalidSyntaxException {
+		Filter f1 = createFilter("(value=10)");
+		Hashtable<String,Object> hash = new Hashtable<>();
+
+		for (int i = 0; i < 2; i++) {
+			hash.put("value", Long.valueOf(10));
+			assertTrue("does not match filter", f1.match(hash));
+			hash.put("value", Double.valueOf(10));
+			assertTrue("does not match filter", f1.match(hash));
+			hash.put("value", "10");
+			assertTrue("does not match filter", f1.match(hash));
+			hash.put("value", new Version(10, 0, 0));
+			assertTrue("does not match filter", f1.match(hash));
+			hash.put("value", Long.valueOf(11));
+			assertFalse("does match filter", f1.match(hash));
+		}
+
+		// a failed conversion to one type does not affect the other types
+		Filter f2 = createFilter("(value=abc)");
+		for (int i = 0; i < 2; i++) {
+			hash.put("value", Long.valueOf(10));
+			assertFalse("does match filter", f2.match(hash));
+			hash.put("value", "abc");
+			assertTrue("does not match filter", f2.match(hash));
+		}
+	}
+
+	@Test
+	public void testValueOfNotCachedForBundleTypes()
+			throws InvalidSyntaxException {
+		Filter f1 = createFilter("(value=42)");
+		Hashtable<String,Object> hash = new Hashtable<>();
+		hash.put("value", new CountingValueOf("42"));
+
+		CountingValueOf.calls.set(0);
+		assertTrue("does not match filter", f1.match(hash));
+		assertTrue("does not match filter", f1.match(hash));
+		assertEquals("operand conversion cached", 2,
+				CountingValueOf.calls.get());
+	}
+
+	@Test
+	public void testValueOfError() throws InvalidSyntaxException {
+		Filter f1 = createFilter("(value=42)");
+		Hashtable<String,Object> hash = new Hashtable<>();
+		hash.put("value", new ErrorValueOf());
+
+		// an error thrown by the valueOf method does not escape the match
+		assertFalse("does match filter", f1.match(hash));
+		assertFalse("does match filter", f1.matches(hash));
+	}
+
+	@Test
+	public void testOptimizedFilters() throws InvalidSyntaxException {
+		List<Dictionary<String,Object>> props = Arrays.asList(
+				props("a", "1", "b", "2", "c", "3", "v", Long.valueOf(15)),
+				props("a", "1", "b", "2", "v", Long.valueOf(25)),
+				props("a", "1", "v", new int[] {
+						5, 25
+				}),
+				props("b", "2", "v", Long.valueOf(9)),
+				props("v", "15"),
+				props("v", Arrays.asList(Long.valueOf(5), Long.valueOf(25))));
+
+		// duplicate and nested operands
+		assertOptimized("(&(a=1)(&(b=2)(c=3))(a=1))", props, true, false,
+				false, false, false, false);
+		assertOptimized("(|(c=3)(|(b=2)(c=3)))", props, true, true, false,
+				true, false, false);
+		// merged ranges match each bound against any of the values
+		assertOptimized("(&(v<=20)(a=1)(v>=10))", props, true, false, true,
+				false, false, false);
+		assertOptimized("(&(v>=10)(v<=20))", props, true, false, true, false,
+				true, true);
+		assertOptimized("(!(&(v>=10)(v<=20)))", props, false, true, false,
+				true, false, false);
+		assertOptimized("(&(v>=10)(v<=20)(v>=12))", props, true, false, true,
+				false, true, true);
+
+		// the textual form and not the optimized form determines equality
+		Filter f1 = createFilter("(&(a=1)(&(b=2)(c=3))(a=1))");
+		Filter f2 = createFilter("(&(a=1)(b=2)(c=3))");
+		assertTrue("does not match filter", f1.match(props.get(0)));
+		assertTrue("does not match filter", f2.match(props.get(0)));
+		assertNotEquals("optimized filters equal", f1, f2);
+	}
+
+	private void assertOptimized(String filterString,
+			List<Dictionary<String,Object>> props, boolean... expected)
+			throws InvalidSyntaxException {
+		Filter f1 = createFilter(filterString);
+		Filter f2 = createFilter(filterString);
+		for (int i = 0; i < 2; i++) {
+			for (int j = 0; j < expected.length; j++) {
+				assertEquals(filterString + " " + props.get(j), expected[j],
+						f1.match(props.get(j)));
+			}
+			assertEquals("wrong filter string", filterString, f1.toString());
+			assertEquals("filters not equal", f2, f1);
+			assertEquals("wrong hashCode", f2.hashCode(), f1.hashCode());
+		}
+	}
+
+	private static Dictionary<String,Object> props(Object... keyValues) {
+		Hashtable<String,Object> props = new Hashtable<>();
+		for (int i = 0; i < keyValues.length; i += 2) {
+			props.put((String) keyValues[i], keyValues[i + 1]);
+		}
+		return props;
+	}
+
+	@Test
+	public void testNestedMatch() throws InvalidSyntaxException {
+		Filter outer = createFilter("(&(a=1)(c=3))");
+		Filter inner = createFilter("(b=2)");
+		List<Boolean> nested = new CopyOnWriteArrayList<>();
+		Dictionary<String,Object> props = new Hashtable<String,Object>() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public synchronized Object get(Object key) {
+				// match other properties while the outer match is in progress
+				nested.add(Boolean.valueOf(inner.match(props("B", "2"))));
+				nested.add(Boolean.valueOf(inner.match(props("b", "3"))));
+				nested.add(Boolean.valueOf(inner
+						.match(newDictionaryServiceReference(props("b", "2")))));
+				try {
+					inner.match(props("b", "2", "B", "2"));
+					nested.add(Boolean.TRUE);
+				} catch (IllegalArgumentException e) {
+					nested.add(Boolean.FALSE);
+				}
+				return super.get(key);
+			}
+		};
+		props.put("A", "1");
+		props.put("C", "3");
+
+		assertTrue("does not match filter", outer.match(props));
+		assertTrue("does not match filter",
+				outer.match(newDictionaryServiceReference(props)));
+		assertEquals("wrong number of nested matches", 16, nested.size());
+		for (int i = 0; i < nested.size(); i += 4) {
+			assertEquals("wrong nested match", Boolean.TRUE, nested.get(i));
+			assertEquals("wrong nested match", Boolean.FALSE,
+					nested.get(i + 1));
+			assertEquals("wrong nested match", Boolean.TRUE,
+					nested.get(i + 2));
+			assertEquals("case variants accepted", Boolean.FALSE,
+					nested.get(i + 3));
+		}
+
+		props.put("C", "4");
+		assertFalse("does match filter", outer.match(props));
+		assertFalse("does match filter",
+				outer.match(newDictionaryServiceReference(props)));
+	}
+
+	@Test
+	public void testCaseVariantKeys() throws InvalidSyntaxException {
+		Filter f1 = createFilter("(a=1)");
+		Dictionary<String,Object> variants = props("a", "1", "A", "2");
+		for (int i = 0; i < 2; i++) {
+			try {
+				f1.match(variants);
+				fail("case variants accepted");
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+			// the map of the failed match is reused by the next match
+			assertTrue("does not match filter", f1.match(props("A", "1")));
+			assertFalse("does match filter", f1.match(props("b", "1")));
+			assertTrue("does not match filter", f1.matchCase(variants));
+		}
+
+		// a large dictionary followed by a small one
+		Hashtable<String,Object> large = new Hashtable<>();
+		for (int i = 0; i < 2000; i++) {
+			large.put("key" + i, Integer.valueOf(i));
+		}
+		large.put("A", "1");
+		assertTrue("does not match filter", f1.match(large));
+		assertFalse("does match filter", f1.match(props("key1", "1")));
+		assertTrue("does not match filter", f1.match(props("a", "1")));
+	}
+
+	@Test
+	public void testFilterCache() throws InvalidSyntaxException {
+		String filterString = "(cache=" + System.nanoTime() + ")";
+		CacheStatisticsDTO before = FrameworkUtil.getFilterCacheStatistics();
+		Filter f1 = createFilter(filterString);
+		Filter f2 = createFilter(filterString);
+		CacheStatisticsDTO after = FrameworkUtil.getFilterCacheStatistics();
+
+		Integer capacity = Integer
+				.getInteger(FrameworkUtil.FILTER_CACHE_CAPACITY);
+		if ((capacity == null) || (capacity.intValue() <= 0)) {
+			// the cache is disabled by default
+			assertNotSame("filter cached", f1, f2);
+			assertEquals("wrong capacity", 0, after.capacity);
+			assertEquals("wrong size", 0, after.size);
+			assertEquals("wrong hits", 0, after.hits);
+			assertEquals("wrong misses", 0, after.misses);
+			return;
+		}
+
+		assertSame("filter not cached", f1, f2);
+		assertEquals("wrong capacity", Math.min(capacity.intValue(), 65536),
+				after.capacity);
+		assertTrue("hit not counted", after.hits >= before.hits + 1);
+		assertTrue("miss not counted", after.misses >= before.misses + 1);
+		assertTrue("size exceeds capacity", after.size <= after.capacity);
+
+		// the least recently used filters are evicted
+		for (int i = 0; i < (after.capacity * 2) + 1; i++) {
+			createFilter("(cache=" + i + ")");
+		}
+		CacheStatisticsDTO full = FrameworkUtil.getFilterCacheStatistics();
+		assertTrue("size exceeds capacity", full.size <= full.capacity);
+		assertNotSame("filter not evicted", f1, createFilter(filterString));
+	}
+
+	public static class CountingValueOf {
+		static final AtomicInteger	calls	= new AtomicInteger();
+		private final String		value;
+
+		public static CountingValueOf valueOf(String value) {
+			calls.incrementAndGet();
+			return new CountingValueOf(value);
+		}
+
+		CountingValueOf(String value) {
+			this.value = value;
+		}
+
+		public boolean equals(Object o) {
+			return (o instanceof CountingValueOf)
+					&& value.equals(((CountingValueOf) o).value);
+		}
+
+		public int hashCode() {
+			return value.hashCode();
+		}
+	}
+
+	public static class ErrorValueOf {
+		public static ErrorValueOf valueOf(String value) {
+			throw new AssertionError(value);
+		}
+	}
 }
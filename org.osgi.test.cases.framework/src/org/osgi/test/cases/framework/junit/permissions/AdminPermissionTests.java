@@ -18,13 +18,19 @@
 
 package org.osgi.test.cases.framework.junit.permissions;
 
+import java.lang.ref.WeakReference;
 import java.security.Permission;
 import java.security.PermissionCollection;
+import java.security.cert.X509Certificate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.PropertyPermission;
 
 import org.osgi.framework.AdminPermission;
 import org.osgi.framework.Bundle;
 import org.osgi.test.support.PermissionTestCase;
+import org.osgi.test.support.mock.MockFactory;
 
 public class AdminPermissionTests extends PermissionTestCase {
 
@@ -431,6 +437,109 @@ public class AdminPermissionTests extends PermissionTestCase {
 		assertImplies(pc, all);
 	}
 
+	public void testBundleProperties() {
+		AdminPermission byName = new AdminPermission("(name=test.bsn)",
+				"metadata");
+		AdminPermission bySigner = new AdminPermission(
+				"(signer=\\*, o=ACME, c=US)", "metadata");
+		UpdatableBundle bundle = new UpdatableBundle(newMockBundle(10,
+				"test.bsn", "test.location", "cn=Bugs Bunny, o=ACME, c=US"));
+		Bundle b10 = MockFactory.newMock(Bundle.class, bundle);
+
+		assertImplies(byName, new AdminPermission(b10, "metadata"));
+		assertImplies(bySigner, new AdminPermission(b10, "metadata"));
+		assertImplies(byName, new AdminPermission(b10, "metadata"));
+
+		// the trusted signers are resolved for each check
+		bundle.trusted = false;
+		assertNotImplies(bySigner, new AdminPermission(b10, "metadata"));
+		assertImplies(byName, new AdminPermission(b10, "metadata"));
+		bundle.trusted = true;
+		assertImplies(bySigner, new AdminPermission(b10, "metadata"));
+
+		// a retained permission resolves the trusted signers for each check
+		AdminPermission retained = new AdminPermission(b10, "metadata");
+		assertImplies(bySigner, retained);
+		bundle.trusted = false;
+		assertNotImplies(bySigner, retained);
+		assertImplies(byName, retained);
+		bundle.trusted = true;
+		assertImplies(bySigner, retained);
+
+		// an updated bundle invalidates the cached properties
+		bundle.update("other.bsn");
+		assertNotImplies(byName, new AdminPermission(b10, "metadata"));
+		assertImplies(bySigner, new AdminPermission(b10, "metadata"));
+
+		// a different bundle object with the same id has its own properties
+		assertImplies(byName, new AdminPermission(
+				newMockBundle(10, "test.bsn", "test.location", null),
+				"metadata"));
+		assertNotImplies(bySigner, new AdminPermission(
+				newMockBundle(10, "test.bsn", "test.location", null),
+				"metadata"));
+		assertNotImplies(byName, new AdminPermission(b10, "metadata"));
+	}
+
+	public void testBundlePropertiesNotRetained() throws InterruptedException {
+		AdminPermission byName = new AdminPermission("(name=test.bsn)",
+				"metadata");
+		Bundle b11 = newMockBundle(11, "test.bsn", "test.location", null);
+		assertImplies(byName, new AdminPermission(b11, "metadata"));
+
+		// the cached properties do not keep the bundle reachable
+		WeakReference<Bundle> reference = new WeakReference<>(b11);
+		b11 = null;
+		for (int i = 0; (i < 100) && (reference.get() != null); i++) {
+			System.gc();
+			Thread.sleep(10);
+		}
+		assertNull("bundle retained", reference.get());
+	}
+
+	private static class UpdatableBundle {
+		private final Bundle	signed;
+		private volatile String	name	= "test.bsn";
+		private volatile long	lastModified;
+		volatile boolean		trusted	= true;
+
+		UpdatableBundle(Bundle signed) {
+			this.signed = signed;
+		}
+
+		void update(String newName) {
+			name = newName;
+			lastModified++;
+		}
+
+		@SuppressWarnings("unused")
+		public long getBundleId() {
+			return signed.getBundleId();
+		}
+
+		@SuppressWarnings("unused")
+		public String getLocation() {
+			return signed.getLocation();
+		}
+
+		@SuppressWarnings("unused")
+		public long getLastModified() {
+			return lastModified;
+		}
+
+		@SuppressWarnings("unused")
+		public Map<X509Certificate,List<X509Certificate>> getSignerCertificates(
+				int type) {
+			return trusted ? signed.getSignerCertificates(type)
+					: new HashMap<X509Certificate,List<X509Certificate>>();
+		}
+
+		@SuppressWarnings("unused")
+		public String getSymbolicName() {
+			return name;
+		}
+	}
+
 	private static void invalidAdminPermission(String name, String actions) {
 		try {
 			AdminPermission p = new AdminPermission(name, actions);
@@ -20,14 +20,18 @@ package org.osgi.test.cases.framework.junit.permissions;
 
 import java.security.Permission;
 import java.security.PermissionCollection;
+import java.security.cert.X509Certificate;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.PropertyPermission;
 
 import org.osgi.framework.Bundle;
 import org.osgi.framework.ServicePermission;
 import org.osgi.framework.ServiceReference;
+import org.osgi.framework.dto.CacheStatisticsDTO;
 import org.osgi.test.support.PermissionTestCase;
+import org.osgi.test.support.mock.MockFactory;
 
 public class ServicePermissionTests extends PermissionTestCase {
 
@@ -680,6 +684,122 @@ public class ServicePermissionTests extends PermissionTestCase {
 		assertImplies(p61, p62);
 	}
 	
+	public void testDecisionCache() {
+		ServicePermission p71 = new ServicePermission(
+				"(&(objectClass=com.foo.*)(color=blue)(name=test.bsn))", "get");
+		UpdatableBundle bundle = new UpdatableBundle(7, "test.bsn");
+		Bundle b71 = MockFactory.newMock(Bundle.class, bundle);
+		Map<String,Object> m71 = new HashMap<>();
+		m71.put("service.id", Long.valueOf(7));
+		m71.put("objectClass", new String[] {"com.foo.Service1"});
+		m71.put("color", "blue");
+		ServiceReference< ? > r71 = newMockServiceReference(b71, m71);
+
+		PermissionCollection pc = p71.newPermissionCollection();
+		assertAddPermission(pc, p71);
+		CacheStatisticsDTO before = ServicePermission
+				.getDecisionCacheStatistics();
+		assertImplies(pc, new ServicePermission(r71, "get"));
+		CacheStatisticsDTO miss = ServicePermission
+				.getDecisionCacheStatistics();
+		assertImplies(pc, new ServicePermission(r71, "get"));
+		CacheStatisticsDTO hit = ServicePermission.getDecisionCacheStatistics();
+
+		int capacity = Math.min(Math.max(0, Integer
+				.getInteger(ServicePermission.DECISION_CACHE_CAPACITY, 256)
+				.intValue()), 65536);
+		assertEquals("wrong capacity", capacity, hit.capacity);
+		if (capacity > 0) {
+			assertTrue("miss not counted", miss.misses >= before.misses + 1);
+			assertTrue("hit not counted", hit.hits >= miss.hits + 1);
+			assertTrue("decision not cached", hit.size >= 1);
+		}
+
+		// a modified service property invalidates the decision
+		m71.put("color", "red");
+		assertNotImplies(pc, new ServicePermission(r71, "get"));
+		m71.put("color", "blue");
+		assertImplies(pc, new ServicePermission(r71, "get"));
+
+		// an updated bundle invalidates the decision
+		bundle.update("other.bsn");
+		assertNotImplies(pc, new ServicePermission(r71, "get"));
+
+		// an added permission invalidates the decision
+		assertAddPermission(pc, new ServicePermission("(name=other.bsn)", "get"));
+		assertImplies(pc, new ServicePermission(r71, "get"));
+	}
+
+	public void testDecisionCacheSigner() {
+		ServicePermission p81 = new ServicePermission(
+				"(&(objectClass=com.foo.*)(signer=\\*, o=ACME, c=US))", "get");
+		UpdatableBundle bundle = new UpdatableBundle(8, "test.bsn");
+		bundle.signers = newMockBundle(8, "test.bsn", "test.location",
+				"cn=Bugs Bunny, o=ACME, c=US")
+						.getSignerCertificates(Bundle.SIGNERS_TRUSTED);
+		Bundle b81 = MockFactory.newMock(Bundle.class, bundle);
+		Map<String,Object> m81 = new HashMap<>();
+		m81.put("service.id", Long.valueOf(8));
+		m81.put("objectClass", new String[] {"com.foo.Service1"});
+		ServiceReference< ? > r81 = newMockServiceReference(b81, m81);
+
+		PermissionCollection pc = p81.newPermissionCollection();
+		assertAddPermission(pc, p81);
+		assertImplies(pc, new ServicePermission(r81, "get"));
+		assertImplies(pc, new ServicePermission(r81, "get"));
+
+		// the trusted signers can change without an update of the bundle
+		Map<X509Certificate,List<X509Certificate>> signers = bundle.signers;
+		bundle.signers = new HashMap<>();
+		assertNotImplies(pc, new ServicePermission(r81, "get"));
+		assertNotImplies(pc, new ServicePermission(r81, "get"));
+		bundle.signers = signers;
+		assertImplies(pc, new ServicePermission(r81, "get"));
+	}
+
+	private static class UpdatableBundle {
+		private final long										id;
+		private volatile String									name;
+		private volatile long									lastModified;
+		volatile Map<X509Certificate,List<X509Certificate>>		signers	= new HashMap<>();
+
+		UpdatableBundle(long id, String name) {
+			this.id = id;
+			this.name = name;
+		}
+
+		void update(String newName) {
+			name = newName;
+			lastModified++;
+		}
+
+		@SuppressWarnings("unused")
+		public long getBundleId() {
+			return id;
+		}
+
+		@SuppressWarnings("unused")
+		public String getLocation() {
+			return "test.location";
+		}
+
+		@SuppressWarnings("unused")
+		public long getLastModified() {
+			return lastModified;
+		}
+
+		@SuppressWarnings("unused")
+		public Map<X509Certificate,List<X509Certificate>> getSignerCertificates(
+				int type) {
+			return signers;
+		}
+
+		@SuppressWarnings("unused")
+		public String getSymbolicName() {
+			return name;
+		}
+	}
+
 	private static void invalidServicePermission(String name, String actions) {
 		try {
 			ServicePermission p = new ServicePermission(name, actions);
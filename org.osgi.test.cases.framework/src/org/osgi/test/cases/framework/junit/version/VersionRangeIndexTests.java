@@ -0,0 +1,91 @@
+/*******************************************************************************
+ * Copyright (c) Contributors to the Eclipse Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+
+package org.osgi.test.cases.framework.junit.version;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.osgi.framework.Version;
+import org.osgi.framework.VersionRange;
+import org.osgi.framework.VersionRangeIndex;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for the VersionRangeIndex class.
+ */
+public class VersionRangeIndexTests extends TestCase {
+	private static final String[]		RANGES	= {
+			"[1,2)", "[1,2]", "(1,2)", "(1,2]", "1", "(1.5,1.5]", "[2,2]",
+			"[0,0.5)", "(0.9,3)"
+	};
+	private VersionRangeIndex<String>	index;
+
+	@Override
+	protected void setUp() {
+		index = new VersionRangeIndex<>();
+		for (String range : RANGES) {
+			index.add(VersionRange.valueOf(range), range);
+		}
+	}
+
+	public void testSize() {
+		assertEquals(RANGES.length, index.size());
+		assertTrue(index.remove(VersionRange.valueOf("[1,2)"), "[1,2)"));
+		assertFalse(index.remove(VersionRange.valueOf("[1,2)"), "[1,2)"));
+		assertEquals(RANGES.length - 1, index.size());
+	}
+
+	public void testMatch() {
+		for (String version : new String[] {
+				"0", "0.5", "1", "1.0.1", "1.5", "2", "2.0.0.q", "3"
+		}) {
+			Version v = Version.valueOf(version);
+			List<String> expected = new ArrayList<>();
+			for (String range : RANGES) {
+				if (VersionRange.valueOf(range).includes(v)) {
+					expected.add(range);
+				}
+			}
+			List<String> actual = index.match(v);
+			Collections.sort(expected);
+			Collections.sort(actual);
+			assertEquals("version " + version, expected, actual);
+		}
+	}
+
+	public void testMatchAfterRemove() {
+		assertTrue(index.remove(VersionRange.valueOf("1"), "1"));
+		List<String> actual = index.match(Version.valueOf("3"));
+		assertEquals(Collections.emptyList(), actual);
+		index.add(VersionRange.valueOf("[3,4)"), "x");
+		assertEquals(Arrays.asList("x"), index.match(Version.valueOf("3")));
+	}
+
+	public void testMatchNull() {
+		try {
+			index.match(null);
+			fail("expected NullPointerException");
+		} catch (NullPointerException e) {
+			// expected
+		}
+	}
+}
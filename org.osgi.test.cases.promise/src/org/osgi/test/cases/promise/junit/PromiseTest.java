@@ -19,6 +19,7 @@
 package org.osgi.test.cases.promise.junit;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
 import static org.assertj.core.api.Assertions.assertThatIllegalStateException;
 import static org.assertj.core.api.Assertions.assertThatNullPointerException;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
@@ -36,6 +37,7 @@ import java.util.Collections;
 import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Random;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
 import java.util.concurrent.CountDownLatch;
@@ -43,7 +45,10 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -64,9 +69,12 @@ import org.osgi.util.promise.Failure;
 import org.osgi.util.promise.Promise;
 import org.osgi.util.promise.PromiseFactory;
 import org.osgi.util.promise.PromiseFactory.Option;
+import org.osgi.util.promise.PromiseFactory.RejectionPolicy;
 import org.osgi.util.promise.Promises;
 import org.osgi.util.promise.Success;
 import org.osgi.util.promise.TimeoutException;
+import org.osgi.util.promise.dto.ExecutorStatisticsDTO;
+import org.osgi.util.promise.dto.PromiseMetricsDTO;
 
 public class PromiseTest {
 	ExecutorService				callbackExecutor;
@@ -550,6 +558,80 @@ public class PromiseTest {
 				.isInstanceOf(InterruptedException.class);
 	}
 
+	@Test
+	public void testRepeatedInterrupted() throws Exception {
+		final Deferred<String> d = factory.deferred();
+		Promise<String> p = d.getPromise();
+		final Thread thread = Thread.currentThread();
+		final List<Integer> order = Collections
+				.synchronizedList(new ArrayList<>());
+		final CountDownLatch latch = new CountDownLatch(2);
+		p.onResolve(() -> {
+			order.add(1);
+			latch.countDown();
+		});
+		for (int i = 0; i < 100; i++) {
+			scheduledExecutor.schedule(thread::interrupt, 1,
+					TimeUnit.MILLISECONDS);
+			assertThatThrownBy(() -> p.getValue())
+					.isInstanceOf(InterruptedException.class);
+		}
+		p.onResolve(() -> {
+			order.add(2);
+			latch.countDown();
+		});
+		assertThat(p).isNotDone();
+		d.resolve("value");
+		assertThat(latch.await(WAIT_TIME, TimeUnit.SECONDS)).isTrue();
+		assertThat(order).containsExactly(1, 2);
+		assertThat(p.getValue()).isEqualTo("value");
+	}
+
+	@Test
+	public void testConcurrentResolve() throws Exception {
+		final int threads = 8;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			for (int round = 0; round < 100; round++) {
+				final Deferred<Integer> d = factory.deferred();
+				final Promise<Integer> p = d.getPromise();
+				final CountDownLatch start = new CountDownLatch(1);
+				final CountDownLatch callbacks = new CountDownLatch(threads);
+				final AtomicInteger called = new AtomicInteger();
+				final AtomicInteger resolved = new AtomicInteger();
+				List<Future<Integer>> waits = new ArrayList<>();
+				for (int i = 0; i < threads; i++) {
+					final Integer value = Integer.valueOf(i);
+					waits.add(executor.submit(() -> {
+						start.await();
+						p.onResolve(() -> {
+							called.incrementAndGet();
+							callbacks.countDown();
+						});
+						try {
+							d.resolve(value);
+							resolved.incrementAndGet();
+						} catch (IllegalStateException e) {
+							// expected when another thread resolved first
+						}
+						return p.getValue();
+					}));
+				}
+				start.countDown();
+				for (Future<Integer> wait : waits) {
+					assertThat(wait.get(WAIT_TIME, TimeUnit.SECONDS))
+							.isSameAs(p.getValue());
+				}
+				assertThat(callbacks.await(WAIT_TIME, TimeUnit.SECONDS))
+						.isTrue();
+				assertThat(called).hasValue(threads);
+				assertThat(resolved).hasValue(1);
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
 	@Test
 	public void testNullCallback() throws Exception {
 		Deferred<String> d = factory.deferred();
@@ -948,6 +1030,126 @@ public class PromiseTest {
 				.hasCauseInstanceOf(FailedPromisesException.class);
 	}
 
+	@Test
+	public void testAny() throws Exception {
+		final Deferred<String> d1 = factory.deferred();
+		final Deferred<String> d2 = factory.deferred();
+		final Deferred<String> d3 = factory.deferred();
+		List<Promise<String>> promises = Arrays.asList(d1.getPromise(),
+				d2.getPromise(), d3.getPromise());
+		final CountDownLatch cancelled = new CountDownLatch(1);
+		final List<Promise<String>> losers = Collections
+				.synchronizedList(new ArrayList<>());
+		Promise<String> any = factory.<String, String> any(promises, p -> {
+			losers.add(p);
+			cancelled.countDown();
+		});
+		d1.fail(new Exception("failed"));
+		assertThat(any).isNotDone();
+		d2.resolve("value");
+		assertThat(any).resolvesWithin(WAIT_TIME, TimeUnit.SECONDS)
+				.hasValue("value");
+		assertThat(cancelled.await(WAIT_TIME, TimeUnit.SECONDS)).isTrue();
+		assertThat(losers).containsExactly(d3.getPromise());
+
+		final Deferred<String> f1 = factory.deferred();
+		final Deferred<String> f2 = factory.deferred();
+		Promise<String> failed = factory.<String, String> any(
+				Arrays.asList(f1.getPromise(), f2.getPromise()));
+		Exception failure1 = new Exception("failure1");
+		f2.fail(new Exception("failure2"));
+		f1.fail(failure1);
+		assertThat(failed).resolvesWithin(WAIT_TIME, TimeUnit.SECONDS)
+				.hasFailedWithThrowableThat()
+				.isInstanceOf(FailedPromisesException.class)
+				.hasCause(failure1);
+
+		assertThat(factory.<String, String> any(Collections.emptyList()))
+				.resolvesWithin(WAIT_TIME, TimeUnit.SECONDS)
+				.hasFailedWithThrowableThat()
+				.isInstanceOf(NoSuchElementException.class);
+	}
+
+	@Test
+	public void testRace() throws Exception {
+		final Deferred<String> d1 = factory.deferred();
+		final Deferred<String> d2 = factory.deferred();
+		List<Promise<String>> promises = Arrays.asList(d1.getPromise(),
+				d2.getPromise());
+		final CountDownLatch cancelled = new CountDownLatch(1);
+		final AtomicReference<Promise<String>> loser = new AtomicReference<>();
+		Promise<String> race = factory.<String, String> race(promises, p -> {
+			loser.set(p);
+			cancelled.countDown();
+		});
+		assertThat(race).isNotDone();
+		Exception failure = new Exception("failed");
+		d2.fail(failure);
+		assertThat(race).resolvesWithin(WAIT_TIME, TimeUnit.SECONDS)
+				.hasFailedWithThrowableThat()
+				.isSameAs(failure);
+		assertThat(cancelled.await(WAIT_TIME, TimeUnit.SECONDS)).isTrue();
+		assertThat(loser.get()).isSameAs(d1.getPromise());
+		d1.resolve("late");
+		assertThat(race).hasFailedWithThrowableThat().isSameAs(failure);
+	}
+
+	@Test
+	public void testAllSettled() throws Exception {
+		final Deferred<String> d1 = factory.deferred();
+		final Deferred<String> d2 = factory.deferred();
+		List<Promise<String>> promises = Arrays.asList(d1.getPromise(),
+				d2.getPromise());
+		Promise<List<Promise<String>>> settled = factory.allSettled(promises);
+		d2.fail(new Exception("failed"));
+		assertThat(settled).isNotDone();
+		d1.resolve("value");
+		assertThat(settled).resolvesWithin(WAIT_TIME, TimeUnit.SECONDS)
+				.hasValueThat(InstanceOfAssertFactories.LIST)
+				.containsExactly(d1.getPromise(), d2.getPromise());
+	}
+
+	@Test
+	public void testAllSettledLimit() throws Exception {
+		final int count = 20;
+		final int limit = 3;
+		final AtomicInteger outstanding = new AtomicInteger();
+		final AtomicInteger maximum = new AtomicInteger();
+		List<Callable<Promise<Integer>>> tasks = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			final Integer value = Integer.valueOf(i);
+			tasks.add(() -> {
+				int n = outstanding.incrementAndGet();
+				maximum.accumulateAndGet(n, Math::max);
+				Deferred<Integer> d = factory.deferred();
+				scheduledExecutor.schedule(() -> {
+					outstanding.decrementAndGet();
+					d.resolve(value);
+				}, 10, TimeUnit.MILLISECONDS);
+				return d.getPromise();
+			});
+		}
+		final Exception failure = new Exception("failed");
+		tasks.add(() -> {
+			throw failure;
+		});
+		Promise<List<Promise<Integer>>> settled = factory.allSettled(tasks,
+				limit);
+		List<Promise<Integer>> results = settled
+				.timeout(TimeUnit.SECONDS.toMillis(WAIT_TIME * 5))
+				.getValue();
+		assertThat(results).hasSize(count + 1);
+		for (int i = 0; i < count; i++) {
+			assertThat(results.get(i)).isDone().hasValue(Integer.valueOf(i));
+		}
+		assertThat(results.get(count)).isDone()
+				.hasFailedWithThrowableThat()
+				.isSameAs(failure);
+		assertThat(maximum.get()).isLessThanOrEqualTo(limit);
+		assertThatIllegalArgumentException()
+				.isThrownBy(() -> factory.allSettled(tasks, 0));
+	}
+
 	@Test
 	public void testAllEmptyCollection() throws Exception {
 		Collection<Promise<String>> promises = Collections.emptyList();
@@ -1849,6 +2051,150 @@ public class PromiseTest {
 		assertThat(p).isNotDone();
 	}
 
+	@Test
+	public void testTimingWheelScheduler() throws Exception {
+		ScheduledExecutorService wheel = PromiseFactory
+				.timingWheelScheduler(10L, TimeUnit.MILLISECONDS);
+		try {
+			PromiseFactory f = new PromiseFactory(callbackExecutor, wheel);
+			assertThat(f.scheduledExecutor()).isSameAs(wheel);
+			Deferred<String> d = f.deferred();
+			long start = System.nanoTime();
+			Promise<String> t = d.getPromise().timeout(100L);
+			assertThat(t).resolvesWithin(WAIT_TIME, TimeUnit.SECONDS)
+					.hasFailedWithThrowableThat()
+					.isInstanceOf(TimeoutException.class);
+			assertThat(System.nanoTime() - start)
+					.isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(100L));
+			assertThat(d.getPromise()).isNotDone();
+
+			Deferred<String> d2 = f.deferred();
+			Promise<String> t2 = d2.getPromise()
+					.timeout(TimeUnit.SECONDS.toMillis(WAIT_TIME));
+			d2.resolve("no timeout");
+			assertThat(t2).resolvesWithin(WAIT_TIME, TimeUnit.SECONDS)
+					.hasValue("no timeout");
+
+			Promise<String> delayed = f.resolved("delayed").delay(100L);
+			assertThat(delayed).isNotDone()
+					.resolvesWithin(WAIT_TIME, TimeUnit.SECONDS)
+					.hasValue("delayed");
+
+			ScheduledFuture<String> far = wheel
+					.schedule(() -> "far", 1L, TimeUnit.HOURS);
+			assertThat(far.cancel(false)).isTrue();
+			assertThat(far.isCancelled()).isTrue();
+		} finally {
+			wheel.shutdown();
+		}
+		assertThat(wheel.awaitTermination(WAIT_TIME, TimeUnit.SECONDS))
+				.isTrue();
+		assertThatThrownBy(() -> wheel.schedule(() -> "rejected", 1L,
+				TimeUnit.MILLISECONDS))
+						.isInstanceOf(RejectedExecutionException.class);
+		assertThatIllegalArgumentException().isThrownBy(
+				() -> PromiseFactory.timingWheelScheduler(0L,
+						TimeUnit.MILLISECONDS));
+	}
+
+	@Test
+	public void testBoundedExecutor() throws Exception {
+		ExecutorService bounded = PromiseFactory.boundedExecutor(1, 1,
+				RejectionPolicy.CALLER_RUNS);
+		try {
+			PromiseFactory f = new PromiseFactory(bounded, scheduledExecutor);
+			Thread caller = Thread.currentThread();
+			CountDownLatch running = new CountDownLatch(1);
+			CountDownLatch release = new CountDownLatch(1);
+			Promise<Thread> busy = f.submit(() -> {
+				running.countDown();
+				release.await();
+				return Thread.currentThread();
+			});
+			assertThat(running.await(WAIT_TIME, TimeUnit.SECONDS)).isTrue();
+			Promise<Thread> queued = f.submit(Thread::currentThread);
+			Promise<Thread> callerRuns = f.submit(Thread::currentThread);
+			assertThat(callerRuns).isDone().hasSameValue(caller);
+
+			ExecutorStatisticsDTO statistics = f.getExecutorStatistics();
+			assertThat(statistics).isNotNull();
+			assertThat(statistics.submitted).isEqualTo(3L);
+			assertThat(statistics.callerRuns).isEqualTo(1L);
+			assertThat(statistics.active).isEqualTo(1);
+			assertThat(statistics.queued).isEqualTo(1L);
+
+			release.countDown();
+			assertThat(busy).resolvesWithin(WAIT_TIME, TimeUnit.SECONDS)
+					.hasValueMatching(t -> t != caller);
+			assertThat(queued).resolvesWithin(WAIT_TIME, TimeUnit.SECONDS)
+					.hasValueMatching(t -> t != caller);
+		} finally {
+			bounded.shutdown();
+		}
+		assertThat(new PromiseFactory(PromiseFactory.inlineExecutor())
+				.getExecutorStatistics()).isNull();
+		assertThatIllegalArgumentException().isThrownBy(
+				() -> PromiseFactory.boundedExecutor(0, 1,
+						RejectionPolicy.ABORT));
+	}
+
+	@Test
+	public void testWorkStealingExecutor() throws Exception {
+		ExecutorService workStealing = PromiseFactory.workStealingExecutor(2);
+		try {
+			PromiseFactory f = new PromiseFactory(workStealing,
+					scheduledExecutor);
+			Promise<String> p = f.submit(() -> "value");
+			assertThat(p).resolvesWithin(WAIT_TIME, TimeUnit.SECONDS)
+					.hasValue("value");
+			assertThat(f.getExecutorStatistics()).isNotNull()
+					.extracting(s -> s.submitted)
+					.isEqualTo(1L);
+		} finally {
+			workStealing.shutdown();
+		}
+	}
+
+	@Test
+	public void testMetrics() throws Exception {
+		assertThat(new PromiseFactory(callbackExecutor, scheduledExecutor)
+				.getMetrics()).isNull();
+		PromiseFactory f = new PromiseFactory(callbackExecutor,
+				scheduledExecutor, Option.CALLBACKS_EXECUTOR_THREAD,
+				Option.METRICS);
+		Deferred<String> d = f.deferred();
+		CountDownLatch called = new CountDownLatch(1);
+		d.getPromise().onResolve(called::countDown);
+
+		PromiseMetricsDTO metrics = f.getMetrics();
+		assertThat(metrics).isNotNull();
+		assertThat(metrics.created).isEqualTo(1L);
+		assertThat(metrics.pending).isEqualTo(1L);
+		assertThat(metrics.callbacksWaiting).isEqualTo(1L);
+		assertThat(metrics.callbackLatency.buckets).isNotEmpty();
+
+		d.resolve("value");
+		assertThat(called.await(WAIT_TIME, TimeUnit.SECONDS)).isTrue();
+		metrics = f.getMetrics();
+		assertThat(metrics.resolved).isEqualTo(1L);
+		assertThat(metrics.failed).isZero();
+		assertThat(metrics.pending).isZero();
+		assertThat(metrics.callbacksWaiting).isZero();
+		assertThat(metrics.callbackLatency.count).isEqualTo(1L);
+
+		Promise<String> timedout = f.<String> deferred()
+				.getPromise()
+				.timeout(10L);
+		assertThat(timedout).resolvesWithin(WAIT_TIME, TimeUnit.SECONDS)
+				.hasFailedWithThrowableThat()
+				.isInstanceOf(TimeoutException.class);
+		metrics = f.getMetrics();
+		assertThat(metrics.timeoutsScheduled).isEqualTo(1L);
+		assertThat(metrics.timeoutsOutstanding).isZero();
+		assertThat(metrics.failed).isEqualTo(1L);
+		assertThat(metrics.pending).isEqualTo(1L);
+	}
+
 	@Test
 	public void testDelayWithSuccess1() throws Exception {
 		final Deferred<String> d = factory.deferred();
@@ -2039,6 +2385,128 @@ public class PromiseTest {
 				.isThrownBy(() -> p1.thenAccept((Consumer<String>) null));
 	}
 
+	@Test
+	public void testFusedTransformations() throws Exception {
+		final PromiseFactory current = new PromiseFactory(callbackExecutor,
+				scheduledExecutor, new Option[0]);
+		final Thread thread = Thread.currentThread();
+		final AtomicReference<Thread> called = new AtomicReference<>();
+		final Promise<Integer> p = current.resolved(Integer.valueOf(15));
+
+		// the callbacks are called on the current thread
+		Promise<Integer> accepted = p
+				.thenAccept(v -> called.set(Thread.currentThread()));
+		assertThat(called.getAndSet(null)).isSameAs(thread);
+		assertThat(accepted).isSameAs(p);
+		Promise<Integer> filtered = p.filter(v -> {
+			called.set(Thread.currentThread());
+			return v.intValue() > 10;
+		});
+		assertThat(called.getAndSet(null)).isSameAs(thread);
+		assertThat(filtered).isSameAs(p);
+		Promise<String> mapped = p.map(v -> {
+			called.set(Thread.currentThread());
+			return v.toString();
+		});
+		assertThat(called.getAndSet(null)).isSameAs(thread);
+		assertThat(mapped).isDone().hasValue("15");
+		Promise<Long> then = p.then(resolved -> {
+			called.set(Thread.currentThread());
+			return current
+					.resolved(Long.valueOf(resolved.getValue().longValue()));
+		});
+		assertThat(called.getAndSet(null)).isSameAs(thread);
+		assertThat(then).isDone().hasValue(Long.valueOf(15));
+
+		// a deferred Promise which is already resolved is also fused
+		Deferred<Integer> d = current.deferred();
+		d.resolve(Integer.valueOf(15));
+		Promise<Integer> p2 = d.getPromise();
+		assertThat(p2.thenAccept(v -> called.set(Thread.currentThread())))
+				.isSameAs(p2);
+		assertThat(called.getAndSet(null)).isSameAs(thread);
+		assertThat(p2.filter(v -> true)).isSameAs(p2);
+	}
+
+	@Test
+	public void testFusedTransformationsException() throws Exception {
+		final PromiseFactory current = new PromiseFactory(callbackExecutor,
+				scheduledExecutor, new Option[0]);
+		final Promise<Integer> p = current.resolved(Integer.valueOf(15));
+		final Exception failure = new Exception("failure");
+
+		// an exception thrown by a callback fails the returned Promise
+		assertThat(p.thenAccept(v -> {
+			throw failure;
+		})).isDone().hasFailedWithThrowableThat().isSameAs(failure);
+		assertThat(p.filter(v -> {
+			throw failure;
+		})).isDone().hasFailedWithThrowableThat().isSameAs(failure);
+		assertThat(p.map(v -> {
+			throw failure;
+		})).isDone().hasFailedWithThrowableThat().isSameAs(failure);
+		assertThat(p.then(resolved -> {
+			throw failure;
+		})).isDone().hasFailedWithThrowableThat().isSameAs(failure);
+		assertThat(p.filter(v -> false)).isDone()
+				.hasFailedWithThrowableThat()
+				.isInstanceOf(NoSuchElementException.class);
+
+		// the failure of a failed Promise is propagated without calling the
+		// callbacks
+		final Promise<Integer> f = current.failed(failure);
+		final AtomicBoolean called = new AtomicBoolean();
+		assertThat(f.thenAccept(v -> called.set(true))).isSameAs(f);
+		assertThat(f.filter(v -> called.getAndSet(true))).isSameAs(f);
+		assertThat(f.map(v -> called.getAndSet(true))).isDone()
+				.hasFailedWithThrowableThat()
+				.isSameAs(failure);
+		assertThat(called).isFalse();
+
+		// an exception thrown by the failure callback replaces the failure
+		final Exception replaced = new Exception("replaced");
+		assertThat(f.then(null, resolved -> {
+			throw replaced;
+		})).isDone().hasFailedWithThrowableThat().isSameAs(replaced);
+	}
+
+	@Test
+	public void testTransformationsOnExecutorThread() throws Exception {
+		final PromiseFactory executorOnly = new PromiseFactory(
+				callbackExecutor, scheduledExecutor,
+				Option.CALLBACKS_EXECUTOR_THREAD);
+		final Thread thread = Thread.currentThread();
+		final List<Thread> threads = Collections
+				.synchronizedList(new ArrayList<>());
+		final Promise<Integer> p = executorOnly.resolved(Integer.valueOf(15));
+
+		// the callbacks of a resolved Promise are still called on the executor
+		Promise<Integer> accepted = p
+				.thenAccept(v -> threads.add(Thread.currentThread()));
+		Promise<Integer> filtered = p
+				.filter(v -> threads.add(Thread.currentThread()));
+		Promise<String> mapped = p.map(v -> {
+			threads.add(Thread.currentThread());
+			return v.toString();
+		});
+		Promise<Long> then = p.then(resolved -> {
+			threads.add(Thread.currentThread());
+			return executorOnly
+					.resolved(Long.valueOf(resolved.getValue().longValue()));
+		});
+		assertThat(accepted).isNotSameAs(p)
+				.resolvesWithin(WAIT_TIME, TimeUnit.SECONDS)
+				.hasValue(Integer.valueOf(15));
+		assertThat(filtered).isNotSameAs(p)
+				.resolvesWithin(WAIT_TIME, TimeUnit.SECONDS)
+				.hasValue(Integer.valueOf(15));
+		assertThat(mapped).resolvesWithin(WAIT_TIME, TimeUnit.SECONDS)
+				.hasValue("15");
+		assertThat(then).resolvesWithin(WAIT_TIME, TimeUnit.SECONDS)
+				.hasValue(Long.valueOf(15));
+		assertThat(threads).hasSize(4).doesNotContain(thread);
+	}
+
 	@Test
 	public void testOnSuccessSuccess() throws Exception {
 		final CountDownLatch latch = new CountDownLatch(1);
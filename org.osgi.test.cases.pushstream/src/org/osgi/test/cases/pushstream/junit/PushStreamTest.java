@@ -21,33 +21,51 @@ import static java.time.Duration.ofSeconds;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.util.concurrent.TimeUnit.SECONDS;
 import static java.util.stream.Collectors.toList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.osgi.test.assertj.promise.PromiseAssert.assertThat;
 import static org.osgi.test.cases.pushstream.junit.PushStreamComplianceTest.PROMISE_RESOLVE_DURATION;
 import static org.osgi.util.pushstream.PushbackPolicyOption.LINEAR;
+import static org.osgi.util.pushstream.QueuePolicyOption.BLOCK;
 import static org.osgi.util.pushstream.QueuePolicyOption.FAIL;
 
 import java.io.Closeable;
 import java.lang.reflect.InvocationTargetException;
 import java.time.Duration;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
+import java.util.OptionalDouble;
+import java.util.OptionalInt;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
 
 import org.assertj.core.api.InstanceOfAssertFactories;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.osgi.util.promise.Promise;
+import org.osgi.util.pushstream.BatchPushEventConsumer;
 import org.osgi.util.pushstream.PushEvent;
 import org.osgi.util.pushstream.PushEventConsumer;
 import org.osgi.util.pushstream.PushEventSource;
 import org.osgi.util.pushstream.PushStream;
 import org.osgi.util.pushstream.PushStreamProvider;
+import org.osgi.util.pushstream.SimplePushEventSource;
+import org.osgi.util.pushstream.WindowAggregator;
 
 public class PushStreamTest {
 
@@ -307,6 +325,89 @@ public class PushStreamTest {
 				.isEqualTo(50);
 	}
 
+	@Test
+	public void testSlidingWindow() throws Exception {
+		// Tumbling windows count every event exactly once
+		Promise<Long> counted = withLessBackPressure(new Generator(50))
+				.window(Duration.ofMillis(200), Duration.ofMillis(200),
+						WindowAggregator.count())
+				.reduce(0L, Long::sum);
+
+		assertThat(counted).resolvesWithin(PROMISE_RESOLVE_DURATION)
+				.hasValue(50L);
+
+		// The stream closes before the window first advances
+		Promise<List<Optional<Integer>>> max = withLessBackPressure(
+				new Generator(50))
+						.window(Duration.ofSeconds(60), Duration.ofSeconds(30),
+								WindowAggregator.<Integer> max(
+										Integer::compare))
+						.collect(toList());
+
+		assertThat(max).resolvesWithin(PROMISE_RESOLVE_DURATION)
+				.hasValue(Arrays.asList(Optional.of(49)));
+
+		// Overlapping windows of three panes with one value in each pane, so
+		// the value of each pane leaves the results after three windows
+		int[] values = {
+				5, 1, 3, 2, 4
+		};
+		assertEquals(Arrays.asList(5.0, 6.0, 9.0, 6.0, 9.0, 6.0, 4.0, 0.0),
+				slidingWindow(
+						WindowAggregator.<Integer> sum(Integer::doubleValue), 8,
+						values));
+		assertEquals(
+				Arrays.asList(Optional.of(5), Optional.of(5), Optional.of(5),
+						Optional.of(3), Optional.of(4), Optional.of(4),
+						Optional.of(4), Optional.empty()),
+				slidingWindow(WindowAggregator.<Integer> max(Integer::compare),
+						8, values));
+		assertEquals(
+				Arrays.asList(Optional.of(5), Optional.of(1), Optional.of(1),
+						Optional.of(1), Optional.of(2), Optional.of(2),
+						Optional.of(4), Optional.empty()),
+				slidingWindow(WindowAggregator.<Integer> min(Integer::compare),
+						8, values));
+
+		assertThrows(IllegalArgumentException.class,
+				() -> impl.createStream(new Generator(50))
+						.window(Duration.ofMillis(100), Duration.ofMillis(200),
+								WindowAggregator.count()));
+	}
+
+	/**
+	 * Aggregate one value in each 100ms pane of windows of three panes which
+	 * slide by one pane. Each value is published once the result for the
+	 * previous pane has been received, so the pane of each value does not
+	 * depend on the timing of the events.
+	 */
+	private <R> List<R> slidingWindow(
+			WindowAggregator<Integer, ? ,R> aggregator, int results,
+			int... values) throws Exception {
+		SimplePushEventSource<Integer> spes = impl
+				.createSimpleEventSource(Integer.class);
+		List<R> received = new CopyOnWriteArrayList<>();
+		Promise<Void> done = impl.buildStream(spes)
+				.unbuffered()
+				.build()
+				.window(Duration.ofMillis(300), Duration.ofMillis(100),
+						aggregator)
+				.limit(results)
+				.forEach(r -> {
+					received.add(r);
+					if (received.size() < values.length) {
+						spes.publish(values[received.size()]);
+					}
+				});
+		assertThat(spes.connectPromise())
+				.resolvesWithin(PROMISE_RESOLVE_DURATION);
+		spes.publish(values[0]);
+
+		assertThat(done).resolvesWithin(PROMISE_RESOLVE_DURATION);
+		spes.close();
+		return received;
+	}
+
 	@Test
 	public void testWindowClosing() throws Exception {
 		CountDownLatch latch = new CountDownLatch(1);
@@ -634,4 +735,364 @@ public class PushStreamTest {
 		assertTrue(s.tryAcquire(2, 500, MILLISECONDS));
 
 	}
+
+	@Test
+	public void testCreateBuffer() throws Exception {
+		BlockingQueue<PushEvent< ? extends Integer>> buffer = PushStreamProvider
+				.createBuffer(4);
+		assertEquals(4, buffer.remainingCapacity());
+		assertTrue(buffer.offer(PushEvent.data(1)));
+		assertEquals(1, buffer.size());
+		assertEquals(Integer.valueOf(1), buffer.poll().getData());
+		assertEquals(4, buffer.remainingCapacity());
+
+		// removing events other than the head
+		PushEvent<Integer> e1 = PushEvent.data(1);
+		PushEvent<Integer> e2 = PushEvent.data(2);
+		PushEvent<Integer> e3 = PushEvent.data(3);
+		assertTrue(buffer.offer(e1));
+		assertTrue(buffer.offer(e2));
+		assertTrue(buffer.offer(e3));
+		assertTrue(buffer.remove(e2));
+		assertFalse(buffer.remove(e2));
+		Iterator<PushEvent< ? extends Integer>> it = buffer.iterator();
+		assertSame(e1, it.next());
+		it.remove();
+		assertSame(e3, it.next());
+		assertFalse(it.hasNext());
+		assertSame(e3, buffer.peek());
+		assertSame(e3, buffer.poll());
+		assertNull(buffer.poll());
+		assertEquals(4, buffer.remainingCapacity());
+
+		PushStream<Integer> es = impl.buildStream(new Generator(100))
+				.withBuffer(buffer)
+				.withPushbackPolicy(LINEAR, 20)
+				.withQueuePolicy(BLOCK)
+				.build();
+		assertThat(es.reduce(0, Integer::sum))
+				.resolvesWithin(PROMISE_RESOLVE_DURATION)
+				.hasValue(Integer.valueOf(99 * 100 / 2));
+
+		assertThrows(IllegalArgumentException.class,
+				() -> PushStreamProvider.createBuffer(0));
+	}
+
+	@Test
+	public void testForEachEventBatch() throws Exception {
+		AtomicInteger batches = new AtomicInteger();
+		AtomicInteger sum = new AtomicInteger();
+		AtomicInteger terminal = new AtomicInteger();
+
+		SimplePushEventSource<Integer> spes = impl
+				.buildSimpleEventSource(Integer.class)
+				.withBuffer(PushStreamProvider.createBuffer(128))
+				.withQueuePolicy(BLOCK)
+				.build();
+		PushStream<Integer> es = impl.buildStream(spes).unbuffered().build();
+		Promise<Long> p = es.filter(i -> i % 2 == 0)
+				.map(i -> i * 2)
+				.forEachEvent(new BatchPushEventConsumer<Integer>() {
+					@Override
+					public long accept(
+							List< ? extends PushEvent< ? extends Integer>> events)
+							throws Exception {
+						batches.incrementAndGet();
+						for (PushEvent< ? extends Integer> event : events) {
+							assertEquals(PushEvent.EventType.DATA,
+									event.getType());
+							sum.addAndGet(event.getData());
+						}
+						return 0;
+					}
+
+					@Override
+					public long accept(PushEvent< ? extends Integer> event)
+							throws Exception {
+						if (event.isTerminal()) {
+							terminal.incrementAndGet();
+						} else {
+							sum.addAndGet(event.getData());
+						}
+						return 0;
+					}
+				});
+		assertThat(spes.connectPromise())
+				.resolvesWithin(PROMISE_RESOLVE_DURATION);
+		for (int i = 0; i < 100; i++) {
+			spes.publish(i);
+		}
+		spes.endOfStream();
+
+		assertThat(p).resolvesWithin(PROMISE_RESOLVE_DURATION);
+		assertEquals(2 * 49 * 50, sum.get());
+		assertEquals(1, terminal.get());
+		assertTrue(batches.get() > 0);
+	}
+
+	@Test
+	public void testBackPressureWithoutBatches() throws Exception {
+		SimplePushEventSource<Integer> spes = impl
+				.createSimpleEventSource(Integer.class);
+		List<Long> times = new CopyOnWriteArrayList<>();
+
+		PushStream<Integer> es = impl.buildStream(spes).unbuffered().build();
+		Promise<Long> p = es.map(i -> i * 2).forEachEvent(event -> {
+			if (!event.isTerminal()) {
+				times.add(System.nanoTime());
+			}
+			return 50;
+		});
+		assertThat(spes.connectPromise())
+				.resolvesWithin(PROMISE_RESOLVE_DURATION);
+		for (int i = 0; i < 5; i++) {
+			spes.publish(i);
+		}
+		spes.endOfStream();
+
+		assertThat(p).resolvesWithin(PROMISE_RESOLVE_DURATION);
+		assertEquals(5, times.size());
+		// the back pressure of each event delays the next event
+		for (int i = 1; i < times.size(); i++) {
+			assertTrue(times.get(i) - times.get(i - 1) >= MILLISECONDS
+					.toNanos(40));
+		}
+	}
+
+	@Test
+	public void testBufferedStreamWithBatchConsumer() throws Exception {
+		AtomicInteger batches = new AtomicInteger();
+		AtomicInteger received = new AtomicInteger();
+
+		SimplePushEventSource<Integer> spes = impl
+				.buildSimpleEventSource(Integer.class)
+				.withBuffer(PushStreamProvider.createBuffer(128))
+				.withQueuePolicy(BLOCK)
+				.build();
+		// The buffer of the stream is smaller than a batch of the source, so
+		// the source must offer the events to it one at a time
+		Promise<Long> p = impl.createStream(spes)
+				.forEachEvent(new BatchPushEventConsumer<Integer>() {
+					@Override
+					public long accept(
+							List< ? extends PushEvent< ? extends Integer>> events)
+							throws Exception {
+						batches.incrementAndGet();
+						received.addAndGet(events.size());
+						return 0;
+					}
+
+					@Override
+					public long accept(PushEvent< ? extends Integer> event)
+							throws Exception {
+						if (!event.isTerminal()) {
+							received.incrementAndGet();
+						}
+						return 0;
+					}
+				});
+		assertThat(spes.connectPromise())
+				.resolvesWithin(PROMISE_RESOLVE_DURATION);
+		for (int i = 0; i < 120; i++) {
+			spes.publish(i);
+		}
+		spes.endOfStream();
+
+		assertThat(p).resolvesWithin(PROMISE_RESOLVE_DURATION).isSuccessful();
+		assertEquals(120, received.get());
+		assertEquals(0, batches.get());
+		spes.close();
+	}
+
+	@Test
+	public void testPrimitiveStreams() throws Exception {
+		assertThat(withLessBackPressure(new Generator(100))
+				.mapToInt(i -> i)
+				.filter(i -> i % 2 == 0)
+				.map(i -> i * 2)
+				.sum()).resolvesWithin(PROMISE_RESOLVE_DURATION)
+						.hasValue(Integer.valueOf(2 * 49 * 50));
+
+		assertThat(withLessBackPressure(new Generator(10))
+				.mapToLong(i -> i)
+				.mapToDouble(l -> l / 2.0)
+				.average()).resolvesWithin(PROMISE_RESOLVE_DURATION)
+						.hasValue(OptionalDouble.of(2.25));
+
+		assertThat(withLessBackPressure(new Generator(10))
+				.mapToInt(i -> i)
+				.window(4, IntStream::of)
+				.map(IntStream::sum)
+				.collect(toList()))
+						.resolvesWithin(PROMISE_RESOLVE_DURATION)
+						.hasValue(Arrays.asList(6, 22, 17));
+
+		assertThat(withLessBackPressure(new Generator(0))
+				.mapToInt(i -> i)
+				.reduce(Integer::max))
+						.resolvesWithin(PROMISE_RESOLVE_DURATION)
+						.hasValue(OptionalInt.empty());
+
+		assertThat(withLessBackPressure(new Generator(100))
+				.mapToInt(i -> i)
+				.buffer(4)
+				.count()).resolvesWithin(PROMISE_RESOLVE_DURATION)
+						.hasValue(Long.valueOf(100));
+	}
+
+	@Test
+	public void testPrimitiveBufferBurst() throws Exception {
+		// The buffers share the single thread of the stream executor with
+		// the stream delivering to them, so they must not block it when full
+		SimplePushEventSource<Integer> spes = impl
+				.createSimpleEventSource(Integer.class);
+		Promise<Long> count = impl.createStream(spes)
+				.mapToInt(i -> i)
+				.buffer(2)
+				.count();
+		assertThat(spes.connectPromise())
+				.resolvesWithin(PROMISE_RESOLVE_DURATION);
+		for (int i = 0; i < 20; i++) {
+			spes.publish(i);
+		}
+		spes.endOfStream();
+		assertThat(count).resolvesWithin(PROMISE_RESOLVE_DURATION)
+				.hasValue(Long.valueOf(20));
+		spes.close();
+
+		spes = impl.createSimpleEventSource(Integer.class);
+		count = withLessBackPressure(spes).mapToLong(i -> i)
+				.buffer(4)
+				.mapToDouble(l -> l)
+				.buffer(3)
+				.count();
+		assertThat(spes.connectPromise())
+				.resolvesWithin(PROMISE_RESOLVE_DURATION);
+		for (int i = 0; i < 30; i++) {
+			spes.publish(i);
+		}
+		spes.endOfStream();
+		assertThat(count).resolvesWithin(PROMISE_RESOLVE_DURATION)
+				.hasValue(Long.valueOf(30));
+		spes.close();
+	}
+
+	@Test
+	public void testGroupBy() throws Exception {
+		List<Integer> misordered = new CopyOnWriteArrayList<>();
+		Promise<Long> sum = withLessBackPressure(new Generator(1000))
+				.groupBy(i -> i % 10, 4, (k, s) -> {
+					int[] last = {
+							-1
+					};
+					// The events of a key arrive in order on a single thread
+					return s.map(i -> {
+						if (i <= last[0] || i % 10 != k) {
+							misordered.add(i);
+						}
+						last[0] = i;
+						return i;
+					});
+				})
+				.reduce(0L, (a, i) -> a + i, Long::sum);
+
+		assertThat(sum).resolvesWithin(PROMISE_RESOLVE_DURATION)
+				.hasValue(Long.valueOf(999 * 1000 / 2));
+		assertTrue(misordered.isEmpty());
+
+		assertThrows(IllegalArgumentException.class,
+				() -> impl.createStream(new Generator(50))
+						.groupBy(i -> i, 0, (k, s) -> s));
+	}
+
+	@Test
+	public void testGroupByClosedPipelines() throws Exception {
+		AtomicInteger opened = new AtomicInteger();
+		// Each pipeline closes after two events, so the next event of its key
+		// opens a new pipeline
+		Promise<Long> count = withLessBackPressure(new Generator(1000))
+				.groupBy(i -> i % 10, 4, (k, s) -> {
+					opened.incrementAndGet();
+					return s.limit(2L);
+				})
+				.count();
+
+		assertThat(count).resolvesWithin(PROMISE_RESOLVE_DURATION)
+				.hasValue(Long.valueOf(1000));
+		assertEquals(500, opened.get());
+	}
+
+	@Test
+	public void testGroupByBackPressure() throws Exception {
+		List<Integer> misordered = new CopyOnWriteArrayList<>();
+		// The scheduler must outlive the generator to pause the lanes
+		ScheduledExecutorService scheduler = Executors
+				.newSingleThreadScheduledExecutor();
+		try {
+			long start = System.nanoTime();
+			Promise<Long> sum = impl.buildStream(new Generator(200))
+					.withScheduler(scheduler)
+					.withPushbackPolicy(LINEAR, 20)
+					.withQueuePolicy(FAIL)
+					.build()
+					.groupBy(i -> i % 10, 2, (k, s) -> {
+						int[] last = {
+								-1
+						};
+						return s.map(i -> {
+							if (i <= last[0]) {
+								misordered.add(i);
+							}
+							last[0] = i;
+							return i;
+						}).adjustBackPressure(bp -> 5);
+					})
+					.reduce(0L, (a, i) -> a + i, Long::sum);
+
+			assertThat(sum).resolvesWithin(PROMISE_RESOLVE_DURATION)
+					.hasValue(Long.valueOf(199 * 200 / 2));
+			assertTrue(misordered.isEmpty());
+			// Each lane pauses after each of its 100 events
+			assertTrue(MILLISECONDS.toNanos(99 * 5) <= System.nanoTime()
+					- start);
+		} finally {
+			scheduler.shutdown();
+		}
+	}
+
+	@Test
+	public void testStageCallbacks() throws Exception {
+		AtomicInteger closed = new AtomicInteger();
+		List<Throwable> errors = new CopyOnWriteArrayList<>();
+		CountDownLatch failed = new CountDownLatch(3);
+		Consumer<Throwable> onError = t -> {
+			errors.add(t);
+			failed.countDown();
+		};
+		IllegalStateException failure = new IllegalStateException("failed");
+
+		PushStream<Integer> first = withLessBackPressure(new Generator(20))
+				.filter(i -> i >= 0)
+				.onClose(closed::incrementAndGet)
+				.onError(onError);
+		PushStream<Integer> second = first.map(i -> {
+			if (i == 7) {
+				throw failure;
+			}
+			return i;
+		}).onClose(closed::incrementAndGet).onError(onError);
+		Promise<Long> count = second.skip(1)
+				.limit(100)
+				.onClose(closed::incrementAndGet)
+				.onError(onError)
+				.count();
+
+		assertThat(count).resolvesWithin(PROMISE_RESOLVE_DURATION)
+				.hasFailedWithThrowableThat()
+				.isSameAs(failure);
+		// the error handler of a stage runs after its close handler
+		assertTrue(failed.await(5, SECONDS));
+		assertEquals(3, closed.get());
+		assertEquals(Arrays.asList(failure, failure, failure), errors);
+	}
 }
@@ -18,10 +18,23 @@
 
 package org.osgi.test.cases.tracker.junit;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Hashtable;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.SortedMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
@@ -37,6 +50,8 @@ import org.osgi.test.cases.tracker.service.TestService3;
 import org.osgi.test.support.compatibility.DefaultTestBundleControl;
 import org.osgi.util.tracker.ServiceTracker;
 import org.osgi.util.tracker.ServiceTrackerCustomizer;
+import org.osgi.util.tracker.TrackerOptions;
+import org.osgi.util.tracker.dto.TrackerMetricsDTO;
 
 public class ServiceTrackerTests extends DefaultTestBundleControl {
 
@@ -1068,6 +1083,408 @@ public class ServiceTrackerTests extends DefaultTestBundleControl {
 		}
 	}
 
+	public void testSortedServiceReferences() {
+		Service runIt = new Service();
+		Hashtable<String, Object> props = new Hashtable<String, Object>();
+		props.put(getName(), Boolean.TRUE);
+		props.put(Constants.SERVICE_RANKING, Integer.valueOf(10));
+		ServiceRegistration<Service> reg1 = getContext().registerService(
+				Service.class, runIt, props);
+		props.put(Constants.SERVICE_RANKING, Integer.valueOf(15));
+		ServiceRegistration<Service> reg2 = getContext().registerService(
+				Service.class, runIt, props);
+		ServiceRegistration<Service> reg3 = getContext().registerService(
+				Service.class, runIt, props);
+		ServiceTracker<Service, Service> testTracker = null;
+		try {
+			testTracker = new ServiceTracker<Service, Service>(getContext(),
+					Service.class, null);
+			assertNull("not open", testTracker.getServiceReferences());
+			testTracker.open();
+
+			ServiceReference<Service>[] references = testTracker
+					.getServiceReferences();
+			assertEquals("wrong size", 3, references.length);
+			assertEquals("wrong service reference", reg2.getReference(),
+					references[0]);
+			assertEquals("wrong service reference", reg3.getReference(),
+					references[1]);
+			assertEquals("wrong service reference", reg1.getReference(),
+					references[2]);
+
+			props.put(Constants.SERVICE_RANKING, Integer.valueOf(20));
+			reg1.setProperties(props);
+			references = testTracker.getServiceReferences();
+			assertEquals("wrong service reference", reg1.getReference(),
+					references[0]);
+			assertEquals("wrong service reference", reg1.getReference(),
+					testTracker.getServiceReference());
+
+			reg1.unregister();
+			reg1 = null;
+			references = testTracker.getServiceReferences();
+			assertEquals("wrong size", 2, references.length);
+			assertEquals("wrong service reference", reg2.getReference(),
+					testTracker.getServiceReference());
+		}
+		finally {
+			if (reg1 != null)
+				reg1.unregister();
+			if (reg2 != null)
+				reg2.unregister();
+			if (reg3 != null)
+				reg3.unregister();
+			if (testTracker != null)
+				testTracker.close();
+		}
+	}
+
+	public void testOverriddenServiceReferences() {
+		Service runIt = new Service();
+		Hashtable<String, Object> props = new Hashtable<String, Object>();
+		props.put(getName(), Boolean.TRUE);
+		props.put(Constants.SERVICE_RANKING, Integer.valueOf(10));
+		ServiceRegistration<Service> reg1 = getContext().registerService(
+				Service.class, runIt, props);
+		props.put(Constants.SERVICE_RANKING, Integer.valueOf(15));
+		final ServiceRegistration<Service> reg2 = getContext()
+				.registerService(Service.class, runIt, props);
+		ServiceTracker<Service, Service> testTracker = null;
+		try {
+			/* hide the highest ranked service */
+			testTracker = new ServiceTracker<Service, Service>(getContext(),
+					Service.class, null) {
+				@Override
+				public ServiceReference<Service>[] getServiceReferences() {
+					ServiceReference<Service>[] references = super.getServiceReferences();
+					if (references == null) {
+						return null;
+					}
+					List<ServiceReference<Service>> result = new ArrayList<ServiceReference<Service>>();
+					for (ServiceReference<Service> reference : references) {
+						if (!reference.equals(reg2.getReference())) {
+							result.add(reference);
+						}
+					}
+					@SuppressWarnings("unchecked")
+					ServiceReference<Service>[] array = result
+							.toArray(new ServiceReference[0]);
+					return array;
+				}
+			};
+			testTracker.open();
+
+			assertEquals("wrong size", 2, testTracker.size());
+			assertEquals("wrong service reference", reg1.getReference(),
+					testTracker.getServiceReference());
+			assertEquals("wrong size", 1, testTracker.getServices().length);
+		}
+		finally {
+			if (reg1 != null)
+				reg1.unregister();
+			if (reg2 != null)
+				reg2.unregister();
+			if (testTracker != null)
+				testTracker.close();
+		}
+	}
+
+	public void testAsynchronousDispatch() throws Exception {
+		final Thread testThread = Thread.currentThread();
+		final Map<String, Thread> callers = new ConcurrentHashMap<String, Thread>();
+		final CountDownLatch added = new CountDownLatch(1);
+		final CountDownLatch removed = new CountDownLatch(1);
+		ServiceTrackerCustomizer<Service, Service> customizer = new ServiceTrackerCustomizer<Service, Service>() {
+			@Override
+			public Service addingService(ServiceReference<Service> reference) {
+				callers.put("adding", Thread.currentThread());
+				added.countDown();
+				return getContext().getService(reference);
+			}
+
+			@Override
+			public void modifiedService(ServiceReference<Service> reference,
+					Service service) {
+				// nothing to do
+			}
+
+			@Override
+			public void removedService(ServiceReference<Service> reference,
+					Service service) {
+				callers.put("removed", Thread.currentThread());
+				getContext().ungetService(reference);
+				removed.countDown();
+			}
+		};
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		ServiceTracker<Service, Service> testTracker = new ServiceTracker<Service, Service>(
+				getContext(), Service.class, customizer);
+		ServiceRegistration<Service> reg = null;
+		try {
+			testTracker.open(false,
+					TrackerOptions.defaults().asynchronous(executor, 16));
+			assertTrue("not empty", testTracker.isEmpty());
+			Hashtable<String, Object> props = new Hashtable<String, Object>();
+			props.put(getName(), Boolean.TRUE);
+			reg = getContext().registerService(Service.class, new Service(),
+					props);
+			assertTrue("not added", added.await(10, TimeUnit.SECONDS));
+			assertNotNull("not tracked", testTracker.waitForService(10000));
+			assertNotSame("adding called on event thread", testThread,
+					callers.get("adding"));
+
+			reg.unregister();
+			reg = null;
+			assertTrue("not removed", removed.await(10, TimeUnit.SECONDS));
+			assertNotSame("removed called on event thread", testThread,
+					callers.get("removed"));
+			assertTrue("not empty", testTracker.isEmpty());
+		}
+		finally {
+			if (reg != null)
+				reg.unregister();
+			testTracker.close();
+			executor.shutdown();
+		}
+	}
+
+	public void testAsynchronousUnregister() throws Exception {
+		final AtomicInteger adding = new AtomicInteger();
+		final CountDownLatch release = new CountDownLatch(1);
+		final CountDownLatch removed = new CountDownLatch(2);
+		ServiceTrackerCustomizer<Service, Service> customizer = new ServiceTrackerCustomizer<Service, Service>() {
+			@Override
+			public Service addingService(ServiceReference<Service> reference) {
+				adding.incrementAndGet();
+				return getContext().getService(reference);
+			}
+
+			@Override
+			public void modifiedService(ServiceReference<Service> reference,
+					Service service) {
+				// nothing to do
+			}
+
+			@Override
+			public void removedService(ServiceReference<Service> reference,
+					Service service) {
+				try {
+					release.await(10, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				getContext().ungetService(reference);
+				removed.countDown();
+			}
+		};
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		Filter filter = getContext().createFilter("(&(objectClass="
+				+ Service.class.getName() + ")(" + getName() + "=true))");
+		ServiceTracker<Service, Service> testTracker = new ServiceTracker<Service, Service>(
+				getContext(), filter, customizer);
+		ServiceRegistration<Service> reg1 = null;
+		ServiceRegistration<Service> reg2 = null;
+		try {
+			testTracker.open(false,
+					TrackerOptions.defaults().asynchronous(executor));
+			Hashtable<String, Object> props = new Hashtable<String, Object>();
+			props.put(getName(), Boolean.TRUE);
+			reg1 = getContext().registerService(Service.class, new Service(),
+					props);
+			reg2 = getContext().registerService(Service.class, new Service(),
+					props);
+			assertNotNull("not tracked", testTracker.waitForService(10000));
+			for (int i = 0; i < 100 && testTracker.size() < 2; i++) {
+				Thread.sleep(100);
+			}
+			assertEquals("wrong size", 2, testTracker.size());
+
+			/* the removed calls are blocked, but the services are removed */
+			reg1.unregister();
+			reg1 = null;
+			assertEquals("wrong size", 1, testTracker.size());
+			assertEquals("wrong service reference", reg2.getReference(),
+					testTracker.getServiceReference());
+			props.put(getName(), Boolean.FALSE);
+			reg2.setProperties(props);
+			assertTrue("not empty", testTracker.isEmpty());
+			assertNull("service tracked", testTracker.getService());
+			assertNull("service tracked", testTracker.getServiceReference());
+			assertNull("services tracked", testTracker.getServiceReferences());
+
+			/* a waiting track event is discarded */
+			props.put(getName(), Boolean.TRUE);
+			reg2.setProperties(props);
+			reg2.unregister();
+			reg2 = null;
+			assertTrue("not empty", testTracker.isEmpty());
+
+			release.countDown();
+			assertTrue("not removed", removed.await(10, TimeUnit.SECONDS));
+			executor.submit(new Runnable() {
+				@Override
+				public void run() {
+					// wait for the waiting events
+				}
+			}).get(10, TimeUnit.SECONDS);
+			assertEquals("wrong adding count", 2, adding.get());
+			assertTrue("not empty", testTracker.isEmpty());
+		}
+		finally {
+			release.countDown();
+			if (reg1 != null)
+				reg1.unregister();
+			if (reg2 != null)
+				reg2.unregister();
+			testTracker.close();
+			executor.shutdown();
+		}
+	}
+
+	public void testParallelInitial() throws Exception {
+		final int count = 32;
+		ServiceRegistration<Service>[] regs = registerInitial(count);
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		/* the first two customizer calls wait for each other */
+		InitialCustomizer customizer = new InitialCustomizer(getContext(), 2,
+				false);
+		ServiceTracker<Service, Service> testTracker = new ServiceTracker<Service, Service>(
+				getContext(), Service.class, customizer);
+		try {
+			testTracker.open(false,
+					TrackerOptions.defaults().parallelInitial(executor, 4));
+			assertTrue("not called concurrently", customizer.concurrent);
+			assertTrue("not called on the executor",
+					customizer.threads.size() > 1);
+			assertEquals("wrong size", count, testTracker.size());
+			assertEquals("wrong tracking count", count,
+					testTracker.getTrackingCount());
+			assertEquals("wrong service reference",
+					regs[count - 1].getReference(),
+					testTracker.getServiceReference());
+		}
+		finally {
+			testTracker.close();
+			executor.shutdown();
+			unregisterInitial(regs);
+		}
+	}
+
+	public void testParallelInitialFailure() throws Exception {
+		final int count = 32;
+		ServiceRegistration<Service>[] regs = registerInitial(count);
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		InitialCustomizer customizer = new InitialCustomizer(getContext(), 2,
+				true);
+		ServiceTracker<Service, Service> testTracker = new ServiceTracker<Service, Service>(
+				getContext(), Service.class, customizer);
+		try {
+			try {
+				testTracker.open(false,
+						TrackerOptions.defaults().parallelInitial(executor, 4));
+				fail("customizer exception not thrown");
+			} catch (IllegalStateException e) {
+				assertSame("wrong exception", customizer.failure, e);
+			}
+			assertTrue("not called concurrently", customizer.concurrent);
+			assertTrue("wrong size", testTracker.size() < count);
+		}
+		finally {
+			testTracker.close();
+			executor.shutdown();
+			unregisterInitial(regs);
+		}
+	}
+
+	public void testParallelInitialRejected() throws Exception {
+		final int count = 32;
+		ServiceRegistration<Service>[] regs = registerInitial(count);
+		Executor executor = new Executor() {
+			@Override
+			public void execute(Runnable command) {
+				throw new RejectedExecutionException();
+			}
+		};
+		InitialCustomizer customizer = new InitialCustomizer(getContext(), 0,
+				false);
+		ServiceTracker<Service, Service> testTracker = new ServiceTracker<Service, Service>(
+				getContext(), Service.class, customizer);
+		try {
+			/* the opening thread does the work of the rejected workers */
+			testTracker.open(false,
+					TrackerOptions.defaults().parallelInitial(executor, 4));
+			assertEquals("wrong threads",
+					Collections.singleton(Thread.currentThread()),
+					customizer.threads);
+			assertEquals("wrong size", count, testTracker.size());
+			assertEquals("wrong service reference",
+					regs[count - 1].getReference(),
+					testTracker.getServiceReference());
+		}
+		finally {
+			testTracker.close();
+			unregisterInitial(regs);
+		}
+	}
+
+	private ServiceRegistration<Service>[] registerInitial(int count) {
+		Hashtable<String, Object> props = new Hashtable<String, Object>();
+		props.put(getName(), Boolean.TRUE);
+		@SuppressWarnings("unchecked")
+		ServiceRegistration<Service>[] regs = new ServiceRegistration[count];
+		for (int i = 0; i < count; i++) {
+			props.put(Constants.SERVICE_RANKING, Integer.valueOf(i));
+			regs[i] = getContext().registerService(Service.class,
+					new Service(), props);
+		}
+		return regs;
+	}
+
+	private void unregisterInitial(ServiceRegistration<Service>[] regs) {
+		for (ServiceRegistration<Service> reg : regs) {
+			reg.unregister();
+		}
+	}
+
+	public void testMetrics() throws Exception {
+		ServiceTracker<Service, Service> testTracker = new ServiceTracker<Service, Service>(
+				getContext(), Service.class, null);
+		ServiceRegistration<Service> reg = null;
+		try {
+			assertNull("metrics not enabled", testTracker.getMetrics());
+			testTracker.open(false, TrackerOptions.defaults().metrics(true));
+			Hashtable<String, Object> props = new Hashtable<String, Object>();
+			props.put(getName(), Boolean.TRUE);
+			reg = getContext().registerService(Service.class, new Service(),
+					props);
+			props.put(Constants.SERVICE_RANKING, Integer.valueOf(10));
+			reg.setProperties(props);
+
+			TrackerMetricsDTO metrics = testTracker.getMetrics();
+			assertEquals("wrong size", 1, metrics.size);
+			assertEquals("wrong added", 1, metrics.added);
+			assertEquals("wrong modified", 1, metrics.modified);
+			assertEquals("wrong removed", 0, metrics.removed);
+			assertEquals("wrong adding count", 1, metrics.addingLatency.count);
+			assertEquals("wrong modified count", 1,
+					metrics.modifiedLatency.count);
+			assertTrue("no lock wait", metrics.lockWait.count > 0);
+
+			reg.unregister();
+			reg = null;
+			metrics = testTracker.getMetrics();
+			assertEquals("wrong size", 0, metrics.size);
+			assertEquals("wrong removed", 1, metrics.removed);
+			assertEquals("wrong removed count", 1,
+					metrics.removedLatency.count);
+		}
+		finally {
+			if (reg != null)
+				reg.unregister();
+			testTracker.close();
+		}
+	}
+
 	private void clearResults(boolean[] results) {
 		for (int i = 0; i < results.length; i++)
 			results[i] = false;
@@ -1146,6 +1563,59 @@ public class ServiceTrackerTests extends DefaultTestBundleControl {
 		}
 	}
 
+	/**
+	 * Records the threads calling addingService. The first calls wait for each
+	 * other and the first call can throw an exception.
+	 */
+	static class InitialCustomizer
+			implements ServiceTrackerCustomizer<Service, Service> {
+		final Set<Thread>				threads	= Collections
+				.newSetFromMap(new ConcurrentHashMap<Thread, Boolean>());
+		final IllegalStateException		failure	= new IllegalStateException(
+				"customizer failure");
+		private final BundleContext		context;
+		private final CountDownLatch	parties;
+		private final AtomicBoolean		fail;
+		volatile boolean				concurrent;
+
+		InitialCustomizer(BundleContext context, int parties, boolean fail) {
+			this.context = context;
+			this.parties = new CountDownLatch(parties);
+			this.fail = new AtomicBoolean(fail);
+		}
+
+		@Override
+		public Service addingService(ServiceReference<Service> reference) {
+			threads.add(Thread.currentThread());
+			if (parties.getCount() > 0) {
+				parties.countDown();
+				try {
+					if (parties.await(10, TimeUnit.SECONDS)) {
+						concurrent = true;
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			if (fail.compareAndSet(true, false)) {
+				throw failure;
+			}
+			return context.getService(reference);
+		}
+
+		@Override
+		public void modifiedService(ServiceReference<Service> reference,
+				Service service) {
+			// nothing to do
+		}
+
+		@Override
+		public void removedService(ServiceReference<Service> reference,
+				Service service) {
+			context.ungetService(reference);
+		}
+	}
+
 	static class Service implements Runnable {
 		public void run() {
 			// nothing
@@ -240,6 +240,11 @@ public abstract class PermissionTestCase extends TestCase {
 			return location;
 		}
 
+		@SuppressWarnings("unused")
+		public long getLastModified() {
+			return 0L;
+		}
+
 		@SuppressWarnings("unused")
 		public Map<X509Certificate, List<X509Certificate>> getSignerCertificates(
 				int type) {
@@ -0,0 +1,249 @@
+/*******************************************************************************
+ * Copyright (c) Contributors to the Eclipse Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0 
+ *******************************************************************************/
+
+package org.osgi.util.promise;
+
+import static java.util.Objects.requireNonNull;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.osgi.util.promise.PromiseFactory.RejectionPolicy;
+import org.osgi.util.promise.dto.ExecutorStatisticsDTO;
+
+/**
+ * Callback executor which counts the saturation of a delegate executor
+ * service.
+ * <p>
+ * If the delegate is a ThreadPoolExecutor, this object is its rejected
+ * execution handler and applies the rejection policy.
+ * 
+ * @ThreadSafe
+ * @author $Id$
+ * @since 1.3
+ */
+final class CallbackExecutor extends AbstractExecutorService
+		implements RejectedExecutionHandler {
+	private final ExecutorService	delegate;
+	private final RejectionPolicy	policy;
+	private final LongAdder			submitted;
+	private final LongAdder			completed;
+	private final LongAdder			active;
+	private final LongAdder			callerRuns;
+	private final LongAdder			blocked;
+	private final LongAdder			rejected;
+
+	/**
+	 * Create a callback executor.
+	 * 
+	 * @param delegate The executor service running the tasks.
+	 * @param policy The rejection policy applied when a ThreadPoolExecutor
+	 *            delegate is saturated.
+	 */
+	CallbackExecutor(ExecutorService delegate, RejectionPolicy policy) {
+		this.delegate = requireNonNull(delegate);
+		this.policy = requireNonNull(policy);
+		submitted = new LongAdder();
+		completed = new LongAdder();
+		active = new LongAdder();
+		callerRuns = new LongAdder();
+		blocked = new LongAdder();
+		rejected = new LongAdder();
+		if (delegate instanceof ThreadPoolExecutor) {
+			((ThreadPoolExecutor) delegate).setRejectedExecutionHandler(this);
+		}
+	}
+
+	/**
+	 * Returns a new virtual thread per task executor service.
+	 * 
+	 * @return A new virtual thread per task executor service or {@code null}
+	 *         if virtual threads are not supported by the Java runtime.
+	 */
+	static ExecutorService newVirtualThreadPerTaskExecutor() {
+		try {
+			return (ExecutorService) Executors.class
+					.getMethod("newVirtualThreadPerTaskExecutor")
+					.invoke(null);
+		} catch (NoSuchMethodException | IllegalAccessException
+				| InvocationTargetException e) {
+			return null; // Java runtime without virtual threads
+		}
+	}
+
+	/**
+	 * Returns a new work stealing executor service whose worker threads are
+	 * daemon threads.
+	 * 
+	 * @param parallelism The parallelism of the pool.
+	 * @return A new work stealing executor service.
+	 */
+	static ExecutorService newWorkStealingPool(int parallelism) {
+		// async mode processes the callbacks in submission order
+		return new ForkJoinPool(parallelism,
+				ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+	}
+
+	/**
+	 * Returns the delegate executor service.
+	 * 
+	 * @return The delegate executor service.
+	 */
+	ExecutorService delegate() {
+		return delegate;
+	}
+
+	@Override
+	public void execute(Runnable command) {
+		Counted task = new Counted(requireNonNull(command));
+		submitted.increment();
+		if (delegate instanceof ThreadPoolExecutor) {
+			delegate.execute(task); // this applies the rejection policy
+			return;
+		}
+		try {
+			delegate.execute(task);
+		} catch (RejectedExecutionException e) {
+			rejected.increment();
+			throw e;
+		}
+	}
+
+	/**
+	 * Apply the rejection policy when the ThreadPoolExecutor delegate is
+	 * saturated or shut down.
+	 */
+	@Override
+	public void rejectedExecution(Runnable task, ThreadPoolExecutor executor) {
+		switch (policy) {
+			case CALLER_RUNS :
+				callerRuns.increment();
+				task.run();
+				return;
+			case BLOCK :
+				if (!executor.isShutdown()) {
+					blocked.increment();
+					try {
+						executor.getQueue().put(task);
+						return;
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+				break;
+			default :
+				break;
+		}
+		rejected.increment();
+		throw new RejectedExecutionException(
+				"Task " + task + " rejected from " + executor);
+	}
+
+	/**
+	 * Returns the statistics of this executor.
+	 * 
+	 * @return The statistics of this executor.
+	 */
+	ExecutorStatisticsDTO statistics() {
+		ExecutorStatisticsDTO dto = new ExecutorStatisticsDTO();
+		// read completed before submitted so queued is not negative
+		dto.completed = completed.sum();
+		dto.active = active.intValue();
+		dto.rejected = rejected.sum();
+		dto.submitted = submitted.sum();
+		dto.queued = Math.max(0L,
+				dto.submitted - dto.rejected - dto.completed - dto.active);
+		dto.callerRuns = callerRuns.sum();
+		dto.blocked = blocked.sum();
+		if (delegate instanceof ThreadPoolExecutor) {
+			dto.poolSize = ((ThreadPoolExecutor) delegate).getPoolSize();
+		} else if (delegate instanceof ForkJoinPool) {
+			dto.poolSize = ((ForkJoinPool) delegate).getPoolSize();
+		} else {
+			dto.poolSize = -1;
+		}
+		return dto;
+	}
+
+	@Override
+	public void shutdown() {
+		delegate.shutdown();
+	}
+
+	@Override
+	public List<Runnable> shutdownNow() {
+		return delegate.shutdownNow();
+	}
+
+	@Override
+	public boolean isShutdown() {
+		return delegate.isShutdown();
+	}
+
+	@Override
+	public boolean isTerminated() {
+		return delegate.isTerminated();
+	}
+
+	@Override
+	public boolean awaitTermination(long timeout, TimeUnit unit)
+			throws InterruptedException {
+		return delegate.awaitTermination(timeout, unit);
+	}
+
+	@Override
+	public String toString() {
+		return super.toString() + "[" + delegate + "]";
+	}
+
+	/**
+	 * A task counting its execution.
+	 */
+	private final class Counted implements Runnable {
+		private final Runnable command;
+
+		Counted(Runnable command) {
+			this.command = command;
+		}
+
+		@Override
+		public void run() {
+			active.increment();
+			try {
+				command.run();
+			} finally {
+				active.decrement();
+				completed.increment();
+			}
+		}
+
+		@Override
+		public String toString() {
+			return command.toString();
+		}
+	}
+}
@@ -24,9 +24,10 @@ import java.lang.reflect.InvocationTargetException;
 import java.util.NoSuchElementException;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CompletionStage;
-import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
 import java.util.function.BiConsumer;
 
 import org.osgi.util.function.Consumer;
@@ -47,36 +48,52 @@ import org.osgi.util.function.Predicate;
  */
 final class DeferredPromiseImpl<T> extends PromiseImpl<T> {
 	/**
-	 * A CountDownLatch to manage the resolved state of this Promise.
+	 * The state of this Promise.
 	 * <p>
-	 * This object is used as the synchronizing object to provide a critical
-	 * section in {@link #tryResolve(Object, Throwable)} so that only a single
-	 * thread can write the resolved state variables and open the latch.
+	 * While this Promise is pending, the state is {@code null} if no callbacks
+	 * are registered, the single registered callback or a {@link Callbacks}
+	 * stack holding the registered callbacks in reverse order of registration.
+	 * A single callback is held directly so that the common case of a Promise
+	 * with one callback does not allocate a stack node.
+	 * <p>
+	 * The thread resolving this Promise atomically replaces the pending state
+	 * with {@link #RESOLVING}, which takes ownership of the registered
+	 * callbacks and excludes other resolvers, writes the resolved state
+	 * variables and then sets the state to {@link #RESOLVED} or
+	 * {@link #FAILED}.
 	 * <p>
 	 * The resolved state variables, {@link #value} and {@link #fail}, must only
-	 * be written when the latch is closed (getCount() != 0) and must only be
-	 * read when the latch is open (getCount() == 0). The latch state must
-	 * always be checked before writing or reading since the resolved state
-	 * variables' memory consistency is guarded by the latch.
+	 * be written in the {@link #RESOLVING} state and must only be read after
+	 * the state is observed to be {@link #RESOLVED} or {@link #FAILED}. The
+	 * write of the final state safely publishes them to be read by other
+	 * threads.
 	 */
-	private final CountDownLatch	resolved;
+	private volatile Object		state;
+
+	@SuppressWarnings("rawtypes")
+	private static final AtomicReferenceFieldUpdater<DeferredPromiseImpl,Object>	STATE	= AtomicReferenceFieldUpdater
+			.newUpdater(DeferredPromiseImpl.class, Object.class, "state");
+
+	private static final Object	RESOLVING	= new Object();
+	private static final Object	RESOLVED	= new Object();
+	private static final Object	FAILED		= new Object();
 
 	/**
 	 * The value of this Promise if successfully resolved.
 	 * 
-	 * @see resolved
+	 * @see #state
 	 */
-	// @GuardedBy("resolved")
-	private T						value;
+	// @GuardedBy("state")
+	private T					value;
 
 	/**
 	 * The failure of this Promise if resolved with a failure or {@code null} if
 	 * successfully resolved.
 	 * 
-	 * @see resolved
+	 * @see #state
 	 */
-	// @GuardedBy("resolved")
-	private Throwable				fail;
+	// @GuardedBy("state")
+	private Throwable			fail;
 
 	/**
 	 * Initialize this Promise.
@@ -85,7 +102,10 @@ final class DeferredPromiseImpl<T> extends PromiseImpl<T> {
 	 */
 	DeferredPromiseImpl(PromiseFactory factory) {
 		super(factory);
-		resolved = new CountDownLatch(1);
+		PromiseMetrics m = factory.metrics();
+		if (m != null) {
+			m.created.increment();
+		}
 	}
 
 	/**
@@ -93,7 +113,8 @@ final class DeferredPromiseImpl<T> extends PromiseImpl<T> {
 	 */
 	@Override
 	public boolean isDone() {
-		return resolved.getCount() == 0;
+		Object s = state;
+		return (s == RESOLVED) || (s == FAILED);
 	}
 
 	/**
@@ -105,14 +126,15 @@ final class DeferredPromiseImpl<T> extends PromiseImpl<T> {
 	 *         DeferredPromiseImpl is not resolved.
 	 */
 	PromiseImpl<T> orDone() {
-		// ensure latch open before reading state
-		if (!isDone()) {
-			return this;
-		}
-		if (fail == null) {
+		// ensure resolved before reading state
+		Object s = state;
+		if (s == RESOLVED) {
 			return resolved(value);
 		}
-		return failed(fail);
+		if (s == FAILED) {
+			return failed(fail);
+		}
+		return this;
 	}
 
 	/**
@@ -120,9 +142,8 @@ final class DeferredPromiseImpl<T> extends PromiseImpl<T> {
 	 */
 	@Override
 	public T getValue() throws InvocationTargetException, InterruptedException {
-		// ensure latch open before reading state
-		resolved.await();
-		if (fail == null) {
+		// ensure resolved before reading state
+		if (await() == RESOLVED) {
 			return value;
 		}
 		throw new InvocationTargetException(fail);
@@ -133,8 +154,144 @@ final class DeferredPromiseImpl<T> extends PromiseImpl<T> {
 	 */
 	@Override
 	public Throwable getFailure() throws InterruptedException {
-		// ensure latch open before reading state
-		resolved.await();
+		// ensure resolved before reading state
+		await();
+		return fail;
+	}
+
+	/**
+	 * Wait for this Promise to be resolved.
+	 * <p>
+	 * The calling thread only registers itself as a waiter and parks if this
+	 * Promise is not already resolved. If the calling thread is interrupted,
+	 * its waiter is removed so that repeatedly interrupted waits do not grow
+	 * the registered callbacks of a pending Promise.
+	 * 
+	 * @return The resolved state, {@link #RESOLVED} or {@link #FAILED}.
+	 * @throws InterruptedException If the calling thread is interrupted while
+	 *             waiting.
+	 */
+	private Object await() throws InterruptedException {
+		Object s = state;
+		if ((s == RESOLVED) || (s == FAILED)) {
+			return s;
+		}
+		if (Thread.interrupted()) {
+			throw new InterruptedException();
+		}
+		Waiter waiter = new Waiter(Thread.currentThread());
+		if (register(waiter)) {
+			while (((s = state) != RESOLVED) && (s != FAILED)) {
+				LockSupport.park(this);
+				if (Thread.interrupted()) {
+					unregister(waiter);
+					throw new InterruptedException();
+				}
+			}
+		}
+		return state;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	boolean register(Runnable callback) {
+		for (Object s;;) {
+			s = state;
+			if ((s == RESOLVED) || (s == FAILED)) {
+				return false;
+			}
+			if (s == RESOLVING) {
+				// the resolver is writing the resolved state variables
+				Thread.yield();
+				continue;
+			}
+			Object update = (s == null) ? callback : new Callbacks(callback, s);
+			if (STATE.compareAndSet(this, s, update)) {
+				PromiseMetrics m;
+				if (!(callback instanceof Waiter)
+						&& ((m = metrics()) != null)) {
+					m.callbacksWaiting.increment();
+				}
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Remove a waiter which is no longer waiting from the registered
+	 * callbacks. Nothing is removed if this Promise is resolving or resolved
+	 * since the resolver then owns the registered callbacks.
+	 * 
+	 * @param waiter The waiter to remove.
+	 */
+	private void unregister(Waiter waiter) {
+		for (Object s;;) {
+			s = state;
+			if ((s == null) || (s == RESOLVING) || (s == RESOLVED)
+					|| (s == FAILED)) {
+				return;
+			}
+			Object update = remove(s, waiter);
+			if ((update == s) || STATE.compareAndSet(this, s, update)) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Return the pending state without the specified waiter. The callbacks
+	 * registered after the waiter are copied onto the callbacks registered
+	 * before it since the stack nodes are immutable.
+	 * 
+	 * @param registered The pending state.
+	 * @param waiter The waiter to remove.
+	 * @return The pending state without the waiter or the specified pending
+	 *         state if it does not hold the waiter.
+	 */
+	private static Object remove(Object registered, Waiter waiter) {
+		int above = 0;
+		Object s = registered;
+		while ((s instanceof Callbacks)
+				&& (((Callbacks) s).callback != waiter)) {
+			s = ((Callbacks) s).next;
+			above++;
+		}
+		Object below;
+		if (s instanceof Callbacks) {
+			below = ((Callbacks) s).next;
+		} else if (s == waiter) {
+			below = null;
+		} else {
+			return registered;
+		}
+		Runnable[] copy = new Runnable[above];
+		s = registered;
+		for (int i = 0; i < above; i++) {
+			Callbacks c = (Callbacks) s;
+			copy[i] = c.callback;
+			s = c.next;
+		}
+		for (int i = above - 1; i >= 0; i--) {
+			below = (below == null) ? copy[i] : new Callbacks(copy[i], below);
+		}
+		return below;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	T value() {
+		return value;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	Throwable failure() {
 		return fail;
 	}
 
@@ -143,7 +300,7 @@ final class DeferredPromiseImpl<T> extends PromiseImpl<T> {
 	 */
 	@Override
 	void result(Result< ? super T> consumer) {
-		// ensure latch open before reading state
+		// ensure resolved before reading state
 		if (!isDone()) {
 			consumer.accept(null, new AssertionError("promise not resolved"));
 			return;
@@ -153,14 +310,15 @@ final class DeferredPromiseImpl<T> extends PromiseImpl<T> {
 
 	@Override
 	public String toString() {
-		// ensure latch open before reading state
-		if (!isDone()) {
-			return super.toString() + "[unresolved]";
-		}
-		if (fail == null) {
+		// ensure resolved before reading state
+		Object s = state;
+		if (s == RESOLVED) {
 			return super.toString() + "[resolved: " + value + "]";
 		}
-		return super.toString() + "[failed: " + fail + "]";
+		if (s == FAILED) {
+			return super.toString() + "[failed: " + fail + "]";
+		}
+		return super.toString() + "[unresolved]";
 	}
 
 	/**
@@ -175,25 +333,112 @@ final class DeferredPromiseImpl<T> extends PromiseImpl<T> {
 	 *         resolved this Promise.
 	 */
 	boolean tryResolve(T v, Throwable f) {
-		// critical section: only one resolver at a time
-		synchronized (resolved) {
-			if (isDone()) {
+		Object registered;
+		do {
+			registered = state;
+			if ((registered == RESOLVING) || (registered == RESOLVED)
+					|| (registered == FAILED)) {
 				return false;
 			}
-			/*
-			 * The resolved state variables must be set before opening the
-			 * latch. This safely publishes them to be read by other threads
-			 * that must verify the latch is open before reading.
-			 */
-			if (f == null) {
-				value = v;
+		} while (!STATE.compareAndSet(this, registered, RESOLVING));
+		// count the resolution before it is observable
+		PromiseMetrics m = metrics();
+		if (m != null) {
+			((f == null) ? m.resolved : m.failed).increment();
+		}
+		/*
+		 * The resolved state variables must be set before setting the final
+		 * state. This safely publishes them to be read by other threads that
+		 * must verify the final state before reading.
+		 */
+		if (f == null) {
+			value = v;
+			state = RESOLVED;
+		} else {
+			fail = f;
+			state = FAILED;
+		}
+		notifyCallbacks(registered, m); // call any registered callbacks
+		return true;
+	}
+
+	/**
+	 * Call the callbacks registered before this Promise was resolved in the
+	 * order they were registered.
+	 * 
+	 * @param registered The pending state taken by the resolver.
+	 * @param m The metrics of the factory or {@code null}.
+	 */
+	private void notifyCallbacks(Object registered, PromiseMetrics m) {
+		if (registered == null) {
+			return;
+		}
+		long ready = (m != null) ? System.nanoTime() : 0L;
+		if (!(registered instanceof Callbacks)) {
+			call((Runnable) registered, m, ready);
+			return;
+		}
+		// reverse the stack into registration order
+		Callbacks ordered = null;
+		for (Object s = registered; s != null;) {
+			if (s instanceof Callbacks) {
+				Callbacks c = (Callbacks) s;
+				ordered = new Callbacks(c.callback, ordered);
+				s = c.next;
 			} else {
-				fail = f;
+				ordered = new Callbacks((Runnable) s, ordered);
+				s = null;
 			}
-			resolved.countDown();
 		}
-		notifyCallbacks(); // call any registered callbacks
-		return true;
+		for (Callbacks c = ordered; c != null; c = (Callbacks) c.next) {
+			call(c.callback, m, ready);
+		}
+	}
+
+	private void call(Runnable callback, PromiseMetrics m, long ready) {
+		if (callback instanceof Waiter) {
+			callback.run(); // just unparks the waiting thread
+		} else if (m == null) {
+			execute(callback);
+		} else {
+			m.callbacksWaiting.decrement();
+			execute(m.timed(callback, ready));
+		}
+	}
+
+	/**
+	 * A node of the stack of registered callbacks. The bottom of the stack is
+	 * a single callback.
+	 * 
+	 * @Immutable
+	 */
+	private static final class Callbacks {
+		final Runnable	callback;
+		final Object	next;
+
+		Callbacks(Runnable callback, Object next) {
+			this.callback = callback;
+			this.next = next;
+		}
+	}
+
+	/**
+	 * A callback which unparks a thread waiting for this Promise to be
+	 * resolved.
+	 * 
+	 * @Immutable
+	 */
+	private static final class Waiter implements Runnable, InlineCallback {
+		private final Thread thread;
+
+		Waiter(Thread thread) {
+			this.thread = thread;
+		}
+
+		@Override
+		public void run() {
+			LockSupport.unpark(thread);
+		}
 	}
 
 	/**
@@ -695,7 +940,20 @@ final class DeferredPromiseImpl<T> extends PromiseImpl<T> {
 				this.future = null;
 			} else {
 				FailedPromiseImpl<T> timedout = failed(new TimeoutException());
-				Runnable operation = new ChainImpl(timedout);
+				PromiseMetrics m = metrics();
+				Runnable operation;
+				if (m == null) {
+					operation = new ChainImpl(timedout);
+				} else {
+					m.timeoutsScheduled.increment();
+					m.timeoutsOutstanding.increment();
+					operation = () -> {
+						m.timeoutsOutstanding.decrement();
+						if (tryResolve(null, timedout.failure())) {
+							m.timeoutsExpired.increment();
+						}
+					};
+				}
 				this.future = schedule(operation, millis, TimeUnit.MILLISECONDS);
 			}
 		}
@@ -708,8 +966,11 @@ final class DeferredPromiseImpl<T> extends PromiseImpl<T> {
 		@Override
 		public void accept(T v, Throwable f) {
 			tryResolve(v, f);
-			if (future != null) {
-				future.cancel(false);
+			if ((future != null) && future.cancel(false)) {
+				PromiseMetrics m = metrics();
+				if (m != null) {
+					m.timeoutsOutstanding.decrement();
+				}
 			}
 		}
 	}
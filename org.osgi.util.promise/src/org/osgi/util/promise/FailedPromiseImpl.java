@@ -80,6 +80,22 @@ final class FailedPromiseImpl<T> extends PromiseImpl<T> {
 		return fail;
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	T value() {
+		return null;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	Throwable failure() {
+		return fail;
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -24,15 +24,17 @@ import static org.osgi.util.promise.PromiseImpl.uncaughtException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-import java.util.concurrent.RejectedExecutionHandler;
 import java.util.concurrent.RunnableScheduledFuture;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
@@ -45,7 +47,10 @@ import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collector;
 
 import org.osgi.annotation.versioning.ConsumerType;
+import org.osgi.util.function.Consumer;
 import org.osgi.util.promise.PromiseImpl.InlineCallback;
+import org.osgi.util.promise.dto.ExecutorStatisticsDTO;
+import org.osgi.util.promise.dto.PromiseMetricsDTO;
 
 /**
  * Promise factory to create Deferred and Promise objects.
@@ -77,7 +82,42 @@ public class PromiseFactory {
 		 * callbacks added to a resolved Promise may be immediately called on
 		 * the caller's thread to avoid a thread context switch.
 		 */
-		CALLBACKS_EXECUTOR_THREAD
+		CALLBACKS_EXECUTOR_THREAD,
+		/**
+		 * Collect metrics of the Promises created by the Promise factory, or
+		 * chained to them, which can be obtained from
+		 * {@link PromiseFactory#getMetrics()}. If this option is not set,
+		 * recording a metric costs only a {@code null} check.
+		 *
+		 * @since 1.3
+		 */
+		METRICS
+	}
+
+	/**
+	 * Defines the policy applied when a
+	 * {@link PromiseFactory#boundedExecutor(int, int, RejectionPolicy)
+	 * bounded executor} is saturated: all its threads are busy and its queue
+	 * is full.
+	 * <p>
+	 * A callback of a Promise which is rejected by the callback executor is
+	 * called on the thread resolving the Promise.
+	 *
+	 * @since 1.3
+	 */
+	public enum RejectionPolicy {
+		/**
+		 * Run the task on the submitting thread.
+		 */
+		CALLER_RUNS,
+		/**
+		 * Block the submitting thread until the queue has room for the task.
+		 */
+		BLOCK,
+		/**
+		 * Reject the task with a {@code RejectedExecutionException}.
+		 */
+		ABORT
 	}
 
 	/**
@@ -99,6 +139,11 @@ public class PromiseFactory {
 	private final ScheduledExecutorService	scheduledExecutor;
 
 	private final boolean					allowCurrentThread;
+	/**
+	 * The metrics of this factory or {@code null} if the
+	 * {@link Option#METRICS} option is not set.
+	 */
+	private final PromiseMetrics			metrics;
 
 	/**
 	 * Create a new PromiseFactory with the specified callback executor.
@@ -156,19 +201,33 @@ public class PromiseFactory {
 		this.callbackExecutor = callbackExecutor;
 		this.scheduledExecutor = scheduledExecutor;
 		boolean callbacksExecutorOnly = false;
+		boolean collectMetrics = false;
 		for (Option option : options) {
 			if (option == Option.CALLBACKS_EXECUTOR_THREAD) {
 				callbacksExecutorOnly = true;
 				continue;
 			}
+			if (option == Option.METRICS) {
+				collectMetrics = true;
+				continue;
+			}
 			requireNonNull(option);
 			throw new AssertionError("unrecognized option: " + option);
 		}
 		this.allowCurrentThread = !callbacksExecutorOnly;
+		this.metrics = collectMetrics ? new PromiseMetrics() : null;
 	}
 
 	/**
 	 * Returns the executor to use for callbacks.
+	 * <p>
+	 * The default callback executor is a thread pool of up to 64 daemon
+	 * threads which calls a callback on the thread resolving the Promise when
+	 * all its threads are busy. The system property
+	 * {@code org.osgi.util.promise.callbackExecutor} can be set to
+	 * {@code workStealing} for a default callback executor using a work
+	 * stealing pool or to {@code virtual} for a default callback executor
+	 * using a virtual thread per callback, if supported by the Java runtime.
 	 * 
 	 * @return The executor to use for callbacks. This will be the default
 	 *         callback executor if {@code null} was specified for the callback
@@ -365,6 +424,410 @@ public class PromiseFactory {
 		}
 	}
 
+	/**
+	 * Returns a new Promise that is resolved with the value of the first of
+	 * the specified Promises to be successfully resolved.
+	 * <p>
+	 * The returned Promise uses the callback executor and scheduled executor of
+	 * this PromiseFactory object.
+	 * 
+	 * @param <T> The value type associated with the returned Promise.
+	 * @param <S> The value type of the specified Promises.
+	 * @param promises The Promises to wait for. Must not be {@code null} and
+	 *            all of the elements in the collection must not be
+	 *            {@code null}.
+	 * @return A Promise that is successfully resolved with the value of the
+	 *         first of the specified Promises to be successfully resolved. The
+	 *         returned Promise must be resolved with a failure of
+	 *         {@link FailedPromisesException} if all of the specified Promises
+	 *         are resolved with a failure or with a failure of
+	 *         {@code NoSuchElementException} if no Promises are specified.
+	 * @see #any(Collection, Consumer)
+	 * @since 1.3
+	 */
+	public <T, S extends T> Promise<T> any(Collection<Promise<S>> promises) {
+		return any(promises, null);
+	}
+
+	/**
+	 * Returns a new Promise that is resolved with the value of the first of
+	 * the specified Promises to be successfully resolved and cancels the
+	 * losing Promises.
+	 * <p>
+	 * The returned Promise uses the callback executor and scheduled executor of
+	 * this PromiseFactory object.
+	 * <p>
+	 * When the returned Promise is resolved, the specified cancellation
+	 * callback is called, using the callback executor, with each of the
+	 * specified Promises which is not yet resolved. The cancellation callback
+	 * can stop the work which would resolve the losing Promise, whose result
+	 * is no longer needed.
+	 * 
+	 * @param <T> The value type associated with the returned Promise.
+	 * @param <S> The value type of the specified Promises.
+	 * @param promises The Promises to wait for. Must not be {@code null} and
+	 *            all of the elements in the collection must not be
+	 *            {@code null}.
+	 * @param cancellation The callback to call with each losing Promise. May
+	 *            be {@code null} if the losing Promises are not to be
+	 *            cancelled.
+	 * @return A Promise that is successfully resolved with the value of the
+	 *         first of the specified Promises to be successfully resolved. The
+	 *         returned Promise must be resolved with a failure of
+	 *         {@link FailedPromisesException} if all of the specified Promises
+	 *         are resolved with a failure or with a failure of
+	 *         {@code NoSuchElementException} if no Promises are specified.
+	 * @since 1.3
+	 */
+	public <T, S extends T> Promise<T> any(Collection<Promise<S>> promises,
+			Consumer< ? super Promise<S>> cancellation) {
+		return first(promises, cancellation, false);
+	}
+
+	/**
+	 * Returns a new Promise that is resolved with the result of the first of
+	 * the specified Promises to be resolved.
+	 * <p>
+	 * The returned Promise uses the callback executor and scheduled executor of
+	 * this PromiseFactory object.
+	 * 
+	 * @param <T> The value type associated with the returned Promise.
+	 * @param <S> The value type of the specified Promises.
+	 * @param promises The Promises to wait for. Must not be {@code null} and
+	 *            all of the elements in the collection must not be
+	 *            {@code null}.
+	 * @return A Promise that is resolved with the value or failure of the
+	 *         first of the specified Promises to be resolved. The returned
+	 *         Promise must be resolved with a failure of
+	 *         {@code NoSuchElementException} if no Promises are specified.
+	 * @see #race(Collection, Consumer)
+	 * @since 1.3
+	 */
+	public <T, S extends T> Promise<T> race(Collection<Promise<S>> promises) {
+		return race(promises, null);
+	}
+
+	/**
+	 * Returns a new Promise that is resolved with the result of the first of
+	 * the specified Promises to be resolved and cancels the losing Promises.
+	 * <p>
+	 * The returned Promise uses the callback executor and scheduled executor of
+	 * this PromiseFactory object.
+	 * <p>
+	 * When the returned Promise is resolved, the specified cancellation
+	 * callback is called, using the callback executor, with each of the
+	 * specified Promises which is not yet resolved. The cancellation callback
+	 * can stop the work which would resolve the losing Promise, whose result
+	 * is no longer needed.
+	 * 
+	 * @param <T> The value type associated with the returned Promise.
+	 * @param <S> The value type of the specified Promises.
+	 * @param promises The Promises to wait for. Must not be {@code null} and
+	 *            all of the elements in the collection must not be
+	 *            {@code null}.
+	 * @param cancellation The callback to call with each losing Promise. May
+	 *            be {@code null} if the losing Promises are not to be
+	 *            cancelled.
+	 * @return A Promise that is resolved with the value or failure of the
+	 *         first of the specified Promises to be resolved. The returned
+	 *         Promise must be resolved with a failure of
+	 *         {@code NoSuchElementException} if no Promises are specified.
+	 * @since 1.3
+	 */
+	public <T, S extends T> Promise<T> race(Collection<Promise<S>> promises,
+			Consumer< ? super Promise<S>> cancellation) {
+		return first(promises, cancellation, true);
+	}
+
+	private <T, S extends T> Promise<T> first(Collection<Promise<S>> promises,
+			Consumer< ? super Promise<S>> cancellation, boolean race) {
+		if (promises.isEmpty()) {
+			return failed(new NoSuchElementException());
+		}
+
+		/* make a copy and capture the ordering */
+		List<Promise<S>> list = new ArrayList<>(promises);
+
+		DeferredPromiseImpl<T> chained = new DeferredPromiseImpl<>(this);
+		First<T,S> first = new First<>(chained, list, cancellation, race);
+		for (Promise<S> p : list) {
+			p.onResolve(first.new Branch(p));
+		}
+		return chained.orDone();
+	}
+
+	/**
+	 * Callbacks used to resolve the specified Promise with the first of the
+	 * specified list of Promises to be resolved for the
+	 * {@link PromiseFactory#any(Collection, Consumer)} and
+	 * {@link PromiseFactory#race(Collection, Consumer)} methods.
+	 * 
+	 * @ThreadSafe
+	 */
+	private static final class First<T, S extends T> {
+		private final DeferredPromiseImpl<T>		chained;
+		private final List<Promise<S>>				promises;
+		private final Consumer< ? super Promise<S>>	cancellation;
+		private final boolean						race;
+		private final AtomicInteger					failureCount;
+
+		First(DeferredPromiseImpl<T> chained, List<Promise<S>> promises,
+				Consumer< ? super Promise<S>> cancellation, boolean race) {
+			this.chained = requireNonNull(chained);
+			this.promises = requireNonNull(promises);
+			this.cancellation = cancellation;
+			this.race = race;
+			this.failureCount = new AtomicInteger(promises.size());
+		}
+
+		void resolved(Promise<S> promise, S v, Throwable f) {
+			if ((f == null) || race) {
+				if (chained.tryResolve(v, f) && (cancellation != null)) {
+					chained.execute(() -> cancel(promise));
+				}
+				return;
+			}
+			if (failureCount.decrementAndGet() != 0) {
+				return;
+			}
+			Throwable cause;
+			try {
+				cause = promises.get(0).getFailure();
+			} catch (Throwable e) {
+				cause = e;
+			}
+			chained.tryResolve(null, new FailedPromisesException(
+					new ArrayList<Promise< ? >>(promises), cause));
+		}
+
+		/**
+		 * Call the cancellation callback with the losing Promises which are
+		 * not yet resolved.
+		 */
+		private void cancel(Promise<S> winner) {
+			for (Promise<S> p : promises) {
+				if ((p != winner) && !p.isDone()) {
+					try {
+						cancellation.accept(p);
+					} catch (Throwable t) {
+						uncaughtException(t);
+					}
+				}
+			}
+		}
+
+		/**
+		 * A callback for one of the specified Promises.
+		 * 
+		 * @Immutable
+		 */
+		final class Branch implements Runnable, InlineCallback {
+			private final Promise<S> promise;
+
+			Branch(Promise<S> promise) {
+				this.promise = requireNonNull(promise);
+			}
+
+			@Override
+			public void run() {
+				PromiseImpl.result(promise, (v, f) -> resolved(promise, v, f));
+			}
+		}
+	}
+
+	/**
+	 * Returns a new Promise that is resolved with the specified Promises once
+	 * they are all resolved.
+	 * <p>
+	 * The returned Promise uses the callback executor and scheduled executor of
+	 * this PromiseFactory object.
+	 * <p>
+	 * Unlike {@link #all(Collection)}, the returned Promise is successfully
+	 * resolved even if some of the specified Promises are resolved with a
+	 * failure. The value or failure of each of the specified Promises can be
+	 * obtained from the resolved Promises in the List.
+	 * 
+	 * @param <T> The value type of the specified Promises.
+	 * @param promises The Promises which must be resolved before the returned
+	 *            Promise must be resolved. Must not be {@code null} and all of
+	 *            the elements in the collection must not be {@code null}.
+	 * @return A Promise that is successfully resolved with a List of the
+	 *         specified Promises, in the order of the specified Promises, when
+	 *         they are all resolved. The List in the returned Promise is the
+	 *         property of the caller and is modifiable.
+	 * @since 1.3
+	 */
+	public <T> Promise<List<Promise<T>>> allSettled(
+			Collection<Promise<T>> promises) {
+		/* make a copy and capture the ordering */
+		List<Promise<T>> list = new ArrayList<>(promises);
+		if (list.isEmpty()) {
+			return resolved(list);
+		}
+		DeferredPromiseImpl<List<Promise<T>>> chained = new DeferredPromiseImpl<>(
+				this);
+		AtomicInteger remaining = new AtomicInteger(list.size());
+		Runnable settled = new SettledAll<>(chained, list, remaining);
+		for (Promise<T> p : list) {
+			p.onResolve(settled);
+		}
+		return chained.orDone();
+	}
+
+	/**
+	 * A callback used to resolve the specified Promise when the specified list
+	 * of Promises are resolved for the
+	 * {@link PromiseFactory#allSettled(Collection)} method.
+	 * 
+	 * @ThreadSafe
+	 */
+	private static final class SettledAll<T>
+			implements Runnable, InlineCallback {
+		private final DeferredPromiseImpl<List<Promise<T>>>	chained;
+		private final List<Promise<T>>						promises;
+		private final AtomicInteger							remaining;
+
+		SettledAll(DeferredPromiseImpl<List<Promise<T>>> chained,
+				List<Promise<T>> promises, AtomicInteger remaining) {
+			this.chained = requireNonNull(chained);
+			this.promises = requireNonNull(promises);
+			this.remaining = requireNonNull(remaining);
+		}
+
+		@Override
+		public void run() {
+			if (remaining.decrementAndGet() == 0) {
+				chained.tryResolve(promises, null);
+			}
+		}
+	}
+
+	/**
+	 * Returns a new Promise that is resolved with the Promises returned by the
+	 * specified tasks once they are all resolved, calling at most the
+	 * specified number of tasks whose Promise is not yet resolved at a time.
+	 * <p>
+	 * The returned Promise uses the callback executor and scheduled executor of
+	 * this PromiseFactory object.
+	 * <p>
+	 * The tasks are called in order. The first tasks, up to the specified
+	 * limit, are called on the calling thread. Each subsequent task is called
+	 * when the Promise of an earlier task is resolved, as a callback of that
+	 * Promise. If a task throws an exception or returns {@code null}, its
+	 * Promise in the List is resolved with the failure.
+	 * 
+	 * @param <T> The value type of the Promises returned by the tasks.
+	 * @param tasks The tasks, each starting work whose result is the value of
+	 *            the returned Promise. Must not be {@code null} and all of the
+	 *            elements in the collection must not be {@code null}.
+	 * @param limit The maximum number of tasks whose Promise is not yet
+	 *            resolved. Must be greater than zero.
+	 * @return A Promise that is successfully resolved with a List of the
+	 *         Promises returned by the tasks, in the order of the specified
+	 *         tasks, when they are all resolved. The List in the returned
+	 *         Promise is the property of the caller and is modifiable.
+	 * @throws IllegalArgumentException If the limit is not greater than zero.
+	 * @since 1.3
+	 */
+	public <T> Promise<List<Promise<T>>> allSettled(
+			Collection< ? extends Callable< ? extends Promise<T>>> tasks,
+			int limit) {
+		if (limit <= 0) {
+			throw new IllegalArgumentException(
+					"limit must be greater than zero: " + limit);
+		}
+		/* make a copy and capture the ordering */
+		List<Callable< ? extends Promise<T>>> list = new ArrayList<>(tasks);
+		if (list.isEmpty()) {
+			List<Promise<T>> value = new ArrayList<>();
+			return resolved(value);
+		}
+		DeferredPromiseImpl<List<Promise<T>>> chained = new DeferredPromiseImpl<>(
+				this);
+		SettledLimit<T> settled = new SettledLimit<>(chained, list);
+		for (int i = Math.min(limit, list.size()); i > 0; i--) {
+			settled.release();
+		}
+		return chained.orDone();
+	}
+
+	/**
+	 * Calls the tasks, limiting the number of tasks whose Promise is not yet
+	 * resolved, and resolves the specified Promise when the Promises of all
+	 * the tasks are resolved for the
+	 * {@link PromiseFactory#allSettled(Collection, int)} method.
+	 * 
+	 * @ThreadSafe
+	 */
+	private final class SettledLimit<T> implements Runnable {
+		private final DeferredPromiseImpl<List<Promise<T>>>	chained;
+		private final List<Callable< ? extends Promise<T>>>	tasks;
+		private final Promise< ? >[]						results;
+		private final AtomicInteger							next;
+		private final AtomicInteger							remaining;
+		/**
+		 * The number of released slots not yet used to call a task. Only the
+		 * thread which increments it from zero calls tasks, so a task whose
+		 * Promise is already resolved does not recursively call the next task.
+		 */
+		private final AtomicInteger							released;
+
+		SettledLimit(DeferredPromiseImpl<List<Promise<T>>> chained,
+				List<Callable< ? extends Promise<T>>> tasks) {
+			this.chained = requireNonNull(chained);
+			this.tasks = requireNonNull(tasks);
+			this.results = new Promise< ? >[tasks.size()];
+			this.next = new AtomicInteger();
+			this.remaining = new AtomicInteger(tasks.size());
+			this.released = new AtomicInteger();
+		}
+
+		/**
+		 * Release a slot to call the next task.
+		 */
+		void release() {
+			if (released.getAndIncrement() != 0) {
+				return;
+			}
+			do {
+				int index = next.getAndIncrement();
+				if (index < results.length) {
+					call(index);
+				}
+			} while (released.decrementAndGet() != 0);
+		}
+
+		private void call(int index) {
+			Promise<T> promise;
+			try {
+				promise = requireNonNull(tasks.get(index).call(),
+						"task returned null");
+			} catch (Throwable t) {
+				promise = failed(t);
+			}
+			results[index] = promise;
+			promise.onResolve(this);
+		}
+
+		/**
+		 * Called when the Promise of a task is resolved.
+		 */
+		@Override
+		public void run() {
+			if (remaining.decrementAndGet() == 0) {
+				List<Promise<T>> value = new ArrayList<>(results.length);
+				for (Promise< ? > p : results) {
+					@SuppressWarnings("unchecked")
+					Promise<T> result = (Promise<T>) p;
+					value.add(result);
+				}
+				chained.tryResolve(value, null);
+				return;
+			}
+			release();
+		}
+	}
+
 	/**
 	 * Returns an Executor implementation that executes tasks immediately on the
 	 * thread calling the {@code Executor.execute} method.
@@ -376,10 +839,191 @@ public class PromiseFactory {
 		return new InlineExecutor();
 	}
 
+	/**
+	 * Returns an ExecutorService which runs tasks on a work stealing
+	 * {@code ForkJoinPool} with a parallelism of the number of available
+	 * processors.
+	 * <p>
+	 * The tasks are run in submission order by the daemon worker threads of
+	 * the pool. The returned executor service counts its saturation which can
+	 * be obtained by {@link #getExecutorStatistics()} from a PromiseFactory
+	 * using the returned executor service as its callback executor.
+	 * 
+	 * @return An ExecutorService which runs tasks on a work stealing pool.
+	 * @since 1.3
+	 */
+	public static ExecutorService workStealingExecutor() {
+		return workStealingExecutor(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Returns an ExecutorService which runs tasks on a work stealing
+	 * {@code ForkJoinPool} with the specified parallelism.
+	 * <p>
+	 * The tasks are run in submission order by the daemon worker threads of
+	 * the pool. The returned executor service counts its saturation which can
+	 * be obtained by {@link #getExecutorStatistics()} from a PromiseFactory
+	 * using the returned executor service as its callback executor.
+	 * 
+	 * @param parallelism The parallelism of the pool. Must be greater than
+	 *            zero.
+	 * @return An ExecutorService which runs tasks on a work stealing pool.
+	 * @throws IllegalArgumentException If the parallelism is not greater than
+	 *             zero.
+	 * @since 1.3
+	 */
+	public static ExecutorService workStealingExecutor(int parallelism) {
+		return new CallbackExecutor(
+				CallbackExecutor.newWorkStealingPool(parallelism),
+				RejectionPolicy.ABORT);
+	}
+
+	/**
+	 * Returns an ExecutorService which runs each task on a new virtual
+	 * thread.
+	 * <p>
+	 * Virtual threads are only supported by some Java runtimes. The returned
+	 * executor service counts its saturation which can be obtained by
+	 * {@link #getExecutorStatistics()} from a PromiseFactory using the
+	 * returned executor service as its callback executor.
+	 * 
+	 * @return An ExecutorService which runs each task on a new virtual
+	 *         thread.
+	 * @throws UnsupportedOperationException If the Java runtime does not
+	 *             support virtual threads.
+	 * @since 1.3
+	 */
+	public static ExecutorService virtualThreadExecutor() {
+		ExecutorService virtual = CallbackExecutor
+				.newVirtualThreadPerTaskExecutor();
+		if (virtual == null) {
+			throw new UnsupportedOperationException(
+					"virtual threads are not supported by the Java runtime");
+		}
+		return new CallbackExecutor(virtual, RejectionPolicy.ABORT);
+	}
+
+	/**
+	 * Returns an ExecutorService which runs tasks on a fixed number of daemon
+	 * threads and queues at most the specified number of tasks waiting for a
+	 * thread.
+	 * <p>
+	 * When all the threads are busy and the queue is full, the specified
+	 * rejection policy is applied to a submitted task. Idle threads are
+	 * terminated after 60 seconds and created again when needed. The returned
+	 * executor service counts its saturation which can be obtained by
+	 * {@link #getExecutorStatistics()} from a PromiseFactory using the
+	 * returned executor service as its callback executor.
+	 * 
+	 * @param threads The maximum number of threads. Must be greater than
+	 *            zero.
+	 * @param queueCapacity The maximum number of queued tasks. Must be greater
+	 *            than zero.
+	 * @param policy The rejection policy applied when the executor is
+	 *            saturated.
+	 * @return An ExecutorService with a bounded queue.
+	 * @throws IllegalArgumentException If the number of threads or the queue
+	 *             capacity is not greater than zero.
+	 * @since 1.3
+	 */
+	public static ExecutorService boundedExecutor(int threads,
+			int queueCapacity, RejectionPolicy policy) {
+		requireNonNull(policy);
+		ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60L,
+				TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(queueCapacity), r -> {
+					Thread t = Executors.defaultThreadFactory().newThread(r);
+					t.setName("PromiseFactory," + t.getName());
+					t.setDaemon(true);
+					return t;
+				});
+		pool.allowCoreThreadTimeOut(true);
+		return new CallbackExecutor(pool, policy);
+	}
+
+	/**
+	 * Returns the saturation counters of the callback executor of this
+	 * PromiseFactory.
+	 * <p>
+	 * The counters are available for the default callback executor and the
+	 * executors returned by {@link #workStealingExecutor(int)},
+	 * {@link #virtualThreadExecutor()} and
+	 * {@link #boundedExecutor(int, int, RejectionPolicy)}.
+	 * 
+	 * @return The saturation counters of the callback executor or
+	 *         {@code null} if the callback executor does not count its
+	 *         saturation.
+	 * @since 1.3
+	 */
+	public ExecutorStatisticsDTO getExecutorStatistics() {
+		Executor executor = executor();
+		if (executor instanceof CallbackExecutor) {
+			return ((CallbackExecutor) executor).statistics();
+		}
+		return null;
+	}
+
+	/**
+	 * Returns a ScheduledExecutorService implemented by a hashed hierarchical
+	 * timing wheel.
+	 * <p>
+	 * The returned scheduled executor service schedules and cancels tasks in
+	 * constant time which makes it suitable as the scheduled executor of a
+	 * PromiseFactory whose Promises have a large number of outstanding
+	 * {@link Promise#timeout(long) timeouts}. Time is divided into ticks of
+	 * the specified duration and the tasks which expire during a tick are run
+	 * together, no earlier than their delay and about at most one tick later.
+	 * The tasks are run on a single daemon timer thread, so they must be short
+	 * running. The timer thread is created when the first task is scheduled.
+	 * <p>
+	 * The default scheduled executor is implemented by a timing wheel if the
+	 * boolean system property {@code org.osgi.util.promise.timingWheel} is set
+	 * to {@code true}. The system property
+	 * {@code org.osgi.util.promise.timingWheel.tick} can be set to the tick
+	 * duration, in milliseconds, of the default timing wheel which is 10
+	 * milliseconds otherwise.
+	 * 
+	 * @param tick The duration of a tick. Must be greater than zero.
+	 * @param unit The time unit of the tick duration.
+	 * @return A ScheduledExecutorService implemented by a timing wheel.
+	 * @throws IllegalArgumentException If the tick duration is not greater
+	 *             than zero.
+	 * @since 1.3
+	 */
+	public static ScheduledExecutorService timingWheelScheduler(long tick,
+			TimeUnit unit) {
+		return new TimingWheel(tick, requireNonNull(unit));
+	}
+
+	/**
+	 * Returns the metrics collected by this PromiseFactory.
+	 * <p>
+	 * The metrics are collected, from when this PromiseFactory was created,
+	 * only if this PromiseFactory was created with the {@link Option#METRICS}
+	 * option. Each call returns a new snapshot of the metrics. The counters
+	 * are read without stopping the Promises being resolved, so a snapshot
+	 * taken while Promises are being resolved may not be exactly consistent.
+	 * 
+	 * @return A snapshot of the metrics of this PromiseFactory or {@code null}
+	 *         if this PromiseFactory does not collect metrics.
+	 * @since 1.3
+	 */
+	public PromiseMetricsDTO getMetrics() {
+		PromiseMetrics m = metrics;
+		if (m == null) {
+			return null;
+		}
+		return m.toDTO(getExecutorStatistics());
+	}
+
 	boolean allowCurrentThread() {
 		return allowCurrentThread;
 	}
 
+	PromiseMetrics metrics() {
+		return metrics;
+	}
+
 	/**
 	 * An Executor implementation which executes the task immediately on the
 	 * thread calling the {@code Executor.execute} method.
@@ -402,16 +1046,37 @@ public class PromiseFactory {
 	 * @Immutable
 	 */
 	private static final class DefaultExecutors
-			implements ThreadFactory, RejectedExecutionHandler, Runnable {
-		private static final DefaultExecutors	callbacks;
-		private static final ScheduledExecutor	scheduledExecutor;
-		private static final ThreadPoolExecutor	callbackExecutor;
+			implements ThreadFactory, Runnable {
+		private static final DefaultExecutors			callbacks;
+		private static final ScheduledExecutorService	scheduledExecutor;
+		private static final CallbackExecutor			callbackExecutor;
 		static {
 			callbacks = new DefaultExecutors();
-			scheduledExecutor = new ScheduledExecutor(2, callbacks);
-			callbackExecutor = new ThreadPoolExecutor(0, 64, 60L,
-					TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
-					callbacks, callbacks);
+			if (Boolean.getBoolean("org.osgi.util.promise.timingWheel")) {
+				long tick = Long.getLong(
+						"org.osgi.util.promise.timingWheel.tick", 10L)
+						.longValue();
+				scheduledExecutor = new TimingWheel(
+						(tick > 0L) ? tick : 10L, TimeUnit.MILLISECONDS,
+						callbacks);
+			} else {
+				scheduledExecutor = new ScheduledExecutor(2, callbacks);
+			}
+			ExecutorService delegate = null;
+			String model = System
+					.getProperty("org.osgi.util.promise.callbackExecutor");
+			if ("virtual".equals(model)) {
+				delegate = CallbackExecutor.newVirtualThreadPerTaskExecutor();
+			} else if ("workStealing".equals(model)) {
+				delegate = CallbackExecutor.newWorkStealingPool(
+						Runtime.getRuntime().availableProcessors());
+			}
+			if (delegate == null) {
+				delegate = new ThreadPoolExecutor(0, 64, 60L, TimeUnit.SECONDS,
+						new SynchronousQueue<Runnable>(), callbacks);
+			}
+			callbackExecutor = new CallbackExecutor(delegate,
+					RejectionPolicy.CALLER_RUNS);
 		}
 
 		static Executor callbackExecutor() {
@@ -454,28 +1119,47 @@ public class PromiseFactory {
 		}
 
 		/**
-		 * Call the callback using the caller's thread because the thread pool
-		 * rejected the execution.
+		 * Shutdown hook
 		 */
 		@Override
-		public void rejectedExecution(Runnable callback,
-				ThreadPoolExecutor executor) {
+		public void run() {
+			// limit new thread creation
+			ExecutorService delegate = callbackExecutor.delegate();
+			if (delegate instanceof ThreadPoolExecutor) {
+				ThreadPoolExecutor pool = (ThreadPoolExecutor) delegate;
+				pool.setMaximumPoolSize(Math.max(1, pool.getPoolSize()));
+			}
+			// Run all delayed callbacks now
+			if (scheduledExecutor instanceof TimingWheel) {
+				for (Runnable r : scheduledExecutor.shutdownNow()) {
+					try {
+						r.run();
+					} catch (Throwable t) {
+						uncaughtException(t);
+					}
+				}
+			} else {
+				runDelayedTasks((ScheduledExecutor) scheduledExecutor);
+			}
 			try {
-				callback.run();
-			} catch (Throwable t) {
-				uncaughtException(t);
+				scheduledExecutor.awaitTermination(20, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			// Shutdown callback executor
+			callbackExecutor.shutdown();
+			try {
+				callbackExecutor.awaitTermination(20, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
 			}
 		}
 
 		/**
-		 * Shutdown hook
+		 * Run the delayed tasks of the ScheduledThreadPoolExecutor now.
 		 */
-		@Override
-		public void run() {
-			// limit new thread creation
-			callbackExecutor.setMaximumPoolSize(
-					Math.max(1, callbackExecutor.getPoolSize()));
-			// Run all delayed callbacks now
+		private static void runDelayedTasks(
+				ScheduledExecutor scheduledExecutor) {
 			scheduledExecutor.shutdown();
 			BlockingQueue<Runnable> queue = scheduledExecutor.getQueue();
 			if (!queue.isEmpty()) {
@@ -491,18 +1175,6 @@ public class PromiseFactory {
 				}
 				scheduledExecutor.shutdown();
 			}
-			try {
-				scheduledExecutor.awaitTermination(20, TimeUnit.SECONDS);
-			} catch (InterruptedException e) {
-				Thread.currentThread().interrupt();
-			}
-			// Shutdown callback executor
-			callbackExecutor.shutdown();
-			try {
-				callbackExecutor.awaitTermination(20, TimeUnit.SECONDS);
-			} catch (InterruptedException e) {
-				Thread.currentThread().interrupt();
-			}
 		}
 
 		/**
@@ -20,9 +20,9 @@ package org.osgi.util.promise;
 
 import static java.util.Objects.requireNonNull;
 
+import java.util.NoSuchElementException;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
@@ -45,13 +45,7 @@ abstract class PromiseImpl<T> implements Promise<T> {
 	/**
 	 * The factory to use for callbacks and scheduled operations.
 	 */
-	private final PromiseFactory					factory;
-	/**
-	 * A ConcurrentLinkedQueue to hold the callbacks for this Promise, so no
-	 * additional synchronization is required to write to or read from the
-	 * queue.
-	 */
-	private final ConcurrentLinkedQueue<Runnable>	callbacks;
+	private final PromiseFactory	factory;
 
 	/**
 	 * Initialize this Promise.
@@ -61,7 +55,6 @@ abstract class PromiseImpl<T> implements Promise<T> {
 	 */
 	PromiseImpl(PromiseFactory factory) {
 		this.factory = requireNonNull(factory);
-		callbacks = new ConcurrentLinkedQueue<>();
 	}
 
 	/**
@@ -120,35 +113,86 @@ abstract class PromiseImpl<T> implements Promise<T> {
 	@Override
 	public Promise<T> onResolve(Runnable callback) {
 		requireNonNull(callback);
-		if (isDone() && ((callback instanceof InlineCallback)
-				|| factory.allowCurrentThread())) {
+		if (!isDone() && register(callback)) {
+			return this; // called when this Promise is resolved
+		}
+		if ((callback instanceof InlineCallback)
+				|| factory.allowCurrentThread()) {
 			try {
 				callback.run();
 			} catch (Throwable t) {
 				uncaughtException(t);
 			}
 		} else {
-			callbacks.offer(callback);
-			notifyCallbacks(); // call any registered callbacks
+			PromiseMetrics m = metrics();
+			execute((m == null) ? callback
+					: m.timed(callback, System.nanoTime()));
 		}
 		return this;
 	}
 
 	/**
-	 * Call any registered callbacks if this Promise is resolved.
+	 * Register a callback to be called when this Promise is resolved.
+	 * <p>
+	 * This Promise type is always resolved, so the callback is never
+	 * registered.
+	 * 
+	 * @param callback The callback.
+	 * @return {@code true} if the callback was registered; {@code false} if
+	 *         this Promise is resolved and the caller must call the callback.
+	 * @since 1.3
 	 */
-	void notifyCallbacks() {
-		if (!isDone()) {
-			return; // return if not resolved
-		}
-		/*
-		 * Note: multiple threads can be in this method removing callbacks from
-		 * the queue and executing them, so the order in which callbacks are
-		 * executed cannot be specified.
-		 */
-		for (Runnable callback; (callback = callbacks.poll()) != null;) {
-			execute(callback);
-		}
+	boolean register(Runnable callback) {
+		return false;
+	}
+
+	/**
+	 * Return whether a synchronous transformation of this Promise can be
+	 * fused: called immediately on the current thread returning a resolved
+	 * Promise without creating a chained DeferredPromiseImpl and without
+	 * scheduling a callback on the executor.
+	 * <p>
+	 * This is the case when this Promise is resolved and the factory allows
+	 * callbacks to be called on the current thread.
+	 * 
+	 * @return {@code true} if a transformation of this Promise can be fused.
+	 * @since 1.3
+	 */
+	boolean fusible() {
+		return isDone() && factory.allowCurrentThread();
+	}
+
+	/**
+	 * Return the value of this resolved Promise.
+	 * <p>
+	 * Must only be called after {@link #isDone()} returns {@code true}.
+	 * 
+	 * @return The value of this Promise or {@code null} if this Promise was
+	 *         resolved with a failure.
+	 * @since 1.3
+	 */
+	abstract T value();
+
+	/**
+	 * Return the failure of this resolved Promise.
+	 * <p>
+	 * Must only be called after {@link #isDone()} returns {@code true}.
+	 * 
+	 * @return The failure of this Promise or {@code null} if this Promise was
+	 *         successfully resolved.
+	 * @since 1.3
+	 */
+	abstract Throwable failure();
+
+	/**
+	 * Return the metrics of the factory.
+	 * 
+	 * @return The metrics of the factory or {@code null} if the factory does
+	 *         not collect metrics.
+	 * @since 1.3
+	 */
+	PromiseMetrics metrics() {
+		return factory.metrics();
 	}
 
 	/**
@@ -161,6 +205,7 @@ abstract class PromiseImpl<T> implements Promise<T> {
 			try {
 				factory.executor().execute(operation);
 			} catch (RejectedExecutionException e) {
+				rejected();
 				operation.run();
 			}
 		} catch (Throwable t) {
@@ -180,6 +225,7 @@ abstract class PromiseImpl<T> implements Promise<T> {
 				return factory.scheduledExecutor().schedule(operation, delay,
 						unit);
 			} catch (RejectedExecutionException e) {
+				rejected();
 				execute(operation);
 			}
 		} catch (Throwable t) {
@@ -188,6 +234,13 @@ abstract class PromiseImpl<T> implements Promise<T> {
 		return null;
 	}
 
+	private void rejected() {
+		PromiseMetrics m = metrics();
+		if (m != null) {
+			m.rejectedExecutions.increment();
+		}
+	}
+
 	/**
 	 * Handle an uncaught exception from a Runnable.
 	 * 
@@ -284,6 +337,35 @@ abstract class PromiseImpl<T> implements Promise<T> {
 	 */
 	@Override
 	public <R> Promise<R> then(Success<? super T, ? extends R> success, Failure failure) {
+		if (fusible()) {
+			Throwable f = failure();
+			if (f != null) {
+				if (failure != null) {
+					try {
+						failure.fail(this);
+					} catch (Throwable e) {
+						f = e; // propagate new exception
+					}
+				}
+				return failed(f);
+			}
+			if (success != null) {
+				Promise< ? extends R> returned;
+				try {
+					@SuppressWarnings("unchecked")
+					Success<T, ? extends R> s = (Success<T, ? extends R>) success;
+					returned = s.call(this);
+				} catch (Throwable e) {
+					return failed(e);
+				}
+				if (returned != null) {
+					DeferredPromiseImpl<R> chained = deferred();
+					returned.onResolve(chained.new Chain(returned));
+					return chained.orDone();
+				}
+			}
+			return resolved(null);
+		}
 		DeferredPromiseImpl<R> chained = deferred();
 		onResolve(chained.new Then<>(this, success, failure));
 		return chained.orDone();
@@ -302,6 +384,17 @@ abstract class PromiseImpl<T> implements Promise<T> {
 	 */
 	@Override
 	public Promise<T> thenAccept(Consumer< ? super T> consumer) {
+		if (fusible()) {
+			requireNonNull(consumer);
+			if (failure() == null) {
+				try {
+					consumer.accept(value());
+				} catch (Throwable e) {
+					return failed(e);
+				}
+			}
+			return this;
+		}
 		DeferredPromiseImpl<T> chained = deferred();
 		onResolve(chained.new ThenAccept(this, consumer));
 		return chained.orDone();
@@ -313,6 +406,19 @@ abstract class PromiseImpl<T> implements Promise<T> {
 	 */
 	@Override
 	public Promise<T> filter(Predicate<? super T> predicate) {
+		if (fusible()) {
+			requireNonNull(predicate);
+			if (failure() == null) {
+				try {
+					if (!predicate.test(value())) {
+						return failed(new NoSuchElementException());
+					}
+				} catch (Throwable e) { // propagate new exception
+					return failed(e);
+				}
+			}
+			return this;
+		}
 		DeferredPromiseImpl<T> chained = deferred();
 		onResolve(chained.new Filter(this, predicate));
 		return chained.orDone();
@@ -323,6 +429,18 @@ abstract class PromiseImpl<T> implements Promise<T> {
 	 */
 	@Override
 	public <R> Promise<R> map(Function<? super T, ? extends R> mapper) {
+		if (fusible()) {
+			requireNonNull(mapper);
+			Throwable f = failure();
+			if (f != null) {
+				return failed(f);
+			}
+			try {
+				return resolved(mapper.apply(value()));
+			} catch (Throwable e) { // propagate new exception
+				return failed(e);
+			}
+		}
 		DeferredPromiseImpl<R> chained = deferred();
 		onResolve(chained.new Map<>(this, mapper));
 		return chained.orDone();
@@ -0,0 +1,168 @@
+/*******************************************************************************
+ * Copyright (c) Contributors to the Eclipse Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0 
+ *******************************************************************************/
+
+package org.osgi.util.promise;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.osgi.util.promise.dto.ExecutorStatisticsDTO;
+import org.osgi.util.promise.dto.LatencyHistogramDTO;
+import org.osgi.util.promise.dto.PromiseMetricsDTO;
+
+/**
+ * Metrics of a Promise factory. Recording a metric does not allocate objects
+ * except to time a callback.
+ * 
+ * @ThreadSafe
+ * @author $Id$
+ * @since 1.3
+ */
+final class PromiseMetrics {
+	private final long	started;
+	final LongAdder		created;
+	final LongAdder		resolved;
+	final LongAdder		failed;
+	final LongAdder		callbacksWaiting;
+	final LongAdder		callbacksExecuted;
+	final LongAdder		rejectedExecutions;
+	final LongAdder		timeoutsScheduled;
+	final LongAdder		timeoutsExpired;
+	final LongAdder		timeoutsOutstanding;
+	final Histogram		callbackLatency;
+	final Histogram		callbackDuration;
+
+	PromiseMetrics() {
+		started = System.nanoTime();
+		created = new LongAdder();
+		resolved = new LongAdder();
+		failed = new LongAdder();
+		callbacksWaiting = new LongAdder();
+		callbacksExecuted = new LongAdder();
+		rejectedExecutions = new LongAdder();
+		timeoutsScheduled = new LongAdder();
+		timeoutsExpired = new LongAdder();
+		timeoutsOutstanding = new LongAdder();
+		callbackLatency = new Histogram();
+		callbackDuration = new Histogram();
+	}
+
+	/**
+	 * Returns a callback which records its latency and duration when called
+	 * by the callback executor.
+	 * 
+	 * @param callback The callback.
+	 * @param ready The {@code System.nanoTime()} when the callback was ready
+	 *            to be called.
+	 * @return A callback which records its latency and duration.
+	 */
+	Runnable timed(Runnable callback, long ready) {
+		return () -> {
+			long start = System.nanoTime();
+			callbackLatency.record(start - ready);
+			try {
+				callback.run();
+			} finally {
+				callbacksExecuted.increment();
+				callbackDuration.record(System.nanoTime() - start);
+			}
+		};
+	}
+
+	/**
+	 * Returns the metrics as a DTO.
+	 * 
+	 * @param executor The saturation counters of the callback executor or
+	 *            {@code null}.
+	 * @return The metrics.
+	 */
+	PromiseMetricsDTO toDTO(ExecutorStatisticsDTO executor) {
+		PromiseMetricsDTO dto = new PromiseMetricsDTO();
+		dto.elapsedNanos = System.nanoTime() - started;
+		// read the resolutions before the creations so pending is not negative
+		dto.resolved = resolved.sum();
+		dto.failed = failed.sum();
+		dto.created = created.sum();
+		dto.pending = Math.max(0L, dto.created - dto.resolved - dto.failed);
+		dto.callbacksWaiting = Math.max(0L, callbacksWaiting.sum());
+		dto.callbacksExecuted = callbacksExecuted.sum();
+		dto.rejectedExecutions = rejectedExecutions.sum();
+		dto.timeoutsScheduled = timeoutsScheduled.sum();
+		dto.timeoutsExpired = timeoutsExpired.sum();
+		dto.timeoutsOutstanding = Math.max(0L, timeoutsOutstanding.sum());
+		dto.callbackLatency = callbackLatency.toDTO();
+		dto.callbackDuration = callbackDuration.toDTO();
+		dto.executor = executor;
+		return dto;
+	}
+
+	/**
+	 * Histogram of durations in power of two nanosecond buckets.
+	 * <p>
+	 * This class is intentionally a copy of the histogram in
+	 * {@code org.osgi.util.tracker.TrackerMetrics}. The tracker and
+	 * promise packages are released in independent bundles which do not depend
+	 * on each other, and sharing the class would make it public API. A change
+	 * to one copy must be made to the other so both {@code LatencyHistogramDTO}
+	 * types keep the same bucket layout.
+	 */
+	static final class Histogram {
+		/* the last bucket counts durations of 2^39 ns (about 9 minutes) or more */
+		private static final int		BUCKETS	= 40;
+		private final AtomicLongArray	buckets;
+		private final LongAdder			total;
+		private final LongAccumulator	max;
+
+		Histogram() {
+			buckets = new AtomicLongArray(BUCKETS);
+			total = new LongAdder();
+			max = new LongAccumulator(Math::max, 0L);
+		}
+
+		/**
+		 * Record a duration.
+		 * 
+		 * @param nanos The duration in nanoseconds.
+		 */
+		void record(long nanos) {
+			if (nanos < 0L) {
+				nanos = 0L;
+			}
+			int bucket = Math.min(BUCKETS - 1,
+					63 - Long.numberOfLeadingZeros(nanos | 1L));
+			buckets.incrementAndGet(bucket);
+			total.add(nanos);
+			max.accumulate(nanos);
+		}
+
+		LatencyHistogramDTO toDTO() {
+			LatencyHistogramDTO dto = new LatencyHistogramDTO();
+			long[] counts = new long[BUCKETS];
+			long count = 0L;
+			for (int i = 0; i < BUCKETS; i++) {
+				count += counts[i] = buckets.get(i);
+			}
+			dto.buckets = counts;
+			dto.count = count;
+			dto.totalNanos = total.sum();
+			dto.maxNanos = max.get();
+			return dto;
+		}
+	}
+}
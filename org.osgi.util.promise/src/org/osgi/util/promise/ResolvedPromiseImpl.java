@@ -78,6 +78,22 @@ final class ResolvedPromiseImpl<T> extends PromiseImpl<T> {
 		return null;
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	T value() {
+		return value;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	Throwable failure() {
+		return null;
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
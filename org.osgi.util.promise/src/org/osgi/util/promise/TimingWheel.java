@@ -0,0 +1,664 @@
+/*******************************************************************************
+ * Copyright (c) Contributors to the Eclipse Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+
+package org.osgi.util.promise;
+
+import static java.util.Objects.requireNonNull;
+import static org.osgi.util.promise.PromiseImpl.uncaughtException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableScheduledFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hashed hierarchical timing wheel scheduled executor.
+ * <p>
+ * Time is divided into ticks of a fixed duration. A task is held in a slot of
+ * one of a hierarchy of wheels of 64 slots: the first wheel has a slot per
+ * tick, the second wheel has a slot per 64 ticks and so on. When the tick
+ * enters a slot of a higher wheel, the tasks held in the slot are cascaded to
+ * the lower wheels. Scheduling and cancelling a task are constant time
+ * operations, as opposed to the logarithmic time heap operations of a
+ * {@code ScheduledThreadPoolExecutor}, which makes this scheduler suitable
+ * for a large number of outstanding timeouts most of which are cancelled.
+ * <p>
+ * The wheels are owned by a single timer thread. Scheduling threads add new
+ * tasks to a lock free stack and cancelling threads add cancelled tasks to
+ * another lock free stack which the timer thread drains. The timer thread
+ * wakes once per tick while tasks are scheduled and runs all the tasks which
+ * have expired, in one batch. A task runs no earlier than its delay and at
+ * most about one tick later. Tasks are run on the timer thread, so they must
+ * be short. Exceptions thrown by tasks are passed to the uncaught exception
+ * handler of the timer thread.
+ *
+ * @ThreadSafe
+ * @author $Id$
+ * @since 1.3
+ */
+final class TimingWheel extends AbstractExecutorService
+		implements ScheduledExecutorService, Runnable {
+	private static final int		SLOT_BITS	= 6;
+	private static final int		SLOTS		= 1 << SLOT_BITS;
+	private static final int		SLOT_MASK	= SLOTS - 1;
+	/**
+	 * Enough wheels to hold any tick.
+	 */
+	private static final int		LEVELS		= (Long.SIZE + SLOT_BITS - 1)
+			/ SLOT_BITS;
+	/**
+	 * Avoid overflow of deadlines.
+	 */
+	private static final long		MAX_DELAY	= Long.MAX_VALUE >> 2;
+
+	private static final int		RUNNING		= 0;
+	private static final int		SHUTDOWN	= 1;
+	private static final int		STOP		= 2;
+	private static final int		TERMINATED	= 3;
+
+	/**
+	 * Marks the pending stack closed once the timer thread has terminated.
+	 */
+	private final Task< ? >			closed;
+
+	private final long				tickNanos;
+	private final ThreadFactory		threadFactory;
+	/**
+	 * The time of tick 0.
+	 */
+	private final long				origin;
+	/**
+	 * Stack of tasks waiting to be added to the wheels.
+	 */
+	private final AtomicReference<Task< ? >>	pending;
+	/**
+	 * Stack of cancelled tasks waiting to be removed from the wheels.
+	 */
+	private final AtomicReference<Task< ? >>	cancelled;
+	private final CountDownLatch	terminated;
+
+	/**
+	 * The heads of the slot lists of all the wheels.
+	 */
+	// @GuardedBy("timer thread")
+	private final Task< ? >[]		slots;
+	/**
+	 * The last processed tick.
+	 */
+	// @GuardedBy("timer thread")
+	private long					tick;
+	/**
+	 * The number of tasks held in the wheels.
+	 */
+	// @GuardedBy("timer thread")
+	private int						size;
+	/**
+	 * Tasks which expired while being added to the wheels.
+	 */
+	// @GuardedBy("timer thread")
+	private Task< ? >				due;
+	// @GuardedBy("timer thread")
+	private boolean					periodicCancelled;
+
+	private volatile Thread			thread;
+	private volatile int			state;
+	private volatile boolean		idle;
+	/**
+	 * The tasks never run when the timer thread was stopped.
+	 */
+	private volatile List<Runnable>	remaining;
+
+	/**
+	 * Create a timing wheel scheduled executor.
+	 *
+	 * @param tick The duration of a tick. Must be greater than zero.
+	 * @param unit The unit of the tick duration.
+	 * @param threadFactory The factory for the timer thread which is created
+	 *            when the first task is scheduled.
+	 */
+	TimingWheel(long tick, TimeUnit unit, ThreadFactory threadFactory) {
+		this.tickNanos = unit.toNanos(tick);
+		if (tickNanos <= 0L) {
+			throw new IllegalArgumentException(
+					"tick must be greater than zero: " + tick + " " + unit);
+		}
+		this.threadFactory = requireNonNull(threadFactory);
+		this.origin = System.nanoTime();
+		this.closed = new Task<Void>(() -> null, 0L, 0L);
+		this.pending = new AtomicReference<>();
+		this.cancelled = new AtomicReference<>();
+		this.terminated = new CountDownLatch(1);
+		this.slots = new Task< ? >[LEVELS * SLOTS];
+	}
+
+	/**
+	 * Create a timing wheel scheduled executor whose timer thread is a daemon
+	 * thread.
+	 *
+	 * @param tick The duration of a tick. Must be greater than zero.
+	 * @param unit The unit of the tick duration.
+	 */
+	TimingWheel(long tick, TimeUnit unit) {
+		this(tick, unit, r -> {
+			Thread t = Executors.defaultThreadFactory().newThread(r);
+			t.setName("PromiseFactory,TimingWheel," + t.getName());
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+	@Override
+	public ScheduledFuture< ? > schedule(Runnable command, long delay,
+			TimeUnit unit) {
+		return schedule(Executors.callable(requireNonNull(command)), delay,
+				unit);
+	}
+
+	@Override
+	public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay,
+			TimeUnit unit) {
+		Task<V> task = new Task<>(requireNonNull(callable),
+				deadline(delay, unit), 0L);
+		add(task);
+		return task;
+	}
+
+	@Override
+	public ScheduledFuture< ? > scheduleAtFixedRate(Runnable command,
+			long initialDelay, long period, TimeUnit unit) {
+		if (period <= 0L) {
+			throw new IllegalArgumentException("period must be greater than zero");
+		}
+		Task<Void> task = new Task<>(Executors.callable(requireNonNull(command), null),
+				deadline(initialDelay, unit), clamp(unit.toNanos(period)));
+		add(task);
+		return task;
+	}
+
+	@Override
+	public ScheduledFuture< ? > scheduleWithFixedDelay(Runnable command,
+			long initialDelay, long delay, TimeUnit unit) {
+		if (delay <= 0L) {
+			throw new IllegalArgumentException("delay must be greater than zero");
+		}
+		Task<Void> task = new Task<>(Executors.callable(requireNonNull(command), null),
+				deadline(initialDelay, unit), -clamp(unit.toNanos(delay)));
+		add(task);
+		return task;
+	}
+
+	@Override
+	public void execute(Runnable command) {
+		schedule(command, 0L, TimeUnit.NANOSECONDS);
+	}
+
+	private static long clamp(long nanos) {
+		return (nanos < MAX_DELAY) ? nanos : MAX_DELAY;
+	}
+
+	private static long deadline(long delay, TimeUnit unit) {
+		return System.nanoTime() + clamp(Math.max(unit.toNanos(delay), 0L));
+	}
+
+	/**
+	 * Add a new task to the pending stack.
+	 */
+	private void add(Task< ? > task) {
+		start();
+		for (Task< ? > head;;) {
+			head = pending.get();
+			if (head == closed) {
+				throw new RejectedExecutionException("Executor is shut down");
+			}
+			task.nextPending = head;
+			if (pending.compareAndSet(head, task)) {
+				break;
+			}
+		}
+		if (idle) {
+			LockSupport.unpark(thread);
+		}
+	}
+
+	/**
+	 * Start the timer thread if not yet started.
+	 */
+	private void start() {
+		if (state != RUNNING) {
+			throw new RejectedExecutionException("Executor is shut down");
+		}
+		if (thread == null) {
+			synchronized (this) {
+				if (state != RUNNING) {
+					throw new RejectedExecutionException(
+							"Executor is shut down");
+				}
+				if (thread == null) {
+					Thread t = threadFactory.newThread(this);
+					if (t == null) {
+						throw new RejectedExecutionException(
+								"Unable to create timer thread");
+					}
+					t.start();
+					thread = t;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Add a cancelled task to the cancelled stack.
+	 */
+	void cancelled(Task< ? > task) {
+		for (Task< ? > head;;) {
+			head = cancelled.get();
+			task.nextCancelled = head;
+			if (cancelled.compareAndSet(head, task)) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * The timer thread.
+	 */
+	@Override
+	public void run() {
+		try {
+			for (;;) {
+				drain();
+				runDue();
+				int s = state;
+				if (s >= STOP) {
+					return;
+				}
+				if ((s == SHUTDOWN) && !periodicCancelled) {
+					cancelPeriodic();
+				}
+				long elapsed = (System.nanoTime() - origin) / tickNanos;
+				if (size == 0) {
+					tick = Math.max(tick, elapsed);
+					if ((s == SHUTDOWN) && pending.compareAndSet(null, closed)) {
+						return;
+					}
+					idle = true;
+					if ((pending.get() == null) && (state == s)) {
+						LockSupport.park(this);
+					}
+					idle = false;
+					Thread.interrupted(); // state changes are signalled by unpark
+					continue;
+				}
+				while (tick < elapsed) {
+					expire(++tick);
+				}
+				long next = origin + (tick + 1L) * tickNanos;
+				LockSupport.parkNanos(this, next - System.nanoTime());
+				Thread.interrupted(); // state changes are signalled by unpark
+			}
+		} finally {
+			terminate();
+		}
+	}
+
+	/**
+	 * Add the pending tasks to the wheels and remove the cancelled tasks from
+	 * the wheels.
+	 */
+	private void drain() {
+		for (Task< ? > t = pending.getAndSet(null), next; t != null; t = next) {
+			next = t.nextPending;
+			t.nextPending = null;
+			if (!t.isCancelled()) {
+				place(t);
+			}
+		}
+		for (Task< ? > t = cancelled.getAndSet(null), next; t != null; t = next) {
+			next = t.nextCancelled;
+			t.nextCancelled = null;
+			unlink(t);
+		}
+	}
+
+	/**
+	 * Add a task to the slot of the wheel for its deadline tick.
+	 */
+	private void place(Task< ? > task) {
+		long deadline = task.deadline - origin;
+		long d = (deadline <= 0L) ? 0L
+				: ((deadline - 1L) / tickNanos) + 1L; // round up
+		if (d <= tick) {
+			task.next = due;
+			due = task;
+			return;
+		}
+		// the highest slot group in which the ticks differ selects the wheel
+		int level = (Long.SIZE - 1 - Long.numberOfLeadingZeros(d ^ tick))
+				/ SLOT_BITS;
+		int index = (level << SLOT_BITS)
+				| (int) ((d >>> (level * SLOT_BITS)) & SLOT_MASK);
+		Task< ? > head = slots[index];
+		task.slot = index;
+		task.prev = null;
+		task.next = head;
+		if (head != null) {
+			head.prev = task;
+		}
+		slots[index] = task;
+		size++;
+	}
+
+	/**
+	 * Remove a task from its slot, if it is held in a slot.
+	 */
+	private void unlink(Task< ? > task) {
+		int index = task.slot;
+		if (index < 0) {
+			return;
+		}
+		Task< ? > prev = task.prev;
+		Task< ? > next = task.next;
+		if (prev == null) {
+			slots[index] = next;
+		} else {
+			prev.next = next;
+		}
+		if (next != null) {
+			next.prev = prev;
+		}
+		task.slot = -1;
+		task.prev = null;
+		task.next = null;
+		size--;
+	}
+
+	/**
+	 * Remove all the tasks from a slot.
+	 *
+	 * @return The head of the list of removed tasks linked by next.
+	 */
+	private Task< ? > detach(int index) {
+		Task< ? > head = slots[index];
+		slots[index] = null;
+		for (Task< ? > t = head; t != null; t = t.next) {
+			t.slot = -1;
+			t.prev = null;
+			size--;
+		}
+		return head;
+	}
+
+	/**
+	 * Process the entry into a tick: cascade the higher wheels whose slot is
+	 * entered and run the tasks whose deadline is the tick.
+	 */
+	private void expire(long t) {
+		int level = 1;
+		while ((level < LEVELS)
+				&& ((t & ((1L << (level * SLOT_BITS)) - 1L)) == 0L)) {
+			level++;
+		}
+		for (level--; level > 0; level--) {
+			int index = (level << SLOT_BITS)
+					| (int) ((t >>> (level * SLOT_BITS)) & SLOT_MASK);
+			for (Task< ? > task = detach(index), next; task != null; task = next) {
+				next = task.next;
+				task.next = null;
+				place(task);
+			}
+		}
+		for (Task< ? > task = detach((int) (t & SLOT_MASK)),
+				next; task != null; task = next) {
+			next = task.next;
+			task.next = null;
+			task.run();
+		}
+		runDue();
+	}
+
+	/**
+	 * Run the tasks which expired while being added to the wheels.
+	 */
+	private void runDue() {
+		for (Task< ? > task; (task = due) != null;) {
+			due = task.next;
+			task.next = null;
+			task.run();
+		}
+	}
+
+	/**
+	 * Cancel the periodic tasks when shutdown.
+	 */
+	private void cancelPeriodic() {
+		periodicCancelled = true;
+		for (int index = 0; index < slots.length; index++) {
+			for (Task< ? > task = slots[index], next; task != null; task = next) {
+				next = task.next;
+				if (task.isPeriodic()) {
+					task.cancel(false);
+					unlink(task);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Called by the timer thread when it terminates.
+	 */
+	private void terminate() {
+		List<Runnable> tasks = new ArrayList<>(size);
+		for (Task< ? > t = pending.getAndSet(closed), next; (t != null)
+				&& (t != closed); t = next) {
+			next = t.nextPending;
+			t.nextPending = null;
+			if (!t.isCancelled()) {
+				tasks.add(t);
+			}
+		}
+		for (Task< ? > t = due; t != null; t = t.next) {
+			tasks.add(t);
+		}
+		due = null;
+		for (int index = 0; index < slots.length; index++) {
+			for (Task< ? > t = detach(index); t != null; t = t.next) {
+				tasks.add(t);
+			}
+		}
+		remaining = tasks;
+		state = TERMINATED;
+		terminated.countDown();
+	}
+
+	@Override
+	public void shutdown() {
+		advance(SHUTDOWN);
+	}
+
+	@Override
+	public List<Runnable> shutdownNow() {
+		Thread t = advance(STOP);
+		if (t == null) {
+			return new ArrayList<>();
+		}
+		if (t != Thread.currentThread()) {
+			t.interrupt();
+			boolean interrupted = false;
+			for (;;) {
+				try {
+					terminated.await();
+					break;
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		List<Runnable> tasks = remaining;
+		return (tasks == null) ? new ArrayList<>() : tasks;
+	}
+
+	/**
+	 * Advance the state and wake the timer thread.
+	 *
+	 * @return The timer thread or {@code null} if the timer thread was never
+	 *         started.
+	 */
+	private Thread advance(int target) {
+		Thread t;
+		synchronized (this) {
+			if (state < target) {
+				state = target;
+			}
+			t = thread;
+			if (t == null) {
+				if (pending.compareAndSet(null, closed)) {
+					state = TERMINATED;
+					terminated.countDown();
+				}
+				return null;
+			}
+		}
+		LockSupport.unpark(t);
+		return t;
+	}
+
+	@Override
+	public boolean isShutdown() {
+		return state != RUNNING;
+	}
+
+	@Override
+	public boolean isTerminated() {
+		return state == TERMINATED;
+	}
+
+	@Override
+	public boolean awaitTermination(long timeout, TimeUnit unit)
+			throws InterruptedException {
+		return terminated.await(timeout, unit);
+	}
+
+	/**
+	 * A task scheduled on the timing wheel.
+	 */
+	final class Task<V> extends FutureTask<V>
+			implements RunnableScheduledFuture<V> {
+		/**
+		 * The deadline in {@code System.nanoTime()} time.
+		 */
+		volatile long	deadline;
+		/**
+		 * The period of a fixed rate task if positive, the negated delay of a
+		 * fixed delay task if negative or {@code 0} for a one shot task.
+		 */
+		private final long	period;
+		/**
+		 * Link in the pending stack.
+		 */
+		Task< ? >		nextPending;
+		/**
+		 * Link in the cancelled stack.
+		 */
+		Task< ? >		nextCancelled;
+		/**
+		 * The slot holding this task or {@code -1}.
+		 */
+		// @GuardedBy("timer thread")
+		int				slot	= -1;
+		// @GuardedBy("timer thread")
+		Task< ? >		prev;
+		// @GuardedBy("timer thread")
+		Task< ? >		next;
+
+		Task(Callable<V> callable, long deadline, long period) {
+			super(callable);
+			this.deadline = deadline;
+			this.period = period;
+		}
+
+		@Override
+		public boolean isPeriodic() {
+			return period != 0L;
+		}
+
+		@Override
+		public long getDelay(TimeUnit unit) {
+			return unit.convert(deadline - System.nanoTime(),
+					TimeUnit.NANOSECONDS);
+		}
+
+		@Override
+		public int compareTo(Delayed other) {
+			if (other == this) {
+				return 0;
+			}
+			long diff = (other instanceof Task)
+					? deadline - ((Task< ? >) other).deadline
+					: getDelay(TimeUnit.NANOSECONDS)
+							- other.getDelay(TimeUnit.NANOSECONDS);
+			return (diff < 0L) ? -1 : ((diff > 0L) ? 1 : 0);
+		}
+
+		@Override
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			boolean result = super.cancel(mayInterruptIfRunning);
+			if (result) {
+				cancelled(this);
+			}
+			return result;
+		}
+
+		@Override
+		public void run() {
+			if (!isPeriodic()) {
+				super.run();
+				return;
+			}
+			if (state != RUNNING) {
+				cancel(false);
+				return;
+			}
+			if (runAndReset()) {
+				deadline = (period > 0L) ? deadline + period
+						: System.nanoTime() - period;
+				place(this);
+			}
+		}
+
+		@Override
+		protected void setException(Throwable t) {
+			super.setException(t);
+			uncaughtException(t);
+		}
+	}
+}
@@ -0,0 +1,77 @@
+/*******************************************************************************
+ * Copyright (c) Contributors to the Eclipse Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0 
+ *******************************************************************************/
+
+package org.osgi.util.promise.dto;
+
+import org.osgi.dto.DTO;
+
+/**
+ * Data Transfer Object for the saturation counters of a callback executor
+ * created by a {@code PromiseFactory}.
+ * <p>
+ * The counters are collected from when the executor was created. A growing
+ * number of {@link #queued} tasks, {@link #blocked} submissions or
+ * {@link #callerRuns} indicates the executor is saturated.
+ * 
+ * @author $Id$
+ * @NotThreadSafe
+ */
+public class ExecutorStatisticsDTO extends DTO {
+	/**
+	 * The number of tasks submitted to the executor.
+	 */
+	public long	submitted;
+
+	/**
+	 * The number of tasks which have completed.
+	 */
+	public long	completed;
+
+	/**
+	 * The number of tasks currently running.
+	 */
+	public int	active;
+
+	/**
+	 * The approximate number of tasks waiting to run.
+	 */
+	public long	queued;
+
+	/**
+	 * The number of threads currently in the executor's pool or {@code -1} if
+	 * the executor does not pool threads.
+	 */
+	public int	poolSize;
+
+	/**
+	 * The number of tasks which ran on the submitting thread because the
+	 * executor was saturated.
+	 */
+	public long	callerRuns;
+
+	/**
+	 * The number of submissions which blocked the submitting thread until
+	 * the executor had capacity for the task.
+	 */
+	public long	blocked;
+
+	/**
+	 * The number of tasks rejected by the executor.
+	 */
+	public long	rejected;
+}
@@ -0,0 +1,57 @@
+/*******************************************************************************
+ * Copyright (c) Contributors to the Eclipse Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0 
+ *******************************************************************************/
+
+package org.osgi.util.promise.dto;
+
+import org.osgi.dto.DTO;
+
+/**
+ * Data Transfer Object for a histogram of durations.
+ * <p>
+ * The durations are counted in buckets whose bounds are powers of two
+ * nanoseconds. The bucket at index {@code i} counts the durations of at least
+ * 2<sup>i</sup> nanoseconds and less than 2<sup>i+1</sup> nanoseconds, except
+ * the bucket at index {@code 0} also counts durations of {@code 0} nanoseconds
+ * and the last bucket also counts all longer durations. The buckets are the
+ * same as those of the {@code LatencyHistogramDTO} of the
+ * {@code org.osgi.util.tracker.dto} package.
+ * 
+ * @author $Id$
+ * @NotThreadSafe
+ */
+public class LatencyHistogramDTO extends DTO {
+	/**
+	 * The number of recorded durations.
+	 */
+	public long		count;
+
+	/**
+	 * The sum of the recorded durations in nanoseconds.
+	 */
+	public long		totalNanos;
+
+	/**
+	 * The longest recorded duration in nanoseconds.
+	 */
+	public long		maxNanos;
+
+	/**
+	 * The number of recorded durations in each bucket.
+	 */
+	public long[]	buckets;
+}
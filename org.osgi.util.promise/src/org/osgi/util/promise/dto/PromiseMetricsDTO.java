@@ -0,0 +1,107 @@
+/*******************************************************************************
+ * Copyright (c) Contributors to the Eclipse Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0 
+ *******************************************************************************/
+
+package org.osgi.util.promise.dto;
+
+import org.osgi.dto.DTO;
+
+/**
+ * Data Transfer Object for the metrics of a {@code PromiseFactory}.
+ * <p>
+ * The metrics are collected from when the Promise factory was created for the
+ * Promises created by the Promise factory or chained to them.
+ * 
+ * @author $Id$
+ * @NotThreadSafe
+ */
+public class PromiseMetricsDTO extends DTO {
+	/**
+	 * The number of nanoseconds since the Promise factory was created.
+	 */
+	public long						elapsedNanos;
+
+	/**
+	 * The number of unresolved Promises created.
+	 */
+	public long						created;
+
+	/**
+	 * The number of Promises successfully resolved.
+	 */
+	public long						resolved;
+
+	/**
+	 * The number of Promises resolved with a failure.
+	 */
+	public long						failed;
+
+	/**
+	 * The number of Promises not yet resolved.
+	 */
+	public long						pending;
+
+	/**
+	 * The number of callbacks registered with Promises not yet resolved.
+	 */
+	public long						callbacksWaiting;
+
+	/**
+	 * The number of callbacks called by the callback executor.
+	 */
+	public long						callbacksExecuted;
+
+	/**
+	 * The number of callbacks and scheduled operations rejected by the
+	 * callback executor or the scheduled executor, which were then run on the
+	 * calling thread.
+	 */
+	public long						rejectedExecutions;
+
+	/**
+	 * The number of timeouts scheduled.
+	 */
+	public long						timeoutsScheduled;
+
+	/**
+	 * The number of timeouts which expired and resolved their Promise with a
+	 * failure.
+	 */
+	public long						timeoutsExpired;
+
+	/**
+	 * The number of timeouts which are neither expired nor cancelled.
+	 */
+	public long						timeoutsOutstanding;
+
+	/**
+	 * The durations from when a callback was ready to be called, because its
+	 * Promise was resolved, until the callback executor called it.
+	 */
+	public LatencyHistogramDTO		callbackLatency;
+
+	/**
+	 * The durations of the callbacks called by the callback executor.
+	 */
+	public LatencyHistogramDTO		callbackDuration;
+
+	/**
+	 * The saturation counters of the callback executor or {@code null} if the
+	 * callback executor does not count its saturation.
+	 */
+	public ExecutorStatisticsDTO	executor;
+}
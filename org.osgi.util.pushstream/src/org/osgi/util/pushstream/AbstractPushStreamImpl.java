@@ -64,7 +64,10 @@ import java.util.function.IntFunction;
 import java.util.function.IntSupplier;
 import java.util.function.LongUnaryOperator;
 import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToIntFunction;
 import java.util.function.ToLongBiFunction;
+import java.util.function.ToLongFunction;
 import java.util.stream.Collector;
 import java.util.stream.Collectors;
 
@@ -132,7 +135,94 @@ abstract class AbstractPushStreamImpl<T> implements PushStream<T> {
 		}
 		return ABORT;
 	}
-	
+
+	/**
+	 * Handle a batch of Data events. If the next consumer does not accept
+	 * batches, the events are delivered to it one at a time and the back
+	 * pressure of the batch is the greatest back pressure it returned.
+	 * 
+	 * @param events The batch of Data events.
+	 * @return The back pressure for the batch.
+	 */
+	protected long handleBatch(
+			List< ? extends PushEvent< ? extends T>> events) {
+		if (closed.get() != CLOSED) {
+			try {
+				PushEventConsumer<T> consumer = next.get();
+				long val;
+				if (consumer == null) {
+					//TODO log a warning
+					val = CONTINUE;
+				} else if (consumer instanceof BatchPushEventConsumer) {
+					val = ((BatchPushEventConsumer<T>) consumer).accept(events);
+				} else {
+					val = acceptEach(consumer, events);
+				}
+				if (val < 0) {
+					close();
+				}
+				return val;
+			} catch (Exception e) {
+				close(PushEvent.error(e));
+				return ABORT;
+			}
+		}
+		return ABORT;
+	}
+
+	/**
+	 * Deliver a batch of events one at a time, stopping if the consumer
+	 * aborts.
+	 * 
+	 * @return The first negative back pressure or the greatest back pressure.
+	 */
+	static <T> long acceptEach(PushEventConsumer< ? super T> consumer,
+			List< ? extends PushEvent< ? extends T>> events) throws Exception {
+		long backPressure = CONTINUE;
+		for (PushEvent< ? extends T> event : events) {
+			long val = consumer.accept(event);
+			if (val < 0) {
+				return val;
+			}
+			backPressure = Math.max(backPressure, val);
+		}
+		return backPressure;
+	}
+
+	/**
+	 * Returns whether the events handled by this stream can be delivered in
+	 * batches: the next consumer accepts batches or is a stage which passes
+	 * batches on to a stream whose events can be delivered in batches.
+	 */
+	boolean acceptsBatches() {
+		PushEventConsumer<T> consumer = next.get();
+		if (consumer instanceof FusedPushStreamImpl.Head) {
+			return ((FusedPushStreamImpl.Head< ? >) consumer).acceptsBatches();
+		}
+		return consumer instanceof BatchPushEventConsumer;
+	}
+
+	/**
+	 * Chain a stateless stage. The stage is fused with the stateless stages
+	 * which are chained directly after it, so that the data events are passed
+	 * through the operations of all of these stages by a single consumer of
+	 * this stream.
+	 * 
+	 * @param stage Links the operation of the stage to the operation of the
+	 *            next stage.
+	 * @param batchable Whether the operation can be applied to the events of
+	 *            a batch.
+	 * @return The stream of the stage.
+	 */
+	<R> AbstractPushStreamImpl<R> fuse(FusedPushStreamImpl.Prefix<T,R> stage,
+			boolean batchable) {
+		FusedPushStreamImpl.Head<T> head = new FusedPushStreamImpl.Head<>();
+		AbstractPushStreamImpl<R> eventStream = FusedPushStreamImpl.first(psp,
+				promiseFactory, this, head, stage, batchable);
+		updateNext(head);
+		return eventStream;
+	}
+
 	@Override
 	public void close() {
 		PushEvent<T> close = PushEvent.close();
@@ -209,7 +299,7 @@ abstract class AbstractPushStreamImpl<T> implements PushStream<T> {
 		return this;
 	}
 
-	private void updateNext(PushEventConsumer<T> consumer) {
+	void updateNext(PushEventConsumer<T> consumer) {
 		if(!next.compareAndSet(null, consumer)) {
 			throw new IllegalStateException("This stream has already been chained");
 		} else if(closed.get() == CLOSED && next.compareAndSet(consumer, null)) {
@@ -224,45 +314,86 @@ abstract class AbstractPushStreamImpl<T> implements PushStream<T> {
 
 	@Override
 	public PushStream<T> filter(Predicate< ? super T> predicate) {
-		AbstractPushStreamImpl<T> eventStream = new IntermediatePushStreamImpl<>(
-				psp, promiseFactory, this);
-		updateNext((event) -> {
-			try {
-				if (!event.isTerminal()) {
-					if (predicate.test(event.getData())) {
-						return eventStream.handleEvent(event);
+		return fuse(next -> new FusedPushStreamImpl.Filter<>(this, predicate,
+				next), true);
+	}
+
+	@Override
+	public IntPushStream mapToInt(ToIntFunction< ? super T> mapper) {
+		IntPushStreamImpl eventStream = new IntPushStreamImpl(psp,
+				promiseFactory, this);
+		updatePrimitive(eventStream.stream,
+				value -> eventStream.handleInt(mapper.applyAsInt(value)));
+		return eventStream;
+	}
+
+	@Override
+	public LongPushStream mapToLong(ToLongFunction< ? super T> mapper) {
+		LongPushStreamImpl eventStream = new LongPushStreamImpl(psp,
+				promiseFactory, this);
+		updatePrimitive(eventStream.stream,
+				value -> eventStream.handleLong(mapper.applyAsLong(value)));
+		return eventStream;
+	}
+
+	@Override
+	public DoublePushStream mapToDouble(ToDoubleFunction< ? super T> mapper) {
+		DoublePushStreamImpl eventStream = new DoublePushStreamImpl(psp,
+				promiseFactory, this);
+		updatePrimitive(eventStream.stream,
+				value -> eventStream.handleDouble(mapper.applyAsDouble(value)));
+		return eventStream;
+	}
+
+	/**
+	 * Chain a primitive stream. The payload values are passed to the handler,
+	 * which maps them and passes them to the primitive stream, while the
+	 * terminal events are passed to the stream which handles the lifecycle of
+	 * the primitive stream.
+	 */
+	private void updatePrimitive(AbstractPushStreamImpl< ? > eventStream,
+			ToLongFunction<T> handler) {
+		updateNext(new BatchPushEventConsumer<T>() {
+			@Override
+			public long accept(PushEvent< ? extends T> event) {
+				try {
+					if (!event.isTerminal()) {
+						return handler.applyAsLong(event.getData());
 					} else {
-						return CONTINUE;
+						return eventStream.handleEvent(event.nodata());
 					}
+				} catch (Exception e) {
+					close(PushEvent.error(e));
+					return ABORT;
+				}
+			}
+
+			@Override
+			public long accept(
+					List< ? extends PushEvent< ? extends T>> events) {
+				try {
+					long backPressure = CONTINUE;
+					for (PushEvent< ? extends T> event : events) {
+						long val = handler.applyAsLong(event.getData());
+						if (val < 0) {
+							return val;
+						}
+						backPressure = Math.max(backPressure, val);
+					}
+					return backPressure;
+				} catch (Exception e) {
+					close(PushEvent.error(e));
+					return ABORT;
 				}
-				return eventStream.handleEvent(event);
-			} catch (Exception e) {
-				close(PushEvent.error(e));
-				return ABORT;
 			}
 		});
-		return eventStream;
 	}
 
 	@Override
 	public <R> PushStream<R> map(Function< ? super T, ? extends R> mapper) {
-		
-		AbstractPushStreamImpl<R> eventStream = new IntermediatePushStreamImpl<>(
-				psp, promiseFactory, this);
-		updateNext(event -> {
-			try {
-				if (!event.isTerminal()) {
-					return eventStream.handleEvent(
-							PushEvent.data(mapper.apply(event.getData())));
-				} else {
-					return eventStream.handleEvent(event.nodata());
-				}
-			} catch (Exception e) {
-				close(PushEvent.error(e));
-				return ABORT;
-			}
-		});
-		return eventStream;
+		return fuse(
+				next -> new FusedPushStreamImpl.Map<>(this, mapper, next),
+				true);
 	}
 
 	@Override
@@ -319,49 +450,11 @@ abstract class AbstractPushStreamImpl<T> implements PushStream<T> {
 	@Override
 	public <R> PushStream<R> flatMap(
 			Function< ? super T, ? extends PushStream< ? extends R>> mapper) {
-		AbstractPushStreamImpl<R> eventStream = new IntermediatePushStreamImpl<>(
-				psp, promiseFactory, this);
-
-		PushEventConsumer<R> consumer = e -> {
-			switch (e.getType()) {
-				case ERROR :
-					close(e.nodata());
-					return ABORT;
-				case CLOSE :
-					// Close should allow the next flat mapped entry
-					// without closing the stream;
-					return ABORT;
-				case DATA :
-					long returnValue = eventStream.handleEvent(e);
-					if (returnValue < 0) {
-						close();
-						return ABORT;
-					}
-					return returnValue;
-				default :
-					throw new IllegalArgumentException(
-							"The event type " + e.getType() + " is unknown");
-			}
-		};
-
-		updateNext(event -> {
-			try {
-				if (!event.isTerminal()) {
-					PushStream< ? extends R> mappedStream = mapper
-							.apply(event.getData());
-
-					return mappedStream.forEachEvent(consumer)
-							.getValue()
-							.longValue();
-				} else {
-					return eventStream.handleEvent(event.nodata());
-				}
-			} catch (Exception e) {
-				close(PushEvent.error(e));
-				return ABORT;
-			}
-		});
-		return eventStream;
+		// The flat mapped events are delivered on the threads of the flat
+		// mapped streams so the stage cannot be applied to a batch
+		return fuse(
+				next -> new FusedPushStreamImpl.FlatMap<>(this, mapper, next),
+				false);
 	}
 
 	@Override
@@ -414,28 +507,9 @@ abstract class AbstractPushStreamImpl<T> implements PushStream<T> {
 		if(maxSize <= 0) {
 			throw new IllegalArgumentException("The limit must be greater than zero");
 		}
-		AbstractPushStreamImpl<T> eventStream = new IntermediatePushStreamImpl<>(
-				psp, promiseFactory, this);
 		AtomicLong counter = new AtomicLong(maxSize);
-		updateNext(event -> {
-			try {
-				if (!event.isTerminal()) {
-					long count = counter.decrementAndGet();
-					if (count > 0) {
-						return eventStream.handleEvent(event);
-					} else if (count == 0) {
-						eventStream.handleEvent(event);
-					}
-					return ABORT;
-				} else {
-					return eventStream.handleEvent(event.nodata());
-				}
-			} catch (Exception e) {
-				close(PushEvent.error(e));
-				return ABORT;
-			}
-		});
-		return eventStream;
+		return fuse(next -> new FusedPushStreamImpl.Limit<>(counter, next),
+				true);
 	}
 	
 	@Override
@@ -513,26 +587,9 @@ abstract class AbstractPushStreamImpl<T> implements PushStream<T> {
 			throw new IllegalArgumentException(
 					"The number to skip must be greater than or equal to zero");
 		}
-		AbstractPushStreamImpl<T> eventStream = new IntermediatePushStreamImpl<>(
-				psp, promiseFactory, this);
 		AtomicLong counter = new AtomicLong(n);
-		updateNext(event -> {
-			try {
-				if (!event.isTerminal()) {
-					if (counter.get() > 0 && counter.decrementAndGet() >= 0) {
-						return CONTINUE;
-					} else {
-						return eventStream.handleEvent(event);
-					} 				
-				} else {
-					return eventStream.handleEvent(event.nodata());
-				}
-			} catch (Exception e) {
-				close(PushEvent.error(e));
-				return ABORT;
-			}
-		});
-		return eventStream;
+		return fuse(next -> new FusedPushStreamImpl.Skip<>(counter, next),
+				true);
 	}
 
 	@Override
@@ -798,6 +855,16 @@ abstract class AbstractPushStreamImpl<T> implements PushStream<T> {
 		return eventStream;
 	}
 
+	@Override
+	public <K, R> PushStream<R> groupBy(
+			Function< ? super T, ? extends K> keyFunction, int parallelism,
+			BiFunction< ? super K,PushStream<T>, ? extends PushStream< ? extends R>> pipeline) {
+		GroupedPushStreamImpl<T,K,R> eventStream = new GroupedPushStreamImpl<>(
+				psp, promiseFactory, this, keyFunction, parallelism, pipeline);
+		updateNext(eventStream::accept);
+		return eventStream;
+	}
+
 	@Override
 	public <R> PushStream<R> coalesce(
 			Function< ? super T,Optional<R>> accumulator) {
@@ -1078,6 +1145,17 @@ abstract class AbstractPushStreamImpl<T> implements PushStream<T> {
 		return eventStream;
 	}
 
+	@Override
+	public <A, R> PushStream<R> window(Duration size, Duration slide,
+			WindowAggregator< ? super T,A,R> aggregator) {
+		SlidingWindowPushStreamImpl<T,A,R> eventStream = new SlidingWindowPushStreamImpl<>(
+				psp, promiseFactory, this, Objects.requireNonNull(size),
+				Objects.requireNonNull(slide),
+				Objects.requireNonNull(aggregator));
+		updateNext(eventStream::accept);
+		return eventStream;
+	}
+
 	protected Queue<T> getQueueForInternalBuffering(int size) {
 		if (size == 0) {
 			return new LinkedList<T>();
@@ -1641,7 +1719,7 @@ abstract class AbstractPushStreamImpl<T> implements PushStream<T> {
 	public Promise<Long> forEachEvent(PushEventConsumer< ? super T> action) {
 		Deferred<Long> d = promiseFactory.deferred();
 		LongAdder la = new LongAdder();
-		updateNext((event) -> {
+		PushEventConsumer<T> consumer = (event) -> {
 			try {
 				switch(event.getType()) {
 					case DATA:
@@ -1670,7 +1748,32 @@ abstract class AbstractPushStreamImpl<T> implements PushStream<T> {
 				close(PushEvent.error(e));
 				return ABORT;
 			}
-		});
+		};
+		if (action instanceof BatchPushEventConsumer) {
+			BatchPushEventConsumer< ? super T> batchAction = (BatchPushEventConsumer< ? super T>) action;
+			updateNext(new BatchPushEventConsumer<T>() {
+				@Override
+				public long accept(PushEvent< ? extends T> event)
+						throws Exception {
+					return consumer.accept(event);
+				}
+
+				@Override
+				public long accept(
+						List< ? extends PushEvent< ? extends T>> events) {
+					try {
+						long value = batchAction.accept(events);
+						la.add(value);
+						return value;
+					} catch (Exception e) {
+						close(PushEvent.error(e));
+						return ABORT;
+					}
+				}
+			});
+		} else {
+			updateNext(consumer);
+		}
 		begin();
 		return d.getPromise();
 	}
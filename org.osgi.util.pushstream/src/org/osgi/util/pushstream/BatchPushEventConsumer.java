@@ -0,0 +1,73 @@
+/*******************************************************************************
+ * Copyright (c) Contributors to the Eclipse Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0 
+ *******************************************************************************/
+
+package org.osgi.util.pushstream;
+
+import java.util.List;
+
+import org.osgi.annotation.versioning.ConsumerType;
+
+/**
+ * A {@link PushEventConsumer} which can also accept a batch of Data events
+ * in a single call.
+ * <p>
+ * Event sources and buffers which deliver events to a
+ * {@link BatchPushEventConsumer} may deliver the Data events they have
+ * available as a batch instead of one at a time. The back pressure returned
+ * for a batch applies once, after the whole batch. Close and Error events are
+ * never part of a batch, they are always delivered by calling
+ * {@link #accept(PushEvent)}, as are Data events which are not delivered as
+ * part of a batch.
+ * <p>
+ * A {@link PushStream} delivers batches to a consumer passed to
+ * {@link PushStream#forEachEvent(PushEventConsumer)} when its source delivers
+ * batches, as a {@link SimplePushEventSource} does, and the stages between
+ * the source and the consumer are unbuffered {@code filter}, {@code map},
+ * {@code skip} or {@code limit} stages. A buffered stream receives the events
+ * of its source one at a time, so that its queue and pushback policies apply
+ * to each of them, and delivers the events taken from its buffer one at a
+ * time. Consumers which are not a
+ * {@link BatchPushEventConsumer} receive every event by calling
+ * {@link PushEventConsumer#accept(PushEvent)}, and a source connected to a
+ * stream whose consumer is not a {@link BatchPushEventConsumer} delivers the
+ * events to the stream one at a time.
+ *
+ * @param <T> The type for the event payload
+ * @since 1.1
+ */
+@ConsumerType
+public interface BatchPushEventConsumer<T> extends PushEventConsumer<T> {
+
+	/**
+	 * Accept a batch of Data events from a source. Batches can be delivered
+	 * on multiple threads simultaneously, just like single events.
+	 * <p>
+	 * The batch is only valid for the duration of this call. The consumer
+	 * must not modify the batch nor keep a reference to it after returning.
+	 * 
+	 * @param events The batch of one or more Data events, in the order they
+	 *            were sent.
+	 * @return less than 0 means abort, 0 means continue, more than 0 means
+	 *         delay ms before the next event or batch is sent
+	 * @throws Exception to indicate that an error has occurred and that no
+	 *             further events should be delivered to this
+	 *             {@link PushEventConsumer}
+	 */
+	long accept(List< ? extends PushEvent< ? extends T>> events)
+			throws Exception;
+}
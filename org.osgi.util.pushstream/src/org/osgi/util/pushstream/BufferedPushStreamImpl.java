@@ -22,6 +22,7 @@ import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static org.osgi.util.pushstream.AbstractPushStreamImpl.State.CLOSED;
 import static org.osgi.util.pushstream.PushEventConsumer.ABORT;
 
+import java.util.List;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -73,21 +74,48 @@ class BufferedPushStreamImpl<T, U extends BlockingQueue<PushEvent< ? extends T>>
 
 		try {
 			queuePolicy.doOffer(eventQueue, event);
-			long backPressure = pushbackPolicy.pushback(eventQueue);
-			if(backPressure < 0) {
-				close();
-				return ABORT;
-			}
-			if(semaphore.tryAcquire()) {
-				startWorker();
-			}
-			return backPressure;
+			return pushback();
+		} catch (Exception e) {
+			close(PushEvent.error(e));
+			return ABORT;
+		}
+	}
+
+	/**
+	 * A buffered stream does not accept batches from its event source, so
+	 * that the queue and pushback policies are applied to each event as it is
+	 * offered to the buffer.
+	 */
+	@Override
+	boolean acceptsBatches() {
+		return false;
+	}
+
+	@Override
+	protected long handleBatch(
+			List< ? extends PushEvent< ? extends T>> events) {
+		// Each event must still be offered to the buffer on its own
+		try {
+			return AbstractPushStreamImpl.<T> acceptEach(this::handleEvent,
+					events);
 		} catch (Exception e) {
 			close(PushEvent.error(e));
 			return ABORT;
 		}
 	}
 
+	private long pushback() throws Exception {
+		long backPressure = pushbackPolicy.pushback(eventQueue);
+		if(backPressure < 0) {
+			close();
+			return ABORT;
+		}
+		if(semaphore.tryAcquire()) {
+			startWorker();
+		}
+		return backPressure;
+	}
+
 	private void startWorker() {
 		promiseFactory.executor().execute(() -> {
 			try {
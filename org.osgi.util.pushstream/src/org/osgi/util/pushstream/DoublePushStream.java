@@ -0,0 +1,244 @@
+/*******************************************************************************
+ * Copyright (c) Contributors to the Eclipse Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0 
+ *******************************************************************************/
+
+package org.osgi.util.pushstream;
+
+import java.util.DoubleSummaryStatistics;
+import java.util.OptionalDouble;
+import java.util.function.Consumer;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleConsumer;
+import java.util.function.DoubleFunction;
+import java.util.function.DoublePredicate;
+import java.util.function.DoubleToIntFunction;
+import java.util.function.DoubleToLongFunction;
+import java.util.function.DoubleUnaryOperator;
+
+import org.osgi.annotation.versioning.ProviderType;
+import org.osgi.util.function.Function;
+import org.osgi.util.promise.Promise;
+
+/**
+ * A specialization of {@link PushStream} for {@code double} values.
+ * <p>
+ * An {@code DoublePushStream} is created by mapping the values of a
+ * {@link PushStream} with
+ * {@link PushStream#mapToDouble(java.util.function.ToDoubleFunction)}. The values
+ * are passed through the stages of an {@code DoublePushStream} as {@code double}
+ * values, so that they are not boxed and no {@link PushEvent} is created for
+ * each value. Close and Error events are passed through the stages in the same
+ * way as for a {@link PushStream}.
+ * <p>
+ * Just like a {@link PushStream}, each stage of an {@code DoublePushStream} can be
+ * chained only once and the stream is started by a terminal operation.
+ * 
+ * @since 1.1
+ */
+@ProviderType
+public interface DoublePushStream extends AutoCloseable {
+
+	/**
+	 * Close this stream by sending an event of type
+	 * {@link PushEvent.EventType#CLOSE} downstream and closing the upstream
+	 * stages. Closing a stream is a safe operation that will not throw an
+	 * Exception.
+	 * <p>
+	 * Calling {@code close()} on a closed stream has no effect.
+	 */
+	@Override
+	void close();
+
+	/**
+	 * Provide a handler that must be run after this stream is closed.
+	 * 
+	 * @param closeHandler Will be called on close
+	 * @return This stream
+	 * @see PushStream#onClose(Runnable)
+	 */
+	DoublePushStream onClose(Runnable closeHandler);
+
+	/**
+	 * Provide a handler that will be called if this stream is closed with an
+	 * event of type {@link PushEvent.EventType#ERROR}.
+	 * 
+	 * @param errorHandler Will be called on an error event
+	 * @return This stream
+	 * @see PushStream#onError(Consumer)
+	 */
+	DoublePushStream onError(Consumer< ? super Throwable> errorHandler);
+
+	/**
+	 * Only pass values downstream when the predicate tests true.
+	 * 
+	 * @param predicate The predicate that is tested (not null)
+	 * @return A new stream
+	 */
+	DoublePushStream filter(DoublePredicate predicate);
+
+	/**
+	 * Map a value.
+	 * 
+	 * @param mapper The map function
+	 * @return A new stream
+	 */
+	DoublePushStream map(DoubleUnaryOperator mapper);
+
+	/**
+	 * Map a value to a {@code int} value.
+	 * 
+	 * @param mapper The map function
+	 * @return A new stream
+	 */
+	IntPushStream mapToInt(DoubleToIntFunction mapper);
+
+	/**
+	 * Map a value to a {@code long} value.
+	 * 
+	 * @param mapper The map function
+	 * @return A new stream
+	 */
+	LongPushStream mapToLong(DoubleToLongFunction mapper);
+
+	/**
+	 * Map a value to an object.
+	 * 
+	 * @param <U> The type of the mapped values
+	 * @param mapper The map function
+	 * @return A new stream
+	 */
+	<U> PushStream<U> mapToObj(DoubleFunction< ? extends U> mapper);
+
+	/**
+	 * Box the values of this stream.
+	 * 
+	 * @return A new stream of the boxed values
+	 */
+	PushStream<Double> boxed();
+
+	/**
+	 * Collect the values into windows of {@code count} values. When the
+	 * window is full, the values are passed to the function and its result is
+	 * sent downstream. When this stream is closed with an event of type
+	 * {@link PushEvent.EventType#CLOSE}, the values of the last, incomplete,
+	 * window are passed to the function before the close event is sent
+	 * downstream.
+	 * <p>
+	 * Each window is passed to the function in a new array whose length is
+	 * the number of values in the window.
+	 * 
+	 * @param <R> The type of the aggregated result
+	 * @param count The number of values in a window
+	 * @param f The function which aggregates the values of a window
+	 * @return A new stream of the aggregated results
+	 * @throws IllegalArgumentException if {@code count} is less than
+	 *             {@code 1}
+	 */
+	<R> PushStream<R> window(int count, Function< ? super double[], ? extends R> f);
+
+	/**
+	 * Buffer the values of this stream so that the downstream stages are
+	 * called on a different thread.
+	 * <p>
+	 * The values are held in a {@code double} array of the specified capacity.
+	 * The thread delivering a value is never blocked. When the buffer is
+	 * full, the array grows and a back pressure of one millisecond per value
+	 * beyond the capacity is returned to the delivering thread. The downstream
+	 * stages are called on a thread of the executor of the stream, which is
+	 * released whenever the buffer is empty.
+	 * 
+	 * @param capacity The number of values held by the buffer before back
+	 *            pressure is returned
+	 * @return A new stream
+	 * @throws IllegalArgumentException if {@code capacity} is less than
+	 *             {@code 1}
+	 */
+	DoublePushStream buffer(int capacity);
+
+	/**
+	 * Execute the action for each value received. Resolves when the stream
+	 * is closed.
+	 * <p>
+	 * This is a <strong>terminal operation</strong>
+	 * 
+	 * @param action The action to perform
+	 * @return A promise that is resolved when the stream closes
+	 */
+	Promise<Void> forEach(DoubleConsumer action);
+
+	/**
+	 * Reduce the values using the identity and the accumulator. Resolves when
+	 * the stream is closed.
+	 * <p>
+	 * This is a <strong>terminal operation</strong>
+	 * 
+	 * @param identity The identity value
+	 * @param accumulator The accumulator
+	 * @return A promise representing the reduced value
+	 */
+	Promise<Double> reduce(double identity, DoubleBinaryOperator accumulator);
+
+	/**
+	 * Reduce the values using the accumulator. Resolves when the stream is
+	 * closed.
+	 * <p>
+	 * This is a <strong>terminal operation</strong>
+	 * 
+	 * @param accumulator The accumulator
+	 * @return A promise representing the reduced value, which is empty if no
+	 *         values are received
+	 */
+	Promise<OptionalDouble> reduce(DoubleBinaryOperator accumulator);
+
+	/**
+	 * Sum the values. Resolves when the stream is closed.
+	 * <p>
+	 * This is a <strong>terminal operation</strong>
+	 * 
+	 * @return A promise representing the sum of the values
+	 */
+	Promise<Double> sum();
+
+	/**
+	 * Count the values. Resolves when the stream is closed.
+	 * <p>
+	 * This is a <strong>terminal operation</strong>
+	 * 
+	 * @return A promise representing the number of values
+	 */
+	Promise<Long> count();
+
+	/**
+	 * Average the values. Resolves when the stream is closed.
+	 * <p>
+	 * This is a <strong>terminal operation</strong>
+	 * 
+	 * @return A promise representing the average of the values, which is
+	 *         empty if no values are received
+	 */
+	Promise<OptionalDouble> average();
+
+	/**
+	 * Collect the count, sum, minimum, average and maximum of the values.
+	 * Resolves when the stream is closed.
+	 * <p>
+	 * This is a <strong>terminal operation</strong>
+	 * 
+	 * @return A promise representing the statistics of the values
+	 */
+	Promise<DoubleSummaryStatistics> summaryStatistics();
+}
@@ -0,0 +1,386 @@
+/*******************************************************************************
+ * Copyright (c) Contributors to the Eclipse Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+
+package org.osgi.util.pushstream;
+
+import static org.osgi.util.pushstream.PushEventConsumer.ABORT;
+import static org.osgi.util.pushstream.PushEventConsumer.CONTINUE;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.osgi.util.function.Function;
+import org.osgi.util.function.Predicate;
+import org.osgi.util.promise.PromiseFactory;
+
+/**
+ * A stage of a run of fused stateless stages.
+ * <p>
+ * The stateless stages ({@code filter}, {@code map}, {@code flatMap},
+ * {@code skip} and {@code limit}) chained one after the other are fused into
+ * a single {@link Head} consumer of the stream before the run. The head passes
+ * the data events through a chain of {@link Op}s, composed when the stages are
+ * chained, directly to the last stage of the run. The stages of the run are
+ * still streams: the terminal events are passed from stage to stage so that
+ * closing a stage and the close and error callbacks of each stage behave as if
+ * the stages were not fused.
+ *
+ * @param <S> The type of the events received by the head of the run
+ * @param <T> The type of the events of this stage
+ */
+final class FusedPushStreamImpl<S, T> extends IntermediatePushStreamImpl<T> {
+
+	private final Head<S>		head;
+	private final Prefix<S,T>	prefix;
+	private final boolean		batchable;
+
+	private FusedPushStreamImpl(PushStreamProvider psp,
+			PromiseFactory promiseFactory,
+			AbstractPushStreamImpl< ? > previous, Head<S> head,
+			Prefix<S,T> prefix, boolean batchable) {
+		super(psp, promiseFactory, previous);
+		this.head = head;
+		this.prefix = prefix;
+		this.batchable = batchable;
+	}
+
+	/**
+	 * Create the first stage of a run of fused stages.
+	 *
+	 * @param previous The stream before the run.
+	 * @param head The consumer of the stream before the run.
+	 * @param stage Links the operation of the stage.
+	 * @param batchable Whether the operation can be applied to a batch.
+	 * @return The first stage of the run.
+	 */
+	static <S, T> FusedPushStreamImpl<S,T> first(PushStreamProvider psp,
+			PromiseFactory promiseFactory, AbstractPushStreamImpl<S> previous,
+			Head<S> head, Prefix<S,T> stage, boolean batchable) {
+		FusedPushStreamImpl<S,T> eventStream = new FusedPushStreamImpl<>(psp,
+				promiseFactory, previous, head, stage, batchable);
+		head.retarget(eventStream, eventStream);
+		return eventStream;
+	}
+
+	/**
+	 * Fuse the stage with this stage. The data events bypass this stage and
+	 * are passed by the head directly to the new stage.
+	 */
+	@Override
+	<R> AbstractPushStreamImpl<R> fuse(Prefix<T,R> stage, boolean batchable) {
+		FusedPushStreamImpl<S,R> eventStream = new FusedPushStreamImpl<>(psp,
+				promiseFactory, this, head,
+				next -> prefix.link(stage.link(next)),
+				this.batchable && batchable);
+		// Only the terminal events are passed to this stage
+		updateNext(event -> eventStream.handleEvent(event.nodata()));
+		head.retarget(head.first(), eventStream);
+		return eventStream;
+	}
+
+	/**
+	 * Links an operation to the operation of the next stage.
+	 *
+	 * @param <T> The type of the values received by the operation
+	 * @param <R> The type of the values passed to the next operation
+	 */
+	@FunctionalInterface
+	interface Prefix<T, R> {
+		Op<T> link(Op<R> next);
+	}
+
+	/**
+	 * The operation of a fused stage applied to the value of a data event.
+	 *
+	 * @param <T> The type of the values received by the operation
+	 */
+	static abstract class Op<T> {
+		/**
+		 * Apply the operation.
+		 *
+		 * @param event The data event carrying the value, passed on when the
+		 *            value is unchanged.
+		 * @param value The value.
+		 * @return The back pressure.
+		 */
+		abstract long accept(PushEvent< ? > event, T value);
+	}
+
+	/**
+	 * The consumer of the stream before a run of fused stages.
+	 */
+	static final class Head<S> implements BatchPushEventConsumer<S> {
+		private volatile Segment<S, ? > segment;
+
+		Head() {
+		}
+
+		<T> void retarget(AbstractPushStreamImpl< ? > first,
+				FusedPushStreamImpl<S,T> last) {
+			segment = new Segment<>(first, last.prefix, last, last.batchable);
+		}
+
+		AbstractPushStreamImpl< ? > first() {
+			return segment.first;
+		}
+
+		boolean acceptsBatches() {
+			Segment<S, ? > s = segment;
+			return s.batchable && s.target.acceptsBatches();
+		}
+
+		@Override
+		public long accept(PushEvent< ? extends S> event) {
+			Segment<S, ? > s = segment;
+			if (event.isTerminal()) {
+				return s.first.handleEvent(event.nodata());
+			}
+			return s.chain.accept(event, event.getData());
+		}
+
+		@Override
+		public long accept(List< ? extends PushEvent< ? extends S>> events)
+				throws Exception {
+			Segment<S, ? > s = segment;
+			if (!s.batchable) {
+				return AbstractPushStreamImpl.acceptEach(this, events);
+			}
+			return acceptBatch(s, events);
+		}
+
+		private <T> long acceptBatch(Segment<S,T> s,
+				List< ? extends PushEvent< ? extends S>> events) {
+			List<PushEvent< ? extends T>> passed = new ArrayList<>(
+					events.size());
+			Op<S> chain = s.prefix.link(new Collect<>(passed));
+			for (PushEvent< ? extends S> event : events) {
+				long val = chain.accept(event, event.getData());
+				if (val < 0) {
+					if (!passed.isEmpty()) {
+						s.target.handleBatch(passed);
+					}
+					return val;
+				}
+			}
+			return passed.isEmpty() ? CONTINUE : s.target.handleBatch(passed);
+		}
+	}
+
+	/**
+	 * The composed operations of a run of fused stages.
+	 */
+	private static final class Segment<S, T> {
+		/**
+		 * The first stage of the run, which receives the terminal events.
+		 */
+		final AbstractPushStreamImpl< ? >	first;
+		final Op<S>							chain;
+		final Prefix<S,T>					prefix;
+		/**
+		 * The last stage of the run, which receives the data events.
+		 */
+		final AbstractPushStreamImpl<T>		target;
+		final boolean						batchable;
+
+		Segment(AbstractPushStreamImpl< ? > first, Prefix<S,T> prefix,
+				AbstractPushStreamImpl<T> target, boolean batchable) {
+			this.first = first;
+			this.chain = prefix.link(new Deliver<>(target));
+			this.prefix = prefix;
+			this.target = target;
+			this.batchable = batchable;
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	static <T> PushEvent< ? extends T> event(PushEvent< ? > event, T value) {
+		return (value == event.getData()) ? (PushEvent< ? extends T>) event
+				: PushEvent.data(value);
+	}
+
+	/**
+	 * Passes the values to the last stage of the run.
+	 */
+	static final class Deliver<T> extends Op<T> {
+		private final AbstractPushStreamImpl<T> target;
+
+		Deliver(AbstractPushStreamImpl<T> target) {
+			this.target = target;
+		}
+
+		@Override
+		long accept(PushEvent< ? > event, T value) {
+			return target.handleEvent(event(event, value));
+		}
+	}
+
+	/**
+	 * Collects the values of a batch for the last stage of the run.
+	 */
+	static final class Collect<T> extends Op<T> {
+		private final List<PushEvent< ? extends T>> events;
+
+		Collect(List<PushEvent< ? extends T>> events) {
+			this.events = events;
+		}
+
+		@Override
+		long accept(PushEvent< ? > event, T value) {
+			events.add(event(event, value));
+			return CONTINUE;
+		}
+	}
+
+	static final class Filter<T> extends Op<T> {
+		private final AbstractPushStreamImpl<T>	owner;
+		private final Predicate< ? super T>		predicate;
+		private final Op<T>						next;
+
+		Filter(AbstractPushStreamImpl<T> owner, Predicate< ? super T> predicate,
+				Op<T> next) {
+			this.owner = owner;
+			this.predicate = predicate;
+			this.next = next;
+		}
+
+		@Override
+		long accept(PushEvent< ? > event, T value) {
+			boolean pass;
+			try {
+				pass = predicate.test(value);
+			} catch (Exception e) {
+				owner.close(PushEvent.error(e));
+				return ABORT;
+			}
+			return pass ? next.accept(event, value) : CONTINUE;
+		}
+	}
+
+	static final class Map<T, R> extends Op<T> {
+		private final AbstractPushStreamImpl<T>			owner;
+		private final Function< ? super T, ? extends R>	mapper;
+		private final Op<R>								next;
+
+		Map(AbstractPushStreamImpl<T> owner,
+				Function< ? super T, ? extends R> mapper, Op<R> next) {
+			this.owner = owner;
+			this.mapper = mapper;
+			this.next = next;
+		}
+
+		@Override
+		long accept(PushEvent< ? > event, T value) {
+			R mapped;
+			try {
+				mapped = mapper.apply(value);
+			} catch (Exception e) {
+				owner.close(PushEvent.error(e));
+				return ABORT;
+			}
+			return next.accept(event, mapped);
+		}
+	}
+
+	static final class FlatMap<T, R> extends Op<T> {
+		private final AbstractPushStreamImpl<T>										owner;
+		private final Function< ? super T, ? extends PushStream< ? extends R>>	mapper;
+		private final PushEventConsumer<R>											consumer;
+
+		FlatMap(AbstractPushStreamImpl<T> owner,
+				Function< ? super T, ? extends PushStream< ? extends R>> mapper,
+				Op<R> next) {
+			this.owner = owner;
+			this.mapper = mapper;
+			this.consumer = e -> {
+				switch (e.getType()) {
+					case ERROR :
+						owner.close(e.nodata());
+						return ABORT;
+					case CLOSE :
+						// Close should allow the next flat mapped entry
+						// without closing the stream;
+						return ABORT;
+					case DATA :
+						long returnValue = next.accept(e, e.getData());
+						if (returnValue < 0) {
+							owner.close();
+							return ABORT;
+						}
+						return returnValue;
+					default :
+						throw new IllegalArgumentException(
+								"The event type " + e.getType()
+										+ " is unknown");
+				}
+			};
+		}
+
+		@Override
+		long accept(PushEvent< ? > event, T value) {
+			try {
+				PushStream< ? extends R> mappedStream = mapper.apply(value);
+				return mappedStream.forEachEvent(consumer)
+						.getValue()
+						.longValue();
+			} catch (Exception e) {
+				owner.close(PushEvent.error(e));
+				return ABORT;
+			}
+		}
+	}
+
+	static final class Skip<T> extends Op<T> {
+		private final AtomicLong	counter;
+		private final Op<T>			next;
+
+		Skip(AtomicLong counter, Op<T> next) {
+			this.counter = counter;
+			this.next = next;
+		}
+
+		@Override
+		long accept(PushEvent< ? > event, T value) {
+			if (counter.get() > 0 && counter.decrementAndGet() >= 0) {
+				return CONTINUE;
+			}
+			return next.accept(event, value);
+		}
+	}
+
+	static final class Limit<T> extends Op<T> {
+		private final AtomicLong	counter;
+		private final Op<T>			next;
+
+		Limit(AtomicLong counter, Op<T> next) {
+			this.counter = counter;
+			this.next = next;
+		}
+
+		@Override
+		long accept(PushEvent< ? > event, T value) {
+			long count = counter.decrementAndGet();
+			if (count > 0) {
+				return next.accept(event, value);
+			} else if (count == 0) {
+				next.accept(event, value);
+			}
+			return ABORT;
+		}
+	}
+}
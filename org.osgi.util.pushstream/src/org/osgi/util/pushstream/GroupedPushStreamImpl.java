@@ -0,0 +1,332 @@
+/*******************************************************************************
+ * Copyright (c) Contributors to the Eclipse Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+
+package org.osgi.util.pushstream;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.osgi.util.pushstream.AbstractPushStreamImpl.State.BUILDING;
+import static org.osgi.util.pushstream.AbstractPushStreamImpl.State.CLOSED;
+import static org.osgi.util.pushstream.AbstractPushStreamImpl.State.STARTED;
+import static org.osgi.util.pushstream.PushEventConsumer.ABORT;
+import static org.osgi.util.pushstream.PushEventConsumer.CONTINUE;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
+
+import org.osgi.util.function.Function;
+import org.osgi.util.promise.PromiseFactory;
+import org.osgi.util.pushstream.PushEvent.EventType;
+
+/**
+ * A stream of the merged results of the per-key pipelines of a
+ * {@link PushStream#groupBy(Function, int, BiFunction)}.
+ * <p>
+ * The events of the previous stream are partitioned by the hash of their key
+ * onto a number of lanes. Each lane has a queue drained by at most one worker
+ * at a time on the executor of the stream, which owns the per-key streams of
+ * the keys of the lane. The events of a key are therefore delivered to its
+ * pipeline in order by a single thread, and the per-key streams need no
+ * synchronization. A worker is submitted again after a batch of events so
+ * that the lanes share the executor, and is scheduled after a delay when a
+ * per-key stream returns back pressure.
+ * <p>
+ * A lane holding its capacity of events returns back pressure to the
+ * previous stream rather than blocking it, as the previous stream may be
+ * running on the thread needed by the worker. A per-key stream is removed
+ * from its lane when its pipeline closes, and a later event of the key opens
+ * a new pipeline.
+ * <p>
+ * The terminal event of the previous stream is passed through every lane to
+ * every per-key stream. This stream closes once every lane has done so and
+ * every per-key pipeline has closed, or as soon as a per-key pipeline fails.
+ *
+ * @param <T> The type of the events received
+ * @param <K> The type of the keys
+ * @param <R> The type of the results
+ */
+final class GroupedPushStreamImpl<T, K, R>
+		extends IntermediatePushStreamImpl<R> {
+
+	private static final int												LANE_CAPACITY	= 256;
+	private static final int												MAX_BATCH		= 64;
+
+	private final AbstractPushStreamImpl<T>									previous;
+	private final Function< ? super T, ? extends K>							keyFunction;
+	private final BiFunction< ? super K,PushStream<T>, ? extends PushStream< ? extends R>>	pipeline;
+	private final List<Lane>												lanes;
+	private final PushEventConsumer<R>										results;
+	/**
+	 * The number of lanes which have not yet passed on the terminal event plus
+	 * the number of open per-key pipelines.
+	 */
+	private final AtomicInteger												pending;
+	private final AtomicReference<PushEvent< ? >>							terminal		= new AtomicReference<>();
+
+	GroupedPushStreamImpl(PushStreamProvider psp,
+			PromiseFactory promiseFactory, AbstractPushStreamImpl<T> previous,
+			Function< ? super T, ? extends K> keyFunction, int parallelism,
+			BiFunction< ? super K,PushStream<T>, ? extends PushStream< ? extends R>> pipeline) {
+		super(psp, promiseFactory, previous);
+		if (parallelism < 1) {
+			throw new IllegalArgumentException(
+					"The parallelism must be greater than zero: "
+							+ parallelism);
+		}
+		this.previous = previous;
+		this.keyFunction = Objects.requireNonNull(keyFunction);
+		this.pipeline = Objects.requireNonNull(pipeline);
+		this.lanes = new ArrayList<>(parallelism);
+		for (int i = 0; i < parallelism; i++) {
+			lanes.add(new Lane());
+		}
+		this.pending = new AtomicInteger(parallelism);
+		this.results = this::result;
+	}
+
+	@Override
+	protected boolean close(PushEvent<R> event, boolean sendDownStreamEvent) {
+		if (super.close(event, sendDownStreamEvent)) {
+			// The workers of the lanes close their per-key pipelines
+			lanes.forEach(Lane::start);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Accept an event of the previous stream.
+	 */
+	long accept(PushEvent< ? extends T> event) {
+		if (closed.get() == CLOSED) {
+			return ABORT;
+		}
+		try {
+			if (event.isTerminal()) {
+				terminal.compareAndSet(null, event.nodata());
+				for (Lane lane : lanes) {
+					lane.enqueue(new Keyed<>(null, event));
+				}
+				return ABORT;
+			}
+			K key = keyFunction.apply(event.getData());
+			int hash = Objects.hashCode(key);
+			return lanes.get(Math.floorMod(hash ^ (hash >>> 16), lanes.size()))
+					.enqueue(new Keyed<>(key, event));
+		} catch (Exception e) {
+			previous.close(PushEvent.error(e));
+			return ABORT;
+		}
+	}
+
+	/**
+	 * Accept an event of a per-key pipeline.
+	 */
+	private long result(PushEvent< ? extends R> event) {
+		if (!event.isTerminal()) {
+			return handleEvent(event);
+		}
+		if (event.getType() == EventType.ERROR) {
+			fail(event.nodata());
+		} else {
+			finished();
+		}
+		return ABORT;
+	}
+
+	private void finished() {
+		if (pending.decrementAndGet() == 0) {
+			PushEvent< ? > event = terminal.get();
+			// Without a terminal event the lanes were stopped by a close
+			if (event != null) {
+				handleEvent(event.nodata());
+			}
+		}
+	}
+
+	private void fail(PushEvent<R> error) {
+		close(error);
+		// Upstream close is needed as we have no direct backpressure
+		upstreamClose(error);
+	}
+
+	/**
+	 * An event of the previous stream and its key, or the key of a closed
+	 * per-key stream if the event is {@code null}.
+	 */
+	private static final class Keyed<K, T> {
+		final K						key;
+		final PushEvent< ? extends T>	event;
+
+		Keyed(K key, PushEvent< ? extends T> event) {
+			this.key = key;
+			this.event = event;
+		}
+	}
+
+	/**
+	 * A lane and its worker. The per-key streams are only accessed by the
+	 * worker, of which at most one is running or scheduled at a time.
+	 */
+	private final class Lane implements Runnable {
+		private final Queue<Keyed<K,T>>					queue	= new ConcurrentLinkedQueue<>();
+		private final AtomicInteger						size	= new AtomicInteger();
+		private final AtomicBoolean						running	= new AtomicBoolean();
+		private final Map<K,AbstractPushStreamImpl<T>>	keys	= new HashMap<>();
+
+		/**
+		 * Queue an item for the worker.
+		 * 
+		 * @return The back pressure, one millisecond per queued item beyond
+		 *         the capacity of the lane.
+		 */
+		long enqueue(Keyed<K,T> item) {
+			queue.offer(item);
+			int queued = size.incrementAndGet();
+			start();
+			return Math.max(queued - LANE_CAPACITY, CONTINUE);
+		}
+
+		void start() {
+			if (running.compareAndSet(false, true)) {
+				submit();
+			}
+		}
+
+		private void submit() {
+			try {
+				promiseFactory.executor().execute(this);
+			} catch (RejectedExecutionException e) {
+				// The executor is shut down by the close of the stream
+				run();
+			}
+		}
+
+		@Override
+		public void run() {
+			for (int i = 0; i < MAX_BATCH; i++) {
+				if (closed.get() == CLOSED) {
+					// The worker stays running as the lane is finished
+					terminate(PushEvent.close());
+					return;
+				}
+				Keyed<K,T> item = queue.poll();
+				if (item == null) {
+					running.set(false);
+					// An item or a close may have arrived before the flag was
+					// cleared, with its start ignored
+					if ((queue.isEmpty() && closed.get() != CLOSED)
+							|| !running.compareAndSet(false, true)) {
+						return;
+					}
+					continue;
+				}
+				size.decrementAndGet();
+				if (item.event == null) {
+					remove(item.key);
+					continue;
+				}
+				if (item.event.isTerminal()) {
+					terminate(item.event);
+					return;
+				}
+				long backPressure = deliver(item);
+				if (backPressure > 0) {
+					try {
+						promiseFactory.scheduledExecutor().schedule(
+								this::submit, backPressure, MILLISECONDS);
+						return;
+					} catch (RejectedExecutionException e) {
+						// The stream is closing, so carry on delivering
+					}
+				}
+			}
+			// Let the other lanes use the executor
+			submit();
+		}
+
+		private long deliver(Keyed<K,T> item) {
+			AbstractPushStreamImpl<T> stream = keys.get(item.key);
+			if ((stream == null) || (stream.closed.get() == CLOSED)) {
+				stream = open(item.key);
+				if (stream == null) {
+					return CONTINUE;
+				}
+				keys.put(item.key, stream);
+			}
+			long backPressure = stream.handleEvent(item.event);
+			// A negative back pressure has closed the per-key stream, which
+			// is removed once its close is queued
+			return Math.max(backPressure, CONTINUE);
+		}
+
+		private void remove(K key) {
+			AbstractPushStreamImpl<T> stream = keys.get(key);
+			// The key may already have a new pipeline
+			if ((stream != null) && (stream.closed.get() == CLOSED)) {
+				keys.remove(key);
+			}
+		}
+
+		private AbstractPushStreamImpl<T> open(K key) {
+			AbstractPushStreamImpl<T> stream = new AbstractPushStreamImpl<T>(
+					psp, promiseFactory) {
+				@Override
+				protected boolean begin() {
+					return closed.compareAndSet(BUILDING, STARTED);
+				}
+
+				@Override
+				protected void upstreamClose(PushEvent< ? > close) {
+					// The per-key pipeline was closed, so the lane must forget
+					// the per-key stream
+					if (closed.get() != CLOSED) {
+						close(close.nodata(), false);
+					}
+					enqueue(new Keyed<>(key, null));
+				}
+			};
+			pending.incrementAndGet();
+			try {
+				pipeline.apply(key, stream).forEachEvent(results);
+			} catch (Exception e) {
+				fail(PushEvent.error(e));
+				finished();
+				return null;
+			}
+			return stream;
+		}
+
+		private void terminate(PushEvent< ? > event) {
+			for (AbstractPushStreamImpl<T> stream : keys.values()) {
+				stream.handleEvent(event.nodata());
+			}
+			keys.clear();
+			finished();
+		}
+	}
+}
@@ -0,0 +1,536 @@
+/*******************************************************************************
+ * Copyright (c) Contributors to the Eclipse Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0 
+ *******************************************************************************/
+
+package org.osgi.util.pushstream;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.osgi.util.pushstream.AbstractPushStreamImpl.State.CLOSED;
+import static org.osgi.util.pushstream.PushEventConsumer.ABORT;
+import static org.osgi.util.pushstream.PushEventConsumer.CONTINUE;
+
+import java.util.Arrays;
+import java.util.IntSummaryStatistics;
+import java.util.OptionalDouble;
+import java.util.OptionalInt;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.IntBinaryOperator;
+import java.util.function.IntConsumer;
+import java.util.function.IntFunction;
+import java.util.function.IntPredicate;
+import java.util.function.IntToDoubleFunction;
+import java.util.function.IntToLongFunction;
+import java.util.function.IntUnaryOperator;
+import java.util.function.Supplier;
+
+import org.osgi.util.function.Function;
+import org.osgi.util.promise.Deferred;
+import org.osgi.util.promise.Promise;
+import org.osgi.util.promise.PromiseFactory;
+
+/**
+ * A stage of an {@link IntPushStream}. The values are passed to the
+ * {@link Sink} of the next stage while the lifecycle of the stage, and the
+ * delivery of the terminal event, is handled by an intermediate object
+ * stream.
+ */
+final class IntPushStreamImpl implements IntPushStream {
+
+	/**
+	 * The consumer of the values of a stage. The values are passed to
+	 * {@link #acceptInt(int)} while the terminal event is passed to
+	 * {@link #accept(PushEvent)} when the stage is closed.
+	 */
+	interface Sink extends PushEventConsumer<Integer> {
+		long acceptInt(int value) throws Exception;
+	}
+
+	final AbstractPushStreamImpl<Integer> stream;
+
+	IntPushStreamImpl(PushStreamProvider psp, PromiseFactory promiseFactory,
+			AbstractPushStreamImpl< ? > previous) {
+		this.stream = new IntermediatePushStreamImpl<>(psp, promiseFactory,
+				previous);
+	}
+
+	/**
+	 * Handle a value for this stage.
+	 * 
+	 * @return The back pressure.
+	 */
+	long handleInt(int value) {
+		if (stream.closed.get() != CLOSED) {
+			try {
+				PushEventConsumer<Integer> consumer = stream.next.get();
+				long val;
+				if (consumer == null) {
+					//TODO log a warning
+					val = CONTINUE;
+				} else {
+					val = ((Sink) consumer).acceptInt(value);
+				}
+				if (val < 0) {
+					stream.close();
+				}
+				return val;
+			} catch (Exception e) {
+				stream.close(PushEvent.error(e));
+				return ABORT;
+			}
+		}
+		return ABORT;
+	}
+
+	/**
+	 * Handle a terminal event for this stage.
+	 * 
+	 * @return The back pressure.
+	 */
+	long handleEvent(PushEvent< ? > event) {
+		return stream.handleEvent(event.nodata());
+	}
+
+	private IntPushStreamImpl next() {
+		return new IntPushStreamImpl(stream.psp, stream.promiseFactory, stream);
+	}
+
+	@Override
+	public void close() {
+		stream.close();
+	}
+
+	@Override
+	public IntPushStream onClose(Runnable closeHandler) {
+		stream.onClose(closeHandler);
+		return this;
+	}
+
+	@Override
+	public IntPushStream onError(Consumer< ? super Throwable> errorHandler) {
+		stream.onError(errorHandler);
+		return this;
+	}
+
+	@Override
+	public IntPushStream filter(IntPredicate predicate) {
+		IntPushStreamImpl eventStream = next();
+		stream.updateNext(new Sink() {
+			@Override
+			public long acceptInt(int value) {
+				return predicate.test(value) ? eventStream.handleInt(value)
+						: CONTINUE;
+			}
+
+			@Override
+			public long accept(PushEvent< ? extends Integer> event) {
+				return eventStream.handleEvent(event);
+			}
+		});
+		return eventStream;
+	}
+
+	@Override
+	public IntPushStream map(IntUnaryOperator mapper) {
+		IntPushStreamImpl eventStream = next();
+		stream.updateNext(new Sink() {
+			@Override
+			public long acceptInt(int value) {
+				return eventStream.handleInt(mapper.applyAsInt(value));
+			}
+
+			@Override
+			public long accept(PushEvent< ? extends Integer> event) {
+				return eventStream.handleEvent(event);
+			}
+		});
+		return eventStream;
+	}
+
+	@Override
+	public LongPushStream mapToLong(IntToLongFunction mapper) {
+		LongPushStreamImpl eventStream = new LongPushStreamImpl(stream.psp,
+				stream.promiseFactory, stream);
+		stream.updateNext(new Sink() {
+			@Override
+			public long acceptInt(int value) {
+				return eventStream.handleLong(mapper.applyAsLong(value));
+			}
+
+			@Override
+			public long accept(PushEvent< ? extends Integer> event) {
+				return eventStream.handleEvent(event);
+			}
+		});
+		return eventStream;
+	}
+
+	@Override
+	public DoublePushStream mapToDouble(IntToDoubleFunction mapper) {
+		DoublePushStreamImpl eventStream = new DoublePushStreamImpl(stream.psp,
+				stream.promiseFactory, stream);
+		stream.updateNext(new Sink() {
+			@Override
+			public long acceptInt(int value) {
+				return eventStream.handleDouble(mapper.applyAsDouble(value));
+			}
+
+			@Override
+			public long accept(PushEvent< ? extends Integer> event) {
+				return eventStream.handleEvent(event);
+			}
+		});
+		return eventStream;
+	}
+	@Override
+	public <U> PushStream<U> mapToObj(IntFunction< ? extends U> mapper) {
+		AbstractPushStreamImpl<U> eventStream = new IntermediatePushStreamImpl<>(
+				stream.psp, stream.promiseFactory, stream);
+		stream.updateNext(new Sink() {
+			@Override
+			public long acceptInt(int value) {
+				return eventStream.handleEvent(PushEvent.data(mapper.apply(value)));
+			}
+
+			@Override
+			public long accept(PushEvent< ? extends Integer> event) {
+				return eventStream.handleEvent(event.nodata());
+			}
+		});
+		return eventStream;
+	}
+
+	@Override
+	public PushStream<Integer> boxed() {
+		return mapToObj(Integer::valueOf);
+	}
+
+	@Override
+	public <R> PushStream<R> window(int count,
+			Function< ? super int[], ? extends R> f) {
+		if (count < 1) {
+			throw new IllegalArgumentException(
+					"The window count must be greater than zero: " + count);
+		}
+		AbstractPushStreamImpl<R> eventStream = new IntermediatePushStreamImpl<>(
+				stream.psp, stream.promiseFactory, stream);
+		stream.updateNext(new Sink() {
+			/* guarded by this */
+			private int[]	values	= new int[count];
+			/* guarded by this */
+			private int		size;
+
+			@Override
+			public long acceptInt(int value) throws Exception {
+				int[] window;
+				synchronized (this) {
+					values[size++] = value;
+					if (size < count) {
+						return CONTINUE;
+					}
+					window = values;
+					values = new int[count];
+					size = 0;
+				}
+				return eventStream.handleEvent(PushEvent.data(f.apply(window)));
+			}
+
+			@Override
+			public long accept(PushEvent< ? extends Integer> event) {
+				if (event.getType() == PushEvent.EventType.CLOSE) {
+					int[] window;
+					synchronized (this) {
+						window = Arrays.copyOf(values, size);
+						size = 0;
+					}
+					if (window.length > 0) {
+						try {
+							eventStream.handleEvent(
+									PushEvent.data(f.apply(window)));
+						} catch (Exception e) {
+							return eventStream
+									.handleEvent(PushEvent.error(e));
+						}
+					}
+				}
+				return eventStream.handleEvent(event.nodata());
+			}
+		});
+		return eventStream;
+	}
+
+	@Override
+	public IntPushStream buffer(int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException(
+					"The buffer capacity must be greater than zero: "
+							+ capacity);
+		}
+		IntPushStreamImpl eventStream = next();
+		stream.updateNext(new Buffer(eventStream, capacity));
+		return eventStream;
+	}
+
+	/**
+	 * A ring buffer of values which are delivered to the next stage by a
+	 * worker on the executor of the promise factory. The worker runs while
+	 * there are buffered values or a terminal event to deliver.
+	 * <p>
+	 * The delivering thread is never blocked, as the worker may be waiting
+	 * for the same thread of the executor. Once the buffer holds its capacity
+	 * of values the ring grows, and a back pressure of one millisecond per
+	 * value beyond the capacity is returned instead.
+	 */
+	private final class Buffer implements Sink, Runnable {
+		private final IntPushStreamImpl	eventStream;
+		private final Executor			executor;
+		private final int				capacity;
+		/* guarded by this */
+		private int[]					values;
+		/* guarded by this */
+		private int						head;
+		/* guarded by this */
+		private int						size;
+		/* guarded by this */
+		private PushEvent< ? >			terminal;
+		/* guarded by this */
+		private boolean					running;
+		/* guarded by this */
+		private boolean					done;
+
+		Buffer(IntPushStreamImpl eventStream, int capacity) {
+			this.eventStream = eventStream;
+			this.executor = stream.promiseFactory.executor();
+			this.capacity = capacity;
+			this.values = new int[capacity];
+		}
+
+		@Override
+		public long acceptInt(int value) {
+			long backPressure;
+			synchronized (this) {
+				if (done || (terminal != null)) {
+					return ABORT;
+				}
+				if (size == values.length) {
+					int[] grown = new int[values.length * 2];
+					for (int i = 0; i < size; i++) {
+						grown[i] = values[(head + i) % values.length];
+					}
+					values = grown;
+					head = 0;
+				}
+				values[(head + size) % values.length] = value;
+				size++;
+				backPressure = Math.max(size - capacity, CONTINUE);
+				if (running) {
+					return backPressure;
+				}
+				running = true;
+			}
+			start();
+			return backPressure;
+		}
+
+		@Override
+		public long accept(PushEvent< ? extends Integer> event) {
+			synchronized (this) {
+				if (done || (terminal != null)) {
+					return ABORT;
+				}
+				terminal = event;
+				if (running) {
+					return ABORT;
+				}
+				running = true;
+			}
+			start();
+			return ABORT;
+		}
+
+		@Override
+		public void run() {
+			for (;;) {
+				int value;
+				PushEvent< ? > event;
+				synchronized (this) {
+					if (size > 0) {
+						value = values[head];
+						head = (head + 1) % values.length;
+						size--;
+						event = null;
+					} else if (terminal != null) {
+						value = 0;
+						event = terminal;
+						done = true;
+					} else {
+						running = false;
+						return;
+					}
+				}
+				if (event != null) {
+					eventStream.handleEvent(event);
+					return;
+				}
+				long backPressure = eventStream.handleInt(value);
+				if (backPressure < 0) {
+					synchronized (this) {
+						done = true;
+						size = 0;
+					}
+					close();
+					return;
+				} else if (backPressure > 0) {
+					try {
+						stream.promiseFactory.scheduledExecutor()
+								.schedule(this::start, backPressure,
+										MILLISECONDS);
+						return;
+					} catch (RejectedExecutionException e) {
+						// The stream is closing, so carry on delivering
+					}
+				}
+			}
+		}
+
+		/**
+		 * Run the worker on the executor, or on the current thread if the
+		 * executor has been shut down by the close of the stream.
+		 */
+		private void start() {
+			try {
+				executor.execute(this);
+			} catch (RejectedExecutionException e) {
+				run();
+			}
+		}
+	}
+
+	/**
+	 * Reduce the values of this stage with a terminal sink.
+	 * 
+	 * @param accumulator Accumulates each value.
+	 * @param finisher Returns the result when the stream is closed.
+	 * @return A promise resolved with the result when the stream is closed.
+	 */
+	private <R> Promise<R> collect(IntConsumer accumulator,
+			Supplier< ? extends R> finisher) {
+		Deferred<R> d = stream.promiseFactory.deferred();
+		stream.updateNext(new Sink() {
+			@Override
+			public long acceptInt(int value) {
+				accumulator.accept(value);
+				return CONTINUE;
+			}
+
+			@Override
+			public long accept(PushEvent< ? extends Integer> event) {
+				switch (event.getType()) {
+					case CLOSE :
+						try {
+							d.resolve(finisher.get());
+						} catch (Exception e) {
+							d.fail(e);
+						}
+						break;
+					case ERROR :
+						d.fail(event.getFailure());
+						break;
+					default :
+						break;
+				}
+				return ABORT;
+			}
+		});
+		stream.begin();
+		return d.getPromise();
+	}
+
+	@Override
+	public Promise<Void> forEach(IntConsumer action) {
+		return collect(action, () -> null);
+	}
+
+	@Override
+	public Promise<Integer> reduce(int identity, IntBinaryOperator accumulator) {
+		int[] result = {
+				identity
+		};
+		return collect(value -> {
+			synchronized (result) {
+				result[0] = accumulator.applyAsInt(result[0], value);
+			}
+		}, () -> {
+			synchronized (result) {
+				return Integer.valueOf(result[0]);
+			}
+		});
+	}
+
+	@Override
+	public Promise<OptionalInt> reduce(IntBinaryOperator accumulator) {
+		int[] result = new int[1];
+		boolean[] present = new boolean[1];
+		return collect(value -> {
+			synchronized (result) {
+				result[0] = present[0]
+						? accumulator.applyAsInt(result[0], value)
+						: value;
+				present[0] = true;
+			}
+		}, () -> {
+			synchronized (result) {
+				return present[0] ? OptionalInt.of(result[0])
+						: OptionalInt.empty();
+			}
+		});
+	}
+
+	@Override
+	public Promise<Integer> sum() {
+		return reduce(0, Integer::sum);
+	}
+
+	@Override
+	public Promise<Long> count() {
+		LongAdder counter = new LongAdder();
+		return collect(value -> counter.increment(),
+				() -> Long.valueOf(counter.sum()));
+	}
+
+	@Override
+	public Promise<OptionalDouble> average() {
+		return summaryStatistics().map(s -> (s.getCount() == 0)
+				? OptionalDouble.empty() : OptionalDouble.of(s.getAverage()));
+	}
+
+	@Override
+	public Promise<IntSummaryStatistics> summaryStatistics() {
+		IntSummaryStatistics statistics = new IntSummaryStatistics();
+		return collect(value -> {
+			synchronized (statistics) {
+				statistics.accept(value);
+			}
+		}, () -> {
+			synchronized (statistics) {
+				return statistics;
+			}
+		});
+	}
+}
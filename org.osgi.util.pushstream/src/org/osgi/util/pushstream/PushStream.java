@@ -31,7 +31,10 @@ import java.util.function.IntFunction;
 import java.util.function.IntSupplier;
 import java.util.function.LongUnaryOperator;
 import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToIntFunction;
 import java.util.function.ToLongBiFunction;
+import java.util.function.ToLongFunction;
 import java.util.stream.Collector;
 
 import org.osgi.annotation.versioning.ProviderType;
@@ -109,6 +112,36 @@ public interface PushStream<T> extends AutoCloseable {
 	 */
 	<R> PushStream<R> map(Function< ? super T, ? extends R> mapper);
 
+	/**
+	 * Map a payload value to a {@code int} value. The mapped values are
+	 * passed through the stages of the returned stream without being boxed.
+	 * 
+	 * @param mapper The map function
+	 * @return A new {@link IntPushStream}
+	 * @since 1.1
+	 */
+	IntPushStream mapToInt(ToIntFunction< ? super T> mapper);
+
+	/**
+	 * Map a payload value to a {@code long} value. The mapped values are
+	 * passed through the stages of the returned stream without being boxed.
+	 * 
+	 * @param mapper The map function
+	 * @return A new {@link LongPushStream}
+	 * @since 1.1
+	 */
+	LongPushStream mapToLong(ToLongFunction< ? super T> mapper);
+
+	/**
+	 * Map a payload value to a {@code double} value. The mapped values are
+	 * passed through the stages of the returned stream without being boxed.
+	 * 
+	 * @param mapper The map function
+	 * @return A new {@link DoublePushStream}
+	 * @since 1.1
+	 */
+	DoublePushStream mapToDouble(ToDoubleFunction< ? super T> mapper);
+
 	/**
 	 * Asynchronously map the payload values. The mapping function returns a
 	 * Promise representing the asynchronous mapping operation.
@@ -312,6 +345,48 @@ public interface PushStream<T> extends AutoCloseable {
 	 */
 	PushStream<T> sequential();
 
+	/**
+	 * Process the events of each key in a separate pipeline, partitioning the
+	 * keys over a number of lanes which run in parallel, and merge the results
+	 * of the pipelines into the returned stream.
+	 * <p>
+	 * The events are assigned to a lane by the hash of their key. Each lane
+	 * has its own buffer, drained by one task at a time on the executor of
+	 * this stream. When the first event of a key arrives, the pipeline
+	 * function is called with the key and a stream of the events of the key,
+	 * and returns the pipeline of the key.
+	 * Note that:
+	 * <ul>
+	 * <li>The events of a key are delivered to its pipeline in order and by a
+	 * single thread, so stateful operations such as windows and reductions of
+	 * the pipeline of a key need no synchronization.</li>
+	 * <li>The results of the pipelines of keys in different lanes may be
+	 * delivered concurrently. Use {@link #sequential()} if overlapping calls
+	 * downstream must be avoided.</li>
+	 * <li>A full lane returns back pressure to the delivery of events to this
+	 * stage, and back pressure returned by the pipeline of a key pauses its
+	 * lane.</li>
+	 * <li>When the pipeline of a key closes before this stream, a later event
+	 * of the key starts a new pipeline for the key.</li>
+	 * <li>When this stream closes every pipeline is closed, and the returned
+	 * stream closes once every pipeline has closed. The returned stream fails
+	 * as soon as a pipeline fails.</li>
+	 * </ul>
+	 *
+	 * @param <K> The type of the keys
+	 * @param <R> The type of the results
+	 * @param keyFunction Returns the key of an event
+	 * @param parallelism The number of lanes
+	 * @param pipeline Returns the pipeline of a key given the key and the
+	 *            stream of the events of the key
+	 * @return Builder style (can be a new or the same object)
+	 * @throws IllegalArgumentException if the parallelism is &lt; 1
+	 * @since 1.1
+	 */
+	<K, R> PushStream<R> groupBy(Function< ? super T, ? extends K> keyFunction,
+			int parallelism,
+			BiFunction< ? super K,PushStream<T>, ? extends PushStream< ? extends R>> pipeline);
+
 	/**
 	 * Coalesces a number of events into a new type of event. The input events
 	 * are forwarded to a accumulator function. This function returns an
@@ -455,6 +530,41 @@ public interface PushStream<T> extends AutoCloseable {
 			IntSupplier maxEvents, Executor executor,
 			BiFunction<Long,Collection<T>,R> f);
 
+	/**
+	 * Aggregates the events over a sliding window of a fixed size which
+	 * advances by a fixed slide, and forwards the result for the window each
+	 * time that it advances. A slide equal to the size gives tumbling windows,
+	 * a smaller slide gives overlapping hopping windows. Note that:
+	 * <ul>
+	 * <li>The events are not buffered. The window is divided into panes whose
+	 * length is the greatest common divisor of the size and the slide, the
+	 * events are accumulated into an aggregate for their pane, and the result
+	 * for the window is computed from the aggregates of its panes as described
+	 * by the {@link WindowAggregator}.</li>
+	 * <li>A result is forwarded for every slide, including for windows in which
+	 * no events arrived.</li>
+	 * <li>When this stream is closed the result for the window ending at that
+	 * time is forwarded if events arrived since the last result. No result is
+	 * forwarded when this stream fails.</li>
+	 * <li>The results are delivered as different tasks, (and therefore
+	 * potentially on different threads) from the ones that delivered the events
+	 * to this {@link PushStream}.</li>
+	 * <li>Due to the asynchronous delivery required, this method prevents the
+	 * propagation of back-pressure to earlier stages</li>
+	 * </ul>
+	 *
+	 * @param size The size of the window
+	 * @param slide The time by which the window advances, which must not be
+	 *            greater than the size
+	 * @param aggregator The aggregation of the events of the window
+	 * @return Builder style (can be a new or the same object)
+	 * @throws IllegalArgumentException if the size or the slide is not
+	 *             positive, or the slide is greater than the size
+	 * @since 1.1
+	 */
+	<A, R> PushStream<R> window(Duration size, Duration slide,
+			WindowAggregator< ? super T,A,R> aggregator);
+
 	/**
 	 * Changes the back-pressure propagated by this pipeline stage.
 	 * <p>
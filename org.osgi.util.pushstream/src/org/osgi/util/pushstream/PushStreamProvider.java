@@ -27,7 +27,6 @@ import static org.osgi.util.pushstream.QueuePolicyOption.FAIL;
 
 import java.util.Iterator;
 import java.util.Objects;
-import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executor;
@@ -48,7 +47,12 @@ import org.osgi.util.promise.PromiseFactory;
  */
 public final class PushStreamProvider {
 
-	private final Lock					lock	= new ReentrantLock(true);
+	/**
+	 * The capacity of the default buffer.
+	 */
+	private static final int			DEFAULT_BUFFER_CAPACITY	= 32;
+
+	private final Lock					lock					= new ReentrantLock(true);
 
 	private int							schedulerReferences;
 
@@ -93,6 +97,30 @@ public final class PushStreamProvider {
 		}
 	}
 
+	/**
+	 * Create a bounded buffer for use with a {@link PushStreamBuilder},
+	 * {@link BufferBuilder} or {@link PushStream#buildBuffer()}.
+	 * <p>
+	 * The buffer is a lock-free ring buffer which is also the default buffer
+	 * of buffered streams, event sources and consumers. Events are offered
+	 * and polled without taking a lock. The buffer takes a lock only to block
+	 * a thread which must wait for the buffer to have room or to have an
+	 * event. An event removed from the buffer other than by polling leaves an
+	 * empty slot, which counts toward the size of the buffer until the events
+	 * before it have been polled.
+	 * 
+	 * @param capacity The maximum number of events held by the buffer. Must
+	 *            be greater than zero.
+	 * @return A bounded buffer.
+	 * @throws IllegalArgumentException If {@code capacity} is not greater
+	 *             than zero.
+	 * @since 1.1
+	 */
+	public static <T> BlockingQueue<PushEvent< ? extends T>> createBuffer(
+			int capacity) {
+		return new RingBufferQueue<>(capacity);
+	}
+
 	/**
 	 * Create a stream with the default configured buffer, executor size, queue,
 	 * queue policy and pushback policy. This is equivalent to calling
@@ -119,7 +147,7 @@ public final class PushStreamProvider {
 	 */
 	public <T> PushStream<T> createStream(PushEventSource<T> eventSource) {
 		return createStream(eventSource, 1, null, null,
-				new ArrayBlockingQueue<>(32),
+				new RingBufferQueue<>(DEFAULT_BUFFER_CAPACITY),
 				FAIL.getPolicy(), LINEAR.getPolicy(1000));
 	}
 	
@@ -182,7 +210,7 @@ public final class PushStreamProvider {
 		}
 
 		if (queue == null) {
-			queue = (U) new ArrayBlockingQueue(32);
+			queue = (U) new RingBufferQueue(DEFAULT_BUFFER_CAPACITY);
 		}
 
 		if (queuePolicy == null) {
@@ -489,7 +517,7 @@ public final class PushStreamProvider {
 	 */
 	public <T> SimplePushEventSource<T> createSimpleEventSource(Class<T> type) {
 		return createSimplePushEventSource(1, null,
-				new ArrayBlockingQueue<>(32),
+				new RingBufferQueue<>(DEFAULT_BUFFER_CAPACITY),
 				FAIL.getPolicy(), () -> { /* Nothing else to do */ });
 	}
 	
@@ -539,7 +567,7 @@ public final class PushStreamProvider {
 		}
 
 		if (queue == null) {
-			queue = (U) new ArrayBlockingQueue(32);
+			queue = (U) new RingBufferQueue(DEFAULT_BUFFER_CAPACITY);
 		}
 
 		if (queuePolicy == null) {
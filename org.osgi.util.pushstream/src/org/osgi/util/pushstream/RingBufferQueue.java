@@ -0,0 +1,437 @@
+/*******************************************************************************
+ * Copyright (c) Contributors to the Eclipse Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0 
+ *******************************************************************************/
+
+package org.osgi.util.pushstream;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded lock-free queue backed by a ring buffer.
+ * <p>
+ * Each slot of the ring buffer has a sequence number which tells producers and
+ * consumers whether the slot is free or holds an element for a given position.
+ * Offering an element claims the tail position with a single compare and set
+ * and polling an element claims the head position with a single compare and
+ * set, so any number of threads can offer and poll concurrently without
+ * taking a lock. {@link #drainTo(Collection, int)} claims a whole run of
+ * available elements with a single compare and set.
+ * <p>
+ * Only the blocking methods take a lock and only when they must wait: when
+ * the queue is full for {@link #put(Object)} and when the queue is empty for
+ * {@link #take()}. The non blocking methods only check whether a thread is
+ * waiting before signalling it.
+ * <p>
+ * Removing an element other than the head, with {@link #remove(Object)} or
+ * the iterator, empties its slot without moving the other elements. The
+ * consumers skip an empty slot, which counts toward the size of the queue
+ * until a consumer passes it. The iterator returns a weakly consistent
+ * snapshot of the queue.
+ *
+ * @param <E> The type of the elements.
+ * @ThreadSafe
+ * @author $Id$
+ * @since 1.1
+ */
+final class RingBufferQueue<E> extends AbstractQueue<E>
+		implements BlockingQueue<E> {
+	private final int						capacity;
+	private final AtomicReferenceArray<E>	items;
+	/**
+	 * The sequence number of each slot. A slot is free for the producer of
+	 * position {@code p} when its sequence is {@code 2p} and holds the element
+	 * of position {@code p} for a consumer when its sequence is
+	 * {@code 2p + 1}. Doubling keeps the two states distinct even when the
+	 * capacity is one.
+	 */
+	private final AtomicLongArray			sequences;
+	private final AtomicLong				head;
+	private final AtomicLong				tail;
+
+	private final ReentrantLock				lock;
+	private final Condition					notEmpty;
+	private final Condition					notFull;
+	private final AtomicInteger				takers;
+	private final AtomicInteger				putters;
+
+	/**
+	 * Create a queue.
+	 *
+	 * @param capacity The maximum number of elements held by the queue. Must
+	 *            be greater than zero.
+	 */
+	RingBufferQueue(int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException(
+					"capacity must be greater than zero: " + capacity);
+		}
+		this.capacity = capacity;
+		this.items = new AtomicReferenceArray<>(capacity);
+		this.sequences = new AtomicLongArray(capacity);
+		for (int i = 0; i < capacity; i++) {
+			sequences.set(i, free(i));
+		}
+		this.head = new AtomicLong();
+		this.tail = new AtomicLong();
+		this.lock = new ReentrantLock();
+		this.notEmpty = lock.newCondition();
+		this.notFull = lock.newCondition();
+		this.takers = new AtomicInteger();
+		this.putters = new AtomicInteger();
+	}
+
+	private int index(long position) {
+		return (int) (position % capacity);
+	}
+
+	private static long free(long position) {
+		return position << 1;
+	}
+
+	private static long full(long position) {
+		return (position << 1) + 1L;
+	}
+
+	@Override
+	public boolean offer(E e) {
+		requireNonNull(e);
+		long pos = tail.get();
+		for (;;) {
+			int i = index(pos);
+			long dif = sequences.get(i) - free(pos);
+			if (dif == 0L) {
+				if (tail.compareAndSet(pos, pos + 1L)) {
+					items.lazySet(i, e);
+					sequences.set(i, full(pos)); // publish the element
+					if (takers.get() > 0) {
+						signal(notEmpty);
+					}
+					return true;
+				}
+				pos = tail.get();
+			} else if (dif < 0L) {
+				return false; // full
+			} else {
+				pos = tail.get(); // another producer claimed the position
+			}
+		}
+	}
+
+	@Override
+	public E poll() {
+		long pos = head.get();
+		for (;;) {
+			int i = index(pos);
+			long dif = sequences.get(i) - full(pos);
+			if (dif == 0L) {
+				if (head.compareAndSet(pos, pos + 1L)) {
+					E e = release(i, pos);
+					if (putters.get() > 0) {
+						signal(notFull);
+					}
+					if (e != null) {
+						return e;
+					}
+					// the element was removed, poll the next position
+				}
+				pos = head.get();
+			} else if (dif < 0L) {
+				return null; // empty
+			} else {
+				pos = head.get(); // another consumer claimed the position
+			}
+		}
+	}
+
+	/**
+	 * Take the element out of a claimed slot and free the slot for the
+	 * producer of the position one lap later.
+	 *
+	 * @return The element or {@code null} if the element was removed.
+	 */
+	private E release(int i, long pos) {
+		E e = items.getAndSet(i, null);
+		sequences.set(i, free(pos + capacity));
+		return e;
+	}
+
+	@Override
+	public E peek() {
+		for (;;) {
+			long pos = head.get();
+			int i = index(pos);
+			long dif = sequences.get(i) - full(pos);
+			if (dif < 0L) {
+				return null; // empty
+			}
+			E e = items.get(i);
+			if ((dif == 0L) && (head.get() == pos)) {
+				if (e != null) {
+					return e;
+				}
+				// skip the empty slot of a removed element
+				if (head.compareAndSet(pos, pos + 1L)) {
+					release(i, pos);
+					if (putters.get() > 0) {
+						signal(notFull);
+					}
+				}
+			}
+		}
+	}
+
+	@Override
+	public int drainTo(Collection< ? super E> c) {
+		return drainTo(c, Integer.MAX_VALUE);
+	}
+
+	@Override
+	public int drainTo(Collection< ? super E> c, int maxElements) {
+		requireNonNull(c);
+		if (c == this) {
+			throw new IllegalArgumentException("cannot drain to itself");
+		}
+		int limit = Math.min(maxElements, capacity);
+		int drained = 0;
+		while (drained == 0) {
+			int n;
+			long pos;
+			do {
+				pos = head.get();
+				// count the run of available elements
+				for (n = 0; n < limit; n++) {
+					if (sequences.get(index(pos + n)) != full(pos + n)) {
+						break;
+					}
+				}
+				if (n == 0) {
+					return 0;
+				}
+			} while (!head.compareAndSet(pos, pos + n));
+			try {
+				for (int k = 0; k < n; k++) {
+					long p = pos + k;
+					E e = release(index(p), p);
+					if (e != null) {
+						c.add(e);
+						drained++;
+					}
+				}
+			} finally {
+				if (putters.get() > 0) {
+					signal(notFull);
+				}
+			}
+		}
+		return drained;
+	}
+
+	@Override
+	public void put(E e) throws InterruptedException {
+		if (offer(e)) {
+			return;
+		}
+		lock.lockInterruptibly();
+		putters.incrementAndGet();
+		try {
+			while (!offer(e)) {
+				notFull.await();
+			}
+		} finally {
+			putters.decrementAndGet();
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public boolean offer(E e, long timeout, TimeUnit unit)
+			throws InterruptedException {
+		if (offer(e)) {
+			return true;
+		}
+		long nanos = unit.toNanos(timeout);
+		lock.lockInterruptibly();
+		putters.incrementAndGet();
+		try {
+			while (!offer(e)) {
+				if (nanos <= 0L) {
+					return false;
+				}
+				nanos = notFull.awaitNanos(nanos);
+			}
+			return true;
+		} finally {
+			putters.decrementAndGet();
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public E take() throws InterruptedException {
+		E e = poll();
+		if (e != null) {
+			return e;
+		}
+		lock.lockInterruptibly();
+		takers.incrementAndGet();
+		try {
+			while ((e = poll()) == null) {
+				notEmpty.await();
+			}
+			return e;
+		} finally {
+			takers.decrementAndGet();
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+		E e = poll();
+		if (e != null) {
+			return e;
+		}
+		long nanos = unit.toNanos(timeout);
+		lock.lockInterruptibly();
+		takers.incrementAndGet();
+		try {
+			while ((e = poll()) == null) {
+				if (nanos <= 0L) {
+					return null;
+				}
+				nanos = notEmpty.awaitNanos(nanos);
+			}
+			return e;
+		} finally {
+			takers.decrementAndGet();
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Wake the threads waiting on a condition. A waiting thread registers
+	 * itself before checking the queue again while holding the lock, so
+	 * taking the lock here ensures the signal is not lost.
+	 */
+	private void signal(Condition condition) {
+		lock.lock();
+		try {
+			condition.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public int size() {
+		long h = head.get();
+		long size = tail.get() - h;
+		if (size < 0L) {
+			return 0;
+		}
+		return (int) Math.min(size, capacity);
+	}
+
+	@Override
+	public int remainingCapacity() {
+		return capacity - size();
+	}
+
+	@Override
+	public boolean remove(Object o) {
+		if (o == null) {
+			return false;
+		}
+		long t = tail.get();
+		for (long pos = head.get(); pos < t; pos++) {
+			E e = items.get(index(pos));
+			if ((e != null) && o.equals(e) && removeAt(pos, e)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Remove an element by emptying its slot, unless a consumer has claimed
+	 * the element.
+	 *
+	 * @return {@code true} if the element was removed.
+	 */
+	private boolean removeAt(long pos, E e) {
+		int i = index(pos);
+		return (sequences.get(i) == full(pos)) && items.compareAndSet(i, e, null);
+	}
+
+	@Override
+	public Iterator<E> iterator() {
+		List<Long> positions = new ArrayList<>(size());
+		List<E> snapshot = new ArrayList<>(size());
+		long t = tail.get();
+		for (long pos = head.get(); pos < t; pos++) {
+			int i = index(pos);
+			E e = items.get(i);
+			if ((e != null) && (sequences.get(i) == full(pos))) {
+				positions.add(Long.valueOf(pos));
+				snapshot.add(e);
+			}
+		}
+		return new Iterator<E>() {
+			private int	next	= 0;
+			private int	last	= -1;
+
+			@Override
+			public boolean hasNext() {
+				return next < snapshot.size();
+			}
+
+			@Override
+			public E next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				last = next++;
+				return snapshot.get(last);
+			}
+
+			@Override
+			public void remove() {
+				if (last < 0) {
+					throw new IllegalStateException();
+				}
+				// an element which was consumed since the snapshot is gone
+				removeAt(positions.get(last).longValue(), snapshot.get(last));
+				last = -1;
+			}
+		};
+	}
+}
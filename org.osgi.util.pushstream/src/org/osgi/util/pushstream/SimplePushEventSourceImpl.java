@@ -34,6 +34,11 @@ import org.osgi.util.promise.PromiseFactory;
 
 class SimplePushEventSourceImpl<T, U extends BlockingQueue<PushEvent< ? extends T>>>
 		implements SimplePushEventSource<T> {
+
+	/**
+	 * The maximum number of events a worker delivers in one batch.
+	 */
+	private static final int							MAX_BATCH	= 64;
 	
 	private final Object								lock		= new Object();
 
@@ -163,6 +168,22 @@ class SimplePushEventSourceImpl<T, U extends BlockingQueue<PushEvent< ? extends
 		}
 	}
 
+	private long safePush(BatchPushEventConsumer< ? super T> pec,
+			List<PushEvent<T>> batch) {
+		try {
+			long backpressure = pec.accept(batch) * 1000000;
+			if (backpressure < 0) {
+				closeConsumer(pec, PushEvent.close());
+				return -1;
+			}
+			return backpressure;
+		} catch (Exception e) {
+			// TODO log?
+			closeConsumer(pec, PushEvent.error(e));
+			return -1;
+		}
+	}
+
 	@Override
 	public void close() {
 		close(PushEvent.close());
@@ -235,15 +256,29 @@ class SimplePushEventSourceImpl<T, U extends BlockingQueue<PushEvent< ? extends
 		}
 	}
 
+	private void startWorker() {
+		startWorker(null);
+	}
+
+	/**
+	 * Start a worker to deliver the queued events. When the only connected
+	 * consumer accepts batches, the worker delivers the queued data events in
+	 * batches and applies the back pressure once per batch.
+	 * 
+	 * @param pending A terminal event taken from the queue by a worker which
+	 *            was delayed by back pressure before delivering it, or
+	 *            {@code null}.
+	 */
 	@SuppressWarnings({
 			"unchecked", "boxing"
 	})
-	private void startWorker() {
+	private void startWorker(PushEvent<T> pending) {
 		promiseFactory.executor().execute(() -> {
 			try {
-				
+				PushEvent<T> carried = pending;
 				for(;;) {
 					PushEvent<T> event;
+					List<PushEvent<T>> batch = null;
 					List<PushEventConsumer< ? super T>> toCall;
 					boolean resetWait;
 					synchronized (lock) {
@@ -256,7 +291,12 @@ class SimplePushEventSourceImpl<T, U extends BlockingQueue<PushEvent< ? extends
 							semaphore.acquire();
 						}
 
-						event = (PushEvent<T>) queue.poll();
+						if (carried != null) {
+							event = carried;
+							carried = null;
+						} else {
+							event = (PushEvent<T>) queue.poll();
+						}
 						
 						if(event == null) {
 							break;
@@ -277,10 +317,32 @@ class SimplePushEventSourceImpl<T, U extends BlockingQueue<PushEvent< ? extends
 							}
 						} else {
 							resetWait = false;
+							if ((toCall.size() == 1) && (toCall
+									.get(0) instanceof BatchPushEventConsumer)) {
+								batch = new ArrayList<>();
+								batch.add(event);
+								PushEvent<T> more;
+								while ((batch.size() < MAX_BATCH)
+										&& ((more = (PushEvent<T>) queue
+												.poll()) != null)) {
+									if (more.isTerminal()) {
+										carried = more;
+										break;
+									}
+									batch.add(more);
+								}
+							}
 						}
 					}
 					
-					Promise<Long> backPressure = deliver(toCall, event);
+					Promise<Long> backPressure = (batch != null)
+							? sameThread.resolved(Long.valueOf(System.nanoTime()
+									+ safePush(
+											(BatchPushEventConsumer< ? super T>) toCall
+													.get(0),
+											batch)))
+							: deliver(toCall, event);
+					PushEvent<T> next = carried;
 					
 					if (backPressure.isDone()) {
 						handleReset(resetWait);
@@ -290,7 +352,7 @@ class SimplePushEventSourceImpl<T, U extends BlockingQueue<PushEvent< ? extends
 
 						if (toWait > 0) {
 							promiseFactory.scheduledExecutor().schedule(
-									this::startWorker, toWait,
+									() -> startWorker(next), toWait,
 									NANOSECONDS);
 							return;
 						}
@@ -301,10 +363,10 @@ class SimplePushEventSourceImpl<T, U extends BlockingQueue<PushEvent< ? extends
 
 							if (toWait > 0) {
 								promiseFactory.scheduledExecutor().schedule(
-										this::startWorker, toWait,
+										() -> startWorker(next), toWait,
 										NANOSECONDS);
 							} else {
-								startWorker();
+								startWorker(next);
 							}
 							return p;
 						}, p -> close(
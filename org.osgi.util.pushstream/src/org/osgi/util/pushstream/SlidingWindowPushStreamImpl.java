@@ -0,0 +1,345 @@
+/*******************************************************************************
+ * Copyright (c) Contributors to the Eclipse Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+
+package org.osgi.util.pushstream;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.osgi.util.pushstream.AbstractPushStreamImpl.State.CLOSED;
+import static org.osgi.util.pushstream.PushEventConsumer.ABORT;
+import static org.osgi.util.pushstream.PushEventConsumer.CONTINUE;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Optional;
+import java.util.concurrent.ScheduledFuture;
+
+import org.osgi.util.promise.PromiseFactory;
+import org.osgi.util.pushstream.PushEvent.EventType;
+import org.osgi.util.pushstream.WindowAggregators.Select;
+import org.osgi.util.pushstream.WindowAggregators.Select.Selection;
+
+/**
+ * A stream of the results of a {@link WindowAggregator} over sliding windows.
+ * <p>
+ * The windows are divided into panes whose length is the greatest common
+ * divisor of the window size and slide. The events are accumulated into the
+ * aggregate of the current pane, which is closed by a timer at the end of the
+ * pane. Every slide the result for the last window of panes is delivered, so
+ * that only the aggregates of the panes of one window are held rather than the
+ * events.
+ * <p>
+ * The results are delivered by tasks given to the executor of the stream.
+ * Each task schedules the next while holding the emit lock, so the results are
+ * delivered in order and before the final result and the terminal event.
+ *
+ * @param <T> The type of the events received
+ * @param <A> The type of the aggregates
+ * @param <R> The type of the results
+ */
+final class SlidingWindowPushStreamImpl<T, A, R>
+		extends IntermediatePushStreamImpl<R> {
+
+	private final AbstractPushStreamImpl<T>			previous;
+	private final WindowAggregator< ? super T,A,R>	aggregator;
+	private final long								paneNanos;
+	private final long								panesPerSlide;
+	private final Panes<A,R>						panes;
+	private final Object							emitLock	= new Object();
+
+	/* Guarded by this */
+	private A										pane;
+	private boolean									dirty;
+	private boolean									ended;
+	private long									paneCount;
+	private long									start;
+	private ScheduledFuture< ? >					tick;
+
+	SlidingWindowPushStreamImpl(PushStreamProvider psp,
+			PromiseFactory promiseFactory, AbstractPushStreamImpl<T> previous,
+			Duration size, Duration slide,
+			WindowAggregator< ? super T,A,R> aggregator) {
+		super(psp, promiseFactory, previous);
+		long sizeNanos = size.toNanos();
+		long slideNanos = slide.toNanos();
+		if (sizeNanos <= 0 || slideNanos <= 0 || slideNanos > sizeNanos) {
+			throw new IllegalArgumentException("The window size " + size
+					+ " and slide " + slide
+					+ " must be positive and the slide must not be greater than the size");
+		}
+		long paneNanos = gcd(sizeNanos, slideNanos);
+		long panesPerWindow = sizeNanos / paneNanos;
+		if (panesPerWindow > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("The window size " + size
+					+ " and slide " + slide + " require too many panes");
+		}
+		this.previous = previous;
+		this.aggregator = aggregator;
+		this.paneNanos = paneNanos;
+		this.panesPerSlide = slideNanos / paneNanos;
+		this.panes = panes(aggregator, (int) panesPerWindow);
+		this.pane = aggregator.create();
+	}
+
+	private static long gcd(long a, long b) {
+		while (b != 0) {
+			long t = a % b;
+			a = b;
+			b = t;
+		}
+		return a;
+	}
+
+	@SuppressWarnings({
+			"unchecked", "rawtypes"
+	})
+	private static <A, R> Panes<A,R> panes(WindowAggregator< ? ,A,R> aggregator,
+			int window) {
+		if (aggregator instanceof Select) {
+			return new Extremes((Select) aggregator, window);
+		} else if (aggregator.isInvertible()) {
+			return new Running<>(aggregator, window);
+		}
+		return new Folding<>(aggregator, window);
+	}
+
+	@Override
+	protected void beginning() {
+		synchronized (this) {
+			start = System.nanoTime();
+			schedule();
+		}
+	}
+
+	/* Must be called holding this */
+	private void schedule() {
+		long delay = start + (paneCount + 1) * paneNanos - System.nanoTime();
+		tick = promiseFactory.scheduledExecutor()
+				.schedule(() -> promiseFactory.executor().execute(this::tick),
+						Math.max(delay, 0), NANOSECONDS);
+	}
+
+	/* Must be called holding this */
+	private void closePane() {
+		panes.add(pane);
+		pane = aggregator.create();
+		paneCount++;
+	}
+
+	private void tick() {
+		synchronized (emitLock) {
+			R result;
+			try {
+				synchronized (this) {
+					if (ended || closed.get() == CLOSED) {
+						return;
+					}
+					closePane();
+					schedule();
+					if (paneCount % panesPerSlide != 0) {
+						return;
+					}
+					result = panes.result();
+					dirty = false;
+				}
+			} catch (Exception e) {
+				previous.close(PushEvent.error(e));
+				return;
+			}
+			handleEvent(PushEvent.data(result));
+		}
+	}
+
+	/**
+	 * Accept an event of the previous stream.
+	 */
+	long accept(PushEvent< ? extends T> event) {
+		if (closed.get() == CLOSED) {
+			return ABORT;
+		}
+		if (!event.isTerminal()) {
+			try {
+				synchronized (this) {
+					if (ended) {
+						return ABORT;
+					}
+					aggregator.accumulate(pane, event.getData());
+					dirty = true;
+				}
+			} catch (Exception e) {
+				previous.close(PushEvent.error(e));
+				return ABORT;
+			}
+			return CONTINUE;
+		}
+		synchronized (emitLock) {
+			R result = null;
+			boolean emit;
+			try {
+				synchronized (this) {
+					if (ended) {
+						return ABORT;
+					}
+					ended = true;
+					if (tick != null) {
+						tick.cancel(false);
+					}
+					// Only a completed stream has a final partial window
+					emit = dirty && event.getType() == EventType.CLOSE;
+					if (emit) {
+						closePane();
+						result = panes.result();
+					}
+				}
+			} catch (Exception e) {
+				handleEvent(PushEvent.error(e));
+				return ABORT;
+			}
+			if (emit) {
+				handleEvent(PushEvent.data(result));
+			}
+			handleEvent(event.nodata());
+		}
+		return ABORT;
+	}
+
+	/**
+	 * The aggregates of the panes of a window.
+	 */
+	private static abstract class Panes<A, R> {
+		final int window;
+
+		Panes(int window) {
+			this.window = window;
+		}
+
+		/**
+		 * Add the aggregate of the latest pane, removing the earliest pane if
+		 * the window is full.
+		 */
+		abstract void add(A pane);
+
+		/**
+		 * The result for the window.
+		 */
+		abstract R result();
+	}
+
+	/**
+	 * Maintains the aggregate of the window by combining each new pane and
+	 * uncombining each removed pane.
+	 */
+	private static final class Running<A, R> extends Panes<A,R> {
+		private final WindowAggregator< ? ,A,R>	aggregator;
+		private final ArrayDeque<A>				panes	= new ArrayDeque<>();
+		private A								total;
+
+		Running(WindowAggregator< ? ,A,R> aggregator, int window) {
+			super(window);
+			this.aggregator = aggregator;
+			this.total = aggregator.create();
+		}
+
+		@Override
+		void add(A pane) {
+			total = aggregator.combine(total, pane);
+			panes.addLast(pane);
+			if (panes.size() > window) {
+				total = aggregator.uncombine(total, panes.removeFirst());
+			}
+		}
+
+		@Override
+		R result() {
+			return aggregator.result(total);
+		}
+	}
+
+	/**
+	 * Combines the panes of the window for each result.
+	 */
+	private static final class Folding<A, R> extends Panes<A,R> {
+		private final WindowAggregator< ? ,A,R>	aggregator;
+		private final ArrayDeque<A>				panes	= new ArrayDeque<>();
+
+		Folding(WindowAggregator< ? ,A,R> aggregator, int window) {
+			super(window);
+			this.aggregator = aggregator;
+		}
+
+		@Override
+		void add(A pane) {
+			panes.addLast(pane);
+			if (panes.size() > window) {
+				panes.removeFirst();
+			}
+		}
+
+		@Override
+		R result() {
+			A total = aggregator.create();
+			for (A pane : panes) {
+				total = aggregator.combine(total, pane);
+			}
+			return aggregator.result(total);
+		}
+	}
+
+	/**
+	 * Maintains a monotonic deque of the non empty panes of the window, the
+	 * first of which holds the selection of the window.
+	 */
+	private static final class Extremes<T>
+			extends Panes<Selection<T>,Optional<T>> {
+		private final Select<T>					aggregator;
+		private final ArrayDeque<Selection<T>>	selections	= new ArrayDeque<>();
+		private final ArrayDeque<Long>			indexes		= new ArrayDeque<>();
+		private long							index;
+
+		Extremes(Select<T> aggregator, int window) {
+			super(window);
+			this.aggregator = aggregator;
+		}
+
+		@Override
+		void add(Selection<T> pane) {
+			index++;
+			if (pane.present) {
+				// Earlier panes which are not selected before this pane can
+				// never be selected again
+				while (!selections.isEmpty()
+						&& aggregator.compare(selections.peekLast(), pane) > 0) {
+					selections.removeLast();
+					indexes.removeLast();
+				}
+				selections.addLast(pane);
+				indexes.addLast(Long.valueOf(index));
+			}
+			while (!indexes.isEmpty()
+					&& indexes.peekFirst().longValue() <= index - window) {
+				selections.removeFirst();
+				indexes.removeFirst();
+			}
+		}
+
+		@Override
+		Optional<T> result() {
+			Selection<T> first = selections.peekFirst();
+			return aggregator.result(first == null ? aggregator.create() : first);
+		}
+	}
+}
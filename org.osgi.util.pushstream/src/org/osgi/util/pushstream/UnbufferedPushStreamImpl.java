@@ -23,6 +23,7 @@ import static org.osgi.util.pushstream.AbstractPushStreamImpl.State.BUILDING;
 import static org.osgi.util.pushstream.AbstractPushStreamImpl.State.CLOSED;
 import static org.osgi.util.pushstream.AbstractPushStreamImpl.State.STARTED;
 
+import java.util.List;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Function;
@@ -70,7 +71,7 @@ class UnbufferedPushStreamImpl<T, U extends BlockingQueue<PushEvent< ? extends T
 	@Override
 	protected boolean begin() {
 		if(closed.compareAndSet(BUILDING, STARTED)) {
-			AutoCloseable toClose = connector.apply(this::handleEvent);
+			AutoCloseable toClose = connector.apply(upstreamConsumer());
 			if(!upstream.compareAndSet(null,toClose)) {
 				//TODO log that we tried to connect twice...
 				try {
@@ -95,4 +96,37 @@ class UnbufferedPushStreamImpl<T, U extends BlockingQueue<PushEvent< ? extends T
 		}
 		return false;
 	}
+
+	/**
+	 * Returns the consumer to connect to the event source. Only when the
+	 * events of this stream can be delivered in batches does the consumer
+	 * accept batches, otherwise an event source delivers the events one at a
+	 * time and honours the back pressure returned for each of them.
+	 */
+	private PushEventConsumer<T> upstreamConsumer() {
+		if (acceptsBatches()) {
+			return new Upstream();
+		}
+		return this::handleEvent;
+	}
+
+	/**
+	 * The consumer connected to the event source when the events of this
+	 * stream can be delivered in batches. It accepts batches of events from
+	 * event sources which deliver them.
+	 */
+	private final class Upstream implements BatchPushEventConsumer<T> {
+		Upstream() {
+		}
+
+		@Override
+		public long accept(PushEvent< ? extends T> event) {
+			return handleEvent(event);
+		}
+
+		@Override
+		public long accept(List< ? extends PushEvent< ? extends T>> events) {
+			return handleBatch(events);
+		}
+	}
 }
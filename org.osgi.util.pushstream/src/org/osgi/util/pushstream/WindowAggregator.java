@@ -0,0 +1,219 @@
+/*******************************************************************************
+ * Copyright (c) Contributors to the Eclipse Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+
+package org.osgi.util.pushstream;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.Comparator;
+import java.util.Optional;
+import java.util.OptionalDouble;
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+
+import org.osgi.annotation.versioning.ConsumerType;
+
+/**
+ * An incremental aggregation for the sliding windows of
+ * {@link PushStream#window(java.time.Duration, java.time.Duration, WindowAggregator)}.
+ * <p>
+ * A sliding window is divided into panes. The events of a pane are
+ * accumulated into an aggregate for the pane and the aggregates of the panes
+ * of a window are combined into the result for the window, so that only one
+ * aggregate is held for each pane rather than the events.
+ * <p>
+ * If the aggregation is {@link #isInvertible() invertible}, the aggregate of
+ * the window is maintained incrementally by combining each new pane with it
+ * and uncombining each pane which leaves the window. Otherwise the aggregates
+ * of the panes of the window are combined when a result is produced. The
+ * {@link #min(Comparator) min} and {@link #max(Comparator) max} aggregations
+ * maintain a monotonic deque of the pane aggregates instead.
+ * <p>
+ * The aggregate objects are mutable and are only accessed by one thread at a
+ * time.
+ *
+ * @param <T> The type of the events
+ * @param <A> The type of the aggregates
+ * @param <R> The type of the results
+ * @since 1.1
+ */
+@ConsumerType
+public interface WindowAggregator<T, A, R> {
+
+	/**
+	 * Create an empty aggregate.
+	 *
+	 * @return A new empty aggregate
+	 */
+	A create();
+
+	/**
+	 * Accumulate an event into the aggregate of a pane.
+	 *
+	 * @param aggregate The aggregate of the pane
+	 * @param value The value of the event
+	 */
+	void accumulate(A aggregate, T value);
+
+	/**
+	 * Combine two aggregates. This method may modify and return the left
+	 * aggregate but must not modify the right aggregate.
+	 *
+	 * @param left The aggregate of the earlier events
+	 * @param right The aggregate of the later events
+	 * @return The aggregate of the events of both aggregates
+	 */
+	A combine(A left, A right);
+
+	/**
+	 * Returns whether {@link #uncombine(Object, Object)} is supported.
+	 * <p>
+	 * The default implementation returns {@code false}.
+	 *
+	 * @return {@code true} if aggregates can be uncombined
+	 */
+	default boolean isInvertible() {
+		return false;
+	}
+
+	/**
+	 * Remove an aggregate which was previously combined into an aggregate.
+	 * This method may modify and return the aggregate but must not modify the
+	 * removed aggregate.
+	 * <p>
+	 * The default implementation throws
+	 * {@link UnsupportedOperationException}.
+	 *
+	 * @param aggregate The aggregate
+	 * @param removed The aggregate of the earliest events of the aggregate
+	 * @return The aggregate of the remaining events
+	 */
+	default A uncombine(A aggregate, A removed) {
+		throw new UnsupportedOperationException("uncombine");
+	}
+
+	/**
+	 * Returns the result for an aggregate. The result must not be the
+	 * aggregate, or refer to it, as the aggregate is modified after this
+	 * method returns.
+	 *
+	 * @param aggregate The aggregate of the events of a window
+	 * @return The result for the window
+	 */
+	R result(A aggregate);
+
+	/**
+	 * Returns an aggregation counting the events.
+	 *
+	 * @param <T> The type of the events
+	 * @return An invertible aggregation counting the events
+	 */
+	static <T> WindowAggregator<T, ? ,Long> count() {
+		return new WindowAggregators.Count<>();
+	}
+
+	/**
+	 * Returns an aggregation summing the events.
+	 * <p>
+	 * The sum is maintained incrementally and so is subject to the rounding of
+	 * floating point arithmetic.
+	 *
+	 * @param <T> The type of the events
+	 * @param mapper Maps an event to the value to sum
+	 * @return An invertible aggregation summing the events
+	 */
+	static <T> WindowAggregator<T, ? ,Double> sum(
+			ToDoubleFunction< ? super T> mapper) {
+		return new WindowAggregators.Average<T,Double>(requireNonNull(mapper),
+				a -> Double.valueOf(a[0]));
+	}
+
+	/**
+	 * Returns an aggregation averaging the events.
+	 * <p>
+	 * The sum of the events is maintained incrementally and so is subject to
+	 * the rounding of floating point arithmetic.
+	 *
+	 * @param <T> The type of the events
+	 * @param mapper Maps an event to the value to average
+	 * @return An invertible aggregation averaging the events, the result is
+	 *         empty for a window without events
+	 */
+	static <T> WindowAggregator<T, ? ,OptionalDouble> average(
+			ToDoubleFunction< ? super T> mapper) {
+		return new WindowAggregators.Average<T,OptionalDouble>(
+				requireNonNull(mapper),
+				a -> (a[1] == 0) ? OptionalDouble.empty()
+						: OptionalDouble.of(a[0] / a[1]));
+	}
+
+	/**
+	 * Returns an aggregation selecting the minimum event.
+	 *
+	 * @param <T> The type of the events
+	 * @param comparator The comparator for the events
+	 * @return An aggregation selecting the minimum event, the result is empty
+	 *         for a window without events
+	 */
+	static <T> WindowAggregator<T, ? ,Optional<T>> min(
+			Comparator< ? super T> comparator) {
+		return new WindowAggregators.Select<T>(requireNonNull(comparator));
+	}
+
+	/**
+	 * Returns an aggregation selecting the maximum event.
+	 *
+	 * @param <T> The type of the events
+	 * @param comparator The comparator for the events
+	 * @return An aggregation selecting the maximum event, the result is empty
+	 *         for a window without events
+	 */
+	static <T> WindowAggregator<T, ? ,Optional<T>> max(
+			Comparator< ? super T> comparator) {
+		return new WindowAggregators.Select<T>(
+				requireNonNull(comparator).reversed());
+	}
+
+	/**
+	 * Returns a user defined aggregation.
+	 *
+	 * @param <T> The type of the events
+	 * @param <A> The type of the aggregates
+	 * @param <R> The type of the results
+	 * @param supplier Creates an empty aggregate
+	 * @param accumulator Accumulates an event into an aggregate
+	 * @param combiner Combines two aggregates, see
+	 *            {@link #combine(Object, Object)}
+	 * @param uncombiner Uncombines an aggregate, see
+	 *            {@link #uncombine(Object, Object)}, or {@code null} if the
+	 *            aggregation is not invertible
+	 * @param finisher Returns the result for an aggregate, see
+	 *            {@link #result(Object)}
+	 * @return A user defined aggregation
+	 */
+	static <T, A, R> WindowAggregator<T,A,R> of(Supplier<A> supplier,
+			BiConsumer<A, ? super T> accumulator, BinaryOperator<A> combiner,
+			BinaryOperator<A> uncombiner,
+			java.util.function.Function<A, ? extends R> finisher) {
+		return new WindowAggregators.Custom<>(requireNonNull(supplier),
+				requireNonNull(accumulator), requireNonNull(combiner),
+				uncombiner, requireNonNull(finisher));
+	}
+}
@@ -0,0 +1,229 @@
+/*******************************************************************************
+ * Copyright (c) Contributors to the Eclipse Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+
+package org.osgi.util.pushstream;
+
+import java.util.Comparator;
+import java.util.Optional;
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * The implementations of the {@link WindowAggregator} factory methods.
+ */
+final class WindowAggregators {
+
+	private WindowAggregators() {
+	}
+
+	static final class Count<T> implements WindowAggregator<T,long[],Long> {
+		@Override
+		public long[] create() {
+			return new long[1];
+		}
+
+		@Override
+		public void accumulate(long[] aggregate, T value) {
+			aggregate[0]++;
+		}
+
+		@Override
+		public long[] combine(long[] left, long[] right) {
+			left[0] += right[0];
+			return left;
+		}
+
+		@Override
+		public boolean isInvertible() {
+			return true;
+		}
+
+		@Override
+		public long[] uncombine(long[] aggregate, long[] removed) {
+			aggregate[0] -= removed[0];
+			return aggregate;
+		}
+
+		@Override
+		public Long result(long[] aggregate) {
+			return Long.valueOf(aggregate[0]);
+		}
+	}
+
+	/**
+	 * The aggregate holds the sum and the count of the events.
+	 */
+	static final class Average<T, R>
+			implements WindowAggregator<T,double[],R> {
+		private final ToDoubleFunction< ? super T>					mapper;
+		private final java.util.function.Function<double[],R>	finisher;
+
+		Average(ToDoubleFunction< ? super T> mapper,
+				java.util.function.Function<double[],R> finisher) {
+			this.mapper = mapper;
+			this.finisher = finisher;
+		}
+
+		@Override
+		public double[] create() {
+			return new double[2];
+		}
+
+		@Override
+		public void accumulate(double[] aggregate, T value) {
+			aggregate[0] += mapper.applyAsDouble(value);
+			aggregate[1]++;
+		}
+
+		@Override
+		public double[] combine(double[] left, double[] right) {
+			left[0] += right[0];
+			left[1] += right[1];
+			return left;
+		}
+
+		@Override
+		public boolean isInvertible() {
+			return true;
+		}
+
+		@Override
+		public double[] uncombine(double[] aggregate, double[] removed) {
+			aggregate[0] -= removed[0];
+			aggregate[1] -= removed[1];
+			if (aggregate[1] == 0) {
+				// Discard the accumulated rounding errors
+				aggregate[0] = 0;
+			}
+			return aggregate;
+		}
+
+		@Override
+		public R result(double[] aggregate) {
+			return finisher.apply(aggregate);
+		}
+	}
+
+	/**
+	 * Selects the first of the least events according to the comparator. The
+	 * sliding window maintains a monotonic deque of the pane aggregates rather
+	 * than combining them.
+	 */
+	static final class Select<T>
+			implements WindowAggregator<T,Select.Selection<T>,Optional<T>> {
+		static final class Selection<T> {
+			boolean	present;
+			T		value;
+		}
+
+		private final Comparator< ? super T> comparator;
+
+		Select(Comparator< ? super T> comparator) {
+			this.comparator = comparator;
+		}
+
+		/**
+		 * Compare the selections of two non empty aggregates.
+		 */
+		int compare(Selection<T> left, Selection<T> right) {
+			return comparator.compare(left.value, right.value);
+		}
+
+		@Override
+		public Selection<T> create() {
+			return new Selection<>();
+		}
+
+		@Override
+		public void accumulate(Selection<T> aggregate, T value) {
+			if (!aggregate.present
+					|| comparator.compare(value, aggregate.value) < 0) {
+				aggregate.present = true;
+				aggregate.value = value;
+			}
+		}
+
+		@Override
+		public Selection<T> combine(Selection<T> left, Selection<T> right) {
+			if (right.present && (!left.present || compare(right, left) < 0)) {
+				left.present = true;
+				left.value = right.value;
+			}
+			return left;
+		}
+
+		@Override
+		public Optional<T> result(Selection<T> aggregate) {
+			return aggregate.present ? Optional.ofNullable(aggregate.value)
+					: Optional.empty();
+		}
+	}
+
+	static final class Custom<T, A, R> implements WindowAggregator<T,A,R> {
+		private final Supplier<A>									supplier;
+		private final BiConsumer<A, ? super T>						accumulator;
+		private final BinaryOperator<A>								combiner;
+		private final BinaryOperator<A>								uncombiner;
+		private final java.util.function.Function<A, ? extends R>	finisher;
+
+		Custom(Supplier<A> supplier, BiConsumer<A, ? super T> accumulator,
+				BinaryOperator<A> combiner, BinaryOperator<A> uncombiner,
+				java.util.function.Function<A, ? extends R> finisher) {
+			this.supplier = supplier;
+			this.accumulator = accumulator;
+			this.combiner = combiner;
+			this.uncombiner = uncombiner;
+			this.finisher = finisher;
+		}
+
+		@Override
+		public A create() {
+			return supplier.get();
+		}
+
+		@Override
+		public void accumulate(A aggregate, T value) {
+			accumulator.accept(aggregate, value);
+		}
+
+		@Override
+		public A combine(A left, A right) {
+			return combiner.apply(left, right);
+		}
+
+		@Override
+		public boolean isInvertible() {
+			return uncombiner != null;
+		}
+
+		@Override
+		public A uncombine(A aggregate, A removed) {
+			if (uncombiner == null) {
+				return WindowAggregator.super.uncombine(aggregate, removed);
+			}
+			return uncombiner.apply(aggregate, removed);
+		}
+
+		@Override
+		public R result(A aggregate) {
+			return finisher.apply(aggregate);
+		}
+	}
+}
@@ -19,10 +19,12 @@
 package org.osgi.util.tracker;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Abstract class to track items. If a Tracker is reused (closed then reopened),
@@ -46,7 +48,9 @@ abstract class AbstractTracked<S, T, R> {
 	/**
 	 * Map of tracked items to customized objects.
 	 * 
-	 * @GuardedBy this
+	 * This map is concurrent so items can be looked up and counted without
+	 * synchronizing on this object. It is only modified while synchronized on
+	 * this object.
 	 */
 	private final Map<S, T>		tracked;
 
@@ -54,9 +58,10 @@ abstract class AbstractTracked<S, T, R> {
 	 * Modification count. This field is initialized to zero and incremented by
 	 * modified.
 	 * 
-	 * @GuardedBy this
+	 * This field is volatile so it can be read without synchronizing on this
+	 * object. It is only written while synchronized on this object.
 	 */
-	private int					trackingCount;
+	private volatile int		trackingCount;
 
 	/**
 	 * List of items in the process of being added. This is used to deal with
@@ -101,15 +106,51 @@ abstract class AbstractTracked<S, T, R> {
 	 */
 	private final LinkedList<S>	initial;
 
+	/**
+	 * Dispatcher for asynchronous tracking events or {@code null} if tracking
+	 * events are processed synchronously.
+	 */
+	private final OrderedDispatcher<S, T, R>	dispatcher;
+
+	/**
+	 * Executor for parallel initial tracking or {@code null} if the initial
+	 * items are tracked serially.
+	 */
+	private final Executor					initialExecutor;
+
+	/**
+	 * Maximum number of threads tracking the initial items.
+	 */
+	private final int						initialParallelism;
+
+	/**
+	 * Metrics of the tracker or {@code null} if metrics are not collected.
+	 */
+	final TrackerMetrics					metrics;
+
 	/**
 	 * AbstractTracked constructor.
 	 */
 	AbstractTracked() {
-		tracked = new HashMap<S, T>();
+		this(TrackerOptions.defaults());
+	}
+
+	/**
+	 * AbstractTracked constructor.
+	 * 
+	 * @param options The options of the tracker.
+	 * @since 1.6
+	 */
+	AbstractTracked(TrackerOptions options) {
+		tracked = new ConcurrentHashMap<S, T>();
 		trackingCount = 0;
 		adding = new ArrayList<S>(6);
 		initial = new LinkedList<S>();
 		closed = false;
+		dispatcher = (options.executor != null) ? new OrderedDispatcher<S, T, R>(this, options.executor, options.queueCapacity) : null;
+		initialExecutor = options.initialExecutor;
+		initialParallelism = options.initialParallelism;
+		metrics = options.metrics ? new TrackerMetrics() : null;
 	}
 
 	/**
@@ -145,11 +186,119 @@ abstract class AbstractTracked<S, T, R> {
 	 * This method must be called from Tracker's open method while not
 	 * synchronized on this object after the add listener call.
 	 * 
+	 * If the tracker was opened with parallel initial tracking, the initial
+	 * items are tracked concurrently by the calling thread and additional
+	 * workers on the initial executor. Each worker moves items from the
+	 * initial list to the adding list while synchronized on this object, so
+	 * the handling of the initial and adding lists is the same as for serial
+	 * tracking. This method returns once all the workers have finished.
 	 */
 	void trackInitial() {
+		if ((initialExecutor == null) || (initialParallelism <= 1)) {
+			trackInitialItems();
+			return;
+		}
+		final InitialWorkers workers = new InitialWorkers(initialParallelism - 1);
+		for (int i = 1; i < initialParallelism; i++) {
+			try {
+				initialExecutor.execute(workers);
+			} catch (RejectedExecutionException e) {
+				break; /* the calling thread will do the work */
+			}
+		}
+		Throwable failure = null;
+		try {
+			trackInitialItems();
+		} catch (RuntimeException | Error e) {
+			failure = e;
+		}
+		Throwable workerFailure = workers.await();
+		if (failure == null) {
+			failure = workerFailure;
+		}
+		if (failure instanceof RuntimeException) {
+			throw (RuntimeException) failure;
+		}
+		if (failure instanceof Error) {
+			throw (Error) failure;
+		}
+	}
+
+	/**
+	 * Workers which track initial items on the initial executor.
+	 */
+	private final class InitialWorkers implements Runnable {
+		/* @GuardedBy this */
+		private int			unstarted;
+		/* @GuardedBy this */
+		private int			running;
+		/* @GuardedBy this */
+		private Throwable	failure;
+
+		InitialWorkers(int workers) {
+			unstarted = workers;
+		}
+
+		@Override
+		public void run() {
+			synchronized (this) {
+				if (unstarted == 0) {
+					return; /* trackInitial has already finished */
+				}
+				unstarted--;
+				running++;
+			}
+			try {
+				trackInitialItems();
+			} catch (Throwable e) {
+				synchronized (this) {
+					if (failure == null) {
+						failure = e;
+					}
+				}
+				if (e instanceof VirtualMachineError) {
+					throw (VirtualMachineError) e;
+				}
+			} finally {
+				synchronized (this) {
+					running--;
+					notifyAll();
+				}
+			}
+		}
+
+		/**
+		 * Prevent unstarted workers from starting and wait for the running
+		 * workers to finish.
+		 * 
+		 * @return The first failure of a worker or {@code null}.
+		 */
+		synchronized Throwable await() {
+			unstarted = 0;
+			boolean interrupted = false;
+			while (running > 0) {
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+			return failure;
+		}
+	}
+
+	/**
+	 * Track items from the initial list until the list is empty.
+	 */
+	private void trackInitialItems() {
 		while (true) {
 			S item;
+			final long requested = lockRequested();
 			synchronized (this) {
+				lockAcquired(requested);
 				if (closed || (initial.size() == 0)) {
 					/*
 					 * if there are no more initial items
@@ -197,6 +346,39 @@ abstract class AbstractTracked<S, T, R> {
 		closed = true;
 	}
 
+	/**
+	 * Process a tracking event for an item. The event is processed
+	 * synchronously unless the tracker was opened with asynchronous dispatch.
+	 * With asynchronous dispatch, an item is still untracked synchronously so
+	 * the tracker no longer returns it once the event has been delivered and
+	 * only the customizer removed call is dispatched.
+	 * 
+	 * This method must be called by the listener methods while not
+	 * synchronized on this object.
+	 * 
+	 * @param item The item.
+	 * @param related Action related object.
+	 * @param track {@code true} to track the item; {@code false} to untrack
+	 *        the item.
+	 * @since 1.6
+	 */
+	void dispatch(final S item, final R related, final boolean track) {
+		if (dispatcher == null) {
+			if (track) {
+				track(item, related);
+			} else {
+				untrack(item, related);
+			}
+		} else if (track) {
+			dispatcher.track(item, related);
+		} else {
+			final T object = remove(item);
+			if (object != null) {
+				dispatcher.removed(item, related, object);
+			}
+		}
+	}
+
 	/**
 	 * Begin to track an item.
 	 * 
@@ -205,10 +387,16 @@ abstract class AbstractTracked<S, T, R> {
 	 */
 	void track(final S item, final R related) {
 		final T object;
+		final long requested = lockRequested();
 		synchronized (this) {
+			lockAcquired(requested);
 			if (closed) {
 				return;
 			}
+			if ((dispatcher != null) && dispatcher.cancelled(item)) {
+				/* the item was untracked since this event was received */
+				return;
+			}
 			object = tracked.get(item);
 			if (object == null) { /* we are not tracking the item */
 				if (adding.contains(item)) {
@@ -223,6 +411,10 @@ abstract class AbstractTracked<S, T, R> {
 				if (DEBUG) {
 					System.out.println("AbstractTracked.track[modified]: " + item); //$NON-NLS-1$
 				}
+				itemModified(item);
+				if (metrics != null) {
+					metrics.modified.increment();
+				}
 				modified(); /* increment modification count */
 			}
 		}
@@ -231,7 +423,7 @@ abstract class AbstractTracked<S, T, R> {
 			trackAdding(item, related);
 		} else {
 			/* Call customizer outside of synchronized region */
-			customizerModified(item, related, object);
+			callModified(item, related, object);
 			/*
 			 * If the customizer throws an unchecked exception, it is safe to
 			 * let it propagate
@@ -255,13 +447,15 @@ abstract class AbstractTracked<S, T, R> {
 		boolean becameUntracked = false;
 		/* Call customizer outside of synchronized region */
 		try {
-			object = customizerAdding(item, related);
+			object = callAdding(item, related);
 			/*
 			 * If the customizer throws an unchecked exception, it will
 			 * propagate after the finally
 			 */
 		} finally {
+			final long requested = lockRequested();
 			synchronized (this) {
+				lockAcquired(requested);
 				if (adding.remove(item) && !closed) {
 					/*
 					 * if the item was not untracked during the customizer
@@ -269,6 +463,10 @@ abstract class AbstractTracked<S, T, R> {
 					 */
 					if (object != null) {
 						tracked.put(item, object);
+						itemAdded(item);
+						if (metrics != null) {
+							metrics.added.increment();
+						}
 						modified(); /* increment modification count */
 						notifyAll(); /* notify any waiters */
 					}
@@ -285,7 +483,7 @@ abstract class AbstractTracked<S, T, R> {
 				System.out.println("AbstractTracked.trackAdding[removed]: " + item); //$NON-NLS-1$
 			}
 			/* Call customizer outside of synchronized region */
-			customizerRemoved(item, related, object);
+			callRemoved(item, related, object);
 			/*
 			 * If the customizer throws an unchecked exception, it is safe to
 			 * let it propagate
@@ -300,8 +498,45 @@ abstract class AbstractTracked<S, T, R> {
 	 * @param related Action related object.
 	 */
 	void untrack(final S item, final R related) {
-		final T object;
+		final T object = remove(item);
+		if (object != null) {
+			removed(item, related, object);
+		}
+	}
+
+	/**
+	 * Call the customizer for an item which has been untracked.
+	 * 
+	 * @param item Untracked item.
+	 * @param related Action related object.
+	 * @param object Customized object for the untracked item.
+	 */
+	void removed(final S item, final R related, final T object) {
+		if (DEBUG) {
+			System.out.println("AbstractTracked.untrack[removed]: " + item); //$NON-NLS-1$
+		}
+		/* Call customizer outside of synchronized region */
+		callRemoved(item, related, object);
+		/*
+		 * If the customizer throws an unchecked exception, it is safe to let it
+		 * propagate
+		 */
+	}
+
+	/**
+	 * Remove the item from the tracker without calling the customizer.
+	 * 
+	 * @param item Item to be untracked.
+	 * @return Customized object for the removed item or {@code null} if the
+	 *         item was not tracked.
+	 */
+	private T remove(final S item) {
+		final long requested = lockRequested();
 		synchronized (this) {
+			lockAcquired(requested);
+			if (dispatcher != null) {
+				dispatcher.cancel(item);
+			}
 			if (initial.remove(item)) { /*
 										 * if this item is already in the list
 										 * of initial references to process
@@ -309,10 +544,10 @@ abstract class AbstractTracked<S, T, R> {
 				if (DEBUG) {
 					System.out.println("AbstractTracked.untrack[removed from initial]: " + item); //$NON-NLS-1$
 				}
-				return; /*
-						 * we have removed it from the list and it will not be
-						 * processed
-						 */
+				return null; /*
+								 * we have removed it from the list and it will
+								 * not be processed
+								 */
 			}
 
 			if (adding.remove(item)) { /*
@@ -322,48 +557,44 @@ abstract class AbstractTracked<S, T, R> {
 				if (DEBUG) {
 					System.out.println("AbstractTracked.untrack[being added]: " + item); //$NON-NLS-1$
 				}
-				return; /*
-						 * in case the item is untracked while in the process of
-						 * adding
-						 */
+				return null; /*
+								 * in case the item is untracked while in the
+								 * process of adding
+								 */
 			}
-			object = tracked.remove(item); /*
-											 * must remove from tracker before
-											 * calling customizer callback
-											 */
+			final T object = tracked.remove(item); /*
+													 * must remove from tracker
+													 * before calling
+													 * customizer callback
+													 */
 			if (object == null) { /* are we actually tracking the item */
-				return;
+				return null;
+			}
+			itemRemoved(item);
+			if (metrics != null) {
+				metrics.removed.increment();
 			}
 			modified(); /* increment modification count */
+			return object;
 		}
-		if (DEBUG) {
-			System.out.println("AbstractTracked.untrack[removed]: " + item); //$NON-NLS-1$
-		}
-		/* Call customizer outside of synchronized region */
-		customizerRemoved(item, related, object);
-		/*
-		 * If the customizer throws an unchecked exception, it is safe to let it
-		 * propagate
-		 */
 	}
 
 	/**
-	 * Returns the number of tracked items.
+	 * Returns the number of tracked items. This method does not need to
+	 * synchronize on this object.
 	 * 
 	 * @return The number of tracked items.
-	 * 
-	 * @GuardedBy this
 	 */
 	int size() {
 		return tracked.size();
 	}
 
 	/**
-	 * Returns if the tracker is empty.
+	 * Returns if the tracker is empty. This method does not need to
+	 * synchronize on this object.
 	 * 
 	 * @return Whether the tracker is empty.
 	 * 
-	 * @GuardedBy this
 	 * @since 1.5
 	 */
 	boolean isEmpty() {
@@ -371,12 +602,11 @@ abstract class AbstractTracked<S, T, R> {
 	}
 
 	/**
-	 * Return the customized object for the specified item
+	 * Return the customized object for the specified item. This method does
+	 * not need to synchronize on this object.
 	 * 
 	 * @param item The item to lookup in the map
 	 * @return The customized object for the specified item.
-	 * 
-	 * @GuardedBy this
 	 */
 	T getCustomizedObject(final S item) {
 		return tracked.get(item);
@@ -404,6 +634,44 @@ abstract class AbstractTracked<S, T, R> {
 		trackingCount++;
 	}
 
+	/**
+	 * Called when an item is added to the tracked items. Subclasses may
+	 * override this method to maintain additional structures over the tracked
+	 * items.
+	 * 
+	 * @param item The item added to the tracked items.
+	 * @GuardedBy this
+	 * @since 1.6
+	 */
+	void itemAdded(final S item) {
+		/* do nothing */
+	}
+
+	/**
+	 * Called when a tracked item is modified. Subclasses may override this
+	 * method to maintain additional structures over the tracked items.
+	 * 
+	 * @param item The modified tracked item.
+	 * @GuardedBy this
+	 * @since 1.6
+	 */
+	void itemModified(final S item) {
+		/* do nothing */
+	}
+
+	/**
+	 * Called when an item is removed from the tracked items. Subclasses may
+	 * override this method to maintain additional structures over the tracked
+	 * items.
+	 * 
+	 * @param item The item removed from the tracked items.
+	 * @GuardedBy this
+	 * @since 1.6
+	 */
+	void itemRemoved(final S item) {
+		/* do nothing */
+	}
+
 	/**
 	 * Returns the tracking count for this {@code ServiceTracker} object.
 	 * 
@@ -411,7 +679,8 @@ abstract class AbstractTracked<S, T, R> {
 	 * time an item is added, modified or removed from this object the tracking
 	 * count is incremented.
 	 * 
-	 * @GuardedBy this
+	 * This method may be called without synchronizing on this object.
+	 * 
 	 * @return The tracking count for this object.
 	 */
 	int getTrackingCount() {
@@ -435,6 +704,89 @@ abstract class AbstractTracked<S, T, R> {
 		return map;
 	}
 
+	/**
+	 * Returns the time at which the lock on this object is requested for the
+	 * lock wait metric.
+	 * 
+	 * @return The current time in nanoseconds or {@code 0} if metrics are not
+	 *         collected.
+	 */
+	private long lockRequested() {
+		return (metrics != null) ? System.nanoTime() : 0L;
+	}
+
+	/**
+	 * Record the lock wait metric after the lock on this object is acquired.
+	 * 
+	 * @param requested The time at which the lock was requested.
+	 * @GuardedBy this
+	 */
+	private void lockAcquired(long requested) {
+		if (metrics != null) {
+			metrics.lockWait.record(System.nanoTime() - requested);
+		}
+	}
+
+	/**
+	 * Call the customizer adding method and record its latency.
+	 * 
+	 * @param item Item to be tracked.
+	 * @param related Action related object.
+	 * @return Customized object for the tracked item or {@code null} if the
+	 *         item is not to be tracked.
+	 */
+	private T callAdding(final S item, final R related) {
+		if (metrics == null) {
+			return customizerAdding(item, related);
+		}
+		final long start = System.nanoTime();
+		try {
+			return customizerAdding(item, related);
+		} finally {
+			metrics.addingLatency.record(System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Call the customizer modified method and record its latency.
+	 * 
+	 * @param item Tracked item.
+	 * @param related Action related object.
+	 * @param object Customized object for the tracked item.
+	 */
+	private void callModified(final S item, final R related, final T object) {
+		if (metrics == null) {
+			customizerModified(item, related, object);
+			return;
+		}
+		final long start = System.nanoTime();
+		try {
+			customizerModified(item, related, object);
+		} finally {
+			metrics.modifiedLatency.record(System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Call the customizer removed method and record its latency.
+	 * 
+	 * @param item Tracked item.
+	 * @param related Action related object.
+	 * @param object Customized object for the tracked item.
+	 */
+	private void callRemoved(final S item, final R related, final T object) {
+		if (metrics == null) {
+			customizerRemoved(item, related, object);
+			return;
+		}
+		final long start = System.nanoTime();
+		try {
+			customizerRemoved(item, related, object);
+		} finally {
+			metrics.removedLatency.record(System.nanoTime() - start);
+		}
+	}
+
 	/**
 	 * Call the specific customizer adding method. This method must not be
 	 * called while synchronized on this object.
@@ -18,6 +18,8 @@
 
 package org.osgi.util.tracker;
 
+import static java.util.Objects.requireNonNull;
+
 import java.util.HashMap;
 import java.util.Map;
 
@@ -26,6 +28,7 @@ import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.BundleEvent;
 import org.osgi.framework.SynchronousBundleListener;
+import org.osgi.util.tracker.dto.TrackerMetricsDTO;
 
 /**
  * The {@code BundleTracker} class simplifies tracking bundles much like the
@@ -72,6 +75,14 @@ public class BundleTracker<T> implements BundleTrackerCustomizer<T> {
 	 */
 	private volatile Tracked			tracked;
 
+	/**
+	 * Metrics of this tracker since it was last opened or {@code null} if it
+	 * was not opened with metrics enabled.
+	 * 
+	 * This field is volatile since it is accessed by multiple threads.
+	 */
+	private volatile TrackerMetrics		metrics;
+
 	/**
 	 * Accessor method for the current Tracked object. This method is only
 	 * intended to be used by the unsynchronized methods which do not modify the
@@ -130,6 +141,30 @@ public class BundleTracker<T> implements BundleTrackerCustomizer<T> {
 	 *         Runtime Environment supports permissions.
 	 */
 	public void open() {
+		open(TrackerOptions.defaults());
+	}
+
+	/**
+	 * Open this {@code BundleTracker} with the specified options and begin
+	 * tracking bundles.
+	 * 
+	 * <p>
+	 * Bundle which match the state criteria specified when this
+	 * {@code BundleTracker} was created are now tracked by this
+	 * {@code BundleTracker}.
+	 * 
+	 * @param options The options for tracking bundles until this
+	 *        {@code BundleTracker} is closed.
+	 * @throws java.lang.IllegalStateException If the {@code BundleContext} with
+	 *         which this {@code BundleTracker} was created is no longer valid.
+	 * @throws java.lang.SecurityException If the caller and this class do not
+	 *         have the appropriate
+	 *         {@code AdminPermission[context bundle,LISTENER]}, and the Java
+	 *         Runtime Environment supports permissions.
+	 * @since 1.6
+	 */
+	public void open(TrackerOptions options) {
+		requireNonNull(options);
 		final Tracked t;
 		synchronized (this) {
 			if (tracked != null) {
@@ -138,7 +173,7 @@ public class BundleTracker<T> implements BundleTrackerCustomizer<T> {
 			if (DEBUG) {
 				System.out.println("BundleTracker.open"); //$NON-NLS-1$
 			}
-			t = new Tracked();
+			t = new Tracked(options);
 			synchronized (t) {
 				context.addBundleListener(t);
 				Bundle[] bundles = context.getBundles();
@@ -156,6 +191,7 @@ public class BundleTracker<T> implements BundleTrackerCustomizer<T> {
 				}
 			}
 			tracked = t;
+			metrics = t.metrics;
 		}
 		/* Call tracked outside of synchronized region */
 		t.trackInitial(); /* process the initial references */
@@ -412,6 +448,23 @@ public class BundleTracker<T> implements BundleTrackerCustomizer<T> {
 		}
 	}
 
+	/**
+	 * Return the metrics of this {@code BundleTracker}.
+	 * 
+	 * @return The metrics collected since this {@code BundleTracker} was last
+	 *         opened or {@code null} if this {@code BundleTracker} has not
+	 *         been opened with metrics enabled.
+	 * @see TrackerOptions#metrics(boolean)
+	 * @since 1.6
+	 */
+	public TrackerMetricsDTO getMetrics() {
+		final TrackerMetrics m = metrics;
+		if (m == null) {
+			return null;
+		}
+		return m.toDTO(size());
+	}
+
 	/**
 	 * Inner class which subclasses AbstractTracked. This class is the
 	 * {@code SynchronousBundleListener} object for the tracker.
@@ -422,9 +475,11 @@ public class BundleTracker<T> implements BundleTrackerCustomizer<T> {
 	private final class Tracked extends AbstractTracked<Bundle, T, BundleEvent> implements SynchronousBundleListener {
 		/**
 		 * Tracked constructor.
+		 * 
+		 * @param options The options of the tracker.
 		 */
-		Tracked() {
-			super();
+		Tracked(TrackerOptions options) {
+			super(options);
 		}
 
 		/**
@@ -449,13 +504,13 @@ public class BundleTracker<T> implements BundleTrackerCustomizer<T> {
 			}
 
 			if ((state & mask) != 0) {
-				track(bundle, event);
+				dispatch(bundle, event, true);
 				/*
 				 * If the customizer throws an unchecked exception, it is safe
 				 * to let it propagate
 				 */
 			} else {
-				untrack(bundle, event);
+				dispatch(bundle, event, false);
 				/*
 				 * If the customizer throws an unchecked exception, it is safe
 				 * to let it propagate
@@ -0,0 +1,266 @@
+/*******************************************************************************
+ * Copyright (c) Contributors to the Eclipse Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+
+package org.osgi.util.tracker;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Dispatches the tracking events of an AbstractTracked object on an executor.
+ * The events for the same item are processed in order, one at a time, while
+ * the events for different items can be processed concurrently. A waiting
+ * track event for an item is superseded by a subsequent track event for the
+ * item. An item is untracked by the thread delivering the event and only the
+ * customizer removed call is dispatched, so waiting track events for the item
+ * are discarded and a track event being processed for the item is cancelled.
+ * This is not a public class. It is only for use by the implementation of the
+ * Tracker classes.
+ *
+ * @param <S> The tracked item.
+ * @param <T> The value mapped to the tracked item.
+ * @param <R> The reason the tracked item is being tracked or untracked.
+ * @ThreadSafe
+ * @author $Id$
+ * @since 1.6
+ */
+final class OrderedDispatcher<S, T, R> {
+	/**
+	 * Marks the threads processing tracking events so they never block on a
+	 * full queue. A customizer may cause nested events to be delivered
+	 * synchronously and blocking would deadlock when the executor has no other
+	 * thread to drain the queue.
+	 */
+	private static final ThreadLocal<Boolean>	dispatching	= new ThreadLocal<Boolean>();
+
+	private final AbstractTracked<S, T, R>		tracked;
+	private final Executor						executor;
+	/**
+	 * Permits for waiting events or {@code null} if unbounded.
+	 */
+	private final Semaphore						permits;
+	/**
+	 * Events for each item which has waiting events or is being processed.
+	 *
+	 * @GuardedBy this
+	 */
+	private final Map<S, Events<T, R>>			queues;
+
+	OrderedDispatcher(AbstractTracked<S, T, R> tracked, Executor executor, int queueCapacity) {
+		this.tracked = tracked;
+		this.executor = executor;
+		this.permits = (queueCapacity > 0) ? new Semaphore(queueCapacity) : null;
+		this.queues = new HashMap<S, Events<T, R>>();
+	}
+
+	/**
+	 * Dispatch a track event for an item.
+	 *
+	 * @param item The item.
+	 * @param related Action related object.
+	 */
+	void track(final S item, final R related) {
+		if (supersede(item, related)) {
+			return;
+		}
+		enqueue(item, new Event<T, R>(related, null, acquire()));
+	}
+
+	/**
+	 * Dispatch the customizer removed call for an item which has been
+	 * untracked.
+	 *
+	 * @param item The item.
+	 * @param related Action related object.
+	 * @param object Customized object for the untracked item.
+	 */
+	void removed(final S item, final R related, final T object) {
+		enqueue(item, new Event<T, R>(related, object, acquire()));
+	}
+
+	private void enqueue(final S item, final Event<T, R> event) {
+		final Events<T, R> events;
+		synchronized (this) {
+			Events<T, R> e = queues.get(item);
+			if (e != null) {
+				e.waiting.addLast(event);
+				return; /* the queue is being drained */
+			}
+			events = new Events<T, R>();
+			events.waiting.addLast(event);
+			queues.put(item, events);
+		}
+		try {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					drain(item, events);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			/* process the events on this thread */
+			drain(item, events);
+		}
+	}
+
+	/**
+	 * Supersede the last waiting event for the item if it is a track event.
+	 *
+	 * @return {@code true} if the last waiting event was superseded.
+	 */
+	private synchronized boolean supersede(S item, R related) {
+		Events<T, R> e = queues.get(item);
+		if (e == null) {
+			return false;
+		}
+		Event<T, R> last = e.waiting.peekLast();
+		if ((last == null) || !last.isTrack()) {
+			return false;
+		}
+		last.related = related;
+		return true;
+	}
+
+	/**
+	 * Discard the waiting track events for an item which is being untracked
+	 * and cancel the track event being processed for the item, if any.
+	 *
+	 * @param item The item.
+	 */
+	synchronized void cancel(S item) {
+		Events<T, R> e = queues.get(item);
+		if (e == null) {
+			return;
+		}
+		for (Iterator<Event<T, R>> iter = e.waiting.iterator(); iter.hasNext();) {
+			Event<T, R> event = iter.next();
+			if (event.isTrack()) {
+				iter.remove();
+				if (event.acquired) {
+					permits.release();
+				}
+			}
+		}
+		if ((e.current != null) && e.current.isTrack()) {
+			e.current.cancelled = true;
+		}
+	}
+
+	/**
+	 * Returns whether the track event being processed for an item has been
+	 * cancelled.
+	 *
+	 * @param item The item.
+	 * @return {@code true} if the item was untracked since the track event
+	 *         being processed for the item was received.
+	 */
+	synchronized boolean cancelled(S item) {
+		Events<T, R> e = queues.get(item);
+		return (e != null) && (e.current != null) && e.current.cancelled;
+	}
+
+	private boolean acquire() {
+		if ((permits == null) || (dispatching.get() != null)) {
+			return false;
+		}
+		permits.acquireUninterruptibly();
+		return true;
+	}
+
+	/**
+	 * Process the waiting events for an item until there are none.
+	 */
+	void drain(S item, Events<T, R> events) {
+		final Boolean mark = dispatching.get();
+		dispatching.set(Boolean.TRUE);
+		try {
+			while (true) {
+				final Event<T, R> event;
+				final R related;
+				synchronized (this) {
+					event = events.waiting.pollFirst();
+					events.current = event;
+					if (event == null) {
+						queues.remove(item);
+						return;
+					}
+					related = event.related;
+				}
+				try {
+					if (event.isTrack()) {
+						tracked.track(item, related);
+					} else {
+						tracked.removed(item, related, event.object);
+					}
+				} catch (Throwable e) {
+					if (e instanceof VirtualMachineError) {
+						throw (VirtualMachineError) e;
+					}
+					/* there is no event delivery thread to propagate to */
+					Thread t = Thread.currentThread();
+					t.getUncaughtExceptionHandler().uncaughtException(t, e);
+				} finally {
+					if (event.acquired) {
+						permits.release();
+					}
+				}
+			}
+		} finally {
+			if (mark == null) {
+				dispatching.remove();
+			}
+		}
+	}
+
+	/**
+	 * The events for an item.
+	 */
+	private static final class Events<T, R> {
+		/* @GuardedBy OrderedDispatcher.this */
+		final ArrayDeque<Event<T, R>>	waiting	= new ArrayDeque<Event<T, R>>(2);
+		/* @GuardedBy OrderedDispatcher.this */
+		Event<T, R>						current;
+	}
+
+	/**
+	 * A tracking event. A track event has no customized object.
+	 */
+	private static final class Event<T, R> {
+		/* @GuardedBy OrderedDispatcher.this */
+		R				related;
+		final T			object;
+		final boolean	acquired;
+		/* @GuardedBy OrderedDispatcher.this */
+		boolean			cancelled;
+
+		Event(R related, T object, boolean acquired) {
+			this.related = related;
+			this.object = object;
+			this.acquired = acquired;
+		}
+
+		boolean isTrack() {
+			return object == null;
+		}
+	}
+}
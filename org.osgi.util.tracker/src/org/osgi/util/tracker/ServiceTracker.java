@@ -18,10 +18,16 @@
 
 package org.osgi.util.tracker;
 
+import static java.util.Objects.requireNonNull;
+
 import java.lang.reflect.Array;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.TimeUnit;
 
 import org.osgi.annotation.versioning.ConsumerType;
@@ -33,6 +39,7 @@ import org.osgi.framework.InvalidSyntaxException;
 import org.osgi.framework.ServiceEvent;
 import org.osgi.framework.ServiceListener;
 import org.osgi.framework.ServiceReference;
+import org.osgi.util.tracker.dto.TrackerMetricsDTO;
 
 /**
  * The {@code ServiceTracker} class simplifies using services from the
@@ -117,12 +124,33 @@ public class ServiceTracker<S, T> implements ServiceTrackerCustomizer<S, T> {
 	 * This field is volatile since it is accessed by multiple threads.
 	 */
 	private volatile ServiceReference<S>	cachedReference;
+	/**
+	 * Whether a class overrides {@link #getServiceReferences()}, in which case
+	 * {@link #getServiceReference()} must call it.
+	 */
+	private static final ClassValue<Boolean>	referencesOverridden	= new ClassValue<Boolean>() {
+		@Override
+		protected Boolean computeValue(Class< ? > type) {
+			try {
+				return Boolean.valueOf(type.getMethod("getServiceReferences").getDeclaringClass() != ServiceTracker.class);
+			} catch (NoSuchMethodException | SecurityException e) {
+				return Boolean.TRUE;
+			}
+		}
+	};
 	/**
 	 * Cached service object for getService.
 	 * 
 	 * This field is volatile since it is accessed by multiple threads.
 	 */
 	private volatile T						cachedService;
+	/**
+	 * Metrics of this tracker since it was last opened or {@code null} if it
+	 * was not opened with metrics enabled.
+	 * 
+	 * This field is volatile since it is accessed by multiple threads.
+	 */
+	private volatile TrackerMetrics			metrics;
 
 	/**
 	 * Create a {@code ServiceTracker} on the specified {@code ServiceReference}
@@ -286,6 +314,32 @@ public class ServiceTracker<S, T> implements ServiceTrackerCustomizer<S, T> {
 	 * @since 1.3
 	 */
 	public void open(boolean trackAllServices) {
+		open(trackAllServices, TrackerOptions.defaults());
+	}
+
+	/**
+	 * Open this {@code ServiceTracker} with the specified options and begin
+	 * tracking services.
+	 * 
+	 * <p>
+	 * Services which match the search criteria specified when this
+	 * {@code ServiceTracker} was created are now tracked by this
+	 * {@code ServiceTracker}.
+	 * 
+	 * @param trackAllServices If {@code true}, then this {@code ServiceTracker}
+	 *        will track all matching services regardless of class loader
+	 *        accessibility. If {@code false}, then this {@code ServiceTracker}
+	 *        will only track matching services which are class loader
+	 *        accessible to the bundle whose {@code BundleContext} is used by
+	 *        this {@code ServiceTracker}.
+	 * @param options The options for tracking services until this
+	 *        {@code ServiceTracker} is closed.
+	 * @throws java.lang.IllegalStateException If the {@code BundleContext} with
+	 *         which this {@code ServiceTracker} was created is no longer valid.
+	 * @since 1.6
+	 */
+	public void open(boolean trackAllServices, TrackerOptions options) {
+		requireNonNull(options);
 		final Tracked t;
 		synchronized (this) {
 			if (tracked != null) {
@@ -294,7 +348,7 @@ public class ServiceTracker<S, T> implements ServiceTrackerCustomizer<S, T> {
 			if (DEBUG) {
 				System.out.println("ServiceTracker.open: " + filter);
 			}
-			t = trackAllServices ? new AllTracked() : new Tracked();
+			t = trackAllServices ? new AllTracked(options) : new Tracked(options);
 			synchronized (t) {
 				try {
 					context.addServiceListener(t, listenerFilter);
@@ -319,6 +373,7 @@ public class ServiceTracker<S, T> implements ServiceTrackerCustomizer<S, T> {
 				}
 			}
 			tracked = t;
+			metrics = t.metrics;
 		}
 		/* Call tracked outside of synchronized region */
 		t.trackInitial(); /* process the initial references */
@@ -497,25 +552,32 @@ public class ServiceTracker<S, T> implements ServiceTrackerCustomizer<S, T> {
 		}
 		final long timebound = timeout;
 		final long startTime = System.nanoTime();
-		do {
-			final Tracked t = tracked();
-			if (t == null) { /* if ServiceTracker is not open */
-				return null;
-			}
-			synchronized (t) {
-				if (t.size() == 0) {
-					t.wait(timeout);
+		try {
+			do {
+				final Tracked t = tracked();
+				if (t == null) { /* if ServiceTracker is not open */
+					return null;
 				}
-			}
-			object = getService();
-			if (timebound > 0L) { // if we have a time bound
-				final long elapsed = System.nanoTime() - startTime;
-				timeout = timebound - TimeUnit.NANOSECONDS.toMillis(elapsed);
-				if (timeout <= 0L) { // time bound has expired
-					break;
+				synchronized (t) {
+					if (t.size() == 0) {
+						t.wait(timeout);
+					}
 				}
+				object = getService();
+				if (timebound > 0L) { // if we have a time bound
+					final long elapsed = System.nanoTime() - startTime;
+					timeout = timebound - TimeUnit.NANOSECONDS.toMillis(elapsed);
+					if (timeout <= 0L) { // time bound has expired
+						break;
+					}
+				}
+			} while (object == null);
+		} finally {
+			final TrackerMetrics m = metrics;
+			if (m != null) {
+				m.serviceWait.record(System.nanoTime() - startTime);
 			}
-		} while (object == null);
+		}
 		return object;
 	}
 
@@ -523,6 +585,12 @@ public class ServiceTracker<S, T> implements ServiceTrackerCustomizer<S, T> {
 	 * Return an array of {@code ServiceReference}s for all services being
 	 * tracked by this {@code ServiceTracker}.
 	 * 
+	 * <p>
+	 * This implementation returns the references ordered by ranking. That is,
+	 * the first element is the service with the highest ranking and the
+	 * lowest service id, which is the service returned by
+	 * {@link #getServiceReference()}.
+	 * 
 	 * @return Array of {@code ServiceReference}s or {@code null} if no services
 	 *         are being tracked.
 	 */
@@ -531,14 +599,11 @@ public class ServiceTracker<S, T> implements ServiceTrackerCustomizer<S, T> {
 		if (t == null) { /* if ServiceTracker is not open */
 			return null;
 		}
-		synchronized (t) {
-			if (t.isEmpty()) {
-				return null;
-			}
-			@SuppressWarnings("unchecked")
-			ServiceReference<S>[] result = new ServiceReference[0];
-			return t.copyKeys(result);
+		final Snapshot<S, T> snapshot = t.snapshot();
+		if (snapshot.references.length == 0) {
+			return null;
 		}
+		return snapshot.references.clone();
 	}
 
 	/**
@@ -554,8 +619,11 @@ public class ServiceTracker<S, T> implements ServiceTrackerCustomizer<S, T> {
 	 * algorithm used by {@code BundleContext.getServiceReference}.
 	 * 
 	 * <p>
-	 * This implementation calls {@link #getServiceReferences()} to get the list
-	 * of references for the tracked services.
+	 * If a subclass overrides {@link #getServiceReferences()}, this
+	 * implementation calls {@link #getServiceReferences()} to get the list of
+	 * references for the tracked services. Otherwise this implementation does
+	 * not block. The tracked services are kept ordered by ranking so the
+	 * highest ranked service is found in constant time.
 	 * 
 	 * @return A {@code ServiceReference} or {@code null} if no services are
 	 *         being tracked.
@@ -572,9 +640,32 @@ public class ServiceTracker<S, T> implements ServiceTrackerCustomizer<S, T> {
 		if (DEBUG) {
 			System.out.println("ServiceTracker.getServiceReference: " + filter);
 		}
-		ServiceReference<S>[] references = getServiceReferences();
+		if (referencesOverridden.get(getClass()).booleanValue()) {
+			reference = highestRanked(getServiceReferences());
+		} else {
+			final Tracked t = tracked();
+			if (t == null) { /* if ServiceTracker is not open */
+				return null;
+			}
+			reference = t.highestRanked();
+		}
+		if (reference == null) { /* if no service is being tracked */
+			return null;
+		}
+		return cachedReference = reference;
+	}
+
+	/**
+	 * Returns the reference with the highest ranking and the lowest service
+	 * id.
+	 * 
+	 * @param references The references or {@code null}.
+	 * @return The highest ranked reference or {@code null} if there are no
+	 *         references.
+	 */
+	private static <S> ServiceReference<S> highestRanked(ServiceReference<S>[] references) {
 		int length = (references == null) ? 0 : references.length;
-		if (length == 0) { /* if no service is being tracked */
+		if (length == 0) {
 			return null;
 		}
 		int index = 0;
@@ -609,7 +700,7 @@ public class ServiceTracker<S, T> implements ServiceTrackerCustomizer<S, T> {
 				}
 			}
 		}
-		return cachedReference = references[index];
+		return references[index];
 	}
 
 	/**
@@ -626,9 +717,7 @@ public class ServiceTracker<S, T> implements ServiceTrackerCustomizer<S, T> {
 		if (t == null) { /* if ServiceTracker is not open */
 			return null;
 		}
-		synchronized (t) {
-			return t.getCustomizedObject(reference);
-		}
+		return t.getCustomizedObject(reference);
 	}
 
 	/**
@@ -721,9 +810,7 @@ public class ServiceTracker<S, T> implements ServiceTrackerCustomizer<S, T> {
 		if (t == null) { /* if ServiceTracker is not open */
 			return 0;
 		}
-		synchronized (t) {
-			return t.size();
-		}
+		return t.size();
 	}
 
 	/**
@@ -750,9 +837,24 @@ public class ServiceTracker<S, T> implements ServiceTrackerCustomizer<S, T> {
 		if (t == null) { /* if ServiceTracker is not open */
 			return -1;
 		}
-		synchronized (t) {
-			return t.getTrackingCount();
+		return t.getTrackingCount();
+	}
+
+	/**
+	 * Return the metrics of this {@code ServiceTracker}.
+	 * 
+	 * @return The metrics collected since this {@code ServiceTracker} was last
+	 *         opened or {@code null} if this {@code ServiceTracker} has not
+	 *         been opened with metrics enabled.
+	 * @see TrackerOptions#metrics(boolean)
+	 * @since 1.6
+	 */
+	public TrackerMetricsDTO getMetrics() {
+		final TrackerMetrics m = metrics;
+		if (m == null) {
+			return null;
 		}
+		return m.toDTO(size());
 	}
 
 	/**
@@ -791,9 +893,8 @@ public class ServiceTracker<S, T> implements ServiceTrackerCustomizer<S, T> {
 		if (t == null) { /* if ServiceTracker is not open */
 			return map;
 		}
-		synchronized (t) {
-			return t.copyEntries(map);
-		}
+		map.putAll(t.snapshot().services);
+		return map;
 	}
 
 	/**
@@ -808,9 +909,7 @@ public class ServiceTracker<S, T> implements ServiceTrackerCustomizer<S, T> {
 		if (t == null) { /* if ServiceTracker is not open */
 			return true;
 		}
-		synchronized (t) {
-			return t.isEmpty();
-		}
+		return t.isEmpty();
 	}
 
 	/**
@@ -873,11 +972,102 @@ public class ServiceTracker<S, T> implements ServiceTrackerCustomizer<S, T> {
 	 * @ThreadSafe
 	 */
 	private class Tracked extends AbstractTracked<ServiceReference<S>, T, ServiceEvent> implements ServiceListener {
+		/**
+		 * Immutable snapshot of the tracked services or {@code null} if the
+		 * tracked services have been modified since the snapshot was taken.
+		 * 
+		 * This field is volatile so the snapshot can be read without
+		 * synchronizing on this object. It is only written while synchronized
+		 * on this object.
+		 */
+		private volatile Snapshot<S, T>								snapshot;
+
+		/**
+		 * Tracked references ordered by ranking; that is, the first entry is
+		 * the service with the highest ranking and the lowest service id.
+		 * 
+		 * This map is concurrent so the highest ranked reference can be read
+		 * without synchronizing on this object. It is only modified while
+		 * synchronized on this object.
+		 */
+		private final ConcurrentSkipListMap<Rank, ServiceReference<S>>	ranked;
+
+		/**
+		 * The rank under which each tracked reference is held in the ranked
+		 * map.
+		 * 
+		 * @GuardedBy this
+		 */
+		private final Map<ServiceReference<S>, Rank>					ranks;
+
 		/**
 		 * Tracked constructor.
+		 * 
+		 * @param options The options of the tracker.
 		 */
-		Tracked() {
-			super();
+		Tracked(TrackerOptions options) {
+			super(options);
+			snapshot = Snapshot.empty();
+			ranked = new ConcurrentSkipListMap<Rank, ServiceReference<S>>();
+			ranks = new HashMap<ServiceReference<S>, Rank>();
+		}
+
+		/**
+		 * Returns the tracked reference with the highest ranking and the
+		 * lowest service id. This method does not synchronize on this object.
+		 * 
+		 * @return The highest ranked tracked reference or {@code null} if no
+		 *         services are being tracked.
+		 */
+		final ServiceReference<S> highestRanked() {
+			Map.Entry<Rank, ServiceReference<S>> first = ranked.firstEntry();
+			return (first == null) ? null : first.getValue();
+		}
+
+		@Override
+		final void itemAdded(final ServiceReference<S> item) {
+			Rank rank = new Rank(item);
+			ranks.put(item, rank);
+			ranked.put(rank, item);
+		}
+
+		@Override
+		final void itemModified(final ServiceReference<S> item) {
+			Rank rank = new Rank(item);
+			Rank old = ranks.put(item, rank);
+			if (old != null) {
+				ranked.remove(old);
+			}
+			ranked.put(rank, item);
+		}
+
+		@Override
+		final void itemRemoved(final ServiceReference<S> item) {
+			Rank old = ranks.remove(item);
+			if (old != null) {
+				ranked.remove(old);
+			}
+		}
+
+		/**
+		 * Returns an immutable snapshot of the tracked services. This method
+		 * only synchronizes on this object if the tracked services have been
+		 * modified since the last snapshot was taken.
+		 * 
+		 * @return The current snapshot of the tracked services.
+		 */
+		final Snapshot<S, T> snapshot() {
+			Snapshot<S, T> s = snapshot;
+			if (s != null) {
+				return s;
+			}
+			synchronized (this) {
+				s = snapshot;
+				if (s == null) {
+					snapshot = s = new Snapshot<S, T>(ranked.values(), copyEntries(new HashMap<ServiceReference<S>, T>()));
+				}
+				return s;
+			}
 		}
 
 		/**
@@ -904,7 +1094,7 @@ public class ServiceTracker<S, T> implements ServiceTrackerCustomizer<S, T> {
 			switch (event.getType()) {
 				case ServiceEvent.REGISTERED :
 				case ServiceEvent.MODIFIED :
-					track(reference, event);
+					dispatch(reference, event, true);
 					/*
 					 * If the customizer throws an unchecked exception, it is
 					 * safe to let it propagate
@@ -912,7 +1102,7 @@ public class ServiceTracker<S, T> implements ServiceTrackerCustomizer<S, T> {
 					break;
 				case ServiceEvent.MODIFIED_ENDMATCH :
 				case ServiceEvent.UNREGISTERING :
-					untrack(reference, event);
+					dispatch(reference, event, false);
 					/*
 					 * If the customizer throws an unchecked exception, it is
 					 * safe to let it propagate
@@ -930,6 +1120,7 @@ public class ServiceTracker<S, T> implements ServiceTrackerCustomizer<S, T> {
 		@Override
 		final void modified() {
 			super.modified(); /* increment the modification count */
+			snapshot = null; /* invalidate the snapshot */
 			ServiceTracker.this.modified();
 		}
 
@@ -984,9 +1175,70 @@ public class ServiceTracker<S, T> implements ServiceTrackerCustomizer<S, T> {
 	private class AllTracked extends Tracked implements AllServiceListener {
 		/**
 		 * AllTracked constructor.
+		 * 
+		 * @param options The options of the tracker.
 		 */
-		AllTracked() {
-			super();
+		AllTracked(TrackerOptions options) {
+			super(options);
+		}
+	}
+
+	/**
+	 * The ranking and service id of a tracked reference when it was added or
+	 * last modified. Ranks are ordered highest ranking and lowest service id
+	 * first.
+	 * 
+	 * @Immutable
+	 */
+	private static final class Rank implements Comparable<Rank> {
+		private final int	ranking;
+		private final long	id;
+
+		Rank(ServiceReference<?> reference) {
+			Object property = reference.getProperty(Constants.SERVICE_RANKING);
+			this.ranking = (property instanceof Integer) ? ((Integer) property).intValue() : 0;
+			this.id = ((Long) (reference.getProperty(Constants.SERVICE_ID))).longValue();
+		}
+
+		@Override
+		public int compareTo(Rank other) {
+			if (ranking != other.ranking) {
+				return (ranking > other.ranking) ? -1 : 1;
+			}
+			return Long.compare(id, other.id);
+		}
+	}
+
+	/**
+	 * Immutable snapshot of the tracked services.
+	 * 
+	 * @Immutable
+	 */
+	private static final class Snapshot<S, T> {
+		@SuppressWarnings("rawtypes")
+		private static final Snapshot		EMPTY	= new Snapshot<>(Collections.emptyList(), Collections.emptyMap());
+
+		/**
+		 * The tracked references ordered by ranking; that is, the first
+		 * reference is the service with the highest ranking and the lowest
+		 * service id.
+		 */
+		final ServiceReference<S>[]			references;
+		/**
+		 * The tracked references and their customized objects.
+		 */
+		final Map<ServiceReference<S>, T>	services;
+
+		Snapshot(Collection<ServiceReference<S>> sorted, Map<ServiceReference<S>, T> services) {
+			@SuppressWarnings("unchecked")
+			ServiceReference<S>[] array = sorted.toArray(new ServiceReference[0]);
+			this.references = array;
+			this.services = services;
+		}
+
+		@SuppressWarnings("unchecked")
+		static <S, T> Snapshot<S, T> empty() {
+			return EMPTY;
 		}
 	}
 }
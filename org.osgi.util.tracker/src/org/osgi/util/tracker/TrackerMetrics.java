@@ -0,0 +1,133 @@
+/*******************************************************************************
+ * Copyright (c) Contributors to the Eclipse Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0 
+ *******************************************************************************/
+
+package org.osgi.util.tracker;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.osgi.util.tracker.dto.LatencyHistogramDTO;
+import org.osgi.util.tracker.dto.TrackerMetricsDTO;
+
+/**
+ * Metrics of a tracker. Recording a metric does not allocate objects. This is
+ * not a public class. It is only for use by the implementation of the Tracker
+ * classes.
+ *
+ * @ThreadSafe
+ * @author $Id$
+ * @since 1.6
+ */
+final class TrackerMetrics {
+	private final long		opened;
+	final LongAdder			added;
+	final LongAdder			modified;
+	final LongAdder			removed;
+	final Histogram			addingLatency;
+	final Histogram			modifiedLatency;
+	final Histogram			removedLatency;
+	final Histogram			lockWait;
+	final Histogram			serviceWait;
+
+	TrackerMetrics() {
+		opened = System.nanoTime();
+		added = new LongAdder();
+		modified = new LongAdder();
+		removed = new LongAdder();
+		addingLatency = new Histogram();
+		modifiedLatency = new Histogram();
+		removedLatency = new Histogram();
+		lockWait = new Histogram();
+		serviceWait = new Histogram();
+	}
+
+	/**
+	 * Returns the metrics as a DTO.
+	 *
+	 * @param size The number of tracked items.
+	 * @return The metrics.
+	 */
+	TrackerMetricsDTO toDTO(int size) {
+		TrackerMetricsDTO dto = new TrackerMetricsDTO();
+		dto.elapsedNanos = System.nanoTime() - opened;
+		dto.size = size;
+		dto.added = added.sum();
+		dto.modified = modified.sum();
+		dto.removed = removed.sum();
+		dto.addingLatency = addingLatency.toDTO();
+		dto.modifiedLatency = modifiedLatency.toDTO();
+		dto.removedLatency = removedLatency.toDTO();
+		dto.lockWait = lockWait.toDTO();
+		dto.serviceWait = serviceWait.toDTO();
+		return dto;
+	}
+
+	/**
+	 * Histogram of durations in power of two nanosecond buckets.
+	 * <p>
+	 * This class is intentionally a copy of the histogram in
+	 * {@code org.osgi.util.promise.PromiseMetrics}. The tracker and
+	 * promise packages are released in independent bundles which do not depend
+	 * on each other, and sharing the class would make it public API. A change
+	 * to one copy must be made to the other so both {@code LatencyHistogramDTO}
+	 * types keep the same bucket layout.
+	 */
+	static final class Histogram {
+		/* the last bucket counts durations of 2^39 ns (about 9 minutes) or more */
+		private static final int		BUCKETS	= 40;
+		private final AtomicLongArray	buckets;
+		private final LongAdder			total;
+		private final LongAccumulator	max;
+
+		Histogram() {
+			buckets = new AtomicLongArray(BUCKETS);
+			total = new LongAdder();
+			max = new LongAccumulator(Math::max, 0L);
+		}
+
+		/**
+		 * Record a duration.
+		 *
+		 * @param nanos The duration in nanoseconds.
+		 */
+		void record(long nanos) {
+			if (nanos < 0L) {
+				nanos = 0L;
+			}
+			int bucket = Math.min(BUCKETS - 1, 63 - Long.numberOfLeadingZeros(nanos | 1L));
+			buckets.incrementAndGet(bucket);
+			total.add(nanos);
+			max.accumulate(nanos);
+		}
+
+		LatencyHistogramDTO toDTO() {
+			LatencyHistogramDTO dto = new LatencyHistogramDTO();
+			long[] counts = new long[BUCKETS];
+			long count = 0L;
+			for (int i = 0; i < BUCKETS; i++) {
+				count += counts[i] = buckets.get(i);
+			}
+			dto.buckets = counts;
+			dto.count = count;
+			dto.totalNanos = total.sum();
+			dto.maxNanos = max.get();
+			return dto;
+		}
+	}
+}
@@ -0,0 +1,219 @@
+/*******************************************************************************
+ * Copyright (c) Contributors to the Eclipse Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ *******************************************************************************/
+
+package org.osgi.util.tracker;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Options for opening a {@code ServiceTracker} or a {@code BundleTracker}.
+ * <p>
+ * {@code TrackerOptions} objects are immutable. Each method which sets an
+ * option returns a new {@code TrackerOptions} object with the option set.
+ * <p>
+ * By default, a tracker calls its customizer synchronously on the thread
+ * delivering the framework event. If the tracker is opened with
+ * {@link #asynchronous(Executor, int) asynchronous} dispatch, the tracker
+ * calls its customizer for framework events on the specified executor. The
+ * customizer calls for the same item, a service reference or a bundle, are
+ * made in event order and never concurrently while the customizer calls for
+ * different items can be made concurrently. A tracking event for an item which
+ * is still waiting to be dispatched when a subsequent tracking event for the
+ * item is received is superseded by the subsequent event. That is, only the
+ * customizer call for the subsequent event is made. An item which is no
+ * longer to be tracked is removed from the tracker on the thread delivering
+ * the framework event, so the tracker no longer returns the item once the
+ * event has been delivered. Only the customizer {@code removed} call is made
+ * on the executor and the waiting tracking events for the item are discarded.
+ * <p>
+ * By default, a tracker calls its customizer for the initial set of items,
+ * the items found when the tracker is opened, one at a time on the thread
+ * opening the tracker. If the tracker is opened with
+ * {@link #parallelInitial(Executor, int) parallel} initial tracking, the
+ * tracker calls its customizer for the initial set of items concurrently on
+ * the thread opening the tracker and the specified executor. In either case,
+ * opening the tracker returns once the initial set of items has been
+ * processed.
+ * <p>
+ * By default, a tracker does not collect metrics. If the tracker is opened
+ * with {@link #metrics(boolean) metrics} enabled, the tracker collects metrics
+ * until it is closed which can be obtained from the tracker's
+ * {@code getMetrics} method.
+ *
+ * @Immutable
+ * @author $Id$
+ * @since 1.6
+ */
+public final class TrackerOptions {
+	private static final TrackerOptions	DEFAULTS	= new TrackerOptions(null, 0, null, 0, false);
+
+	/**
+	 * The executor for asynchronous customizer dispatch or {@code null} for
+	 * synchronous dispatch.
+	 */
+	final Executor						executor;
+	/**
+	 * The maximum number of customizer calls waiting to be dispatched or
+	 * {@code 0} if unbounded.
+	 */
+	final int							queueCapacity;
+	/**
+	 * The executor for parallel initial tracking or {@code null} for serial
+	 * initial tracking.
+	 */
+	final Executor						initialExecutor;
+	/**
+	 * The maximum number of threads, including the opening thread, processing
+	 * the initial set of items.
+	 */
+	final int							initialParallelism;
+	/**
+	 * Whether the tracker collects metrics.
+	 */
+	final boolean						metrics;
+
+	private TrackerOptions(Executor executor, int queueCapacity, Executor initialExecutor, int initialParallelism, boolean metrics) {
+		this.executor = executor;
+		this.queueCapacity = queueCapacity;
+		this.initialExecutor = initialExecutor;
+		this.initialParallelism = initialParallelism;
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Returns the default options.
+	 * <p>
+	 * The default options dispatch customizer calls synchronously, track the
+	 * initial set of items serially and do not collect metrics.
+	 *
+	 * @return The default options.
+	 */
+	public static TrackerOptions defaults() {
+		return DEFAULTS;
+	}
+
+	/**
+	 * Returns options which dispatch customizer calls for framework events
+	 * asynchronously on the specified executor without bounding the number of
+	 * waiting customizer calls.
+	 *
+	 * @param executor The executor on which to make customizer calls.
+	 * @return Options with asynchronous customizer dispatch.
+	 */
+	public TrackerOptions asynchronous(Executor executor) {
+		return asynchronous(executor, 0);
+	}
+
+	/**
+	 * Returns options which dispatch customizer calls for framework events
+	 * asynchronously on the specified executor.
+	 * <p>
+	 * When the specified number of customizer calls are waiting to be
+	 * dispatched, the thread delivering a framework event to the tracker
+	 * blocks until a waiting customizer call has been made, unless the thread
+	 * is itself making a customizer call. A superseded tracking event does not
+	 * count toward the queue capacity.
+	 *
+	 * @param executor The executor on which to make customizer calls.
+	 * @param queueCapacity The maximum number of waiting customizer calls or
+	 *            {@code 0} for no maximum.
+	 * @return Options with asynchronous customizer dispatch.
+	 * @throws IllegalArgumentException If {@code queueCapacity} is negative.
+	 */
+	public TrackerOptions asynchronous(Executor executor, int queueCapacity) {
+		if (queueCapacity < 0) {
+			throw new IllegalArgumentException("queue capacity is negative: " + queueCapacity);
+		}
+		return new TrackerOptions(requireNonNull(executor), queueCapacity, initialExecutor, initialParallelism, metrics);
+	}
+
+	/**
+	 * Returns options which dispatch customizer calls synchronously on the
+	 * thread delivering the framework event.
+	 *
+	 * @return Options with synchronous customizer dispatch.
+	 */
+	public TrackerOptions synchronous() {
+		return new TrackerOptions(null, 0, initialExecutor, initialParallelism, metrics);
+	}
+
+	/**
+	 * Returns options which process the initial set of items in parallel
+	 * using the thread opening the tracker and the specified executor.
+	 * <p>
+	 * The number of threads processing the initial set of items is the number
+	 * of available processors.
+	 *
+	 * @param executor The executor on which to process the initial set of
+	 *            items.
+	 * @return Options with parallel initial tracking.
+	 */
+	public TrackerOptions parallelInitial(Executor executor) {
+		return parallelInitial(executor, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Returns options which process the initial set of items in parallel
+	 * using the thread opening the tracker and the specified executor.
+	 * <p>
+	 * If the customizer throws an exception for an initial item, the
+	 * remaining initial items are still processed by the other threads and
+	 * the exception is thrown when opening the tracker once the initial set of
+	 * items has been processed.
+	 *
+	 * @param executor The executor on which to process the initial set of
+	 *            items.
+	 * @param parallelism The maximum number of threads, including the thread
+	 *            opening the tracker, processing the initial set of items.
+	 * @return Options with parallel initial tracking.
+	 * @throws IllegalArgumentException If {@code parallelism} is less than
+	 *             {@code 1}.
+	 */
+	public TrackerOptions parallelInitial(Executor executor, int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("parallelism is less than 1: " + parallelism);
+		}
+		return new TrackerOptions(this.executor, queueCapacity, requireNonNull(executor), parallelism, metrics);
+	}
+
+	/**
+	 * Returns options which process the initial set of items one at a time on
+	 * the thread opening the tracker.
+	 *
+	 * @return Options with serial initial tracking.
+	 */
+	public TrackerOptions serialInitial() {
+		return new TrackerOptions(executor, queueCapacity, null, 0, metrics);
+	}
+
+	/**
+	 * Returns options which enable or disable the collection of metrics.
+	 * <p>
+	 * Collecting metrics does not allocate objects when the tracker processes
+	 * tracking events, but reads the system clock around each customizer call
+	 * and each acquisition of the tracker's lock.
+	 *
+	 * @param enabled {@code true} to collect metrics; {@code false} otherwise.
+	 * @return Options with the collection of metrics enabled or disabled.
+	 */
+	public TrackerOptions metrics(boolean enabled) {
+		return new TrackerOptions(executor, queueCapacity, initialExecutor, initialParallelism, enabled);
+	}
+}
@@ -0,0 +1,87 @@
+/*******************************************************************************
+ * Copyright (c) Contributors to the Eclipse Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0 
+ *******************************************************************************/
+
+package org.osgi.util.tracker.dto;
+
+import org.osgi.dto.DTO;
+
+/**
+ * Data Transfer Object for the metrics of a {@code ServiceTracker} or a
+ * {@code BundleTracker}.
+ * <p>
+ * The metrics are collected from when the tracker was last opened. The rate of
+ * additions, modifications and removals can be computed from their counts and
+ * {@link #elapsedNanos}.
+ * 
+ * @author $Id$
+ * @NotThreadSafe
+ */
+public class TrackerMetricsDTO extends DTO {
+	/**
+	 * The number of nanoseconds since the tracker was opened.
+	 */
+	public long					elapsedNanos;
+
+	/**
+	 * The number of items currently tracked.
+	 */
+	public int					size;
+
+	/**
+	 * The number of items added to the tracker.
+	 */
+	public long					added;
+
+	/**
+	 * The number of modifications of tracked items.
+	 */
+	public long					modified;
+
+	/**
+	 * The number of items removed from the tracker.
+	 */
+	public long					removed;
+
+	/**
+	 * The durations of the calls to the customizer adding method.
+	 */
+	public LatencyHistogramDTO	addingLatency;
+
+	/**
+	 * The durations of the calls to the customizer modified method.
+	 */
+	public LatencyHistogramDTO	modifiedLatency;
+
+	/**
+	 * The durations of the calls to the customizer removed method.
+	 */
+	public LatencyHistogramDTO	removedLatency;
+
+	/**
+	 * The durations threads were blocked acquiring the tracker's lock while
+	 * processing tracking events.
+	 */
+	public LatencyHistogramDTO	lockWait;
+
+	/**
+	 * The durations of the calls to {@code waitForService} which waited for a
+	 * service to be tracked. This histogram is empty for a
+	 * {@code BundleTracker}.
+	 */
+	public LatencyHistogramDTO	serviceWait;
+}
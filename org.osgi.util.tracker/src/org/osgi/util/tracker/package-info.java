@@ -17,7 +17,7 @@
  *******************************************************************************/
 
 /**
- * Tracker Package Version 1.5.
+ * Tracker Package Version 1.6.
  * 
  * <p>
  * Bundles wishing to use this package must list the package in the
@@ -26,12 +26,12 @@
  * <p>
  * Example import for consumers using the API in this package:
  * <p>
- * {@code  Import-Package: org.osgi.util.tracker; version="[1.5,2.0)"}
+ * {@code  Import-Package: org.osgi.util.tracker; version="[1.6,2.0)"}
  * 
  * @author $Id$
  */
 
-@Version("1.5.4")
+@Version("1.6.0")
 package org.osgi.util.tracker;
 
 import org.osgi.annotation.versioning.Version;